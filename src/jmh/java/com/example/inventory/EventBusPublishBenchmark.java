@@ -0,0 +1,73 @@
+package com.example.inventory;
+
+import com.example.inventory.event.StockAdjusted;
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.EventBusInstrumentation;
+import com.example.inventory.service.InMemoryEventBus;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link InMemoryEventBus#publish} into the projection with bus instrumentation off, sampled (meters plus
+ * spans for 1% of publishes, the default) and full (spans for every publish). Spans go to a registry with a
+ * meter handler, which is what the Spring context wires up.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EventBusPublishBenchmark {
+
+    @Param({"off", "sampled", "full"})
+    String instrumentation;
+
+    @Param({"10000"})
+    int skus;
+
+    InMemoryEventBus bus;
+    ZipfianSkus skuDistribution;
+    final SplittableRandom random = new SplittableRandom(42);
+    final Instant now = Instant.now();
+    long version;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        ObservationRegistry registry = ObservationRegistry.create();
+        registry.observationConfig().observationHandler(new DefaultMeterObservationHandler(meters));
+        EventBusInstrumentation busInstrumentation = switch (instrumentation) {
+            case "off" -> new EventBusInstrumentation(registry, meters, false, 0);
+            case "sampled" -> new EventBusInstrumentation(registry, meters, true, 0.01);
+            default -> new EventBusInstrumentation(registry, meters, true, 1.0);
+        };
+        bus = new InMemoryEventBus(busInstrumentation, Optional.empty(), "sync", 0, 0);
+        new CentralInventoryProjection(bus).subscribe();
+        skuDistribution = new ZipfianSkus(skus);
+    }
+
+    @Benchmark
+    public long publish() {
+        // Versions only grow, so every event is applied rather than dropped as stale
+        return bus.publish(new StockAdjusted("S" + random.nextInt(100), skuDistribution.next(random), 1, ++version, now));
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.inventory;
+
+import com.example.inventory.event.StockAdjusted;
+import com.example.inventory.event.StockReplaced;
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.state.InventoryStateTable;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Projection apply cost as the number of store×sku rows grows. The projection's event handler is private,
+ * so events go through a bus with a NOOP observation registry, which adds only a method call per event.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class ProjectionOnEventBenchmark {
+
+    // stores x skus, all rows loaded before measuring
+    @Param({"10x1000", "100x10000", "200x10000"})
+    String cardinality;
+
+    @Param({"heap", "offheap"})
+    String engine;
+
+    InMemoryEventBus bus;
+    ZipfianSkus skuDistribution;
+    int stores;
+    final SplittableRandom random = new SplittableRandom(42);
+    final Instant now = Instant.now();
+    long version;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] dims = cardinality.split("x");
+        stores = Integer.parseInt(dims[0]);
+        skuDistribution = new ZipfianSkus(Integer.parseInt(dims[1]));
+        bus = new InMemoryEventBus(ObservationRegistry.NOOP, new SimpleMeterRegistry());
+        new CentralInventoryProjection(bus, InventoryStateTable.forEngine(engine)).subscribe();
+        for (int s = 0; s < stores; s++) {
+            for (int k = 0; k < skuDistribution.size(); k++) {
+                bus.publish(new StockReplaced("S" + s, skuDistribution.name(k), 1_000, ++version, now));
+            }
+        }
+    }
+
+    @Benchmark
+    public long onEvent() {
+        return bus.publish(new StockAdjusted("S" + random.nextInt(stores), skuDistribution.next(random), -1, ++version, now));
+    }
+}
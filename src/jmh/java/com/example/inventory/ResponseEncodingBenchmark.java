@@ -0,0 +1,83 @@
+package com.example.inventory;
+
+import com.example.inventory.api.ResponseEncoder;
+import com.example.inventory.api.dto.Responses.GlobalQuantityResponse;
+import com.example.inventory.api.dto.Responses.StoreQuantityResponse;
+import com.example.inventory.model.InventoryRecord;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializing the single-row query and command responses: Jackson as configured by Spring Boot against the
+ * hand-written {@link ResponseEncoder}, as JSON and as the binary encoding. Run with {@code -prof gc} for the
+ * bytes allocated per response ({@code gc.alloc.rate.norm}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseEncodingBenchmark {
+
+    @Param({"global", "store", "record"})
+    String payload;
+
+    ObjectMapper jackson;
+    ResponseEncoder encoder;
+    InventoryRecord record;
+    int quantity;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        jackson = Jackson2ObjectMapperBuilder.json().featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+        encoder = new ResponseEncoder();
+        record = new InventoryRecord("STORE-0042", "SKU-004217", 1_234, 98_765, Instant.parse("2024-05-01T10:15:30.123Z"));
+    }
+
+    @Benchmark
+    public byte[] jackson() throws JsonProcessingException {
+        int qty = ++quantity & 0xFFFF;
+        return switch (payload) {
+            case "global" -> jackson.writeValueAsBytes(new GlobalQuantityResponse("SKU-004217", qty, 17, qty - 17));
+            case "store" -> jackson.writeValueAsBytes(new StoreQuantityResponse("STORE-0042", "SKU-004217", qty, 17, qty - 17));
+            default -> jackson.writeValueAsBytes(record);
+        };
+    }
+
+    @Benchmark
+    public byte[] encoderJson() {
+        return encode(false);
+    }
+
+    @Benchmark
+    public byte[] encoderBinary() {
+        return encode(true);
+    }
+
+    private byte[] encode(boolean binary) {
+        int qty = ++quantity & 0xFFFF;
+        return switch (payload) {
+            case "global" -> encoder.global("SKU-004217", qty, 17, qty - 17, binary);
+            case "store" -> encoder.store("STORE-0042", "SKU-004217", qty, 17, qty - 17, binary);
+            default -> encoder.record(record, binary);
+        };
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.inventory;
+
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.service.StoreInventoryService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write path (state update, event publish and projection delivery) with several threads hitting
+ * Zipf-distributed SKUs, so the hottest rows are contended.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class StoreInventoryServiceBenchmark {
+
+    @Param({"100"})
+    int stores;
+
+    @Param({"10000"})
+    int skus;
+
+    StoreInventoryService service;
+    ZipfianSkus skuDistribution;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.NOOP, new SimpleMeterRegistry());
+        new CentralInventoryProjection(bus).subscribe();
+        service = new StoreInventoryService(bus);
+        skuDistribution = new ZipfianSkus(skus);
+    }
+
+    @State(Scope.Thread)
+    public static class Caller {
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    public Object adjustStock(Caller caller) {
+        return service.adjustStock("S" + caller.random.nextInt(stores), skuDistribution.next(caller.random), 1);
+    }
+
+    @Benchmark
+    public Object replaceStock(Caller caller) {
+        return service.replaceStock("S" + caller.random.nextInt(stores), skuDistribution.next(caller.random), caller.random.nextInt(100));
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.inventory;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Draws SKU indexes from a Zipfian distribution (rank k has weight 1/k^s), so a few SKUs take most of the
+ * traffic the way best sellers do. Sampling is a binary search over a precomputed CDF.
+ */
+final class ZipfianSkus {
+    // YCSB's default skew
+    static final double DEFAULT_EXPONENT = 0.99;
+
+    private final double[] cdf;
+    private final String[] names;
+
+    ZipfianSkus(int skus, double exponent) {
+        this.cdf = new double[skus];
+        this.names = new String[skus];
+        double sum = 0;
+        for (int k = 0; k < skus; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cdf[k] = sum;
+            names[k] = "SKU-" + k;
+        }
+        for (int k = 0; k < skus; k++) {
+            cdf[k] /= sum;
+        }
+    }
+
+    ZipfianSkus(int skus) {
+        this(skus, DEFAULT_EXPONENT);
+    }
+
+    int nextIndex(SplittableRandom random) {
+        int i = Arrays.binarySearch(cdf, random.nextDouble());
+        return Math.min(i >= 0 ? i : -i - 1, cdf.length - 1);
+    }
+
+    String next(SplittableRandom random) {
+        return names[nextIndex(random)];
+    }
+
+    String name(int index) {
+        return names[index];
+    }
+
+    int size() {
+        return names.length;
+    }
+}
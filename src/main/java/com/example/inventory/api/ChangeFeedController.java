@@ -0,0 +1,54 @@
+package com.example.inventory.api;
+
+import com.example.inventory.service.ChangeFeed;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.Set;
+
+@RestController
+@RequestMapping("/api/query/inventory")
+public class ChangeFeedController {
+    private static final int MAX_FILTER_SKUS = 1000;
+
+    private final ChangeFeed changeFeed;
+    private final long timeoutMillis;
+
+    public ChangeFeedController(ChangeFeed changeFeed, @Value("${inventory.change-feed.timeout-ms:1800000}") long timeoutMillis) {
+        this.changeFeed = changeFeed;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Server-Sent Events of projection changes, named {@code global} or {@code store}, each carrying
+     * { storeId, sku, quantity } with a null storeId for global totals. Filter with repeated {@code sku} and/or one {@code storeId}. A client
+     * that falls behind gets the latest value per key, not every intermediate one.
+     */
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter changes(@RequestParam(value = "sku", required = false) List<String> skus,
+                              @RequestParam(value = "storeId", required = false) String storeId) {
+        Set<String> skuFilter = skus == null ? Set.of() : Set.copyOf(skus);
+        if (skuFilter.size() > MAX_FILTER_SKUS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_FILTER_SKUS + " skus per subscription");
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        ChangeFeed.Subscription subscription = changeFeed.subscribe(skuFilter, storeId, update -> emitter.send(SseEmitter.event()
+            .name(update.global() ? "global" : "store")
+            .data(update, MediaType.APPLICATION_JSON)));
+        if (subscription == null) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many change feed subscribers");
+        }
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(e -> subscription.close());
+        return emitter;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.inventory.api;
+
+import com.example.inventory.api.dto.Responses.DeadLetterEntry;
+import com.example.inventory.api.dto.Responses.DeadLetterPurgeResponse;
+import com.example.inventory.api.dto.Responses.DeadLettersResponse;
+import com.example.inventory.service.DeadLetterQueue;
+import com.example.inventory.service.DeadLetterQueue.DeadLetter;
+import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.service.InMemoryEventBus.RedriveStatus;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+/** Inspects, redrives and purges the event bus dead letters. */
+@RestController
+@RequestMapping("/api/admin/dead-letters")
+public class DeadLetterController {
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final InMemoryEventBus eventBus;
+
+    public DeadLetterController(InMemoryEventBus eventBus) {
+        this.eventBus = eventBus;
+    }
+
+    /** Entries with ids above afterId, oldest first; pass the last id back as afterId for the next page. */
+    @GetMapping
+    public DeadLettersResponse list(@RequestParam(value = "afterId", defaultValue = "0") long afterId,
+                                    @RequestParam(value = "limit", defaultValue = "100") int limit,
+                                    @RequestParam(value = "subscriber", required = false) String subscriber) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        DeadLetterQueue queue = eventBus.deadLetters();
+        List<DeadLetterEntry> entries = queue.list(afterId, limit, subscriber).stream().map(DeadLetterController::entry).toList();
+        return new DeadLettersResponse(entries, queue.size(), queue.capacity(), queue.overflowed(), eventBus.pendingRetries());
+    }
+
+    @GetMapping("/{id}")
+    public DeadLetterEntry get(@PathVariable("id") long id) {
+        DeadLetter entry = eventBus.deadLetters().get(id);
+        if (entry == null) throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No dead letter " + id);
+        return entry(entry);
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> remove(@PathVariable("id") long id) {
+        if (eventBus.deadLetters().remove(id) == null) throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No dead letter " + id);
+        return ResponseEntity.noContent().build();
+    }
+
+    /** Drops every entry, or only one subscriber's. */
+    @DeleteMapping
+    public DeadLetterPurgeResponse purge(@RequestParam(value = "subscriber", required = false) String subscriber) {
+        return new DeadLetterPurgeResponse(eventBus.deadLetters().purge(subscriber));
+    }
+
+    /** Sends one entry back to its subscriber now; if it fails again it returns under a new id. */
+    @PostMapping("/{id}/redrive")
+    public ResponseEntity<Void> redrive(@PathVariable("id") long id) {
+        if (!eventBus.redrive(id)) throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No dead letter " + id);
+        return ResponseEntity.accepted().build();
+    }
+
+    /** Starts the rate-limited background redrive of the current entries; 409 while one is running. */
+    @PostMapping("/redrive")
+    public ResponseEntity<RedriveStatus> startRedrive(@RequestParam(value = "subscriber", required = false) String subscriber,
+                                                      @RequestParam(value = "limit", defaultValue = "" + Long.MAX_VALUE) long limit) {
+        if (limit < 1) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be positive");
+        if (!eventBus.startRedrive(subscriber, limit)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "A redrive is already running");
+        }
+        return ResponseEntity.accepted().body(eventBus.redriveStatus());
+    }
+
+    @GetMapping("/redrive")
+    public RedriveStatus redriveStatus() {
+        return eventBus.redriveStatus();
+    }
+
+    @DeleteMapping("/redrive")
+    public ResponseEntity<Void> stopRedrive() {
+        eventBus.stopRedrive();
+        return ResponseEntity.noContent().build();
+    }
+
+    private static DeadLetterEntry entry(DeadLetter entry) {
+        return new DeadLetterEntry(entry.id(), entry.subscriber(), entry.event().getClass().getSimpleName(), entry.event(),
+            entry.errorMessage(), entry.attempts(), entry.failedAt());
+    }
+}
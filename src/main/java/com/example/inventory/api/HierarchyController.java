@@ -0,0 +1,54 @@
+package com.example.inventory.api;
+
+import com.example.inventory.api.dto.Requests.HierarchyParentRequest;
+import com.example.inventory.api.dto.Responses.HierarchyResponse;
+import com.example.inventory.service.CentralInventoryProjection;
+import jakarta.validation.Valid;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/** Edits the store → district → region hierarchy; each change moves only the affected node's totals. */
+@RestController
+@RequestMapping("/api/hierarchy")
+public class HierarchyController {
+    private final CentralInventoryProjection projection;
+
+    public HierarchyController(CentralInventoryProjection projection) {
+        this.projection = projection;
+    }
+
+    @GetMapping
+    public HierarchyResponse hierarchy() {
+        return new HierarchyResponse(projection.hierarchy().storeDistricts(), projection.hierarchy().districtRegions());
+    }
+
+    @PutMapping("/stores/{storeId}")
+    public ResponseEntity<Void> assignStore(@PathVariable("storeId") String storeId, @Valid @RequestBody HierarchyParentRequest request) {
+        projection.assignStore(storeId, request.parentId());
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping("/stores/{storeId}")
+    public ResponseEntity<Void> unassignStore(@PathVariable("storeId") String storeId) {
+        projection.assignStore(storeId, null);
+        return ResponseEntity.noContent().build();
+    }
+
+    @PutMapping("/districts/{districtId}")
+    public ResponseEntity<Void> assignDistrict(@PathVariable("districtId") String districtId, @Valid @RequestBody HierarchyParentRequest request) {
+        projection.assignDistrict(districtId, request.parentId());
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping("/districts/{districtId}")
+    public ResponseEntity<Void> unassignDistrict(@PathVariable("districtId") String districtId) {
+        projection.assignDistrict(districtId, null);
+        return ResponseEntity.noContent().build();
+    }
+}
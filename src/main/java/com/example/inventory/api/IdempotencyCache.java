@@ -0,0 +1,219 @@
+package com.example.inventory.api;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Responses of commands sent with an {@code Idempotency-Key}, so a client retrying after a timeout gets the
+ * first outcome back instead of applying the command twice. Keys are split over lock-guarded shards, each an
+ * insertion-ordered map capped at its share of {@code max-entries}. The TTL is the same for every key, so
+ * insertion order is expiry order: expired keys are dropped from the head of the shard on each insert, and
+ * when a shard is full its oldest key goes too. Memory is bounded by the entry count whatever the key rate.
+ *
+ * Only successful responses are kept. A failed command releases its key, so the client may retry it.
+ */
+@Component
+public class IdempotencyCache {
+    public static final int MAX_KEY_LENGTH = 255;
+    static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final class Entry {
+        // Compared with equals: requests whose fingerprints merely share a hash must not share a response
+        final Object fingerprint;
+        final long expiresAt;
+        // null while the first request with this key is running
+        volatile ResponseEntity<?> response;
+
+        Entry(Object fingerprint, long expiresAt) {
+            this.fingerprint = fingerprint;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Shard {
+        final ReentrantLock lock = new ReentrantLock();
+        final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    }
+
+    private final Shard[] shards;
+    private final int mask;
+    private final int shardCapacity;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+    private final Counter stored;
+    private final Counter replayed;
+    private final Counter inFlight;
+    private final Counter mismatched;
+    private final Counter expired;
+    private final Counter evicted;
+
+    public IdempotencyCache(MeterRegistry meterRegistry) {
+        this(16, 262_144, 600, meterRegistry);
+    }
+
+    @Autowired
+    public IdempotencyCache(@Value("${inventory.idempotency.shards:16}") int shards,
+                            @Value("${inventory.idempotency.max-entries:262144}") int maxEntries,
+                            @Value("${inventory.idempotency.ttl-seconds:600}") long ttlSeconds,
+                            MeterRegistry meterRegistry) {
+        this(shards, maxEntries, ttlSeconds, meterRegistry, System::nanoTime);
+    }
+
+    public IdempotencyCache(int shards, int maxEntries, long ttlSeconds, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        if (Integer.bitCount(shards) != 1) throw new IllegalArgumentException("shards must be a power of two");
+        if (maxEntries < shards) throw new IllegalArgumentException("max-entries must be >= shards");
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard();
+        }
+        this.mask = shards - 1;
+        this.shardCapacity = maxEntries / shards;
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+        this.nanoClock = nanoClock;
+        this.stored = requests(meterRegistry, "stored");
+        this.replayed = requests(meterRegistry, "replayed");
+        this.inFlight = requests(meterRegistry, "in_flight");
+        this.mismatched = requests(meterRegistry, "mismatch");
+        this.expired = Counter.builder("inventory.idempotency.evictions").tag("reason", "expired").register(meterRegistry);
+        this.evicted = Counter.builder("inventory.idempotency.evictions").tag("reason", "size").register(meterRegistry);
+        Gauge.builder("inventory.idempotency.entries", this, IdempotencyCache::size).register(meterRegistry);
+    }
+
+    private static Counter requests(MeterRegistry registry, String result) {
+        return Counter.builder("inventory.idempotency.requests").tag("result", result).register(registry);
+    }
+
+    /**
+     * Runs command once per key. A repeat of a finished key gets the stored response, marked with
+     * {@code Idempotent-Replayed: true}, without running command. The fingerprint identifies the request the
+     * key was first used with and is kept with it, so it should be a small immutable value with equals
+     * (e.g. the request record); reusing the key for a different request is refused.
+     *
+     * @throws KeyInUseException if the first request with this key has not finished yet
+     * @throws KeyReusedException if the key was first used with a different request
+     */
+    public <T> ResponseEntity<T> execute(String key, Object fingerprint, Supplier<ResponseEntity<T>> command) {
+        Shard shard = shards[shardOf(key)];
+        Entry entry;
+        Entry existing;
+        shard.lock.lock();
+        try {
+            long now = nanoClock.getAsLong();
+            existing = shard.entries.get(key);
+            if (existing != null && existing.expiresAt - now <= 0) {
+                shard.entries.remove(key);
+                expired.increment();
+                existing = null;
+            }
+            if (existing == null) {
+                evict(shard, now);
+                entry = new Entry(fingerprint, now + ttlNanos);
+                shard.entries.put(key, entry);
+            } else {
+                entry = null;
+            }
+        } finally {
+            shard.lock.unlock();
+        }
+        if (existing != null) return replay(existing, fingerprint);
+
+        ResponseEntity<T> response;
+        try {
+            response = command.get();
+        } catch (RuntimeException | Error e) {
+            release(shard, key, entry);
+            throw e;
+        }
+        if (response.getStatusCode().is2xxSuccessful()) {
+            entry.response = response;
+            stored.increment();
+        } else {
+            release(shard, key, entry);
+        }
+        return response;
+    }
+
+    /** Keys currently held, finished or running. */
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            // Unlocked read of an int; good enough for a gauge
+            size += shard.entries.size();
+        }
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> ResponseEntity<T> replay(Entry existing, Object fingerprint) {
+        if (!existing.fingerprint.equals(fingerprint)) {
+            mismatched.increment();
+            throw new KeyReusedException();
+        }
+        ResponseEntity<?> response = existing.response;
+        if (response == null) {
+            inFlight.increment();
+            throw new KeyInUseException();
+        }
+        replayed.increment();
+        return (ResponseEntity<T>) ResponseEntity.status(response.getStatusCode())
+            .headers(response.getHeaders())
+            .header(REPLAYED_HEADER, "true")
+            .body(response.getBody());
+    }
+
+    // Expired keys sit at the head, so this stops at the first live one; then makes room for one more
+    private void evict(Shard shard, long now) {
+        Iterator<Map.Entry<String, Entry>> it = shard.entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry oldest = it.next().getValue();
+            if (oldest.expiresAt - now <= 0) {
+                it.remove();
+                expired.increment();
+            } else if (shard.entries.size() >= shardCapacity) {
+                it.remove();
+                evicted.increment();
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static void release(Shard shard, String key, Entry entry) {
+        shard.lock.lock();
+        try {
+            // It may have been evicted and the key taken again meanwhile
+            shard.entries.remove(key, entry);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    private int shardOf(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    public static class KeyInUseException extends RuntimeException {
+        KeyInUseException() {
+            super("A request with this Idempotency-Key is still in progress", null, false, false);
+        }
+    }
+
+    public static class KeyReusedException extends RuntimeException {
+        KeyReusedException() {
+            super("This Idempotency-Key was already used with a different request", null, false, false);
+        }
+    }
+}
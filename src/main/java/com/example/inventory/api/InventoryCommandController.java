@@ -1,9 +1,21 @@
 package com.example.inventory.api;
 
 import com.example.inventory.api.dto.Requests.AdjustStockRequest;
+import com.example.inventory.api.dto.Requests.BatchOperation;
+import com.example.inventory.api.dto.Requests.BatchRequest;
 import com.example.inventory.api.dto.Requests.ReplaceStockRequest;
+import com.example.inventory.api.dto.Requests.TransferLine;
+import com.example.inventory.api.dto.Requests.TransferRequest;
+import com.example.inventory.api.dto.Responses.BatchItemResult;
+import com.example.inventory.api.dto.Responses.BatchResponse;
+import com.example.inventory.api.dto.Responses.TransferResponse;
 import com.example.inventory.model.InventoryRecord;
+import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.service.StockOperation;
+import com.example.inventory.service.StockOperationResult;
+import com.example.inventory.service.StockTransfer;
 import jakarta.validation.Valid;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import com.example.inventory.service.StoreInventoryService;
 import org.springframework.http.ResponseEntity;
@@ -11,41 +23,134 @@ import org.springframework.web.bind.annotation.*;
 import io.micrometer.observation.annotation.Observed;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
 @RestController
 @RequestMapping("/api/commands/inventory")
 public class InventoryCommandController {
+    // Pass back as ?minVersion= on queries to read your own writes in async bus mode
+    static final String CONSISTENCY_TOKEN_HEADER = "X-Consistency-Token";
+    // A retry with the same key gets the first response back; see IdempotencyCache
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     private final StoreInventoryService storeInventoryService;
+    private final InMemoryEventBus eventBus;
+    private final IdempotencyCache idempotencyCache;
+    private final ResponseEncoder encoder;
 
-    public InventoryCommandController(StoreInventoryService storeInventoryService) {
+    public InventoryCommandController(StoreInventoryService storeInventoryService, InMemoryEventBus eventBus,
+                                      IdempotencyCache idempotencyCache, ResponseEncoder encoder) {
         this.storeInventoryService = storeInventoryService;
+        this.eventBus = eventBus;
+        this.idempotencyCache = idempotencyCache;
+        this.encoder = encoder;
     }
 
     @PostMapping("/replace")
     @Observed(name = "inventory.command.replace")
-    public ResponseEntity<InventoryRecord> replace(@RequestHeader(value = "If-Match", required = false) String ifMatch,
-                                                   @Valid @RequestBody ReplaceStockRequest request) {
+    public ResponseEntity<byte[]> replace(@RequestHeader(value = "If-Match", required = false) String ifMatch,
+                                          @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                                          @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                          @Valid @RequestBody ReplaceStockRequest request) {
         long expectedVersion = parseIfMatch(ifMatch);
-        InventoryRecord record;
-        try {
-            record = storeInventoryService.replaceStockWithOptimisticLock(request.storeId(), request.sku(), request.quantity(), expectedVersion);
-        } catch (com.example.inventory.service.StoreInventoryService.OptimisticLockException e) {
-            throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "ETag mismatch. Current version=" + e.getCurrentVersion());
-        }
-        return withEtag(record);
+        boolean binary = ResponseEncoder.wantsBinary(accept);
+        // The stored response is in one encoding, so a retry asking for the other is a different request
+        return idempotent(idempotencyKey, List.of(expectedVersion, binary, request), () -> {
+            InventoryRecord record;
+            try {
+                record = storeInventoryService.replaceStockWithOptimisticLock(request.storeId(), request.sku(), request.quantity(), expectedVersion);
+            } catch (com.example.inventory.service.StoreInventoryService.OptimisticLockException e) {
+                throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "ETag mismatch. Current version=" + e.getCurrentVersion());
+            }
+            return withEtag(record, binary);
+        });
     }
 
     @PostMapping("/adjust")
     @Observed(name = "inventory.command.adjust")
-    public ResponseEntity<InventoryRecord> adjust(@RequestHeader(value = "If-Match", required = false) String ifMatch,
-                                                  @Valid @RequestBody AdjustStockRequest request) {
+    public ResponseEntity<byte[]> adjust(@RequestHeader(value = "If-Match", required = false) String ifMatch,
+                                         @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                                         @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                         @Valid @RequestBody AdjustStockRequest request) {
         long expectedVersion = parseIfMatch(ifMatch);
-        InventoryRecord record;
+        boolean binary = ResponseEncoder.wantsBinary(accept);
+        // The stored response is in one encoding, so a retry asking for the other is a different request
+        return idempotent(idempotencyKey, List.of(expectedVersion, binary, request), () -> {
+            InventoryRecord record;
+            try {
+                record = storeInventoryService.adjustStockWithOptimisticLock(request.storeId(), request.sku(), request.delta(), expectedVersion);
+            } catch (com.example.inventory.service.StoreInventoryService.OptimisticLockException e) {
+                throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "ETag mismatch. Current version=" + e.getCurrentVersion());
+            }
+            return withEtag(record, binary);
+        });
+    }
+
+    @PostMapping("/batch")
+    @Observed(name = "inventory.command.batch")
+    public ResponseEntity<BatchResponse> batch(@RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                                               @Valid @RequestBody BatchRequest request) {
+        return idempotent(idempotencyKey, request, () -> applyBatch(request));
+    }
+
+    private ResponseEntity<BatchResponse> applyBatch(BatchRequest request) {
+        List<StockOperation> operations = new ArrayList<>(request.operations().size());
+        for (BatchOperation op : request.operations()) {
+            long expectedVersion = op.expectedVersion() == null ? -1L : op.expectedVersion();
+            operations.add("replace".equals(op.type())
+                ? StockOperation.replace(op.storeId(), op.sku(), op.quantity(), expectedVersion)
+                : StockOperation.adjust(op.storeId(), op.sku(), op.delta(), expectedVersion));
+        }
+        List<StockOperationResult> results = storeInventoryService.applyBatch(operations);
+        List<BatchItemResult> items = new ArrayList<>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            StockOperationResult result = results.get(i);
+            items.add(result.isApplied()
+                ? new BatchItemResult(i, HttpStatus.OK.value(), etag(result.record().getVersion()), result.record(), null)
+                : new BatchItemResult(i, HttpStatus.PRECONDITION_FAILED.value(), null, null, result.currentVersion()));
+        }
+        return ResponseEntity.ok()
+            .header(CONSISTENCY_TOKEN_HEADER, String.valueOf(eventBus.currentSequence()))
+            .body(new BatchResponse(items));
+    }
+
+    @PostMapping("/transfer")
+    @Observed(name = "inventory.command.transfer")
+    public ResponseEntity<TransferResponse> transfer(@RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                                                     @Valid @RequestBody TransferRequest request) {
+        return idempotent(idempotencyKey, request, () -> applyTransfer(request));
+    }
+
+    private ResponseEntity<TransferResponse> applyTransfer(TransferRequest request) {
+        List<StockTransfer> lines = new ArrayList<>(request.lines().size());
+        for (TransferLine line : request.lines()) {
+            lines.add(new StockTransfer(line.sku(), line.fromStoreId(), line.toStoreId(), line.quantity()));
+        }
+        List<InventoryRecord> records;
         try {
-            record = storeInventoryService.adjustStockWithOptimisticLock(request.storeId(), request.sku(), request.delta(), expectedVersion);
-        } catch (com.example.inventory.service.StoreInventoryService.OptimisticLockException e) {
-            throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "ETag mismatch. Current version=" + e.getCurrentVersion());
+            records = storeInventoryService.transfer(lines);
+        } catch (StoreInventoryService.InsufficientStockException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+        return ResponseEntity.ok()
+            .header(CONSISTENCY_TOKEN_HEADER, String.valueOf(eventBus.currentSequence()))
+            .body(new TransferResponse(records));
+    }
+
+    private <T> ResponseEntity<T> idempotent(String key, Object fingerprint, Supplier<ResponseEntity<T>> command) {
+        if (key == null) return command.get();
+        if (key.isBlank() || key.length() > IdempotencyCache.MAX_KEY_LENGTH) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, IDEMPOTENCY_KEY_HEADER + " must be 1 to " + IdempotencyCache.MAX_KEY_LENGTH + " characters");
+        }
+        try {
+            return idempotencyCache.execute(key, fingerprint, command);
+        } catch (IdempotencyCache.KeyInUseException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        } catch (IdempotencyCache.KeyReusedException e) {
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, e.getMessage());
         }
-        return withEtag(record);
     }
 
     private long parseIfMatch(String ifMatch) {
@@ -57,10 +162,18 @@ public class InventoryCommandController {
         }
     }
 
-    private ResponseEntity<InventoryRecord> withEtag(InventoryRecord record) {
+    // Encoded here rather than by Jackson, which also keeps an idempotent replay independent of the mutable record
+    private ResponseEntity<byte[]> withEtag(InventoryRecord record, boolean binary) {
         return ResponseEntity.status(HttpStatus.OK)
-            .eTag('"' + String.valueOf(record.getVersion()) + '"')
-            .body(record);
+            .eTag(etag(record.getVersion()))
+            // Read after the publish returned, so it covers this command's event
+            .header(CONSISTENCY_TOKEN_HEADER, String.valueOf(eventBus.currentSequence()))
+            .contentType(ResponseEncoder.contentType(binary))
+            .body(encoder.record(record, binary));
+    }
+
+    private static String etag(long version) {
+        return '"' + String.valueOf(version) + '"';
     }
 }
 
@@ -0,0 +1,68 @@
+package com.example.inventory.api;
+
+import com.example.inventory.api.dto.Responses.HistoryAsOfResponse;
+import com.example.inventory.api.dto.Responses.HistoryChange;
+import com.example.inventory.api.dto.Responses.HistoryRangeResponse;
+import com.example.inventory.service.StockHistory;
+import com.example.inventory.service.StockHistory.Change;
+import io.micrometer.observation.annotation.Observed;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.util.List;
+
+/** Point-in-time and time-range reads of a store row's quantity; times are ISO-8601 instants. */
+@RestController
+@RequestMapping("/api/query/inventory/history")
+public class InventoryHistoryController {
+    private static final int MAX_RANGE_SIZE = 10_000;
+
+    private final StockHistory history;
+
+    public InventoryHistoryController(StockHistory history) {
+        this.history = history;
+    }
+
+    /** The row as it was at the given time; 404 if it had no recorded change by then. */
+    @GetMapping("/{storeId}/{sku}/as-of")
+    @Observed(name = "inventory.query.history.as-of")
+    public HistoryAsOfResponse asOf(@PathVariable("storeId") String storeId, @PathVariable("sku") String sku,
+                                    @RequestParam("at") Instant at) {
+        Change change = history.asOf(storeId, sku, at.toEpochMilli());
+        if (change == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No recorded change of " + storeId + "/" + sku + " by " + at);
+        }
+        return new HistoryAsOfResponse(storeId, sku, at, change(change));
+    }
+
+    /**
+     * Changes from from to to inclusive, oldest first, with the one in effect at from as initial. When
+     * truncated, ask again with the last change's time as from and its version as afterVersion.
+     */
+    @GetMapping("/{storeId}/{sku}")
+    @Observed(name = "inventory.query.history.range")
+    public HistoryRangeResponse range(@PathVariable("storeId") String storeId, @PathVariable("sku") String sku,
+                                      @RequestParam("from") Instant from, @RequestParam("to") Instant to,
+                                      @RequestParam(value = "afterVersion", defaultValue = "0") long afterVersion,
+                                      @RequestParam(value = "limit", defaultValue = "1000") int limit) {
+        if (limit < 1 || limit > MAX_RANGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_RANGE_SIZE);
+        }
+        if (to.isBefore(from)) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "to must not be before from");
+        Change initial = history.asOf(storeId, sku, from.toEpochMilli() - 1);
+        List<Change> changes = history.range(storeId, sku, from.toEpochMilli(), to.toEpochMilli(), afterVersion, limit + 1);
+        boolean truncated = changes.size() > limit;
+        List<HistoryChange> page = changes.stream().limit(limit).map(InventoryHistoryController::change).toList();
+        return new HistoryRangeResponse(storeId, sku, from, to, initial == null ? null : change(initial), page, truncated);
+    }
+
+    private static HistoryChange change(Change change) {
+        return new HistoryChange(Instant.ofEpochMilli(change.millis()), change.quantity(), change.version());
+    }
+}
@@ -1,36 +1,273 @@
 package com.example.inventory.api;
 
+import com.example.inventory.api.dto.Requests.BulkGlobalRequest;
+import com.example.inventory.api.dto.Responses.RollupQuantityResponse;
 import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.CentralInventoryProjection.View;
+import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.service.StockRanking;
+import com.example.inventory.state.InventoryStateTable.Row;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import io.micrometer.observation.annotation.Observed;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.Map;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
 
 @RestController
 @RequestMapping("/api/query/inventory")
 public class InventoryQueryController {
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int MAX_PAGE_SIZE = 10_000;
+    private static final int MAX_RANKING_SIZE = 1_000;
+
     private final CentralInventoryProjection projection;
+    private final InMemoryEventBus eventBus;
+    private final ObjectMapper objectMapper;
+    private final Duration readTimeout;
+    private final QueryResponseCache responseCache;
+    private final ResponseEncoder encoder;
+    private final String etagEpoch = Long.toString(System.currentTimeMillis(), 36);
 
-    public InventoryQueryController(CentralInventoryProjection projection) {
+    public InventoryQueryController(CentralInventoryProjection projection, InMemoryEventBus eventBus, ObjectMapper objectMapper,
+                                    @Value("${inventory.event-bus.read-timeout-ms:2000}") long readTimeoutMillis,
+                                    QueryResponseCache responseCache, ResponseEncoder encoder) {
         this.projection = projection;
+        this.eventBus = eventBus;
+        this.objectMapper = objectMapper;
+        this.readTimeout = Duration.ofMillis(readTimeoutMillis);
+        this.responseCache = responseCache;
+        this.encoder = encoder;
     }
 
+    /**
+     * Global total for a sku. The ETag follows the projection's per-sku version, so {@code If-None-Match} with
+     * the current one is answered 304 without a body, and repeat reads reuse the serialized body. JSON, or
+     * {@value ResponseEncoder#BINARY_VALUE} when the Accept header asks for it.
+     */
     @GetMapping("/global/{sku}")
     @Observed(name = "inventory.query.global")
-    public ResponseEntity<Map<String, Object>> global(@PathVariable("sku") String sku) {
-        int qty = projection.getGlobalQuantity(sku);
-        return ResponseEntity.ok(Map.of("sku", sku, "quantity", qty));
+    public ResponseEntity<byte[]> global(@PathVariable("sku") String sku,
+                                         @RequestParam(value = "minVersion", required = false) Long minVersion,
+                                         @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                         WebRequest request) {
+        awaitProjection(minVersion);
+        boolean binary = ResponseEncoder.wantsBinary(accept);
+        // One view for the tag and the body, so a rebuild swap mid-request cannot pair one state's version with
+        // the other's values. Version before values: at worst the tag is older than the body, which only costs
+        // a later full response
+        View view = projection.view();
+        String etag = etag(view, Long.toString(view.globalVersion(sku)), binary);
+        if (request.checkNotModified(etag)) return null;
+        String key = (binary ? "G|" : "g|") + sku;
+        byte[] body = responseCache.get(key, etag);
+        if (body == null) {
+            int qty = view.globalQuantity(sku);
+            int reserved = projection.getGlobalReserved(sku);
+            body = encoder.global(sku, qty, reserved, Math.max(0, qty - reserved), binary);
+            responseCache.put(key, etag, body);
+        }
+        return ResponseEntity.ok().eTag(etag).varyBy(HttpHeaders.ACCEPT).contentType(ResponseEncoder.contentType(binary)).body(body);
     }
 
+    /** One store's row; the ETag combines the stock row version and the reservation version. */
     @GetMapping("/store/{storeId}/{sku}")
     @Observed(name = "inventory.query.store")
-    public ResponseEntity<Map<String, Object>> perStore(@PathVariable("storeId") String storeId, @PathVariable("sku") String sku) {
-        int qty = projection.getStoreQuantity(storeId, sku).orElse(0);
-        return ResponseEntity.ok(Map.of("storeId", storeId, "sku", sku, "quantity", qty));
+    public ResponseEntity<byte[]> perStore(@PathVariable("storeId") String storeId, @PathVariable("sku") String sku,
+                                           @RequestParam(value = "minVersion", required = false) Long minVersion,
+                                           @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                           WebRequest request) {
+        awaitProjection(minVersion);
+        boolean binary = ResponseEncoder.wantsBinary(accept);
+        // Rows are immutable, so each carries a quantity consistent with its version
+        View view = projection.view();
+        Row row = view.storeRow(storeId, sku);
+        Row held = projection.getStoreReservedRow(storeId, sku);
+        String etag = etag(view, (row == null ? 0 : row.version()) + "." + (held == null ? 0 : held.version()), binary);
+        if (request.checkNotModified(etag)) return null;
+        String key = (binary ? "S|" : "s|") + storeId + "|" + sku;
+        byte[] body = responseCache.get(key, etag);
+        if (body == null) {
+            int qty = row == null ? 0 : row.quantity();
+            int reserved = held == null ? 0 : held.quantity();
+            body = encoder.store(storeId, sku, qty, reserved, Math.max(0, qty - reserved), binary);
+            responseCache.put(key, etag, body);
+        }
+        return ResponseEntity.ok().eTag(etag).varyBy(HttpHeaders.ACCEPT).contentType(ResponseEncoder.contentType(binary)).body(body);
+    }
+
+    /** A district's total for a sku, kept current as store rows change; 0 for an unknown district. */
+    @GetMapping("/district/{districtId}/{sku}")
+    @Observed(name = "inventory.query.district")
+    public RollupQuantityResponse district(@PathVariable("districtId") String districtId, @PathVariable("sku") String sku,
+                                           @RequestParam(value = "minVersion", required = false) Long minVersion) {
+        awaitProjection(minVersion);
+        return new RollupQuantityResponse("district", districtId, sku, projection.hierarchy().districtQuantity(districtId, sku));
+    }
+
+    @GetMapping("/region/{regionId}/{sku}")
+    @Observed(name = "inventory.query.region")
+    public RollupQuantityResponse region(@PathVariable("regionId") String regionId, @PathVariable("sku") String sku,
+                                         @RequestParam(value = "minVersion", required = false) Long minVersion) {
+        awaitProjection(minVersion);
+        return new RollupQuantityResponse("region", regionId, sku, projection.hierarchy().regionQuantity(regionId, sku));
+    }
+
+    // Versions restart with the process (the projection's are in memory) and with each projection rebuild, so
+    // tags carry the start time and the rebuild generation as an epoch; binary bodies are tagged apart from JSON ones
+    private String etag(View view, String version, boolean binary) {
+        return '"' + etagEpoch + '.' + view.generation() + '-' + version + (binary ? "-b\"" : "\"");
+    }
+
+    /** Global totals for a list of skus, one NDJSON line per sku in request order. */
+    @PostMapping(value = "/global", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Observed(name = "inventory.query.global.bulk")
+    public ResponseEntity<StreamingResponseBody> globalBulk(@Valid @RequestBody BulkGlobalRequest request,
+                                                            @RequestParam(value = "minVersion", required = false) Long minVersion) {
+        awaitProjection(minVersion);
+        List<String> skus = request.skus();
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator json = ndjson(out)) {
+                for (String sku : skus) {
+                    json.writeStartObject();
+                    json.writeStringField("sku", sku);
+                    json.writeNumberField("quantity", projection.getGlobalQuantity(sku));
+                    json.writeEndObject();
+                    json.writeRaw('\n');
+                }
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * Every sku of a store in sku order, one NDJSON line each, at most {@code limit} per page. When more rows
+     * follow, the response carries {@value #NEXT_CURSOR_HEADER}; pass it back as {@code cursor} for the next page.
+     */
+    @GetMapping(value = "/store/{storeId}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Observed(name = "inventory.query.store.all")
+    public ResponseEntity<StreamingResponseBody> storeAll(@PathVariable("storeId") String storeId,
+                                                          @RequestParam(value = "cursor", required = false) String cursor,
+                                                          @RequestParam(value = "limit", defaultValue = "1000") int limit,
+                                                          @RequestParam(value = "minVersion", required = false) Long minVersion) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        awaitProjection(minVersion);
+        NavigableSet<String> skus = projection.storeSkus(storeId);
+        if (cursor != null) skus = skus.tailSet(decodeCursor(cursor), false);
+        // Walk the index once up front to find where this page ends, so the cursor can go in a header
+        String last = null;
+        Iterator<String> it = skus.iterator();
+        for (int n = 0; n < limit && it.hasNext(); n++) {
+            last = it.next();
+        }
+        boolean more = it.hasNext();
+        NavigableSet<String> page = last == null ? Collections.<String>emptyNavigableSet() : skus.headSet(last, true);
+
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator json = ndjson(out)) {
+                for (String sku : page) {
+                    Row row = projection.getStoreRow(storeId, sku);
+                    if (row == null) continue;
+                    json.writeStartObject();
+                    json.writeStringField("sku", sku);
+                    json.writeNumberField("quantity", row.quantity());
+                    json.writeNumberField("version", row.version());
+                    json.writeEndObject();
+                    json.writeRaw('\n');
+                }
+            }
+        };
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON);
+        if (more) response.header(NEXT_CURSOR_HEADER, encodeCursor(last));
+        return response.body(body);
+    }
+
+    /**
+     * The skus with the least stock, lowest first, one NDJSON line each: by global total, or within one store
+     * when storeId is given. Read from rankings the projection keeps current, so the cost follows limit only.
+     */
+    @GetMapping(value = "/lowest", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Observed(name = "inventory.query.lowest")
+    public ResponseEntity<StreamingResponseBody> lowest(@RequestParam(value = "storeId", required = false) String storeId,
+                                                        @RequestParam(value = "limit", defaultValue = "50") int limit,
+                                                        @RequestParam(value = "minVersion", required = false) Long minVersion) {
+        if (limit < 1 || limit > MAX_RANKING_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_RANKING_SIZE);
+        }
+        awaitProjection(minVersion);
+        List<StockRanking.Entry> entries = storeId == null
+            ? projection.lowestGlobalStock(limit)
+            : projection.lowestStoreStock(storeId, limit);
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator json = ndjson(out)) {
+                for (StockRanking.Entry entry : entries) {
+                    json.writeStartObject();
+                    json.writeStringField("sku", entry.sku());
+                    json.writeNumberField("quantity", entry.quantity());
+                    json.writeEndObject();
+                    json.writeRaw('\n');
+                }
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    private JsonGenerator ndjson(OutputStream out) throws IOException {
+        JsonGenerator json = objectMapper.getFactory().createGenerator(out);
+        json.setRootValueSeparator(null);
+        return json;
+    }
+
+    // Cursors are the last sku of the previous page, opaque to clients
+    private static String encodeCursor(String sku) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(sku.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+
+    // minVersion is the X-Consistency-Token returned by a command
+    private void awaitProjection(Long minVersion) {
+        if (minVersion == null) return;
+        try {
+            if (!eventBus.awaitApplied(minVersion, readTimeout)) {
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Projection has not reached version " + minVersion + " yet");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while waiting for projection");
+        }
     }
 }
 
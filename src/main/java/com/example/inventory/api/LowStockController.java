@@ -0,0 +1,86 @@
+package com.example.inventory.api;
+
+import com.example.inventory.api.dto.Requests.LowStockRuleRequest;
+import com.example.inventory.api.dto.Responses.LowStockAlertsResponse;
+import com.example.inventory.api.dto.Responses.LowStockEntry;
+import com.example.inventory.service.LowStockMonitor;
+import com.example.inventory.service.LowStockMonitor.Breach;
+import io.micrometer.observation.annotation.Observed;
+import jakarta.validation.Valid;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/low-stock")
+public class LowStockController {
+    private static final int MAX_DRAIN = 10_000;
+
+    private final LowStockMonitor monitor;
+
+    public LowStockController(LowStockMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    @PutMapping("/rules/{sku}")
+    public ResponseEntity<Void> setRule(@PathVariable("sku") String sku, @Valid @RequestBody LowStockRuleRequest request) {
+        monitor.setRule(sku, request.threshold(), request.hysteresis());
+        return ResponseEntity.noContent().build();
+    }
+
+    @PutMapping("/rules/{sku}/stores/{storeId}")
+    public ResponseEntity<Void> setStoreRule(@PathVariable("sku") String sku, @PathVariable("storeId") String storeId,
+                                             @Valid @RequestBody LowStockRuleRequest request) {
+        monitor.setStoreRule(storeId, sku, request.threshold(), request.hysteresis());
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping("/rules/{sku}")
+    public ResponseEntity<Void> removeRule(@PathVariable("sku") String sku) {
+        if (!monitor.removeRule(sku)) throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No rule for " + sku);
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping("/rules/{sku}/stores/{storeId}")
+    public ResponseEntity<Void> removeStoreRule(@PathVariable("sku") String sku, @PathVariable("storeId") String storeId) {
+        if (!monitor.removeStoreRule(storeId, sku)) throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No rule for " + sku + " at " + storeId);
+        return ResponseEntity.noContent().build();
+    }
+
+    /** Keys currently below threshold: global ones, plus store ones (optionally for one store). */
+    @GetMapping("/below")
+    @Observed(name = "inventory.query.low_stock")
+    public List<LowStockEntry> below(@RequestParam(value = "storeId", required = false) String storeId) {
+        List<LowStockEntry> entries = new ArrayList<>();
+        if (storeId == null) {
+            for (Breach breach : monitor.globalBreaches()) entries.add(entry(breach));
+        }
+        for (Breach breach : monitor.storeBreaches()) {
+            if (storeId == null || storeId.equals(breach.storeId())) entries.add(entry(breach));
+        }
+        return entries;
+    }
+
+    /** Removes and returns queued alerts, oldest first, with the number dropped so far because the queue was full. */
+    @PostMapping("/alerts/drain")
+    public LowStockAlertsResponse drain(@RequestParam(value = "max", defaultValue = "1000") int max) {
+        if (max < 1 || max > MAX_DRAIN) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "max must be between 1 and " + MAX_DRAIN);
+        return new LowStockAlertsResponse(monitor.drainAlerts(max), monitor.droppedAlerts());
+    }
+
+    private LowStockEntry entry(Breach breach) {
+        return new LowStockEntry(breach.scope(), breach.storeId(), breach.sku(), breach.threshold(), monitor.currentQuantity(breach), breach.since());
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.inventory.api;
+
+import com.example.inventory.eventlog.ProjectionRebuilder;
+import com.example.inventory.eventlog.ProjectionRebuilder.Status;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Optional;
+
+/** Rebuilds the query projection from the event log in the background; queries are served throughout. */
+@RestController
+@RequestMapping("/api/admin/projection/rebuild")
+public class ProjectionRebuildController {
+    private final Optional<ProjectionRebuilder> rebuilder;
+
+    public ProjectionRebuildController(Optional<ProjectionRebuilder> rebuilder) {
+        this.rebuilder = rebuilder;
+    }
+
+    /** Starts a rebuild on parallelism threads (0 for the configured default); 409 while one is running. */
+    @PostMapping
+    public ResponseEntity<Status> start(@RequestParam(value = "parallelism", defaultValue = "0") int parallelism) {
+        if (parallelism < 0) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "parallelism must not be negative");
+        ProjectionRebuilder current = rebuilder();
+        if (!current.start(parallelism)) throw new ResponseStatusException(HttpStatus.CONFLICT, "A rebuild is already running");
+        return ResponseEntity.accepted().body(current.status());
+    }
+
+    @GetMapping
+    public Status status() {
+        return rebuilder().status();
+    }
+
+    private ProjectionRebuilder rebuilder() {
+        return rebuilder.orElseThrow(() -> new ResponseStatusException(HttpStatus.CONFLICT,
+            "Rebuilding the projection needs the event log (inventory.event-log.enabled=true)"));
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.inventory.api;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Small direct-mapped cache of serialized query responses, keyed by resource and validated by ETag: an entry
+ * is only served while its ETag is still the current one, so nothing needs invalidating. A new entry simply
+ * replaces whatever shared its slot. Lock-free; 0 entries disables it.
+ */
+@Component
+class QueryResponseCache {
+    private record Entry(String key, String etag, byte[] body) {}
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+    private final Counter hits;
+    private final Counter misses;
+
+    QueryResponseCache(@Value("${inventory.query-cache.entries:4096}") int entries, MeterRegistry meterRegistry) {
+        // Rounded up to a power of two so a slot is a mask away
+        int size = entries <= 1 ? Math.max(entries, 0) : Integer.highestOneBit(entries - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.hits = Counter.builder("inventory.query.cache").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("inventory.query.cache").tag("result", "miss").register(meterRegistry);
+    }
+
+    /** The cached body for key if it was stored under this ETag, else null. */
+    byte[] get(String key, String etag) {
+        if (slots.length() == 0) return null;
+        Entry entry = slots.get(slot(key));
+        if (entry != null && entry.key.equals(key) && entry.etag.equals(etag)) {
+            hits.increment();
+            return entry.body;
+        }
+        misses.increment();
+        return null;
+    }
+
+    void put(String key, String etag, byte[] body) {
+        if (slots.length() == 0) return;
+        slots.set(slot(key), new Entry(key, etag, body));
+    }
+
+    private int slot(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
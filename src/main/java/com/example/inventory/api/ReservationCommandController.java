@@ -0,0 +1,80 @@
+package com.example.inventory.api;
+
+import com.example.inventory.api.dto.Requests.ReserveRequest;
+import com.example.inventory.api.dto.Responses.ReservationResponse;
+import com.example.inventory.model.InventoryRecord;
+import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.service.ReservationHold;
+import com.example.inventory.service.ReservationService;
+import com.example.inventory.service.StoreInventoryService;
+import io.micrometer.observation.annotation.Observed;
+import jakarta.validation.Valid;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static com.example.inventory.api.InventoryCommandController.CONSISTENCY_TOKEN_HEADER;
+
+@RestController
+@RequestMapping("/api/commands/reservations")
+public class ReservationCommandController {
+    private final ReservationService reservationService;
+    private final InMemoryEventBus eventBus;
+
+    public ReservationCommandController(ReservationService reservationService, InMemoryEventBus eventBus) {
+        this.reservationService = reservationService;
+        this.eventBus = eventBus;
+    }
+
+    @PostMapping
+    @Observed(name = "inventory.command.reserve")
+    public ResponseEntity<ReservationResponse> reserve(@Valid @RequestBody ReserveRequest request) {
+        Duration ttl = request.ttlSeconds() == null ? reservationService.defaultTtl() : Duration.ofSeconds(request.ttlSeconds());
+        ReservationHold hold;
+        try {
+            hold = reservationService.reserve(request.storeId(), request.sku(), request.quantity(), ttl);
+        } catch (StoreInventoryService.InsufficientStockException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+        return ResponseEntity.status(HttpStatus.CREATED)
+            .header(CONSISTENCY_TOKEN_HEADER, String.valueOf(eventBus.currentSequence()))
+            .body(new ReservationResponse(hold.id(), hold.storeId(), hold.sku(), hold.quantity(), Instant.ofEpochMilli(hold.expiresAtMillis())));
+    }
+
+    @PostMapping("/{holdId}/confirm")
+    @Observed(name = "inventory.command.reservation.confirm")
+    public ResponseEntity<InventoryRecord> confirm(@PathVariable("holdId") long holdId) {
+        InventoryRecord record;
+        try {
+            record = reservationService.confirm(holdId);
+        } catch (ReservationService.UnknownHoldException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+        }
+        return ResponseEntity.ok()
+            .eTag('"' + String.valueOf(record.getVersion()) + '"')
+            .header(CONSISTENCY_TOKEN_HEADER, String.valueOf(eventBus.currentSequence()))
+            .body(record);
+    }
+
+    @DeleteMapping("/{holdId}")
+    @Observed(name = "inventory.command.reservation.release")
+    public ResponseEntity<Void> release(@PathVariable("holdId") long holdId) {
+        try {
+            reservationService.release(holdId);
+        } catch (ReservationService.UnknownHoldException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+        }
+        return ResponseEntity.noContent()
+            .header(CONSISTENCY_TOKEN_HEADER, String.valueOf(eventBus.currentSequence()))
+            .build();
+    }
+}
@@ -0,0 +1,292 @@
+package com.example.inventory.api;
+
+import com.example.inventory.api.dto.Responses.GlobalQuantityResponse;
+import com.example.inventory.api.dto.Responses.StoreQuantityResponse;
+import com.example.inventory.ingest.BufferPool;
+import com.example.inventory.model.InventoryRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Hand-written encoders for the small fixed-shape responses of the single-row queries and commands. Each
+ * payload is written straight into a pooled buffer and copied out once, at its exact size. No reflection,
+ * intermediate buffers or boxing, and Instants are formatted without going through a String. The JSON is byte
+ * for byte what Jackson writes for {@link GlobalQuantityResponse}, {@link StoreQuantityResponse} and
+ * {@link InventoryRecord}.
+ *
+ * Clients that accept {@value #BINARY_VALUE} get a compact big-endian encoding instead, with ids as
+ * {@code length(2) utf8}:
+ * <ul>
+ *   <li>global: {@code sku quantity(4) reserved(4) available(4)}</li>
+ *   <li>store: {@code storeId sku quantity(4) reserved(4) available(4)}</li>
+ *   <li>command result: {@code storeId sku quantity(4) version(8) updatedAtEpochSecond(8) updatedAtNanos(4)}</li>
+ * </ul>
+ */
+@Component
+public class ResponseEncoder {
+    public static final String BINARY_VALUE = "application/x-inventory-binary";
+    public static final MediaType BINARY = MediaType.parseMediaType(BINARY_VALUE);
+
+    private static final byte[] SKU_FIRST = ascii("{\"sku\":");
+    private static final byte[] STORE_FIRST = ascii("{\"storeId\":");
+    private static final byte[] SKU = ascii(",\"sku\":");
+    private static final byte[] QUANTITY = ascii(",\"quantity\":");
+    private static final byte[] RESERVED = ascii(",\"reserved\":");
+    private static final byte[] AVAILABLE = ascii(",\"available\":");
+    private static final byte[] VERSION = ascii(",\"version\":");
+    private static final byte[] UPDATED_AT = ascii(",\"updatedAt\":");
+    private static final byte[] NULL = ascii("null");
+    private static final byte[] LONG_MIN = ascii(Long.toString(Long.MIN_VALUE));
+    private static final byte[] HEX = ascii("0123456789ABCDEF");
+    // Field names, numbers and a timestamp; ids add at most 6 bytes per char (a \\u00XX escape)
+    private static final int FIXED_BYTES = 192;
+    private static final int MAX_BYTES_PER_CHAR = 6;
+
+    private final BufferPool buffers;
+
+    public ResponseEncoder() {
+        this(256, 1024);
+    }
+
+    @Autowired
+    public ResponseEncoder(@Value("${inventory.responses.pooled-buffers:256}") int pooledBuffers,
+                           @Value("${inventory.responses.buffer-bytes:1024}") int bufferBytes) {
+        this.buffers = new BufferPool(pooledBuffers, bufferBytes);
+    }
+
+    /** True if the Accept header asks for the binary encoding, on its own or ahead of JSON. */
+    public static boolean wantsBinary(String accept) {
+        return accept != null && accept.contains(BINARY_VALUE);
+    }
+
+    public static MediaType contentType(boolean binary) {
+        return binary ? BINARY : MediaType.APPLICATION_JSON;
+    }
+
+    public byte[] global(String sku, int quantity, int reserved, int available, boolean binary) {
+        ByteBuffer out = acquire(sku.length());
+        try {
+            if (binary) {
+                putString(out, sku);
+                out.putInt(quantity).putInt(reserved).putInt(available);
+            } else {
+                out.put(SKU_FIRST);
+                putJsonString(out, sku);
+                putQuantities(out, quantity, reserved, available);
+            }
+            return Arrays.copyOf(out.array(), out.position());
+        } finally {
+            release(out);
+        }
+    }
+
+    public byte[] store(String storeId, String sku, int quantity, int reserved, int available, boolean binary) {
+        ByteBuffer out = acquire(storeId.length() + sku.length());
+        try {
+            if (binary) {
+                putString(out, storeId);
+                putString(out, sku);
+                out.putInt(quantity).putInt(reserved).putInt(available);
+            } else {
+                out.put(STORE_FIRST);
+                putJsonString(out, storeId);
+                out.put(SKU);
+                putJsonString(out, sku);
+                putQuantities(out, quantity, reserved, available);
+            }
+            return Arrays.copyOf(out.array(), out.position());
+        } finally {
+            release(out);
+        }
+    }
+
+    public byte[] record(InventoryRecord record, boolean binary) {
+        String storeId = record.getStoreId();
+        String sku = record.getSku();
+        Instant updatedAt = record.getUpdatedAt();
+        ByteBuffer out = acquire(storeId.length() + sku.length());
+        try {
+            if (binary) {
+                putString(out, storeId);
+                putString(out, sku);
+                out.putInt(record.getQuantity()).putLong(record.getVersion());
+                // Zero when unknown
+                out.putLong(updatedAt == null ? 0 : updatedAt.getEpochSecond()).putInt(updatedAt == null ? 0 : updatedAt.getNano());
+            } else {
+                out.put(STORE_FIRST);
+                putJsonString(out, storeId);
+                out.put(SKU);
+                putJsonString(out, sku);
+                out.put(QUANTITY);
+                putNumber(out, record.getQuantity());
+                out.put(VERSION);
+                putNumber(out, record.getVersion());
+                out.put(UPDATED_AT);
+                if (updatedAt == null) {
+                    out.put(NULL);
+                } else {
+                    out.put((byte) '"');
+                    putInstant(out, updatedAt);
+                    out.put((byte) '"');
+                }
+                out.put((byte) '}');
+            }
+            return Arrays.copyOf(out.array(), out.position());
+        } finally {
+            release(out);
+        }
+    }
+
+    // Ids longer than a pooled buffer allows get a buffer of their own
+    private ByteBuffer acquire(int idChars) {
+        int worstCase = FIXED_BYTES + idChars * MAX_BYTES_PER_CHAR;
+        return worstCase <= buffers.bufferBytes() ? buffers.acquire() : ByteBuffer.allocate(worstCase);
+    }
+
+    private void release(ByteBuffer buffer) {
+        if (buffer.capacity() == buffers.bufferBytes()) buffers.release(buffer);
+    }
+
+    private static void putQuantities(ByteBuffer out, int quantity, int reserved, int available) {
+        out.put(QUANTITY);
+        putNumber(out, quantity);
+        out.put(RESERVED);
+        putNumber(out, reserved);
+        out.put(AVAILABLE);
+        putNumber(out, available);
+        out.put((byte) '}');
+    }
+
+    // length(2) then the UTF-8 bytes; the length is filled in once they are written
+    private static void putString(ByteBuffer out, String value) {
+        int start = out.position();
+        out.position(start + 2);
+        putUtf8(out, value, false);
+        int length = out.position() - start - 2;
+        if (length > 0xFFFF) throw new IllegalArgumentException("Identifier too long: " + value.length() + " chars");
+        out.putShort(start, (short) length);
+    }
+
+    // Escapes as Jackson does: quote, backslash and control characters; everything else as raw UTF-8
+    private static void putJsonString(ByteBuffer out, String value) {
+        out.put((byte) '"');
+        putUtf8(out, value, true);
+        out.put((byte) '"');
+    }
+
+    private static void putUtf8(ByteBuffer out, String value, boolean json) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (json && (c < 0x20 || c == '"' || c == '\\')) {
+                    putEscape(out, c);
+                } else {
+                    out.put((byte) c);
+                }
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                out.put((byte) (0xF0 | cp >> 18)).put((byte) (0x80 | cp >> 12 & 0x3F))
+                    .put((byte) (0x80 | cp >> 6 & 0x3F)).put((byte) (0x80 | cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                out.put((byte) '?');
+            } else {
+                out.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F)).put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    private static void putEscape(ByteBuffer out, char c) {
+        out.put((byte) '\\');
+        switch (c) {
+            case '"', '\\' -> out.put((byte) c);
+            case '\b' -> out.put((byte) 'b');
+            case '\t' -> out.put((byte) 't');
+            case '\n' -> out.put((byte) 'n');
+            case '\f' -> out.put((byte) 'f');
+            case '\r' -> out.put((byte) 'r');
+            default -> out.put((byte) 'u').put((byte) '0').put((byte) '0').put(HEX[c >> 4]).put(HEX[c & 0xF]);
+        }
+    }
+
+    private static void putNumber(ByteBuffer out, long value) {
+        if (value == Long.MIN_VALUE) {
+            out.put(LONG_MIN);
+            return;
+        }
+        if (value < 0) {
+            out.put((byte) '-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value; rest >= 10; rest /= 10) digits++;
+        int end = out.position() + digits;
+        for (int i = end - 1; i >= end - digits; i--) {
+            out.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        out.position(end);
+    }
+
+    // ISO-8601 in UTC as DateTimeFormatter.ISO_INSTANT writes it, with 0, 3, 6 or 9 fraction digits
+    private static void putInstant(ByteBuffer out, Instant instant) {
+        long seconds = instant.getEpochSecond();
+        long days = Math.floorDiv(seconds, 86_400);
+        int secondOfDay = Math.floorMod(seconds, 86_400);
+        // Civil date from days since 1970-01-01 (proleptic Gregorian), by 400-year eras
+        long z = days + 719_468;
+        long era = Math.floorDiv(z, 146_097);
+        long dayOfEra = z - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1_460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9_999) {
+            // Signed and wider years are rare enough to leave to the JDK
+            out.put(ascii(instant.toString()));
+            return;
+        }
+        putDigits(out, (int) year, 4);
+        out.put((byte) '-');
+        putDigits(out, month, 2);
+        out.put((byte) '-');
+        putDigits(out, day, 2);
+        out.put((byte) 'T');
+        putDigits(out, secondOfDay / 3_600, 2);
+        out.put((byte) ':');
+        putDigits(out, secondOfDay / 60 % 60, 2);
+        out.put((byte) ':');
+        putDigits(out, secondOfDay % 60, 2);
+        int nanos = instant.getNano();
+        if (nanos != 0) {
+            out.put((byte) '.');
+            if (nanos % 1_000_000 == 0) putDigits(out, nanos / 1_000_000, 3);
+            else if (nanos % 1_000 == 0) putDigits(out, nanos / 1_000, 6);
+            else putDigits(out, nanos, 9);
+        }
+        out.put((byte) 'Z');
+    }
+
+    private static void putDigits(ByteBuffer out, int value, int width) {
+        int end = out.position() + width;
+        for (int i = end - 1; i >= end - width; i--) {
+            out.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        out.position(end);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
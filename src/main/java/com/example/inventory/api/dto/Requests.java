@@ -1,7 +1,16 @@
 package com.example.inventory.api.dto;
 
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
 
 public class Requests {
     public record ReplaceStockRequest(
@@ -14,5 +23,52 @@ public class Requests {
         @NotBlank String sku,
         int delta
     ) {}
+    public record BatchOperation(
+        @NotNull @Pattern(regexp = "replace|adjust") String type,
+        @NotBlank String storeId,
+        @NotBlank String sku,
+        @Min(0) Integer quantity,
+        Integer delta,
+        Long expectedVersion
+    ) {
+        @AssertTrue(message = "replace requires quantity and adjust requires delta")
+        public boolean isAmountPresent() {
+            return "replace".equals(type) ? quantity != null : delta != null;
+        }
+    }
+    public record BatchRequest(
+        @NotEmpty @Size(max = 1000) List<@Valid BatchOperation> operations
+    ) {}
+    public record BulkGlobalRequest(
+        @NotEmpty @Size(max = 10000) List<@NotBlank String> skus
+    ) {}
+    public record TransferLine(
+        @NotBlank String sku,
+        @NotBlank String fromStoreId,
+        @NotBlank String toStoreId,
+        @Min(1) int quantity
+    ) {
+        @AssertTrue(message = "fromStoreId and toStoreId must differ")
+        public boolean isDistinctStores() {
+            return fromStoreId == null || !fromStoreId.equals(toStoreId);
+        }
+    }
+    public record TransferRequest(
+        @NotEmpty @Size(max = 1000) List<@Valid TransferLine> lines
+    ) {}
+    public record ReserveRequest(
+        @NotBlank String storeId,
+        @NotBlank String sku,
+        @Min(1) int quantity,
+        // Defaults to inventory.reservations.default-ttl-seconds; at most a week
+        @Min(1) @Max(604800) Integer ttlSeconds
+    ) {}
+    public record LowStockRuleRequest(
+        @Min(0) int threshold,
+        // Units above the threshold a quantity must recover to before the alert clears; defaults to inventory.low-stock.default-hysteresis
+        @Min(0) Integer hysteresis
+    ) {}
+    public record HierarchyParentRequest(
+        @NotBlank String parentId
+    ) {}
 }
-
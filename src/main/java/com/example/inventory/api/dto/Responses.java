@@ -0,0 +1,106 @@
+package com.example.inventory.api.dto;
+
+import com.example.inventory.event.InventoryEvent;
+import com.example.inventory.model.InventoryRecord;
+import com.example.inventory.service.LowStockMonitor;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+public class Responses {
+    public record BatchItemResult(
+        int index,
+        int status,
+        String etag,
+        InventoryRecord record,
+        Long currentVersion
+    ) {}
+    public record BatchResponse(
+        List<BatchItemResult> results
+    ) {}
+    public record TransferResponse(
+        List<InventoryRecord> records
+    ) {}
+    public record ReservationResponse(
+        long holdId,
+        String storeId,
+        String sku,
+        int quantity,
+        Instant expiresAt
+    ) {}
+    public record LowStockEntry(
+        LowStockMonitor.Scope scope,
+        String storeId,
+        String sku,
+        int threshold,
+        int quantity,
+        Instant since
+    ) {}
+    public record LowStockAlertsResponse(
+        List<LowStockMonitor.Alert> alerts,
+        long dropped
+    ) {}
+    public record GlobalQuantityResponse(
+        String sku,
+        int quantity,
+        int reserved,
+        int available
+    ) {}
+    public record StoreQuantityResponse(
+        String storeId,
+        String sku,
+        int quantity,
+        int reserved,
+        int available
+    ) {}
+    public record RollupQuantityResponse(
+        String level,
+        String nodeId,
+        String sku,
+        int quantity
+    ) {}
+    public record HierarchyResponse(
+        Map<String, String> storeDistricts,
+        Map<String, String> districtRegions
+    ) {}
+    public record DeadLetterEntry(
+        long id,
+        String subscriber,
+        String eventType,
+        InventoryEvent event,
+        String errorMessage,
+        int attempts,
+        Instant failedAt
+    ) {}
+    public record DeadLettersResponse(
+        List<DeadLetterEntry> entries,
+        int size,
+        int capacity,
+        long overflowed,
+        int pendingRetries
+    ) {}
+    public record DeadLetterPurgeResponse(
+        int purged
+    ) {}
+    public record HistoryChange(
+        Instant changedAt,
+        int quantity,
+        long version
+    ) {}
+    public record HistoryAsOfResponse(
+        String storeId,
+        String sku,
+        Instant at,
+        HistoryChange change
+    ) {}
+    public record HistoryRangeResponse(
+        String storeId,
+        String sku,
+        Instant from,
+        Instant to,
+        HistoryChange initial,
+        List<HistoryChange> changes,
+        boolean truncated
+    ) {}
+}
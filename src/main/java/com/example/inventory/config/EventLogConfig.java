@@ -0,0 +1,22 @@
+package com.example.inventory.config;
+
+import com.example.inventory.eventlog.MappedEventLog;
+import com.example.inventory.eventlog.MappedEventLog.FsyncPolicy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+@Configuration
+@ConditionalOnProperty(name = "inventory.event-log.enabled", havingValue = "true")
+public class EventLogConfig {
+    @Bean(destroyMethod = "close")
+    MappedEventLog mappedEventLog(@Value("${inventory.event-log.directory}") String directory,
+                                  @Value("${inventory.event-log.segment-bytes}") int segmentBytes,
+                                  @Value("${inventory.event-log.fsync}") String fsync,
+                                  @Value("${inventory.event-log.fsync-interval-ms}") long fsyncIntervalMillis) {
+        return new MappedEventLog(Path.of(directory), segmentBytes, FsyncPolicy.parse(fsync), fsyncIntervalMillis);
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.inventory.config;
+
+import com.example.inventory.state.InventoryStateTable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class StateConfig {
+    // heap: String-keyed ConcurrentHashMap; offheap: dictionary-encoded open-addressing table in direct buffers
+    @Bean
+    InventoryStateTable storeStateTable(@Value("${inventory.state.engine:heap}") String engine) {
+        return InventoryStateTable.forEngine(engine);
+    }
+
+    @Bean
+    InventoryStateTable projectionStateTable(@Value("${inventory.state.engine:heap}") String engine) {
+        return InventoryStateTable.forEngine(engine);
+    }
+}
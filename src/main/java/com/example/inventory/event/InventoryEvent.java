@@ -2,10 +2,14 @@ package com.example.inventory.event;
 
 import java.time.Instant;
 
-public sealed interface InventoryEvent permits StockAdjusted, StockReplaced {
+public sealed interface InventoryEvent permits StockAdjusted, StockReplaced, ReservationChanged {
     String storeId();
     String sku();
     long version();
     Instant occurredAt();
-}
 
+    /** False for events that describe in-memory state only and are kept out of the event log. */
+    default boolean durable() {
+        return true;
+    }
+}
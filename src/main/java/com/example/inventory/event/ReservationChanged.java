@@ -0,0 +1,15 @@
+package com.example.inventory.event;
+
+import java.time.Instant;
+
+/**
+ * The quantity held by open reservations on a store|sku after a reserve, release, expiry or confirm.
+ * version counts reservation changes on the row and is independent of the stock version. Holds live in
+ * memory only, so these events are delivered to subscribers but never written to the event log.
+ */
+public record ReservationChanged(String storeId, String sku, int reserved, long version, Instant occurredAt) implements InventoryEvent {
+    @Override
+    public boolean durable() {
+        return false;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.inventory.eventlog;
+
+import com.example.inventory.event.InventoryEvent;
+import com.example.inventory.event.ReservationChanged;
+import com.example.inventory.event.StockAdjusted;
+import com.example.inventory.event.StockReplaced;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Compact binary encoding of inventory events:
+ * type(1) version(8) epochSecond(8) nanos(4) amount(4) storeIdLen(2) storeId skuLen(2) sku.
+ * amount is the quantity for {@link StockReplaced}, the delta for {@link StockAdjusted} and the held total for
+ * {@link ReservationChanged}; the last is only sent over replication, as it is never logged.
+ * A group of events that must be applied all or nothing is encoded as type(1) count(4) followed by the events.
+ */
+public final class EventCodec {
+    static final byte STOCK_REPLACED = 1;
+    static final byte STOCK_ADJUSTED = 2;
+    static final byte EVENT_GROUP = 3;
+    static final byte RESERVATION_CHANGED = 4;
+    private static final int FIXED_BYTES = 1 + 8 + 8 + 4 + 4 + 2 + 2;
+
+    private EventCodec() {}
+
+    public static int encodedSize(InventoryEvent event) {
+        return FIXED_BYTES + utf8Length(event.storeId()) + utf8Length(event.sku());
+    }
+
+    public static int encodedSize(List<? extends InventoryEvent> events) {
+        if (events.size() == 1) return encodedSize(events.get(0));
+        int size = 1 + 4;
+        for (InventoryEvent event : events) {
+            size += encodedSize(event);
+        }
+        return size;
+    }
+
+    /** Encodes one event as is, or several as a single group. */
+    public static void encode(List<? extends InventoryEvent> events, ByteBuffer out) {
+        if (events.size() == 1) {
+            encode(events.get(0), out);
+            return;
+        }
+        out.put(EVENT_GROUP);
+        out.putInt(events.size());
+        for (InventoryEvent event : events) {
+            encode(event, out);
+        }
+    }
+
+    /** Decodes a single event or every event of a group, in order, and returns how many there were. */
+    public static int decodeAll(ByteBuffer in, Consumer<InventoryEvent> consumer) {
+        if (in.get(in.position()) != EVENT_GROUP) {
+            consumer.accept(decode(in));
+            return 1;
+        }
+        in.get();
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            consumer.accept(decode(in));
+        }
+        return count;
+    }
+
+    public static void encode(InventoryEvent event, ByteBuffer out) {
+        byte type;
+        int amount;
+        if (event instanceof StockReplaced replaced) {
+            type = STOCK_REPLACED;
+            amount = replaced.quantity();
+        } else if (event instanceof StockAdjusted adjusted) {
+            type = STOCK_ADJUSTED;
+            amount = adjusted.delta();
+        } else if (event instanceof ReservationChanged reservation) {
+            type = RESERVATION_CHANGED;
+            amount = reservation.reserved();
+        } else {
+            throw new IllegalArgumentException("Unsupported event: " + event);
+        }
+        out.put(type);
+        out.putLong(event.version());
+        out.putLong(event.occurredAt().getEpochSecond());
+        out.putInt(event.occurredAt().getNano());
+        out.putInt(amount);
+        putString(out, event.storeId());
+        putString(out, event.sku());
+    }
+
+    public static InventoryEvent decode(ByteBuffer in) {
+        byte type = in.get();
+        long version = in.getLong();
+        Instant occurredAt = Instant.ofEpochSecond(in.getLong(), in.getInt());
+        int amount = in.getInt();
+        String storeId = getString(in);
+        String sku = getString(in);
+        return switch (type) {
+            case STOCK_REPLACED -> new StockReplaced(storeId, sku, amount, version, occurredAt);
+            case STOCK_ADJUSTED -> new StockAdjusted(storeId, sku, amount, version, occurredAt);
+            case RESERVATION_CHANGED -> new ReservationChanged(storeId, sku, amount, version, occurredAt);
+            default -> throw new IllegalArgumentException("Unknown event type: " + type);
+        };
+    }
+
+    private static void putString(ByteBuffer out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.putShort((short) bytes.length);
+        out.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[Short.toUnsignedInt(in.getShort())];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) length += 1;
+            else if (c < 0x800) length += 2;
+            else if (Character.isHighSurrogate(c)) { length += 4; i++; }
+            else length += 3;
+        }
+        if (length > 0xFFFF) throw new IllegalArgumentException("Identifier too long: " + value.length() + " chars");
+        return length;
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.inventory.eventlog;
+
+import com.example.inventory.event.InventoryEvent;
+import com.example.inventory.event.StockAdjusted;
+import com.example.inventory.event.StockReplaced;
+import com.example.inventory.eventlog.MappedEventLog.SegmentInfo;
+import com.example.inventory.state.InventoryStateTable;
+import com.example.inventory.state.InventoryStateTable.Row;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shrinks sealed event log segments in the background. Within a segment, every row's events (the adjustments
+ * of a busy row, and any replace among them) fold into one {@link StockReplaced} carrying the quantity,
+ * version and time of the last one. An adjustment clamps at zero, so a run of them cannot be summed without
+ * the quantity it started from: the compactor keeps every row's quantity as of the end of the last segment it
+ * folded, reading the log from the start once after each restart. A replace of the final quantity at the last
+ * version leaves the command side and the projection where the original events did from any earlier version
+ * of the row, including the partly applied rows of a fuzzy snapshot.
+ *
+ * Runs every interval-seconds over the sealed segments not yet compacted, oldest first, leaving the newest
+ * retain-segments alone and reading at most max-bytes-per-second. Compacted segments are recognised by file
+ * name, so a restart picks up where the last run stopped. Folded events are gone for good: stock history
+ * rebuilt from the log after a restart has one change per row per compacted segment.
+ */
+@Component
+@ConditionalOnProperty(name = {"inventory.event-log.enabled", "inventory.event-log.compaction.enabled"}, havingValue = "true")
+public class EventLogCompactor {
+    private static final Logger log = LoggerFactory.getLogger(EventLogCompactor.class);
+
+    /**
+     * Totals since startup over the segments this instance compacted. Replay times are of decoding the segment
+     * alone, before and after, so they leave out what subscribers do with each event.
+     */
+    public record Stats(long segments, long bytesBefore, long bytesAfter, long eventsBefore, long eventsAfter,
+                        long replayNanosBefore, long replayNanosAfter) {
+        public long bytesReclaimed() {
+            return bytesBefore - bytesAfter;
+        }
+
+        public double replaySpeedup() {
+            return replayNanosAfter == 0 ? 0 : (double) replayNanosBefore / replayNanosAfter;
+        }
+    }
+
+    private final MappedEventLog eventLog;
+    private final String engine;
+    private final long intervalSeconds;
+    private final int retainSegments;
+    private final long maxBytesPerSecond;
+
+    // Every row's state at foldedThrough; only touched under this object's lock
+    private InventoryStateTable rows;
+    private long foldedThrough;
+    private volatile Stats stats = new Stats(0, 0, 0, 0, 0, 0, 0);
+    private ScheduledExecutorService scheduler;
+
+    public EventLogCompactor(MappedEventLog eventLog) {
+        this(eventLog, "heap", 0, 1, 0, new SimpleMeterRegistry());
+    }
+
+    @Autowired
+    public EventLogCompactor(MappedEventLog eventLog,
+                             @Value("${inventory.state.engine:heap}") String engine,
+                             @Value("${inventory.event-log.compaction.interval-seconds:60}") long intervalSeconds,
+                             @Value("${inventory.event-log.compaction.retain-segments:1}") int retainSegments,
+                             @Value("${inventory.event-log.compaction.max-bytes-per-second:16777216}") long maxBytesPerSecond,
+                             MeterRegistry meterRegistry) {
+        if (retainSegments < 0) throw new IllegalArgumentException("retain-segments must not be negative");
+        this.eventLog = eventLog;
+        this.engine = engine;
+        this.intervalSeconds = intervalSeconds;
+        this.retainSegments = retainSegments;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.rows = InventoryStateTable.forEngine(engine);
+        Gauge.builder("inventory.event-log.compaction.segments", this, c -> c.stats.segments()).register(meterRegistry);
+        Gauge.builder("inventory.event-log.compaction.reclaimed", this, c -> c.stats.bytesReclaimed()).baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("inventory.event-log.compaction.events.removed", this, c -> c.stats.eventsBefore() - c.stats.eventsAfter())
+            .register(meterRegistry);
+        Gauge.builder("inventory.event-log.compaction.replay.speedup", this, c -> c.stats.replaySpeedup()).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (intervalSeconds <= 0) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().name("event-log-compactor").factory());
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                compact();
+            } catch (Exception e) {
+                log.warn("Event log compaction failed", e);
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+
+    public Stats stats() {
+        return stats;
+    }
+
+    /** Compacts every eligible segment on the calling thread and returns how many it compacted. */
+    public synchronized int compact() {
+        List<SegmentInfo> sealed = eventLog.sealedSegments();
+        int eligible = sealed.size() - retainSegments;
+        int compacted = 0;
+        try {
+            for (int i = 0; i < eligible; i++) {
+                SegmentInfo segment = sealed.get(i);
+                if (segment.endLsn() <= foldedThrough) continue;
+                long started = System.nanoTime();
+                if (segment.compacted()) {
+                    eventLog.replay(segment.baseLsn(), segment.endLsn(), this::apply);
+                } else {
+                    compactSegment(segment);
+                    compacted++;
+                }
+                foldedThrough = segment.endLsn();
+                throttle(segment.fileBytes(), started);
+            }
+        } catch (RuntimeException e) {
+            // The row states may be part way through a segment; start over from the beginning next time
+            rows = InventoryStateTable.forEngine(engine);
+            foldedThrough = 0;
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return compacted;
+    }
+
+    private void compactSegment(SegmentInfo segment) {
+        long started = System.nanoTime();
+        long eventsBefore = eventLog.replay(segment.baseLsn(), segment.endLsn(), event -> { });
+        long replayBefore = System.nanoTime() - started;
+
+        // One record per row, in the order rows first appear, each carrying the row's last state
+        Map<String, StockReplaced> folded = new LinkedHashMap<>();
+        eventLog.replay(segment.baseLsn(), segment.endLsn(), event -> {
+            Row row = apply(event);
+            if (row != null) {
+                folded.put(event.storeId() + "|" + event.sku(),
+                    new StockReplaced(event.storeId(), event.sku(), row.quantity(), row.version(), event.occurredAt()));
+            }
+        });
+        SegmentInfo replaced = eventLog.replaceSegment(segment.baseLsn(), new ArrayList<>(folded.values()));
+
+        started = System.nanoTime();
+        long eventsAfter = eventLog.replay(replaced.baseLsn(), replaced.endLsn(), event -> { });
+        long replayAfter = System.nanoTime() - started;
+        Stats s = stats;
+        stats = new Stats(s.segments() + 1, s.bytesBefore() + segment.fileBytes(), s.bytesAfter() + replaced.fileBytes(),
+            s.eventsBefore() + eventsBefore, s.eventsAfter() + eventsAfter,
+            s.replayNanosBefore() + replayBefore, s.replayNanosAfter() + replayAfter);
+        log.info("Compacted event log segment {}: {} -> {} events, {} -> {} bytes, replay {} -> {} µs", segment.baseLsn(),
+            eventsBefore, eventsAfter, segment.fileBytes(), replaced.fileBytes(), replayBefore / 1_000, replayAfter / 1_000);
+    }
+
+    // Same row logic as the projection; returns the row after the event, or null if the event changed nothing
+    private Row apply(InventoryEvent event) {
+        Row[] applied = new Row[1];
+        rows.compute(event.storeId(), event.sku(), current -> {
+            if (current != null && event.version() <= current.version()) return current;
+            int quantity;
+            if (event instanceof StockReplaced replaced) {
+                quantity = replaced.quantity();
+            } else if (event instanceof StockAdjusted adjusted) {
+                quantity = Math.max(0, (current == null ? 0 : current.quantity()) + adjusted.delta());
+            } else {
+                return current;
+            }
+            return applied[0] = new Row(quantity, event.version(), event.occurredAt().toEpochMilli());
+        });
+        return applied[0];
+    }
+
+    private void throttle(long bytes, long started) throws InterruptedException {
+        if (maxBytesPerSecond <= 0) return;
+        long remaining = bytes * 1_000_000_000L / maxBytesPerSecond - (System.nanoTime() - started);
+        if (remaining > 0) TimeUnit.NANOSECONDS.sleep(remaining);
+    }
+}
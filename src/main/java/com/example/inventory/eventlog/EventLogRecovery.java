@@ -0,0 +1,49 @@
+package com.example.inventory.eventlog;
+
+import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.service.StoreInventoryService;
+import com.example.inventory.snapshot.SnapshotManager;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * Rebuilds the command-side state and the projection before the application serves traffic: loads the
+ * latest snapshot when snapshots are enabled, then replays the log from the snapshot's position.
+ * Depends on the projection and the stock history so that they have already subscribed to the bus.
+ */
+@Component
+@DependsOn({"centralInventoryProjection", "stockHistory"})
+@ConditionalOnProperty(name = "inventory.event-log.enabled", havingValue = "true")
+public class EventLogRecovery {
+    private static final Logger log = LoggerFactory.getLogger(EventLogRecovery.class);
+
+    private final MappedEventLog eventLog;
+    private final StoreInventoryService storeInventoryService;
+    private final InMemoryEventBus eventBus;
+    private final Optional<SnapshotManager> snapshots;
+
+    public EventLogRecovery(MappedEventLog eventLog, StoreInventoryService storeInventoryService, InMemoryEventBus eventBus,
+                            Optional<SnapshotManager> snapshots) {
+        this.eventLog = eventLog;
+        this.storeInventoryService = storeInventoryService;
+        this.eventBus = eventBus;
+        this.snapshots = snapshots;
+    }
+
+    @PostConstruct
+    public void replay() {
+        long started = System.nanoTime();
+        long fromLsn = snapshots.map(SnapshotManager::loadLatest).orElse(0L);
+        long events = eventLog.replay(fromLsn, event -> {
+            storeInventoryService.restore(event);
+            eventBus.redeliver(event);
+        });
+        log.info("Replayed {} events from log position {} in {} ms", events, fromLsn, (System.nanoTime() - started) / 1_000_000);
+    }
+}
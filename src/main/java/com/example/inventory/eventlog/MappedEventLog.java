@@ -0,0 +1,466 @@
+package com.example.inventory.eventlog;
+
+import com.example.inventory.event.InventoryEvent;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only event log made of fixed-size memory-mapped segment files. Each record is
+ * {@code length(4) crc32(4) payload} with the payload encoded by {@link EventCodec}; a zero length marks
+ * the end of a segment. A multi-event append is one group record, so it survives a crash entirely or not at all. Positions (LSNs) are byte offsets across the whole log, and segment files are
+ * named after the LSN of their first byte.
+ *
+ * A sealed segment can be swapped for a compacted copy ({@link #replaceSegment}) that keeps its LSN range but
+ * holds fewer, shorter records. Positions inside it no longer exist, so a replay whose range touches a
+ * compacted segment reads all of it; every reader already skips events whose version it has seen.
+ */
+public class MappedEventLog implements AutoCloseable {
+
+    public enum FsyncPolicy {
+        /** Every append call forces the segment before it returns. */
+        PER_EVENT,
+        /** Appenders wait for a background group commit that forces everything written so far. */
+        BATCHED,
+        /** A background thread forces on a fixed interval; appenders do not wait. */
+        INTERVAL;
+
+        public static FsyncPolicy parse(String value) {
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    private static final int HEADER_BYTES = 8;
+    private static final String SUFFIX = ".log";
+    private static final String COMPACTED_SUFFIX = ".compacted.log";
+
+    /** A segment's LSN range, its file size and whether it was compacted. */
+    public record SegmentInfo(long baseLsn, long endLsn, long fileBytes, boolean compacted) {}
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final FsyncPolicy policy;
+    private final long intervalMillis;
+
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private Segment active;
+
+    private final ReentrantLock durabilityLock = new ReentrantLock();
+    private final Condition pendingWrites = durabilityLock.newCondition();
+    private final Condition durableAdvanced = durabilityLock.newCondition();
+    private volatile long writtenLsn;
+    private volatile long durableLsn;
+    private volatile boolean running = true;
+    private final Thread flusher;
+
+    public MappedEventLog(Path directory, int segmentBytes, FsyncPolicy policy, long intervalMillis) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.policy = policy;
+        this.intervalMillis = intervalMillis;
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open event log at " + directory, e);
+        }
+        this.flusher = policy == FsyncPolicy.PER_EVENT ? null
+            : Thread.ofPlatform().daemon().name("event-log-flusher").start(this::flushLoop);
+    }
+
+    /** Appends one event and returns the LSN just past it. */
+    public long append(InventoryEvent event) {
+        return append(List.of(event));
+    }
+
+    /**
+     * Appends the events as one record (all or nothing on recovery); under {@link FsyncPolicy#BATCHED} they
+     * share one group commit.
+     */
+    public long append(List<? extends InventoryEvent> events) {
+        long end = appendDeferred(events);
+        awaitDurable(end);
+        return end;
+    }
+
+    /**
+     * Writes the events as one record like {@link #append(List)} but returns before the group commit; pass
+     * the returned LSN to {@link #awaitDurable} once the locks that ordered the write are released.
+     */
+    public long appendDeferred(List<? extends InventoryEvent> events) {
+        if (events.isEmpty()) return endLsn();
+        long end;
+        appendLock.lock();
+        try {
+            write(events);
+            end = active.baseLsn + active.position;
+            writtenLsn = end;
+            if (policy == FsyncPolicy.PER_EVENT) {
+                active.force();
+                durableLsn = end;
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        return end;
+    }
+
+    /** Replays every record at or after fromLsn (a record boundary) and returns how many events were read. */
+    public long replay(long fromLsn, Consumer<InventoryEvent> consumer) {
+        return replay(fromLsn, endLsn(), consumer);
+    }
+
+    /** Replays the records from fromLsn up to toLsn, both record boundaries such as earlier {@link #endLsn} values. */
+    public long replay(long fromLsn, long toLsn, Consumer<InventoryEvent> consumer) {
+        long endLsn = Math.min(toLsn, endLsn());
+        long count = 0;
+        for (Segment segment : segments) {
+            if (segment.compacted) {
+                if (segment.endLsn > fromLsn && segment.baseLsn < endLsn) {
+                    count += replayRecords(segment.buffer.duplicate(), 0, segment.position, consumer);
+                }
+                continue;
+            }
+            long segmentEnd = Math.min(endLsn, segment.baseLsn + segment.buffer.capacity());
+            if (segmentEnd <= fromLsn) continue;
+            ByteBuffer view = segment.buffer.duplicate();
+            int position = (int) Math.max(0, fromLsn - segment.baseLsn);
+            count += replayRecords(view, position, (int) (segmentEnd - segment.baseLsn), consumer);
+        }
+        return count;
+    }
+
+    /** Every segment but the active one, oldest first. */
+    public List<SegmentInfo> sealedSegments() {
+        List<Segment> current = List.copyOf(segments);
+        List<SegmentInfo> sealed = new ArrayList<>(current.size());
+        for (int i = 0; i + 1 < current.size(); i++) {
+            Segment segment = current.get(i);
+            sealed.add(new SegmentInfo(segment.baseLsn, current.get(i + 1).baseLsn, segment.fileBytes(), segment.compacted));
+        }
+        return sealed;
+    }
+
+    /**
+     * Replaces the sealed segment starting at baseLsn with one holding just the given events, one record each.
+     * The events must leave every reader where the original segment did, whatever earlier state of a row it
+     * starts from. The copy is written and forced under a temporary name and renamed into place before the
+     * original is deleted, so a crash leaves one or the other. Replays already reading the original finish on it.
+     */
+    public SegmentInfo replaceSegment(long baseLsn, List<? extends InventoryEvent> events) {
+        List<Segment> current = List.copyOf(segments);
+        int index = -1;
+        for (int i = 0; i + 1 < current.size(); i++) {
+            if (current.get(i).baseLsn == baseLsn) index = i;
+        }
+        if (index < 0) throw new IllegalArgumentException("No sealed segment starts at " + baseLsn);
+        Segment original = current.get(index);
+        long endLsn = current.get(index + 1).baseLsn;
+        Path file = directory.resolve(fileName(baseLsn, COMPACTED_SUFFIX));
+        Path tmp = directory.resolve(file.getFileName() + ".tmp");
+        try {
+            int size = 0;
+            for (InventoryEvent event : events) {
+                size += HEADER_BYTES + EventCodec.encodedSize(event);
+            }
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                int position = 0;
+                for (InventoryEvent event : events) {
+                    position = putRecord(buffer, position, List.of(event));
+                }
+                buffer.force();
+            }
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Segment compacted = openCompacted(baseLsn, file);
+            compacted.endLsn = endLsn;
+            segments.set(segments.indexOf(original), compacted);
+            original.channel.close();
+            if (!original.file.equals(file)) Files.delete(original.file);
+            return new SegmentInfo(baseLsn, endLsn, compacted.fileBytes(), true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot compact event log segment " + baseLsn, e);
+        }
+    }
+
+    public long endLsn() {
+        appendLock.lock();
+        try {
+            return active.baseLsn + active.position;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public long durableLsn() {
+        return durableLsn;
+    }
+
+    public FsyncPolicy policy() {
+        return policy;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (flusher != null) {
+            durabilityLock.lock();
+            try {
+                pendingWrites.signalAll();
+            } finally {
+                durabilityLock.unlock();
+            }
+            try {
+                flusher.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        appendLock.lock();
+        try {
+            active.force();
+            markDurable(active.baseLsn + active.position);
+            for (Segment segment : segments) {
+                segment.channel.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void write(List<? extends InventoryEvent> events) {
+        int size = EventCodec.encodedSize(events);
+        int recordBytes = HEADER_BYTES + size;
+        if (recordBytes > segmentBytes) {
+            throw new IllegalArgumentException("Record of " + recordBytes + " bytes exceeds segment size " + segmentBytes);
+        }
+        if (active.position + recordBytes > active.buffer.capacity()) {
+            roll();
+        }
+        active.position = putRecord(active.buffer, active.position, events);
+    }
+
+    // Writes the events as one record at position and returns the position just past it
+    private static int putRecord(ByteBuffer buffer, int position, List<? extends InventoryEvent> events) {
+        int size = EventCodec.encodedSize(events);
+        buffer.position(position + HEADER_BYTES);
+        EventCodec.encode(events, buffer);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(position + HEADER_BYTES, size));
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.putInt(position, size);
+        return position + HEADER_BYTES + size;
+    }
+
+    private static long replayRecords(ByteBuffer view, int position, int limit, Consumer<InventoryEvent> consumer) {
+        long count = 0;
+        while (true) {
+            int length = recordLength(view, position, limit);
+            if (length < 0) return count;
+            count += EventCodec.decodeAll(view.slice(position + HEADER_BYTES, length), consumer);
+            position += HEADER_BYTES + length;
+        }
+    }
+
+    private void roll() {
+        active.force();
+        try {
+            active = openSegment(active.baseLsn + active.position);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot roll event log segment", e);
+        }
+        segments.add(active);
+    }
+
+    private void flushLoop() {
+        while (running) {
+            try {
+                if (policy == FsyncPolicy.INTERVAL) {
+                    Thread.sleep(intervalMillis);
+                } else {
+                    durabilityLock.lock();
+                    try {
+                        while (running && writtenLsn <= durableLsn) {
+                            pendingWrites.await();
+                        }
+                    } finally {
+                        durabilityLock.unlock();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (writtenLsn > durableLsn) {
+                flush();
+            }
+        }
+    }
+
+    // Group commit: everything written before the snapshot below becomes durable with one force
+    private void flush() {
+        Segment segment;
+        long lsn;
+        appendLock.lock();
+        try {
+            segment = active;
+            lsn = segment.baseLsn + segment.position;
+        } finally {
+            appendLock.unlock();
+        }
+        segment.force();
+        markDurable(lsn);
+    }
+
+    /**
+     * Under {@link FsyncPolicy#BATCHED}, waits for the group commit that makes everything before lsn durable.
+     * Returns at once under the other policies, whose appenders do not wait.
+     */
+    public void awaitDurable(long lsn) {
+        if (policy != FsyncPolicy.BATCHED || durableLsn >= lsn) return;
+        durabilityLock.lock();
+        try {
+            pendingWrites.signal();
+            while (durableLsn < lsn) {
+                if (!running) throw new IllegalStateException("Event log closed before append became durable");
+                durableAdvanced.awaitUninterruptibly();
+            }
+        } finally {
+            durabilityLock.unlock();
+        }
+    }
+
+    private void markDurable(long lsn) {
+        durabilityLock.lock();
+        try {
+            if (lsn > durableLsn) durableLsn = lsn;
+            durableAdvanced.signalAll();
+        } finally {
+            durabilityLock.unlock();
+        }
+    }
+
+    private void recover() throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        List<Path> superseded = new ArrayList<>();
+        try (var listing = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) listing::iterator) {
+                String name = file.getFileName().toString();
+                if (!name.endsWith(SUFFIX)) continue;
+                long baseLsn = Long.parseLong(name.substring(0, name.indexOf('.')));
+                Path other = files.get(baseLsn);
+                // A compacted copy was complete before it was renamed into place, so it wins over the original
+                if (other == null || name.endsWith(COMPACTED_SUFFIX)) {
+                    files.put(baseLsn, file);
+                    if (other != null) superseded.add(other);
+                } else {
+                    superseded.add(file);
+                }
+            }
+        }
+        for (Path file : superseded) {
+            Files.delete(file);
+        }
+        for (var entry : files.entrySet()) {
+            Segment segment = entry.getValue().getFileName().toString().endsWith(COMPACTED_SUFFIX)
+                ? openCompacted(entry.getKey(), entry.getValue())
+                : openSegment(entry.getKey());
+            segment.position = scanEnd(segment.buffer);
+            if (!segments.isEmpty()) segments.get(segments.size() - 1).endLsn = segment.baseLsn;
+            segments.add(segment);
+        }
+        if (segments.isEmpty()) {
+            segments.add(openSegment(0));
+        }
+        if (segments.get(segments.size() - 1).compacted) {
+            throw new IllegalStateException("Event log at " + directory + " ends in a compacted segment; later segments are missing");
+        }
+        active = segments.get(segments.size() - 1);
+        writtenLsn = durableLsn = active.baseLsn + active.position;
+    }
+
+    private Segment openSegment(long baseLsn) throws IOException {
+        Path file = directory.resolve(fileName(baseLsn, SUFFIX));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = Math.max(channel.size(), segmentBytes);
+        return new Segment(baseLsn, file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size), false);
+    }
+
+    private static Segment openCompacted(long baseLsn, Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        Segment segment = new Segment(baseLsn, file, channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), true);
+        segment.position = segment.buffer.capacity();
+        return segment;
+    }
+
+    private static String fileName(long baseLsn, String suffix) {
+        return String.format("%020d%s", baseLsn, suffix);
+    }
+
+    // Valid data ends at the first zero length or the first record whose checksum does not match (torn write)
+    private static int scanEnd(ByteBuffer buffer) {
+        int position = 0;
+        while (true) {
+            int length = recordLength(buffer, position, buffer.capacity());
+            if (length < 0) return position;
+            position += HEADER_BYTES + length;
+        }
+    }
+
+    private static int recordLength(ByteBuffer buffer, int position, int limit) {
+        if (position + HEADER_BYTES > limit) return -1;
+        int length = buffer.getInt(position);
+        if (length <= 0 || position + HEADER_BYTES + length > limit) return -1;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(position + HEADER_BYTES, length));
+        return (int) crc.getValue() == buffer.getInt(position + 4) ? length : -1;
+    }
+
+    private static final class Segment {
+        final long baseLsn;
+        final Path file;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final boolean compacted;
+        // Guarded by appendLock
+        int position;
+        // Where the next segment starts; only read for compacted segments, whose own offsets no longer add up to it
+        volatile long endLsn;
+
+        Segment(long baseLsn, Path file, FileChannel channel, MappedByteBuffer buffer, boolean compacted) {
+            this.baseLsn = baseLsn;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.compacted = compacted;
+        }
+
+        long fileBytes() {
+            return buffer.capacity();
+        }
+
+        void force() {
+            buffer.force();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.inventory.eventlog;
+
+import com.example.inventory.event.InventoryEvent;
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.CentralInventoryProjection.Partition;
+import com.example.inventory.service.CentralInventoryProjection.Rebuild;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Rebuilds {@link CentralInventoryProjection} from the event log, e.g. after its logic changed or its state
+ * got corrupted, without taking it offline. The log is read once from the start and split by sku hash into
+ * partitions, which replay on a fork-join pool into plain per-partition maps while the reader decodes the
+ * next chunk. The partitions are then merged into a fresh projection state in parallel, brought up to date
+ * with what the log and the live deliveries gained meanwhile, and swapped in. Queries read the old state
+ * until the swap.
+ */
+@Component
+@ConditionalOnProperty(name = "inventory.event-log.enabled", havingValue = "true")
+public class ProjectionRebuilder {
+    private static final Logger log = LoggerFactory.getLogger(ProjectionRebuilder.class);
+    // Passes over the log tail before deliveries are captured; each is shorter than the one before
+    private static final int TAIL_PASSES = 3;
+
+    /** Events read and time spent: replay covers the partitioned replay and the merge, total the whole rebuild. */
+    public record Result(long events, int parallelism, int partitions, long replayNanos, long totalNanos) {
+        public long eventsPerSecond() {
+            return totalNanos == 0 ? 0 : events * 1_000_000_000L / totalNanos;
+        }
+    }
+
+    public record Status(boolean running, String phase, int parallelism, int partitions, long events, long eventsPerSecond,
+                         Instant startedAt, long durationMs, String error) {}
+
+    private final MappedEventLog eventLog;
+    private final CentralInventoryProjection projection;
+    private final int defaultParallelism;
+    private final int partitionsPerThread;
+    private final int chunkEvents;
+
+    private volatile Status status = new Status(false, "idle", 0, 0, 0, 0, null, 0, null);
+    private Thread worker;
+
+    public ProjectionRebuilder(MappedEventLog eventLog, CentralInventoryProjection projection) {
+        this(eventLog, projection, 0, 4, 65_536);
+    }
+
+    @Autowired
+    public ProjectionRebuilder(MappedEventLog eventLog, CentralInventoryProjection projection,
+                               @Value("${inventory.projection.rebuild.parallelism:0}") int parallelism,
+                               @Value("${inventory.projection.rebuild.partitions-per-thread:4}") int partitionsPerThread,
+                               @Value("${inventory.projection.rebuild.chunk-events:65536}") int chunkEvents) {
+        if (partitionsPerThread < 1) throw new IllegalArgumentException("partitions-per-thread must be positive");
+        if (chunkEvents < 1) throw new IllegalArgumentException("chunk-events must be positive");
+        this.eventLog = eventLog;
+        this.projection = projection;
+        this.defaultParallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.partitionsPerThread = partitionsPerThread;
+        this.chunkEvents = chunkEvents;
+    }
+
+    /** Starts a rebuild in the background, on parallelism threads or the configured default for 0; false if one is running. */
+    public synchronized boolean start(int parallelism) {
+        if (worker != null && worker.isAlive()) return false;
+        int threads = parallelism > 0 ? parallelism : defaultParallelism;
+        worker = Thread.ofPlatform().daemon().name("projection-rebuild").start(() -> {
+            try {
+                rebuild(threads);
+            } catch (RuntimeException e) {
+                log.error("Projection rebuild failed", e);
+            }
+        });
+        return true;
+    }
+
+    public Status status() {
+        return status;
+    }
+
+    /** Rebuilds on the calling thread, with parallelism threads replaying and merging. */
+    public Result rebuild(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be positive");
+        int partitions = parallelism * partitionsPerThread;
+        Instant startedAt = Instant.now();
+        long started = System.nanoTime();
+        Rebuild rebuild = projection.startRebuild();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        long events = 0;
+        try {
+            report(true, "replay", parallelism, partitions, 0, startedAt, started, null);
+            long end = eventLog.endLsn();
+            events = replayPartitioned(rebuild, end, pool, partitions);
+            long replayNanos = System.nanoTime() - started;
+
+            report(true, "catch-up", parallelism, partitions, events, startedAt, started, null);
+            Consumer<InventoryEvent> tail = event -> rebuild.apply(List.of(event));
+            for (int pass = 0; pass < TAIL_PASSES; pass++) {
+                long next = eventLog.endLsn();
+                if (next == end) break;
+                events += eventLog.replay(end, next, tail);
+                end = next;
+            }
+            // Waits for publishes that delivered before the capture to append, so this last pass reads them
+            rebuild.captureDeliveries();
+            events += eventLog.replay(end, tail);
+
+            report(true, "swap", parallelism, partitions, events, startedAt, started, null);
+            rebuild.commit();
+            Result result = new Result(events, parallelism, partitions, replayNanos, System.nanoTime() - started);
+            report(false, "done", parallelism, partitions, events, startedAt, started, null);
+            log.info("Rebuilt the projection from {} events on {} threads in {} ms ({} events/s)", events, parallelism,
+                result.totalNanos() / 1_000_000, result.eventsPerSecond());
+            return result;
+        } catch (RuntimeException e) {
+            rebuild.abort();
+            report(false, "failed", parallelism, partitions, events, startedAt, started, e.toString());
+            throw e;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void report(boolean running, String phase, int parallelism, int partitions, long events, Instant startedAt,
+                        long started, String error) {
+        long nanos = System.nanoTime() - started;
+        status = new Status(running, phase, parallelism, partitions, events, nanos == 0 ? 0 : events * 1_000_000_000L / nanos,
+            startedAt, nanos / 1_000_000, error);
+    }
+
+    private long replayPartitioned(Rebuild rebuild, long toLsn, ForkJoinPool pool, int partitions) {
+        PartitionedReplay replay = new PartitionedReplay(pool, partitions, chunkEvents);
+        long events = eventLog.replay(0, toLsn, replay);
+        replay.finish();
+        List<Future<?>> merges = new ArrayList<>(partitions);
+        for (Partition partition : replay.partitions) {
+            merges.add(pool.submit(() -> rebuild.merge(partition)));
+        }
+        for (Future<?> merge : merges) {
+            try {
+                merge.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while merging partitions", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Merging a partition failed", e.getCause());
+            }
+        }
+        return events;
+    }
+
+    // Decodes on the calling thread and hands each partition its share of every chunk. A partition's chunks
+    // run one after another, in log order, while other partitions and the reader carry on.
+    private static final class PartitionedReplay implements Consumer<InventoryEvent> {
+        final Partition[] partitions;
+        private final ForkJoinTask<?>[] running;
+        private final List<List<InventoryEvent>> buffers;
+        private final ForkJoinPool pool;
+        private final int chunkEvents;
+        private int buffered;
+
+        PartitionedReplay(ForkJoinPool pool, int partitionCount, int chunkEvents) {
+            this.pool = pool;
+            this.chunkEvents = chunkEvents;
+            this.partitions = new Partition[partitionCount];
+            this.running = new ForkJoinTask<?>[partitionCount];
+            this.buffers = new ArrayList<>(partitionCount);
+            for (int p = 0; p < partitionCount; p++) {
+                partitions[p] = new Partition();
+                buffers.add(new ArrayList<>());
+            }
+        }
+
+        @Override
+        public void accept(InventoryEvent event) {
+            int h = event.sku().hashCode();
+            buffers.get(Math.floorMod(h ^ (h >>> 16), partitions.length)).add(event);
+            if (++buffered == chunkEvents) flush();
+        }
+
+        private void flush() {
+            for (int p = 0; p < partitions.length; p++) {
+                List<InventoryEvent> events = buffers.get(p);
+                if (events.isEmpty()) continue;
+                if (running[p] != null) running[p].join();
+                Partition partition = partitions[p];
+                running[p] = pool.submit(() -> {
+                    for (InventoryEvent event : events) {
+                        partition.apply(event);
+                    }
+                });
+                buffers.set(p, new ArrayList<>(events.size()));
+            }
+            buffered = 0;
+        }
+
+        void finish() {
+            flush();
+            for (ForkJoinTask<?> task : running) {
+                if (task != null) task.join();
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.inventory.ingest;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Fixed-size heap buffers reused across connections and requests, so a busy listener does not allocate per
+ * read. Heap rather than direct: ids are decoded to Strings straight from the backing array, and encoded
+ * responses are copied out of it. Buffers beyond the pool's capacity are left to the GC when released.
+ */
+public final class BufferPool {
+    private final BlockingQueue<ByteBuffer> free;
+    private final int bufferBytes;
+
+    public BufferPool(int capacity, int bufferBytes) {
+        this.free = new ArrayBlockingQueue<>(capacity);
+        this.bufferBytes = bufferBytes;
+    }
+
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        return buffer != null ? buffer.clear() : ByteBuffer.allocate(bufferBytes);
+    }
+
+    public int bufferBytes() {
+        return bufferBytes;
+    }
+
+    public void release(ByteBuffer buffer) {
+        free.offer(buffer);
+    }
+}
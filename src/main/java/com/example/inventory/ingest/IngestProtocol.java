@@ -0,0 +1,42 @@
+package com.example.inventory.ingest;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary ingest protocol for POS terminals. Requests are
+ * {@code length(4) op(1) correlationId(4) expectedVersion(8) amount(4) storeIdLen(2) storeId skuLen(2) sku}, where
+ * length counts the bytes after it, op is {@link #REPLACE} or {@link #ADJUST}, amount is the quantity or the
+ * delta, and an expectedVersion of -1 skips the optimistic lock check.
+ *
+ * Every request is answered, in request order, with a fixed
+ * {@code status(1) correlationId(4) version(8) quantity(4)}: the row after the write, or for
+ * {@link #VERSION_CONFLICT} the row's current version. Clients may pipeline any number of requests.
+ */
+public final class IngestProtocol {
+    public static final byte REPLACE = 1;
+    public static final byte ADJUST = 2;
+
+    public static final byte OK = 0;
+    public static final byte VERSION_CONFLICT = 1;
+    public static final byte REJECTED = 2;
+    public static final byte FAILED = 3;
+
+    public static final int RESPONSE_BYTES = 1 + 4 + 8 + 4;
+    static final int FIXED_REQUEST_BYTES = 1 + 4 + 8 + 4 + 2 + 2;
+    // storeId and sku together; anything longer is a broken client
+    static final int MAX_ID_BYTES = 512;
+    static final int MAX_REQUEST_BYTES = 4 + FIXED_REQUEST_BYTES + MAX_ID_BYTES;
+
+    private IngestProtocol() {}
+
+    /** Encodes one request; for clients and tests. */
+    public static void writeRequest(ByteBuffer out, byte op, int correlationId, long expectedVersion, int amount, String storeId, String sku) {
+        byte[] store = storeId.getBytes(StandardCharsets.UTF_8);
+        byte[] item = sku.getBytes(StandardCharsets.UTF_8);
+        out.putInt(FIXED_REQUEST_BYTES + store.length + item.length);
+        out.put(op).putInt(correlationId).putLong(expectedVersion).putInt(amount);
+        out.putShort((short) store.length).put(store);
+        out.putShort((short) item.length).put(item);
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.inventory.ingest;
+
+import com.example.inventory.model.InventoryRecord;
+import com.example.inventory.service.StoreInventoryService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ingest listener for POS terminals speaking {@link IngestProtocol} on a dedicated port. Each connection runs
+ * on a virtual thread, since every operation blocks on row locks and event delivery anyway. Requests are
+ * decoded in place from pooled buffers and applied with {@link StoreInventoryService}; responses collect in
+ * a pooled output buffer and are flushed once the requests already received are handled, so a pipelining
+ * client gets one write per read rather than one per operation.
+ *
+ * Checks match the JSON endpoints' validation (non-blank ids, replace quantity >= 0); failures are
+ * answered with {@link IngestProtocol#REJECTED} and the connection stays open.
+ */
+@Component
+@ConditionalOnProperty(name = "inventory.ingest.enabled", havingValue = "true")
+public class IngestServer {
+    private static final Logger log = LoggerFactory.getLogger(IngestServer.class);
+
+    private final StoreInventoryService inventory;
+    private final int requestedPort;
+    private final BufferPool buffers;
+    private final Counter applied;
+    private final Counter conflicts;
+    private final Counter rejected;
+    private final Counter failed;
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean running;
+    private ServerSocketChannel server;
+    private Thread acceptor;
+
+    public IngestServer(StoreInventoryService inventory, MeterRegistry meterRegistry) {
+        this(inventory, meterRegistry, 0, 256, 65_536);
+    }
+
+    @Autowired
+    public IngestServer(StoreInventoryService inventory, MeterRegistry meterRegistry,
+                        @Value("${inventory.ingest.port:7071}") int port,
+                        @Value("${inventory.ingest.pooled-buffers:256}") int pooledBuffers,
+                        @Value("${inventory.ingest.buffer-bytes:65536}") int bufferBytes) {
+        if (bufferBytes < IngestProtocol.MAX_REQUEST_BYTES) throw new IllegalArgumentException("buffer-bytes must be >= " + IngestProtocol.MAX_REQUEST_BYTES);
+        this.inventory = inventory;
+        this.requestedPort = port;
+        this.buffers = new BufferPool(pooledBuffers, bufferBytes);
+        this.applied = operations(meterRegistry, "ok");
+        this.conflicts = operations(meterRegistry, "version_conflict");
+        this.rejected = operations(meterRegistry, "rejected");
+        this.failed = operations(meterRegistry, "failed");
+        Gauge.builder("inventory.ingest.connections", connections, Set::size).register(meterRegistry);
+    }
+
+    private static Counter operations(MeterRegistry registry, String status) {
+        return Counter.builder("inventory.ingest.operations").tag("status", status).register(registry);
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (running) return;
+        try {
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(requestedPort));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot listen for ingest on port " + requestedPort, e);
+        }
+        running = true;
+        acceptor = Thread.ofPlatform().daemon().name("ingest-acceptor").start(this::acceptLoop);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        try {
+            server.close();
+        } catch (IOException ignored) {
+            // closing anyway
+        }
+        for (SocketChannel channel : connections) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // closing anyway
+            }
+        }
+    }
+
+    /** The bound port; differs from the configured one when that was 0. */
+    public int port() {
+        return server.socket().getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                SocketChannel channel = server.accept();
+                channel.socket().setTcpNoDelay(true);
+                connections.add(channel);
+                Thread.ofVirtual().name("ingest-connection").start(() -> serve(channel));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                log.warn("Ingest accept failed", e);
+            }
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        ByteBuffer in = buffers.acquire();
+        ByteBuffer out = buffers.acquire();
+        Connection connection = new Connection();
+        try (channel) {
+            while (channel.read(in) >= 0) {
+                in.flip();
+                while (hasRequest(in)) {
+                    if (out.remaining() < IngestProtocol.RESPONSE_BYTES) flush(channel, out);
+                    connection.handle(in, out);
+                }
+                in.compact();
+                flush(channel, out);
+            }
+        } catch (IOException e) {
+            if (running) log.debug("Ingest connection closed: {}", e.toString());
+        } finally {
+            connections.remove(channel);
+            buffers.release(in);
+            buffers.release(out);
+        }
+    }
+
+    private static boolean hasRequest(ByteBuffer in) throws IOException {
+        if (in.remaining() < 4) return false;
+        int length = in.getInt(in.position());
+        if (length < IngestProtocol.FIXED_REQUEST_BYTES || length > IngestProtocol.MAX_REQUEST_BYTES - 4) {
+            throw new IOException("Bad request length " + length);
+        }
+        return in.remaining() >= 4 + length;
+    }
+
+    private static void flush(SocketChannel channel, ByteBuffer out) throws IOException {
+        if (out.position() == 0) return;
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    /** Per-connection decode state; a terminal usually sends for one store, so its id String is reused. */
+    private final class Connection {
+        private byte[] lastStoreBytes = new byte[0];
+        private String lastStoreId = "";
+
+        void handle(ByteBuffer in, ByteBuffer out) {
+            int length = in.getInt();
+            int end = in.position() + length;
+            int limit = in.limit();
+            in.limit(end);
+            try {
+                byte op = in.get();
+                int correlationId = in.getInt();
+                long expectedVersion = in.getLong();
+                int amount = in.getInt();
+                int storeLength = Short.toUnsignedInt(in.getShort());
+                // hasRequest guarantees the fixed part, so only the id lengths can disagree with the frame
+                if (storeLength > in.remaining() - 2) {
+                    reject(out, correlationId);
+                    return;
+                }
+                String storeId = storeId(in, storeLength);
+                int skuLength = Short.toUnsignedInt(in.getShort());
+                if (skuLength != in.remaining()) {
+                    reject(out, correlationId);
+                    return;
+                }
+                String sku = new String(in.array(), in.arrayOffset() + in.position(), skuLength, StandardCharsets.UTF_8);
+                if (storeId.isBlank() || sku.isBlank() || (op != IngestProtocol.REPLACE && op != IngestProtocol.ADJUST)
+                    || (op == IngestProtocol.REPLACE && amount < 0)) {
+                    reject(out, correlationId);
+                    return;
+                }
+                apply(out, op, correlationId, expectedVersion, amount, storeId, sku);
+            } finally {
+                in.limit(limit);
+                in.position(end);
+            }
+        }
+
+        private void apply(ByteBuffer out, byte op, int correlationId, long expectedVersion, int amount, String storeId, String sku) {
+            try {
+                InventoryRecord record = op == IngestProtocol.REPLACE
+                    ? inventory.replaceStockWithOptimisticLock(storeId, sku, amount, expectedVersion)
+                    : inventory.adjustStockWithOptimisticLock(storeId, sku, amount, expectedVersion);
+                reply(out, IngestProtocol.OK, correlationId, record.getVersion(), record.getQuantity());
+                applied.increment();
+            } catch (StoreInventoryService.OptimisticLockException e) {
+                reply(out, IngestProtocol.VERSION_CONFLICT, correlationId, e.getCurrentVersion(), 0);
+                conflicts.increment();
+            } catch (RuntimeException e) {
+                reply(out, IngestProtocol.FAILED, correlationId, -1, 0);
+                failed.increment();
+            }
+        }
+
+        private void reject(ByteBuffer out, int correlationId) {
+            reply(out, IngestProtocol.REJECTED, correlationId, -1, 0);
+            rejected.increment();
+        }
+
+        private String storeId(ByteBuffer in, int length) {
+            int from = in.arrayOffset() + in.position();
+            byte[] array = in.array();
+            in.position(in.position() + length);
+            if (!Arrays.equals(array, from, from + length, lastStoreBytes, 0, lastStoreBytes.length)) {
+                lastStoreBytes = Arrays.copyOfRange(array, from, from + length);
+                lastStoreId = new String(lastStoreBytes, StandardCharsets.UTF_8);
+            }
+            return lastStoreId;
+        }
+    }
+
+    private static void reply(ByteBuffer out, byte status, int correlationId, long version, int quantity) {
+        out.put(status).putInt(correlationId).putLong(version).putInt(quantity);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.inventory.replication;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The most recent encoded records in a ring, addressed by a global offset that counts every record appended.
+ * Followers that reconnect within the ring catch up from it; anything older has to be resent as a snapshot.
+ */
+final class ReplicationBacklog {
+    private final byte[][] records;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long head;
+
+    ReplicationBacklog(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be > 0");
+        this.records = new byte[capacity][];
+    }
+
+    /** Appends a record and returns the offset after it. */
+    long append(byte[] record) {
+        lock.lock();
+        try {
+            records[(int) (head % records.length)] = record;
+            return ++head;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long head() {
+        lock.lock();
+        try {
+            return head;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Whether a reader can continue from this offset without a snapshot. */
+    boolean retains(long offset) {
+        lock.lock();
+        try {
+            return offset <= head && offset >= head - records.length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records from the offset on, up to maxRecords and maxBytes (the first one is always included). Null if
+     * the offset has already been overwritten.
+     */
+    List<byte[]> read(long from, int maxRecords, int maxBytes) {
+        lock.lock();
+        try {
+            if (from < head - records.length || from > head) return null;
+            int count = (int) Math.min(maxRecords, head - from);
+            List<byte[]> batch = new ArrayList<>(count);
+            int bytes = 0;
+            for (long offset = from; offset < from + count; offset++) {
+                byte[] record = records[(int) (offset % records.length)];
+                if (!batch.isEmpty() && bytes + record.length > maxBytes) break;
+                batch.add(record);
+                bytes += record.length;
+            }
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.inventory.replication;
+
+import com.example.inventory.event.InventoryEvent;
+import com.example.inventory.event.ReservationChanged;
+import com.example.inventory.eventlog.EventCodec;
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.InMemoryEventBus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies a primary's replication stream to this node's projection by redelivering the events on the local
+ * bus, batches as batches. One thread runs a non-blocking connection: it sends HELLO with the epoch and
+ * offset it has applied up to, applies each frame as it arrives and acknowledges once per read. After a
+ * disconnect it reconnects and resumes from the same offset, so the primary only resends what is missing.
+ *
+ * A snapshot replaces the projection outright: its rows go into a fresh state that is swapped in at
+ * SNAPSHOT_END, and held quantities are dropped before the primary's arrive. A primary that restarted
+ * without its event log has a new epoch and versions that start over, which the old rows would outrank.
+ */
+@Component
+@ConditionalOnProperty(name = "inventory.replication.role", havingValue = "follower")
+public class ReplicationFollower {
+    private static final Logger log = LoggerFactory.getLogger(ReplicationFollower.class);
+
+    private final InMemoryEventBus eventBus;
+    private final CentralInventoryProjection projection;
+    private final String nodeId;
+    private final InetSocketAddress primary;
+    private final long reconnectMillis;
+    private final Counter reconnects;
+    // Written by the replication thread only
+    private volatile long epoch;
+    private volatile long appliedOffset;
+    private volatile long primaryHead;
+    private volatile boolean connected;
+    private volatile boolean running;
+    private volatile Selector selector;
+    private Thread loop;
+    // The state a snapshot in progress is loaded into; replication thread only
+    private CentralInventoryProjection.Rebuild reset;
+
+    public ReplicationFollower(InMemoryEventBus eventBus, CentralInventoryProjection projection, MeterRegistry meterRegistry,
+                               String nodeId, String primaryHost, int primaryPort) {
+        this(eventBus, projection, meterRegistry, nodeId, primaryHost, primaryPort, 200);
+    }
+
+    @Autowired
+    public ReplicationFollower(InMemoryEventBus eventBus, CentralInventoryProjection projection, MeterRegistry meterRegistry,
+                               @Value("${inventory.replication.node-id:follower}") String nodeId,
+                               @Value("${inventory.replication.primary-host:localhost}") String primaryHost,
+                               @Value("${inventory.replication.primary-port:7070}") int primaryPort,
+                               @Value("${inventory.replication.reconnect-ms:1000}") long reconnectMillis) {
+        this.eventBus = eventBus;
+        this.projection = projection;
+        this.nodeId = nodeId;
+        this.primary = InetSocketAddress.createUnresolved(primaryHost, primaryPort);
+        this.reconnectMillis = reconnectMillis;
+        this.reconnects = Counter.builder("inventory.replication.reconnects").register(meterRegistry);
+        Gauge.builder("inventory.replication.lag", this, ReplicationFollower::lag)
+            .description("Records the primary had appended that this follower has not applied yet")
+            .register(meterRegistry);
+        Gauge.builder("inventory.replication.applied.offset", this, ReplicationFollower::appliedOffset).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        loop = Thread.ofPlatform().daemon().name("replication-follower").start(this::run);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        Selector s = selector;
+        if (s != null) s.wakeup();
+        try {
+            loop.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long appliedOffset() {
+        return appliedOffset;
+    }
+
+    /** Records behind the primary as of the last frame received; 0 when caught up. */
+    public long lag() {
+        return Math.max(0, primaryHead - appliedOffset);
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                session();
+            } catch (IOException | RuntimeException e) {
+                if (running) log.info("Replication from {} interrupted: {}", primary, e.toString());
+            } finally {
+                connected = false;
+                // A snapshot cut short leaves the projection as it was; the next session sends a whole one
+                if (reset != null) {
+                    reset.abort();
+                    reset = null;
+                }
+            }
+            if (!running) return;
+            reconnects.increment();
+            try {
+                Thread.sleep(reconnectMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void session() throws IOException {
+        try (Selector sel = Selector.open(); SocketChannel channel = SocketChannel.open()) {
+            selector = sel;
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.connect(new InetSocketAddress(primary.getHostString(), primary.getPort()));
+            SelectionKey key = channel.register(sel, SelectionKey.OP_CONNECT);
+            ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+            ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+            while (running) {
+                sel.select(1_000);
+                sel.selectedKeys().clear();
+                if (key.isConnectable() && channel.finishConnect()) {
+                    connected = true;
+                    out.add(ReplicationProtocol.hello(epoch, appliedOffset, nodeId));
+                }
+                if (!connected) continue;
+                long before = appliedOffset;
+                int n = channel.read(in);
+                if (n < 0) throw new IOException("closed by primary");
+                if (n > 0) in = ReplicationProtocol.readFrames(in, this::onFrame);
+                // One ack per read, however many frames it held
+                if (appliedOffset != before) out.add(ReplicationProtocol.ack(appliedOffset));
+                while (!out.isEmpty()) {
+                    channel.write(out.peek());
+                    if (out.peek().hasRemaining()) break;
+                    out.poll();
+                }
+                key.interestOps(out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        } finally {
+            selector = null;
+        }
+    }
+
+    private void onFrame(byte type, ByteBuffer payload) throws IOException {
+        switch (type) {
+            case ReplicationProtocol.EVENTS -> {
+                long first = payload.getLong();
+                long head = payload.getLong();
+                int count = payload.getInt();
+                if (first > appliedOffset) throw new IOException("Gap in stream: expected offset " + appliedOffset + " but got " + first);
+                List<InventoryEvent> events = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    events.clear();
+                    EventCodec.decodeAll(payload, events::add);
+                    // Already applied before a reconnect
+                    if (first + i < appliedOffset) continue;
+                    if (events.size() == 1) {
+                        eventBus.redeliver(events.get(0));
+                    } else {
+                        eventBus.redeliver(List.copyOf(events));
+                    }
+                    appliedOffset = first + i + 1;
+                }
+                primaryHead = Math.max(head, appliedOffset);
+            }
+            case ReplicationProtocol.SNAPSHOT -> {
+                startReset();
+                int count = payload.getInt();
+                List<InventoryEvent> rows = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    InventoryEvent event = EventCodec.decode(payload);
+                    if (event instanceof ReservationChanged) {
+                        // Held quantities are not part of a rebuild; they were cleared when the snapshot started
+                        eventBus.redeliver(event);
+                    } else {
+                        rows.add(event);
+                    }
+                }
+                reset.apply(rows);
+            }
+            case ReplicationProtocol.SNAPSHOT_END -> {
+                startReset();
+                // Records only follow SNAPSHOT_END, so the snapshot's rows are all the fresh state needs
+                reset.captureDeliveries();
+                reset.commit();
+                reset = null;
+                epoch = payload.getLong();
+                appliedOffset = payload.getLong();
+                primaryHead = Math.max(primaryHead, appliedOffset);
+                log.info("Replication snapshot from {} applied; continuing at offset {}", primary, appliedOffset);
+            }
+            default -> throw new IOException("Unexpected frame type " + type);
+        }
+    }
+
+    private void startReset() {
+        if (reset != null) return;
+        reset = projection.startRebuild();
+        projection.clearReservations();
+    }
+}
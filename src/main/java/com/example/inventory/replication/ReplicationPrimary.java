@@ -0,0 +1,393 @@
+package com.example.inventory.replication;
+
+import com.example.inventory.event.InventoryEvent;
+import com.example.inventory.event.ReservationChanged;
+import com.example.inventory.event.StockReplaced;
+import com.example.inventory.eventlog.EventCodec;
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.InMemoryEventBus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Streams every event the bus delivers to read-only followers. Each publish (one event or one batch) becomes
+ * one record in a {@link ReplicationBacklog}; a single selector thread sends followers the records after
+ * their offset in EVENTS frames of up to batch-bytes, and stops once max-unacked-records are unacknowledged.
+ *
+ * A follower that reconnects with this primary's epoch and an offset still in the backlog continues from it.
+ * Otherwise it gets a snapshot of the projection's rows, produced on its own thread as the socket drains, and
+ * then the records from the offset taken before the snapshot started. Rows carry their versions, so records
+ * that the snapshot already covers are ignored on the follower, as during log replay.
+ */
+@Component
+@ConditionalOnProperty(name = "inventory.replication.role", havingValue = "primary")
+public class ReplicationPrimary {
+    private static final Logger log = LoggerFactory.getLogger(ReplicationPrimary.class);
+
+    private final InMemoryEventBus eventBus;
+    private final CentralInventoryProjection projection;
+    private final ReplicationBacklog backlog;
+    private final int requestedPort;
+    private final int batchBytes;
+    private final int maxUnacked;
+    private final Counter snapshots;
+    // Changes with every start, so followers of an earlier run resync instead of trusting old offsets
+    private final long epoch = System.currentTimeMillis();
+    private final Set<Follower> followers = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private volatile boolean running;
+    private Selector selector;
+    private ServerSocketChannel server;
+    private Thread loop;
+
+    public ReplicationPrimary(InMemoryEventBus eventBus, CentralInventoryProjection projection, MeterRegistry meterRegistry) {
+        this(eventBus, projection, meterRegistry, 0, 262_144, 65_536, 65_536);
+    }
+
+    @Autowired
+    public ReplicationPrimary(InMemoryEventBus eventBus, CentralInventoryProjection projection, MeterRegistry meterRegistry,
+                              @Value("${inventory.replication.port:7070}") int port,
+                              @Value("${inventory.replication.backlog-records:262144}") int backlogRecords,
+                              @Value("${inventory.replication.batch-bytes:65536}") int batchBytes,
+                              @Value("${inventory.replication.max-unacked-records:65536}") int maxUnacked) {
+        this.eventBus = eventBus;
+        this.projection = projection;
+        this.backlog = new ReplicationBacklog(backlogRecords);
+        this.requestedPort = port;
+        this.batchBytes = batchBytes;
+        this.maxUnacked = maxUnacked;
+        this.snapshots = Counter.builder("inventory.replication.snapshots")
+            .description("Snapshots sent to followers that could not resume from the backlog")
+            .register(meterRegistry);
+        Gauge.builder("inventory.replication.backlog.head", backlog, ReplicationBacklog::head)
+            .description("Records appended to the replication backlog since start")
+            .register(meterRegistry);
+        Gauge.builder("inventory.replication.followers", followers, Set::size).register(meterRegistry);
+        Gauge.builder("inventory.replication.follower.lag.max", this, ReplicationPrimary::maxLag)
+            .description("Records the furthest-behind follower has not acknowledged")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (running) return;
+        eventBus.subscribe("replication", event -> append(List.of(event)), this::append);
+        try {
+            selector = Selector.open();
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(requestedPort));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot listen for replication on port " + requestedPort, e);
+        }
+        running = true;
+        loop = Thread.ofPlatform().daemon().name("replication-primary").start(this::run);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        selector.wakeup();
+        try {
+            loop.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** The bound port; differs from the configured one when that was 0. */
+    public int port() {
+        return server.socket().getLocalPort();
+    }
+
+    public long headOffset() {
+        return backlog.head();
+    }
+
+    /** Connected followers by node id, with the offset each has acknowledged. */
+    public Map<String, Long> followerAcks() {
+        Map<String, Long> acks = new HashMap<>();
+        for (Follower f : followers) {
+            if (f.nodeId != null) acks.put(f.nodeId, f.acked);
+        }
+        return acks;
+    }
+
+    private double maxLag() {
+        long head = backlog.head();
+        long lag = 0;
+        for (Follower f : followers) {
+            if (f.nodeId != null) lag = Math.max(lag, head - f.acked);
+        }
+        return lag;
+    }
+
+    // Called on the delivering thread: encode, append and wake the selector at most once per pass
+    private void append(List<InventoryEvent> events) {
+        ByteBuffer record = ByteBuffer.allocate(EventCodec.encodedSize(events));
+        EventCodec.encode(events, record);
+        backlog.append(record.array());
+        wake();
+    }
+
+    private void wake() {
+        if (!wakeupPending.getAndSet(true)) selector.wakeup();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select(1_000);
+                wakeupPending.set(false);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Follower f = (Follower) key.attachment();
+                        try {
+                            if (key.isReadable()) f.read();
+                        } catch (IOException | RuntimeException e) {
+                            log.info("Replication follower {} disconnected: {}", f.nodeId, e.toString());
+                            f.close();
+                        }
+                    }
+                }
+                selector.selectedKeys().clear();
+                for (Follower f : followers) {
+                    try {
+                        f.pump();
+                    } catch (IOException | RuntimeException e) {
+                        log.info("Replication follower {} disconnected: {}", f.nodeId, e.toString());
+                        f.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Replication selector failed", e);
+        } finally {
+            followers.forEach(Follower::close);
+            try {
+                server.close();
+                selector.close();
+            } catch (IOException ignored) {
+                // shutting down
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Follower f = new Follower(channel);
+        f.key = channel.register(selector, SelectionKey.OP_READ, f);
+        followers.add(f);
+    }
+
+    private final class Follower {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(4096);
+        private ByteBuffer out;
+        private ByteBuffer eventsFrame = ByteBuffer.allocate(batchBytes + ReplicationProtocol.EVENTS_HEADER_BYTES);
+        private boolean outIsSnapshotEnd;
+        // Null until HELLO
+        private volatile String nodeId;
+        private long next;
+        private volatile long acked;
+        private Snapshot snapshot;
+
+        private Follower(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() throws IOException {
+            int n = channel.read(in);
+            if (n < 0) throw new IOException("closed by follower");
+            in = ReplicationProtocol.readFrames(in, this::onFrame);
+        }
+
+        private void onFrame(byte type, ByteBuffer payload) throws IOException {
+            switch (type) {
+                case ReplicationProtocol.HELLO -> {
+                    long followerEpoch = payload.getLong();
+                    long offset = payload.getLong();
+                    nodeId = ReplicationProtocol.readNodeId(payload);
+                    if (followerEpoch == epoch && backlog.retains(offset)) {
+                        next = acked = offset;
+                        log.info("Replication follower {} resumes at offset {}", nodeId, offset);
+                    } else {
+                        log.info("Replication follower {} needs a snapshot (epoch {}, offset {})", nodeId, followerEpoch, offset);
+                        startSnapshot();
+                    }
+                }
+                case ReplicationProtocol.ACK -> acked = Math.max(acked, payload.getLong());
+                default -> throw new IOException("Unexpected frame type " + type);
+            }
+        }
+
+        void pump() throws IOException {
+            while (true) {
+                if (out != null) {
+                    channel.write(out);
+                    if (out.hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    out = null;
+                    if (outIsSnapshotEnd) {
+                        next = snapshot.resumeOffset;
+                        snapshot = null;
+                        outIsSnapshotEnd = false;
+                    }
+                }
+                out = nextFrame();
+                if (out == null) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+            }
+        }
+
+        private ByteBuffer nextFrame() {
+            if (nodeId == null) return null;
+            if (snapshot != null) {
+                ByteBuffer frame = snapshot.frames.poll();
+                if (frame != null && frame.get(ReplicationProtocol.LENGTH_BYTES) == ReplicationProtocol.SNAPSHOT_END) outIsSnapshotEnd = true;
+                return frame;
+            }
+            long head = backlog.head();
+            long window = maxUnacked - (next - acked);
+            if (next >= head || window <= 0) return null;
+            List<byte[]> records = backlog.read(next, (int) Math.min(window, Integer.MAX_VALUE), batchBytes);
+            if (records == null) {
+                log.info("Replication follower {} fell out of the backlog at offset {}", nodeId, next);
+                startSnapshot();
+                return null;
+            }
+            int size = ReplicationProtocol.EVENTS_HEADER_BYTES;
+            for (byte[] record : records) size += record.length;
+            if (eventsFrame.capacity() < size) eventsFrame = ByteBuffer.allocate(size);
+            ByteBuffer frame = eventsFrame.clear();
+            frame.putInt(size - ReplicationProtocol.LENGTH_BYTES).put(ReplicationProtocol.EVENTS);
+            frame.putLong(next).putLong(head).putInt(records.size());
+            for (byte[] record : records) frame.put(record);
+            next += records.size();
+            return frame.flip();
+        }
+
+        private void startSnapshot() {
+            snapshots.increment();
+            snapshot = new Snapshot(backlog.head());
+            Thread.ofVirtual().name("replication-snapshot").start(snapshot);
+        }
+
+        void close() {
+            followers.remove(this);
+            if (snapshot != null) snapshot.cancelled = true;
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // already gone
+            }
+        }
+    }
+
+    /** Encodes the projection's rows into SNAPSHOT frames, blocking while the follower's socket drains. */
+    private final class Snapshot implements Runnable {
+        private final BlockingQueue<ByteBuffer> frames = new ArrayBlockingQueue<>(8);
+        private final long resumeOffset;
+        private volatile boolean cancelled;
+        private ByteBuffer chunk;
+        private int count;
+
+        private Snapshot(long resumeOffset) {
+            this.resumeOffset = resumeOffset;
+        }
+
+        @Override
+        public void run() {
+            try {
+                projection.forEachRow((storeId, sku, row) ->
+                    add(new StockReplaced(storeId, sku, row.quantity(), row.version(), Instant.ofEpochMilli(row.updatedAtMillis()))));
+                projection.forEachReservedRow((storeId, sku, row) ->
+                    add(new ReservationChanged(storeId, sku, row.quantity(), row.version(), Instant.ofEpochMilli(row.updatedAtMillis()))));
+                flush();
+                put(ReplicationProtocol.snapshotEnd(epoch, resumeOffset));
+            } catch (CancellationException ignored) {
+                // follower went away
+            }
+        }
+
+        private void add(InventoryEvent event) {
+            int size = EventCodec.encodedSize(event);
+            if (chunk != null && chunk.remaining() < size) flush();
+            if (chunk == null) {
+                chunk = ByteBuffer.allocate(Math.max(batchBytes, ReplicationProtocol.SNAPSHOT_HEADER_BYTES + size));
+                chunk.position(ReplicationProtocol.SNAPSHOT_HEADER_BYTES);
+            }
+            EventCodec.encode(event, chunk);
+            count++;
+        }
+
+        private void flush() {
+            if (chunk == null) return;
+            chunk.flip();
+            chunk.putInt(0, chunk.limit() - ReplicationProtocol.LENGTH_BYTES).put(4, ReplicationProtocol.SNAPSHOT).putInt(5, count);
+            put(chunk);
+            chunk = null;
+            count = 0;
+        }
+
+        private void put(ByteBuffer frame) {
+            try {
+                while (!frames.offer(frame, 100, TimeUnit.MILLISECONDS)) {
+                    if (cancelled || !running) throw new CancellationException();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            }
+            wake();
+        }
+    }
+
+    private static final class CancellationException extends RuntimeException {
+        CancellationException() {
+            super(null, null, false, false);
+        }
+    }
+}
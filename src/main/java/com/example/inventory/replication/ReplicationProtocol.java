@@ -0,0 +1,92 @@
+package com.example.inventory.replication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Frames exchanged between a primary and its followers: {@code length(4) type(1) payload}, where length
+ * counts the type byte and the payload. Events inside frames use the event log's {@code EventCodec} encoding.
+ *
+ * <ul>
+ *   <li>HELLO (follower): epoch(8) offset(8) nodeIdLen(2) nodeId — the primary epoch the follower last synced
+ *       with (0 for none) and the offset it has applied up to</li>
+ *   <li>EVENTS (primary): firstOffset(8) headOffset(8) count(4), then count records of one event or one group</li>
+ *   <li>ACK (follower): offset(8) — every record before it is applied</li>
+ *   <li>SNAPSHOT (primary): count(4) events — current rows, sent instead of records that left the backlog</li>
+ *   <li>SNAPSHOT_END (primary): epoch(8) offset(8) — records from offset follow</li>
+ * </ul>
+ */
+final class ReplicationProtocol {
+    static final byte HELLO = 1;
+    static final byte EVENTS = 2;
+    static final byte ACK = 3;
+    static final byte SNAPSHOT = 4;
+    static final byte SNAPSHOT_END = 5;
+
+    static final int LENGTH_BYTES = 4;
+    static final int EVENTS_HEADER_BYTES = LENGTH_BYTES + 1 + 8 + 8 + 4;
+    static final int SNAPSHOT_HEADER_BYTES = LENGTH_BYTES + 1 + 4;
+    // A frame longer than this is treated as a corrupt stream
+    static final int MAX_FRAME_BYTES = 64 << 20;
+
+    @FunctionalInterface
+    interface FrameHandler {
+        /** Receives one frame's payload, positioned after the type byte and limited to the frame. */
+        void frame(byte type, ByteBuffer payload) throws IOException;
+    }
+
+    private ReplicationProtocol() {}
+
+    static ByteBuffer hello(long epoch, long offset, String nodeId) {
+        byte[] id = nodeId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(LENGTH_BYTES + 1 + 8 + 8 + 2 + id.length);
+        frame.putInt(frame.capacity() - LENGTH_BYTES).put(HELLO).putLong(epoch).putLong(offset);
+        frame.putShort((short) id.length).put(id);
+        return frame.flip();
+    }
+
+    static ByteBuffer ack(long offset) {
+        ByteBuffer frame = ByteBuffer.allocate(LENGTH_BYTES + 1 + 8);
+        frame.putInt(1 + 8).put(ACK).putLong(offset);
+        return frame.flip();
+    }
+
+    static ByteBuffer snapshotEnd(long epoch, long offset) {
+        ByteBuffer frame = ByteBuffer.allocate(LENGTH_BYTES + 1 + 16);
+        frame.putInt(1 + 16).put(SNAPSHOT_END).putLong(epoch).putLong(offset);
+        return frame.flip();
+    }
+
+    static String readNodeId(ByteBuffer payload) {
+        byte[] id = new byte[Short.toUnsignedInt(payload.getShort())];
+        payload.get(id);
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Hands every complete frame in the buffer (in write mode) to the handler and compacts the rest. Returns
+     * the buffer to keep reading into, which is a larger one when the next frame does not fit.
+     */
+    static ByteBuffer readFrames(ByteBuffer buffer, FrameHandler handler) throws IOException {
+        buffer.flip();
+        while (buffer.remaining() >= LENGTH_BYTES) {
+            int length = buffer.getInt(buffer.position());
+            if (length < 1 || length > MAX_FRAME_BYTES) throw new IOException("Bad frame length " + length);
+            if (buffer.remaining() < LENGTH_BYTES + length) break;
+            int end = buffer.position() + LENGTH_BYTES + length;
+            byte type = buffer.get(buffer.position() + LENGTH_BYTES);
+            ByteBuffer payload = buffer.slice(buffer.position() + LENGTH_BYTES + 1, length - 1);
+            handler.frame(type, payload);
+            buffer.position(end);
+        }
+        if (buffer.remaining() >= LENGTH_BYTES) {
+            int needed = LENGTH_BYTES + buffer.getInt(buffer.position());
+            if (needed > buffer.capacity()) {
+                ByteBuffer larger = ByteBuffer.allocate(Integer.highestOneBit(needed - 1) << 1);
+                return larger.put(buffer);
+            }
+        }
+        return buffer.compact();
+    }
+}
@@ -1,86 +1,656 @@
 package com.example.inventory.service;
 
 import com.example.inventory.event.InventoryEvent;
+import com.example.inventory.event.ReservationChanged;
 import com.example.inventory.event.StockAdjusted;
 import com.example.inventory.event.StockReplaced;
-import com.example.inventory.model.InventoryRecord;
+import com.example.inventory.state.HeapInventoryStateTable;
+import com.example.inventory.state.InventoryStateTable;
+import com.example.inventory.state.InventoryStateTable.Row;
 import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
-import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 
 @Component
 public class CentralInventoryProjection {
-    // Key: sku -> total quantity across stores
-    private final Map<String, Integer> globalQuantityBySku = new ConcurrentHashMap<>();
-    // Last known version per store+sku to implement last-write-wins per partition
-    private final Map<String, Long> versionByStoreSku = new ConcurrentHashMap<>();
+
+    /**
+     * Everything the projection derives from the event history. A rebuild fills a fresh one from the event
+     * log and swaps it in; deliveries register in inFlight so the swap knows when the old one is quiet.
+     */
+    private static final class State {
+        // Key: sku -> total quantity across stores
+        final Map<String, Integer> globalQuantityBySku = new ConcurrentHashMap<>();
+        // Key: storeId|sku -> latest store quantity and the version used for last-write-wins per partition.
+        // Each event is applied to the global total as a delta against the previous store quantity.
+        final InventoryStateTable storeQuantities;
+        // Key: sku -> bumped after every change to the sku's global total or held quantity; backs query ETags.
+        // Readers take the version before the values, so a version never labels values older than itself.
+        final Map<String, Long> globalVersionBySku = new ConcurrentHashMap<>();
+        // Key: storeId -> its skus in order, so store-wide queries and paging avoid a full table scan
+        final Map<String, NavigableSet<String>> skusByStore = new ConcurrentHashMap<>();
+        // Skus by quantity, per store and by global total, re-ranked as rows change for lowest-stock queries
+        final Map<String, StockRanking> rankingsByStore = new ConcurrentHashMap<>();
+        final StockRanking globalRanking = new StockRanking();
+        // District and region totals, moved by the same per-row deltas as the global total
+        final StoreHierarchy.Rollups rollups;
+        // Incremented by every swap; the versions in a swapped-in state restart, so query ETags carry this too
+        final int generation;
+
+        final LongAdder inFlight = new LongAdder();
+        // Set when a swap is about to replace this state; new deliveries wait for it
+        volatile boolean sealed;
+        final CountDownLatch swapped = new CountDownLatch(1);
+        // Set in the last phase of a rebuild: event groups applied here, to apply to the fresh state as well
+        volatile Queue<List<InventoryEvent>> catchUp;
+
+        State(InventoryStateTable storeQuantities, StoreHierarchy.Rollups rollups, int generation) {
+            this.storeQuantities = storeQuantities;
+            this.rollups = rollups;
+            this.generation = generation;
+        }
+    }
+
+    private volatile State state;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    // Held by hierarchy moves and for a whole rebuild, which fills its rollups against a fixed tree
+    private final Semaphore structure = new Semaphore(1);
+
+    // Key: storeId|sku -> quantity held by open reservations, versioned apart from the stock row; not snapshotted.
+    // Reservations are not in the event log, so these outlive a rebuild.
+    private final InventoryStateTable reservedQuantities = new HeapInventoryStateTable();
+    // Key: sku -> quantity held across stores
+    private final Map<String, Integer> globalReservedBySku = new ConcurrentHashMap<>();
+    private final StoreHierarchy hierarchy;
+
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
 
     private final InMemoryEventBus eventBus;
 
+    /**
+     * Told about each store quantity and global total the projection changes, after the change is visible to
+     * readers. Called on the delivering thread, so implementations must be quick and must not block or throw.
+     */
+    public interface ChangeListener {
+        void storeQuantityChanged(String storeId, String sku, int quantity);
+
+        void globalQuantityChanged(String sku, int quantity);
+    }
+
     public CentralInventoryProjection(InMemoryEventBus eventBus) {
+        this(eventBus, new HeapInventoryStateTable());
+    }
+
+    public CentralInventoryProjection(InMemoryEventBus eventBus, InventoryStateTable storeQuantities) {
+        this(eventBus, storeQuantities, new StoreHierarchy());
+    }
+
+    @Autowired
+    public CentralInventoryProjection(InMemoryEventBus eventBus, @Qualifier("projectionStateTable") InventoryStateTable storeQuantities,
+                                      StoreHierarchy hierarchy) {
         this.eventBus = eventBus;
+        this.hierarchy = hierarchy;
+        this.state = new State(storeQuantities, hierarchy.rollups(), 0);
     }
 
     @PostConstruct
     public void subscribe() {
-        eventBus.subscribe(this::onEvent);
-        // In synchronous mode, start() is a no-op. Kept for compatibility.
+        eventBus.subscribe("projection", this::onEvent, this::onBatch);
+        // Starts the partition dispatchers in async mode; a no-op in synchronous mode
         eventBus.start();
     }
 
     private void onEvent(InventoryEvent event) {
-        String storeSku = event.storeId() + "|" + event.sku();
-        long currentVersion = versionByStoreSku.getOrDefault(storeSku, 0L);
-        if (event.version() <= currentVersion) {
-            return; // ignore stale event
+        State s = enter();
+        try {
+            if (event instanceof ReservationChanged change) {
+                int delta = applyReservation(change);
+                if (delta != 0) {
+                    globalReservedBySku.merge(change.sku(), delta, Integer::sum);
+                    bumpGlobalVersion(s, change.sku());
+                }
+                return;
+            }
+            applyEvent(s, event, !listeners.isEmpty());
+            Queue<List<InventoryEvent>> catchUp = s.catchUp;
+            if (catchUp != null) catchUp.add(List.of(event));
+        } finally {
+            s.inFlight.decrement();
+        }
+    }
+
+    private void onBatch(List<InventoryEvent> events) {
+        State s = enter();
+        try {
+            applyBatch(s, events, !listeners.isEmpty(), true);
+            Queue<List<InventoryEvent>> catchUp = s.catchUp;
+            if (catchUp != null) catchUp.add(events);
+        } finally {
+            s.inFlight.decrement();
+        }
+    }
+
+    // Registers a delivery with the current state, waiting out a swap that is about to replace it
+    private State enter() {
+        while (true) {
+            State s = state;
+            s.inFlight.increment();
+            if (!s.sealed) return s;
+            s.inFlight.decrement();
+            awaitSwap(s);
+        }
+    }
+
+    private static void awaitSwap(State s) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                s.swapped.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private void applyEvent(State s, InventoryEvent event, boolean notify) {
+        int delta = applyToRow(s, event);
+        rankStore(s, event.storeId(), event.sku());
+        if (delta == 0) {
+            // A first row at 0 still ranks its sku globally
+            rankGlobal(s, event.sku());
+            return;
+        }
+        int total = s.globalQuantityBySku.merge(event.sku(), delta, Integer::sum);
+        bumpGlobalVersion(s, event.sku());
+        rankGlobal(s, event.sku());
+        if (notify) {
+            notifyStore(s, event.storeId(), event.sku());
+            for (ChangeListener listener : listeners) {
+                listener.globalQuantityChanged(event.sku(), total);
+            }
+        }
+    }
+
+    /**
+     * Applies an event group (a batch or a transfer) so that global totals move once per sku after every
+     * row of the group is written; readers never see, say, a transfer's debit without its credit.
+     */
+    private void applyBatch(State s, List<InventoryEvent> events, boolean notify, boolean reservations) {
+        Map<String, Integer> globalDeltas = new HashMap<>();
+        Map<String, Integer> reservedDeltas = null;
+        List<InventoryEvent> changed = notify ? new ArrayList<>(events.size()) : null;
+        for (InventoryEvent event : events) {
+            if (event instanceof ReservationChanged change) {
+                // Held quantities are shared with the fresh state of a rebuild, so it skips them
+                if (!reservations) continue;
+                if (reservedDeltas == null) reservedDeltas = new HashMap<>();
+                int delta = applyReservation(change);
+                if (delta != 0) reservedDeltas.merge(change.sku(), delta, Integer::sum);
+                continue;
+            }
+            int delta = applyToRow(s, event);
+            rankStore(s, event.storeId(), event.sku());
+            globalDeltas.merge(event.sku(), delta, Integer::sum);
+            if (delta != 0) {
+                if (changed != null) changed.add(event);
+            }
+        }
+        globalDeltas.forEach((sku, delta) -> {
+            if (delta == 0) {
+                rankGlobal(s, sku);
+                return;
+            }
+            int total = s.globalQuantityBySku.merge(sku, delta, Integer::sum);
+            bumpGlobalVersion(s, sku);
+            rankGlobal(s, sku);
+            if (changed != null) {
+                for (ChangeListener listener : listeners) {
+                    listener.globalQuantityChanged(sku, total);
+                }
+            }
+        });
+        if (changed != null) {
+            for (InventoryEvent event : changed) {
+                notifyStore(s, event.storeId(), event.sku());
+            }
+        }
+        if (reservedDeltas != null) {
+            reservedDeltas.forEach((sku, delta) -> {
+                if (delta == 0) return;
+                globalReservedBySku.merge(sku, delta, Integer::sum);
+                bumpGlobalVersion(s, sku);
+            });
         }
-        versionByStoreSku.put(storeSku, event.version());
+    }
+
+    private static void bumpGlobalVersion(State s, String sku) {
+        s.globalVersionBySku.merge(sku, 1L, Long::sum);
+    }
+
+    // Rankings re-read the current value, so they run after the write they follow and converge under races
+    private static void rankStore(State s, String storeId, String sku) {
+        s.rankingsByStore.computeIfAbsent(storeId, k -> new StockRanking()).update(sku, () -> {
+            Row row = s.storeQuantities.get(storeId, sku);
+            return row == null ? 0 : row.quantity();
+        });
+    }
+
+    private static void rankGlobal(State s, String sku) {
+        s.globalRanking.update(sku, () -> s.globalQuantityBySku.getOrDefault(sku, 0));
+    }
+
+    // Reports the row as it is now, so a listener racing another delivery still ends on the latest value
+    private void notifyStore(State s, String storeId, String sku) {
+        Row row = s.storeQuantities.get(storeId, sku);
+        int quantity = row == null ? 0 : row.quantity();
+        for (ChangeListener listener : listeners) {
+            listener.storeQuantityChanged(storeId, sku, quantity);
+        }
+    }
+
+    // Held totals are absolute and versioned per row, so a stale or repeated change is a no-op; returns the change
+    private int applyReservation(ReservationChanged change) {
+        int[] delta = new int[1];
+        reservedQuantities.compute(change.storeId(), change.sku(), current -> {
+            if (current != null && change.version() <= current.version()) return current;
+            delta[0] = change.reserved() - (current == null ? 0 : current.quantity());
+            return new Row(change.reserved(), change.version(), change.occurredAt().toEpochMilli());
+        });
+        return delta[0];
+    }
+
+    // Writes the row and passes its change up the store hierarchy under the store's hierarchy lock
+    private int applyToRow(State s, InventoryEvent event) {
+        Lock lock = hierarchy.readLock(event.storeId());
+        lock.lock();
+        try {
+            int delta = writeRow(s, event);
+            if (delta != 0) hierarchy.propagate(s.rollups, event.storeId(), event.sku(), delta);
+            return delta;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Version check and per-store write in one step per store|sku; returns the change to the store quantity
+    private static int writeRow(State s, InventoryEvent event) {
+        int[] delta = new int[1];
+        s.storeQuantities.compute(event.storeId(), event.sku(), current -> {
+            Row next = nextRow(current, event);
+            if (next == current) return current;
+            delta[0] = next.quantity() - (current == null ? 0 : current.quantity());
+            if (current == null) indexStoreSku(s, event.storeId(), event.sku());
+            return next;
+        });
+        return delta[0];
+    }
 
+    // What an event makes of a row, for live deliveries and rebuilds alike; the current row if the event is stale
+    private static Row nextRow(Row current, InventoryEvent event) {
+        long currentVersion = current == null ? 0L : current.version();
+        if (event.version() <= currentVersion) {
+            return current; // ignore stale event
+        }
+        int previous = current == null ? 0 : current.quantity();
+        int next;
         if (event instanceof StockReplaced replaced) {
-            applyReplace(replaced);
+            next = applyReplace(replaced);
         } else if (event instanceof StockAdjusted adjusted) {
-            applyAdjust(adjusted);
+            next = applyAdjust(previous, adjusted);
+        } else {
+            return current;
         }
+        return new Row(next, event.version(), event.occurredAt().toEpochMilli());
     }
 
-    private void applyReplace(StockReplaced e) {
-        String sku = e.sku();
-        int previous = globalQuantityBySku.getOrDefault(sku, 0);
-        // The event does not include the prior store-level quantity; for simplicity,
-        // we treat replace as idempotent by tracking per-store latest quantity.
-        // Maintain a per-store snapshot to compute total accurately.
-        // For prototype: we keep an auxiliary map of store quantities per sku.
-        perStoreQuantities.compute(e.storeId() + "|" + sku, (k, oldQty) -> e.quantity());
-        int newTotal = perStoreQuantities.entrySet().stream()
-            .filter(en -> en.getKey().endsWith("|" + sku))
-            .mapToInt(Map.Entry::getValue)
-            .sum();
-        globalQuantityBySku.put(sku, newTotal);
+    private static int applyReplace(StockReplaced e) {
+        return e.quantity();
     }
 
-    private final Map<String, Integer> perStoreQuantities = new ConcurrentHashMap<>();
+    private static int applyAdjust(int currentStoreQty, StockAdjusted e) {
+        return Math.max(0, currentStoreQty + e.delta());
+    }
 
-    private void applyAdjust(StockAdjusted e) {
-        String storeSku = e.storeId() + "|" + e.sku();
-        int currentStoreQty = Math.max(0, perStoreQuantities.getOrDefault(storeSku, 0) + e.delta());
-        perStoreQuantities.put(storeSku, currentStoreQty);
-        int newTotal = perStoreQuantities.entrySet().stream()
-            .filter(en -> en.getKey().endsWith("|" + e.sku()))
-            .mapToInt(Map.Entry::getValue)
-            .sum();
-        globalQuantityBySku.put(e.sku(), newTotal);
+    /** Drops every held quantity, e.g. before a replication snapshot brings in the primary's current holds. */
+    public void clearReservations() {
+        List<String[]> keys = new ArrayList<>();
+        reservedQuantities.forEach((storeId, sku, row) -> keys.add(new String[] {storeId, sku}));
+        for (String[] key : keys) {
+            reservedQuantities.remove(key[0], key[1]);
+        }
+        State s = state;
+        for (String sku : List.copyOf(globalReservedBySku.keySet())) {
+            globalReservedBySku.remove(sku);
+            bumpGlobalVersion(s, sku);
+        }
+    }
+
+    /** Loads a row from a snapshot and folds it into the global total; a row older than the current one is ignored. */
+    public void restoreRow(String storeId, String sku, Row row) {
+        State s = enter();
+        try {
+            Lock lock = hierarchy.readLock(storeId);
+            lock.lock();
+            try {
+                s.storeQuantities.compute(storeId, sku, current -> {
+                    if (current != null && current.version() >= row.version()) return current;
+                    int delta = row.quantity() - (current == null ? 0 : current.quantity());
+                    s.globalQuantityBySku.merge(sku, delta, Integer::sum);
+                    hierarchy.propagate(s.rollups, storeId, sku, delta);
+                    bumpGlobalVersion(s, sku);
+                    if (current == null) indexStoreSku(s, storeId, sku);
+                    return row;
+                });
+            } finally {
+                lock.unlock();
+            }
+            rankStore(s, storeId, sku);
+            rankGlobal(s, sku);
+        } finally {
+            s.inFlight.decrement();
+        }
+    }
+
+    private static void indexStoreSku(State s, String storeId, String sku) {
+        s.skusByStore.computeIfAbsent(storeId, k -> new ConcurrentSkipListSet<>()).add(sku);
+    }
+
+    /**
+     * Starts rebuilding the projection into a fresh state, next to the live one, which keeps serving
+     * queries and taking deliveries until {@link Rebuild#commit}. The caller replays the event history into
+     * {@link Partition}s, merges them, applies whatever the log gained meanwhile and commits. Hierarchy moves
+     * wait until the rebuild ends.
+     *
+     * @throws IllegalStateException if a rebuild is already running
+     */
+    public Rebuild startRebuild() {
+        if (!rebuilding.compareAndSet(false, true)) throw new IllegalStateException("A rebuild is already running");
+        structure.acquireUninterruptibly();
+        State live = state;
+        return new Rebuild(live, new State(live.storeQuantities.newEmpty(), new StoreHierarchy.Rollups(), live.generation + 1));
+    }
+
+    /** A projection rebuild in progress; driven by one thread, apart from {@link #merge}. */
+    public final class Rebuild {
+        private final State live;
+        private final State fresh;
+        private boolean finished;
+
+        private Rebuild(State live, State fresh) {
+            this.live = live;
+            this.fresh = fresh;
+        }
+
+        /**
+         * Folds a replayed partition into the fresh state. Partitions must hold disjoint skus; they may be
+         * merged concurrently, and must all be merged before {@link #apply}.
+         */
+        public void merge(Partition partition) {
+            partition.rowsBySku.forEach((sku, rows) -> {
+                int total = 0;
+                for (Map.Entry<String, Row> entry : rows.entrySet()) {
+                    String storeId = entry.getKey();
+                    Row row = entry.getValue();
+                    fresh.storeQuantities.compute(storeId, sku, current -> row);
+                    indexStoreSku(fresh, storeId, sku);
+                    if (row.quantity() != 0) hierarchy.propagate(fresh.rollups, storeId, sku, row.quantity());
+                    rankStore(fresh, storeId, sku);
+                    total += row.quantity();
+                }
+                fresh.globalQuantityBySku.put(sku, total);
+                bumpGlobalVersion(fresh, sku);
+                rankGlobal(fresh, sku);
+            });
+        }
+
+        /** Applies an event group from the log tail to the fresh state, the way a delivery would. */
+        public void apply(List<InventoryEvent> events) {
+            applyBatch(fresh, events, false, false);
+        }
+
+        /**
+         * From here on, deliveries to the live state are also recorded for the fresh one. Call it before the
+         * last pass over the log tail. Sync publishes deliver before they append, so this returns only once
+         * the ones already delivering are logged: anything delivered earlier is then in the log for that pass.
+         */
+        public void captureDeliveries() {
+            live.catchUp = new ConcurrentLinkedQueue<>();
+            eventBus.awaitPublishes();
+        }
+
+        /**
+         * Applies the recorded deliveries and swaps the fresh state in. New deliveries wait only for the last
+         * few recorded ones to be applied; queries read the old state until the swap. Events both in the log
+         * tail and recorded are versioned, so applying one twice is a no-op. Listeners are then told about
+         * every row and total the rebuild changed.
+         */
+        public void commit() {
+            if (finished) throw new IllegalStateException("Rebuild already finished");
+            if (live.catchUp == null) throw new IllegalStateException("Deliveries were not captured");
+            drainCatchUp();
+            live.sealed = true;
+            // Deliveries that registered before the seal are applying right now and take microseconds
+            while (live.inFlight.sum() != 0) {
+                LockSupport.parkNanos(10_000);
+            }
+            drainCatchUp();
+            live.catchUp = null;
+            state = fresh;
+            hierarchy.swapRollups(fresh.rollups);
+            live.swapped.countDown();
+            finish();
+            if (!listeners.isEmpty()) notifyChanges(live, fresh);
+        }
+
+        /** Drops the fresh state; the live one carries on as if nothing happened. */
+        public void abort() {
+            if (finished) return;
+            live.catchUp = null;
+            finish();
+        }
+
+        private void drainCatchUp() {
+            Queue<List<InventoryEvent>> catchUp = live.catchUp;
+            List<InventoryEvent> events;
+            while ((events = catchUp.poll()) != null) {
+                apply(events);
+            }
+        }
+
+        private void finish() {
+            finished = true;
+            structure.release();
+            rebuilding.set(false);
+        }
+    }
+
+    /**
+     * Rows replayed from one slice of the history, in plain maps owned by one thread at a time. Split the
+     * history by sku so every event of a row lands in the same partition, in log order.
+     */
+    public static final class Partition {
+        // Key: sku -> storeId -> row
+        private final Map<String, Map<String, Row>> rowsBySku = new HashMap<>();
+
+        public void apply(InventoryEvent event) {
+            if (event instanceof ReservationChanged) return;
+            rowsBySku.computeIfAbsent(event.sku(), k -> new HashMap<>())
+                .compute(event.storeId(), (storeId, current) -> nextRow(current, event));
+        }
+    }
+
+    // Re-reports what a swap changed, as the listeners' own state was built from the old values
+    private void notifyChanges(State old, State fresh) {
+        fresh.storeQuantities.forEach((storeId, sku, row) -> {
+            Row previous = old.storeQuantities.get(storeId, sku);
+            if (previous == null || previous.quantity() != row.quantity()) notifyStore(fresh, storeId, sku);
+        });
+        old.storeQuantities.forEach((storeId, sku, row) -> {
+            if (fresh.storeQuantities.get(storeId, sku) == null) notifyStore(fresh, storeId, sku);
+        });
+        Set<String> skus = new HashSet<>(old.globalQuantityBySku.keySet());
+        skus.addAll(fresh.globalQuantityBySku.keySet());
+        for (String sku : skus) {
+            int total = fresh.globalQuantityBySku.getOrDefault(sku, 0);
+            if (total == old.globalQuantityBySku.getOrDefault(sku, 0)) continue;
+            for (ChangeListener listener : listeners) {
+                listener.globalQuantityChanged(sku, total);
+            }
+        }
+    }
+
+    /** Incremented by every rebuild swap. Global versions restart with it, so anything cached by version must key on both. */
+    public int generation() {
+        return state.generation;
+    }
+
+    /**
+     * Reads pinned to the current state: a rebuild swap after this call does not change what the view
+     * returns, so a version, the values it labels and the generation always come from the same state.
+     */
+    public View view() {
+        return new View(state);
+    }
+
+    /** Stock reads of one state; reservations are shared across states and are read from the projection. */
+    public static final class View {
+        private final State state;
+
+        private View(State state) {
+            this.state = state;
+        }
+
+        public int generation() {
+            return state.generation;
+        }
+
+        /** Changes whenever the sku's global total or held quantity does; 0 for a sku never seen. */
+        public long globalVersion(String sku) {
+            return state.globalVersionBySku.getOrDefault(sku, 0L);
+        }
+
+        public int globalQuantity(String sku) {
+            return state.globalQuantityBySku.getOrDefault(sku, 0);
+        }
+
+        public Row storeRow(String storeId, String sku) {
+            return state.storeQuantities.get(storeId, sku);
+        }
+    }
+
+    public void addListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void forEachRow(InventoryStateTable.RowVisitor visitor) {
+        state.storeQuantities.forEach(visitor);
+    }
+
+    /** Visits the held quantity rows, versioned by reservation changes. */
+    public void forEachReservedRow(InventoryStateTable.RowVisitor visitor) {
+        reservedQuantities.forEach(visitor);
     }
 
     public int getGlobalQuantity(String sku) {
-        return globalQuantityBySku.getOrDefault(sku, 0);
+        return state.globalQuantityBySku.getOrDefault(sku, 0);
+    }
+
+    /** Changes whenever the sku's global total or held quantity does; 0 for a sku never seen. */
+    public long getGlobalVersion(String sku) {
+        return state.globalVersionBySku.getOrDefault(sku, 0L);
+    }
+
+    public int getGlobalReserved(String sku) {
+        return globalReservedBySku.getOrDefault(sku, 0);
+    }
+
+    public int getStoreReserved(String storeId, String sku) {
+        Row row = reservedQuantities.get(storeId, sku);
+        return row == null ? 0 : row.quantity();
+    }
+
+    /** Held quantity with its reservation version, or null if the row never had a hold. */
+    public Row getStoreReservedRow(String storeId, String sku) {
+        return reservedQuantities.get(storeId, sku);
     }
 
     public Optional<Integer> getStoreQuantity(String storeId, String sku) {
-        return Optional.ofNullable(perStoreQuantities.get(storeId + "|" + sku));
+        Row row = state.storeQuantities.get(storeId, sku);
+        return row == null ? Optional.empty() : Optional.of(row.quantity());
     }
-}
 
+    public Row getStoreRow(String storeId, String sku) {
+        return state.storeQuantities.get(storeId, sku);
+    }
+
+    /** Puts a store under a district (null for none); only that store's rows are moved between rollups. */
+    public void assignStore(String storeId, String districtId) {
+        structure.acquireUninterruptibly();
+        try {
+            State s = state;
+            hierarchy.moveStore(storeId, districtId, visitor -> {
+                for (String sku : storeSkus(storeId)) {
+                    Row row = s.storeQuantities.get(storeId, sku);
+                    if (row != null) visitor.accept(sku, row.quantity());
+                }
+            });
+        } finally {
+            structure.release();
+        }
+    }
+
+    /** Puts a district under a region (null for none), moving the district's totals. */
+    public void assignDistrict(String districtId, String regionId) {
+        structure.acquireUninterruptibly();
+        try {
+            hierarchy.moveDistrict(districtId, regionId);
+        } finally {
+            structure.release();
+        }
+    }
+
+    public StoreHierarchy hierarchy() {
+        return hierarchy;
+    }
+
+    /** Up to limit skus of the store with the least stock, lowest first; O(limit) to read. */
+    public List<StockRanking.Entry> lowestStoreStock(String storeId, int limit) {
+        StockRanking ranking = state.rankingsByStore.get(storeId);
+        return ranking == null ? List.of() : ranking.lowest(limit);
+    }
+
+    /** Up to limit skus with the least stock across all stores, lowest first. */
+    public List<StockRanking.Entry> lowestGlobalStock(int limit) {
+        return state.globalRanking.lowest(limit);
+    }
+
+    /** Sorted, read-only live view of the skus a store has rows for. */
+    public NavigableSet<String> storeSkus(String storeId) {
+        NavigableSet<String> skus = state.skusByStore.get(storeId);
+        return skus == null ? Collections.emptyNavigableSet() : Collections.unmodifiableNavigableSet(skus);
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.inventory.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pushes projection changes to feed subscribers, filtered by sku and/or store. Each subscriber has a set of
+ * keys with pending changes and its own virtual writer thread. Delivery only adds the key and wakes the
+ * writer, so a slow client never holds up event delivery. The writer sends each key's value as it is when
+ * written, so however far a client falls behind, it gets the latest value per key rather than every step.
+ */
+@Component
+public class ChangeFeed implements CentralInventoryProjection.ChangeListener {
+
+    /** A projection key; storeId is null for a global total. */
+    public record Key(String storeId, String sku) {}
+
+    public record Update(String storeId, String sku, int quantity) {
+        public boolean global() {
+            return storeId == null;
+        }
+    }
+
+    /** Where a subscriber's updates are written; called from its writer thread only. */
+    @FunctionalInterface
+    public interface Sink {
+        void send(Update update) throws Exception;
+    }
+
+    private final CentralInventoryProjection projection;
+    private final int maxSubscribers;
+    // Subscribers indexed by what they filter on, so a change only visits interested subscribers
+    private final Map<String, Set<Subscription>> bySku = new ConcurrentHashMap<>();
+    private final Map<String, Set<Subscription>> byStore = new ConcurrentHashMap<>();
+    private final Set<Subscription> unfiltered = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    public ChangeFeed(CentralInventoryProjection projection) {
+        this(projection, 10_000);
+    }
+
+    @Autowired
+    public ChangeFeed(CentralInventoryProjection projection, @Value("${inventory.change-feed.max-subscribers:10000}") int maxSubscribers) {
+        this.projection = projection;
+        this.maxSubscribers = maxSubscribers;
+    }
+
+    @PostConstruct
+    public void register() {
+        projection.addListener(this);
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        unfiltered.forEach(Subscription::close);
+        bySku.values().forEach(subs -> subs.forEach(Subscription::close));
+        byStore.values().forEach(subs -> subs.forEach(Subscription::close));
+    }
+
+    /**
+     * Subscribes with an optional sku filter (empty means every sku) and optional store; with a store, only that
+     * store's rows are sent. Listed skus start with their current value. Returns null when at capacity.
+     */
+    public Subscription subscribe(Set<String> skus, String storeId, Sink sink) {
+        if (subscribers.incrementAndGet() > maxSubscribers) {
+            subscribers.decrementAndGet();
+            return null;
+        }
+        Subscription subscription = new Subscription(Set.copyOf(skus), storeId, sink);
+        if (!skus.isEmpty()) {
+            for (String sku : skus) {
+                bySku.computeIfAbsent(sku, k -> ConcurrentHashMap.newKeySet()).add(subscription);
+                subscription.offer(new Key(storeId, sku));
+            }
+        } else if (storeId != null) {
+            byStore.computeIfAbsent(storeId, k -> ConcurrentHashMap.newKeySet()).add(subscription);
+        } else {
+            unfiltered.add(subscription);
+        }
+        subscription.start();
+        return subscription;
+    }
+
+    public int subscriberCount() {
+        return subscribers.get();
+    }
+
+    @Override
+    public void storeQuantityChanged(String storeId, String sku, int quantity) {
+        Key key = null;
+        Set<Subscription> forSku = bySku.get(sku);
+        if (forSku != null) {
+            key = new Key(storeId, sku);
+            for (Subscription s : forSku) {
+                if (s.storeId == null || s.storeId.equals(storeId)) s.offer(key);
+            }
+        }
+        Set<Subscription> forStore = byStore.get(storeId);
+        if (forStore != null) {
+            if (key == null) key = new Key(storeId, sku);
+            for (Subscription s : forStore) s.offer(key);
+        }
+        if (!unfiltered.isEmpty()) {
+            if (key == null) key = new Key(storeId, sku);
+            for (Subscription s : unfiltered) s.offer(key);
+        }
+    }
+
+    @Override
+    public void globalQuantityChanged(String sku, int quantity) {
+        Key key = null;
+        Set<Subscription> forSku = bySku.get(sku);
+        if (forSku != null) {
+            key = new Key(null, sku);
+            for (Subscription s : forSku) {
+                if (s.storeId == null) s.offer(key);
+            }
+        }
+        if (!unfiltered.isEmpty()) {
+            if (key == null) key = new Key(null, sku);
+            for (Subscription s : unfiltered) s.offer(key);
+        }
+    }
+
+    private int currentQuantity(Key key) {
+        return key.storeId() == null ? projection.getGlobalQuantity(key.sku()) : projection.getStoreQuantity(key.storeId(), key.sku()).orElse(0);
+    }
+
+    private void remove(Subscription subscription) {
+        boolean removed;
+        if (!subscription.skus.isEmpty()) {
+            removed = false;
+            for (String sku : subscription.skus) {
+                Set<Subscription> subs = bySku.get(sku);
+                if (subs != null && subs.remove(subscription)) removed = true;
+            }
+        } else if (subscription.storeId != null) {
+            Set<Subscription> subs = byStore.get(subscription.storeId);
+            removed = subs != null && subs.remove(subscription);
+        } else {
+            removed = unfiltered.remove(subscription);
+        }
+        if (removed) subscribers.decrementAndGet();
+    }
+
+    public final class Subscription {
+        private final Set<String> skus;
+        private final String storeId;
+        private final Sink sink;
+        // Keys changed since the writer last sent them; adding a key twice coalesces
+        private final Set<Key> pending = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean signalled = new AtomicBoolean();
+        private volatile boolean open = true;
+        private Thread writer;
+
+        private Subscription(Set<String> skus, String storeId, Sink sink) {
+            this.skus = skus;
+            this.storeId = storeId;
+            this.sink = sink;
+        }
+
+        private void start() {
+            writer = Thread.ofVirtual().name("change-feed-writer").start(this::writeLoop);
+        }
+
+        // Called on the delivering thread: never blocks
+        private void offer(Key key) {
+            if (!open) return;
+            pending.add(key);
+            if (!signalled.getAndSet(true)) {
+                Thread w = writer;
+                if (w != null) LockSupport.unpark(w);
+            }
+        }
+
+        private void writeLoop() {
+            while (open) {
+                if (!signalled.getAndSet(false)) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                Iterator<Key> it = pending.iterator();
+                while (open && it.hasNext()) {
+                    Key key = it.next();
+                    it.remove();
+                    try {
+                        sink.send(new Update(key.storeId(), key.sku(), currentQuantity(key)));
+                    } catch (Exception e) {
+                        // Client went away or the connection broke
+                        close();
+                    }
+                }
+            }
+        }
+
+        /** Stops the writer and unsubscribes; safe to call more than once. */
+        public void close() {
+            if (!open) return;
+            open = false;
+            remove(this);
+            Thread w = writer;
+            if (w != null) LockSupport.unpark(w);
+        }
+
+        public boolean isOpen() {
+            return open;
+        }
+    }
+}
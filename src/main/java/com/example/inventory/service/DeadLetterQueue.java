@@ -0,0 +1,152 @@
+package com.example.inventory.service;
+
+import com.example.inventory.event.InventoryEvent;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Events that could not be delivered after every retry. A fixed ring indexed by entry id: id N lives in slot
+ * N & mask, so looking up or removing an entry is one slot read and one CAS, and producers claim ids with a
+ * single getAndIncrement. Nothing takes a lock. When the slot a new entry maps to still holds a live one,
+ * DROP_OLDEST overwrites it, while DROP_NEWEST moves on to the next id's slot and discards the new entry only
+ * once the queue is full. Every loss is counted.
+ */
+public final class DeadLetterQueue {
+    public enum OverflowPolicy { DROP_OLDEST, DROP_NEWEST }
+
+    public record DeadLetter(long id, String subscriber, InventoryEvent event, String errorMessage, int attempts, Instant failedAt) {}
+
+    private final AtomicReferenceArray<DeadLetter> slots;
+    private final int mask;
+    private final OverflowPolicy policy;
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final AtomicInteger size = new AtomicInteger();
+    private final LongAdder overflowed = new LongAdder();
+
+    public DeadLetterQueue(int capacity, OverflowPolicy policy) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        // Rounded up to a power of two so a slot is a mask away
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.policy = policy;
+    }
+
+    /** Adds an entry and returns its id, or -1 if the overflow policy discarded it. */
+    public long add(String subscriber, InventoryEvent event, String errorMessage, int attempts) {
+        Instant now = Instant.now();
+        for (int tries = 0; tries < slots.length(); tries++) {
+            if (policy == OverflowPolicy.DROP_NEWEST && size.get() >= slots.length()) break;
+            long id = nextId.getAndIncrement();
+            DeadLetter entry = new DeadLetter(id, subscriber, event, errorMessage, attempts, now);
+            int slot = (int) (id & mask);
+            while (true) {
+                DeadLetter current = slots.get(slot);
+                if (current != null && (current.id() > id || policy == OverflowPolicy.DROP_NEWEST)) {
+                    // DROP_OLDEST: a newer producer lapped this one, so this entry is the oldest.
+                    // DROP_NEWEST: keep what is there and try the next id's slot.
+                    if (policy == OverflowPolicy.DROP_OLDEST) {
+                        overflowed.increment();
+                        return -1;
+                    }
+                    break;
+                }
+                if (slots.compareAndSet(slot, current, entry)) {
+                    if (current == null) {
+                        size.incrementAndGet();
+                    } else {
+                        overflowed.increment();
+                    }
+                    return id;
+                }
+            }
+        }
+        overflowed.increment();
+        return -1;
+    }
+
+    public DeadLetter get(long id) {
+        DeadLetter entry = slots.get((int) (id & mask));
+        return entry != null && entry.id() == id ? entry : null;
+    }
+
+    /** Removes the entry and returns it, or null if it was already gone. */
+    public DeadLetter remove(long id) {
+        int slot = (int) (id & mask);
+        DeadLetter entry = slots.get(slot);
+        if (entry == null || entry.id() != id || !slots.compareAndSet(slot, entry, null)) return null;
+        size.decrementAndGet();
+        return entry;
+    }
+
+    /**
+     * Up to limit entries with ids above afterId, in id order, optionally only those of one subscriber. Entries
+     * leave out of order, so this is one pass over every slot; it is meant for admin use, not the hot path.
+     */
+    public List<DeadLetter> list(long afterId, int limit, String subscriber) {
+        return list(afterId, Long.MAX_VALUE, limit, subscriber);
+    }
+
+    List<DeadLetter> list(long afterId, long beforeId, int limit, String subscriber) {
+        // Max-heap on id holding the lowest ids seen so far
+        PriorityQueue<DeadLetter> lowest = new PriorityQueue<>(Comparator.comparingLong(DeadLetter::id).reversed());
+        for (int slot = 0; slot < slots.length(); slot++) {
+            DeadLetter entry = slots.get(slot);
+            if (entry == null || entry.id() <= afterId || entry.id() >= beforeId) continue;
+            if (subscriber != null && !subscriber.equals(entry.subscriber())) continue;
+            if (lowest.size() < limit) {
+                lowest.add(entry);
+            } else if (entry.id() < lowest.peek().id()) {
+                lowest.poll();
+                lowest.add(entry);
+            }
+        }
+        List<DeadLetter> page = new ArrayList<>(lowest);
+        page.sort(Comparator.comparingLong(DeadLetter::id));
+        return page;
+    }
+
+    /** Removes every entry, or every entry of one subscriber; returns how many went. */
+    public int purge(String subscriber) {
+        int purged = 0;
+        for (int slot = 0; slot < slots.length(); slot++) {
+            DeadLetter entry = slots.get(slot);
+            if (entry != null && (subscriber == null || subscriber.equals(entry.subscriber()))
+                && slots.compareAndSet(slot, entry, null)) {
+                size.decrementAndGet();
+                purged++;
+            }
+        }
+        return purged;
+    }
+
+    /** Id the next entry will get; every current entry has a lower one. */
+    long nextId() {
+        return nextId.get();
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    /** Entries lost to the overflow policy since start. */
+    public long overflowed() {
+        return overflowed.sum();
+    }
+
+    public OverflowPolicy policy() {
+        return policy;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.inventory.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Hot-path instrumentation for {@link InMemoryEventBus}. Meters are registered once per subscriber, so
+ * recording a delivery is a nanoTime pair and a histogram update. Spans are only created for a sampled
+ * fraction of publishes, and sku is only ever a high-cardinality span attribute, never a metric tag.
+ */
+@Component
+public class EventBusInstrumentation {
+    private final ObservationRegistry observationRegistry;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final double spanSamplingRate;
+    private final Counter publishFailures;
+    private final Counter consumeFailures;
+
+    /** Fully on: meters plus a span for every publish. */
+    public EventBusInstrumentation(ObservationRegistry observationRegistry, MeterRegistry meterRegistry) {
+        this(observationRegistry, meterRegistry, true, 1.0);
+    }
+
+    @Autowired
+    public EventBusInstrumentation(ObservationRegistry observationRegistry, MeterRegistry meterRegistry,
+                                   @Value("${inventory.event-bus.instrumentation.enabled:true}") boolean enabled,
+                                   @Value("${inventory.event-bus.instrumentation.span-sampling-rate:0.01}") double spanSamplingRate) {
+        if (spanSamplingRate < 0 || spanSamplingRate > 1) {
+            throw new IllegalArgumentException("span-sampling-rate must be between 0 and 1");
+        }
+        this.observationRegistry = observationRegistry;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.spanSamplingRate = enabled ? spanSamplingRate : 0;
+        this.publishFailures = Counter.builder("event_bus.publish.failures").register(meterRegistry);
+        this.consumeFailures = Counter.builder("event_bus.consume.failures").register(meterRegistry);
+    }
+
+    /** Per-subscriber delivery latency histogram and delivered-event counter; no-ops when disabled. */
+    public final class SubscriberMetrics {
+        private final Timer latency;
+        private final Counter delivered;
+
+        private SubscriberMetrics(String subscriber) {
+            if (enabled) {
+                this.latency = Timer.builder("inventory.event.delivery")
+                    .tag("subscriber", subscriber)
+                    .publishPercentiles(0.5, 0.99, 0.999)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+                this.delivered = Counter.builder("inventory.event.delivered")
+                    .tag("subscriber", subscriber)
+                    .register(meterRegistry);
+            } else {
+                this.latency = null;
+                this.delivered = null;
+            }
+        }
+
+        long start() {
+            return latency == null ? 0L : System.nanoTime();
+        }
+
+        void record(long start, int events) {
+            if (latency == null) return;
+            latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            delivered.increment(events);
+        }
+    }
+
+    SubscriberMetrics forSubscriber(String subscriber) {
+        return new SubscriberMetrics(subscriber);
+    }
+
+    /** A not yet started publish span, or null when this publish is not sampled. */
+    Observation publishSpan(String type, String sku, int size) {
+        if (spanSamplingRate <= 0) return null;
+        if (spanSamplingRate < 1 && ThreadLocalRandom.current().nextDouble() >= spanSamplingRate) return null;
+        Observation span = Observation.createNotStarted("inventory.event.publish", observationRegistry)
+            .lowCardinalityKeyValue("type", type);
+        if (sku != null) span.highCardinalityKeyValue("sku", sku);
+        if (size > 1) span.highCardinalityKeyValue("size", String.valueOf(size));
+        return span;
+    }
+
+    /** A consume span only when a sampled publish span is in scope, so sampled traces stay complete. */
+    Observation consumeSpan(String type, String subscriber) {
+        if (spanSamplingRate <= 0 || observationRegistry.getCurrentObservation() == null) return null;
+        return Observation.createNotStarted("inventory.event.consume", observationRegistry)
+            .lowCardinalityKeyValue("type", type)
+            .lowCardinalityKeyValue("subscriber", subscriber);
+    }
+
+    /** Dead-letter and retry backlog gauges; skipped when disabled. */
+    void retryGauges(DeadLetterQueue deadLetters, IntSupplier pendingRetries) {
+        if (!enabled) return;
+        Gauge.builder("event_bus.dlq.size", deadLetters, DeadLetterQueue::size).register(meterRegistry);
+        FunctionCounter.builder("event_bus.dlq.overflowed", deadLetters, DeadLetterQueue::overflowed).register(meterRegistry);
+        Gauge.builder("event_bus.retries.pending", pendingRetries, IntSupplier::getAsInt).register(meterRegistry);
+    }
+
+    void publishFailed() {
+        publishFailures.increment();
+    }
+
+    void consumeFailed() {
+        consumeFailures.increment();
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.inventory.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hierarchical timing wheel for large numbers of timeouts. Level 0 has one slot per tick; each higher level
+ * has slots as wide as a full turn of the level below and is cascaded down one slot at a time as the wheel
+ * turns. Scheduling and cancelling are O(1), and a timeout costs one node; there is no per-timeout task or
+ * thread. Deadlines further out than the top level covers are parked in its last slot and re-placed when
+ * that slot cascades.
+ *
+ * The owner drives time through {@link #advanceTo}, which returns the payloads that fell due.
+ */
+public final class HierarchicalTimingWheel<T> {
+
+    /** Handle for one scheduled payload; pass it to {@link #cancel}. */
+    public static final class Timeout<T> {
+        private final T payload;
+        private final long deadlineTick;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+        // -1 once expired or cancelled
+        private int level = -1;
+        private int slot;
+
+        private Timeout(T payload, long deadlineTick) {
+            this.payload = payload;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public T payload() {
+            return payload;
+        }
+    }
+
+    private final long tickMillis;
+    private final int bits;
+    private final int mask;
+    private final Timeout<T>[][] heads;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long currentTick;
+    private int size;
+
+    public HierarchicalTimingWheel(long tickMillis, int wheelSize, int levels, long startMillis) {
+        if (tickMillis <= 0) throw new IllegalArgumentException("tickMillis must be > 0");
+        if (Integer.bitCount(wheelSize) != 1 || wheelSize < 2) throw new IllegalArgumentException("wheelSize must be a power of two");
+        this.bits = Integer.numberOfTrailingZeros(wheelSize);
+        if (levels < 1 || (long) bits * levels > 62) throw new IllegalArgumentException("levels out of range");
+        this.tickMillis = tickMillis;
+        this.mask = wheelSize - 1;
+        this.heads = newHeads(levels, wheelSize);
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    // Arrays of a generic type can only be created raw; every slot holds a Timeout<T> or null
+    @SuppressWarnings("unchecked")
+    private static <T> Timeout<T>[][] newHeads(int levels, int wheelSize) {
+        return (Timeout<T>[][]) new Timeout<?>[levels][wheelSize];
+    }
+
+    /** Schedules the payload to fall due at the first tick at or after deadlineMillis. */
+    public Timeout<T> schedule(T payload, long deadlineMillis) {
+        Timeout<T> timeout = new Timeout<>(payload, Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis));
+        lock.lock();
+        try {
+            // Already due: the next tick expires it
+            place(timeout, currentTick + 1);
+            size++;
+        } finally {
+            lock.unlock();
+        }
+        return timeout;
+    }
+
+    /** Removes a pending timeout; false if it already fell due or was cancelled. */
+    public boolean cancel(Timeout<T> timeout) {
+        lock.lock();
+        try {
+            if (timeout.level < 0) return false;
+            unlink(timeout);
+            size--;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Turns the wheel up to nowMillis and returns the payloads that fell due, earliest tick first. */
+    public List<T> advanceTo(long nowMillis) {
+        long target = nowMillis / tickMillis;
+        List<T> due = new ArrayList<>();
+        lock.lock();
+        try {
+            while (currentTick < target) {
+                if (size == 0) {
+                    // Nothing to cascade or expire, so skip straight to the target
+                    currentTick = target;
+                    break;
+                }
+                currentTick++;
+                cascade();
+                Timeout<T> t = heads[0][(int) (currentTick & mask)];
+                heads[0][(int) (currentTick & mask)] = null;
+                while (t != null) {
+                    Timeout<T> next = t.next;
+                    t.prev = t.next = null;
+                    t.level = -1;
+                    size--;
+                    due.add(t.payload);
+                    t = next;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return due;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // When a level completes a turn, the next level's current slot is spread over the levels below
+    private void cascade() {
+        for (int level = 1; level < heads.length; level++) {
+            if ((currentTick & ((1L << (bits * level)) - 1)) != 0) return;
+            int slot = (int) ((currentTick >>> (bits * level)) & mask);
+            Timeout<T> t = heads[level][slot];
+            heads[level][slot] = null;
+            while (t != null) {
+                Timeout<T> next = t.next;
+                t.prev = t.next = null;
+                // Anything due this tick lands in the level 0 slot that is expired right after the cascade
+                place(t, currentTick);
+                t = next;
+            }
+        }
+    }
+
+    private void place(Timeout<T> timeout, long earliestTick) {
+        long deadline = Math.max(timeout.deadlineTick, earliestTick);
+        long delta = deadline - currentTick;
+        int level = 0;
+        while (level < heads.length - 1 && delta >= 1L << (bits * (level + 1))) {
+            level++;
+        }
+        if (level == heads.length - 1 && delta >= 1L << (bits * heads.length)) {
+            // Beyond the top level: park in the slot that cascades last and re-place from there
+            deadline = currentTick + (1L << (bits * heads.length)) - 1;
+        }
+        int slot = (int) ((deadline >>> (bits * level)) & mask);
+        timeout.level = level;
+        timeout.slot = slot;
+        Timeout<T> head = heads[level][slot];
+        timeout.next = head;
+        if (head != null) head.prev = timeout;
+        heads[level][slot] = timeout;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            heads[timeout.level][timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) timeout.next.prev = timeout.prev;
+        timeout.prev = timeout.next = null;
+        timeout.level = -1;
+    }
+}
@@ -1,75 +1,415 @@
 package com.example.inventory.service;
 
 import com.example.inventory.event.InventoryEvent;
+import com.example.inventory.eventlog.MappedEventLog;
 import io.micrometer.observation.Observation;
 import io.micrometer.observation.ObservationRegistry;
-import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 
 @Component
 public class InMemoryEventBus {
-    private final List<Consumer<InventoryEvent>> subscribers = new ArrayList<>();
-    private final ObservationRegistry observationRegistry;
-    private final Counter publishFailures;
-    private final Counter consumeFailures;
-    private final List<DLQEntry> deadLetterQueue = new CopyOnWriteArrayList<>();
+    // Copy-on-write: dispatcher threads may be delivering while a late component subscribes
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final EventBusInstrumentation instrumentation;
+    private final DeadLetterQueue deadLetterQueue;
+    // Failed deliveries are retried here, off the publishing thread
+    private final RetryScheduler retries;
+    // Optional durable log; events are appended once every subscriber has accepted them
+    private final MappedEventLog eventLog;
+    // Consistency token handed to clients: the sequence of the last published event
+    private final AtomicLong sequence = new AtomicLong();
+    // Null in synchronous mode
+    private final PartitionedDispatcher dispatcher;
+    // Publishes under way, so a checkpoint can wait for those that started before it; see awaitPublishes
+    private volatile PublishEpoch publishing = new PublishEpoch();
+
+    public enum Mode { SYNC, ASYNC }
 
     public InMemoryEventBus(ObservationRegistry observationRegistry, MeterRegistry meterRegistry) {
-        this.observationRegistry = observationRegistry;
-        this.publishFailures = Counter.builder("event_bus.publish.failures").register(meterRegistry);
-        this.consumeFailures = Counter.builder("event_bus.consume.failures").register(meterRegistry);
-    }
-
-    public record DLQEntry(InventoryEvent event, String errorMessage, int attempts) {}
-
-    // Consistency-first: deliver to all subscribers synchronously with bounded retries
-    public void publish(InventoryEvent event) {
-        Observation.createNotStarted("inventory.event.publish", observationRegistry)
-            .lowCardinalityKeyValue("type", event.getClass().getSimpleName())
-            .lowCardinalityKeyValue("sku", event.sku())
-            .observe(() -> {
-                for (Consumer<InventoryEvent> s : subscribers) {
-                    boolean delivered = false;
-                    int attempts = 0;
-                    Exception last = null;
-                    while (!delivered && attempts < 3) {
-                        attempts++;
-                        try {
-                            Observation.createNotStarted("inventory.event.consume", observationRegistry)
-                                .lowCardinalityKeyValue("type", event.getClass().getSimpleName())
-                                .lowCardinalityKeyValue("sku", event.sku())
-                                .observe(() -> s.accept(event));
-                            delivered = true;
-                        } catch (Exception e) {
-                            last = e;
-                            consumeFailures.increment();
-                            try { Thread.sleep(10L * (1L << (attempts - 1))); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); }
-                        }
-                    }
-                    if (!delivered) {
-                        publishFailures.increment();
-                        deadLetterQueue.add(new DLQEntry(event, last == null ? "unknown" : last.getMessage(), attempts));
-                        throw new RuntimeException("Failed to deliver event to all subscribers; moved to DLQ after " + attempts + " attempts", last);
-                    }
+        this(observationRegistry, meterRegistry, Optional.empty());
+    }
+
+    public InMemoryEventBus(ObservationRegistry observationRegistry, MeterRegistry meterRegistry, Optional<MappedEventLog> eventLog) {
+        this(observationRegistry, meterRegistry, eventLog, "sync", 0, 0);
+    }
+
+    public InMemoryEventBus(ObservationRegistry observationRegistry, MeterRegistry meterRegistry, Optional<MappedEventLog> eventLog,
+                            String mode, int partitions, int queueCapacity) {
+        this(new EventBusInstrumentation(observationRegistry, meterRegistry), eventLog, mode, partitions, queueCapacity);
+    }
+
+    public InMemoryEventBus(EventBusInstrumentation instrumentation, Optional<MappedEventLog> eventLog,
+                            String mode, int partitions, int queueCapacity) {
+        this(instrumentation, eventLog, mode, partitions, queueCapacity, 3, 10, 65_536, 65_536, "drop-oldest", 500);
+    }
+
+    @Autowired
+    public InMemoryEventBus(EventBusInstrumentation instrumentation, Optional<MappedEventLog> eventLog,
+                            @Value("${inventory.event-bus.mode:sync}") String mode,
+                            @Value("${inventory.event-bus.partitions:0}") int partitions,
+                            @Value("${inventory.event-bus.queue-capacity:65536}") int queueCapacity,
+                            @Value("${inventory.event-bus.retry.max-attempts:3}") int retryMaxAttempts,
+                            @Value("${inventory.event-bus.retry.base-delay-ms:10}") long retryBaseDelayMs,
+                            @Value("${inventory.event-bus.retry.max-pending:65536}") int retryMaxPending,
+                            @Value("${inventory.event-bus.dlq.capacity:65536}") int dlqCapacity,
+                            @Value("${inventory.event-bus.dlq.overflow-policy:drop-oldest}") String dlqOverflowPolicy,
+                            @Value("${inventory.event-bus.dlq.redrive-per-second:500}") int redrivePerSecond) {
+        this.instrumentation = instrumentation;
+        this.eventLog = eventLog.orElse(null);
+        if (Mode.valueOf(mode.trim().toUpperCase()) == Mode.ASYNC) {
+            int count = partitions > 0 ? partitions : Runtime.getRuntime().availableProcessors();
+            this.dispatcher = new PartitionedDispatcher(count, queueCapacity, sequence, this::deliverAsync, this::deliverAsync);
+        } else {
+            this.dispatcher = null;
+        }
+        this.deadLetterQueue = new DeadLetterQueue(dlqCapacity,
+            DeadLetterQueue.OverflowPolicy.valueOf(dlqOverflowPolicy.trim().toUpperCase().replace('-', '_')));
+        this.retries = new RetryScheduler(this::deliverTo, dispatcher != null ? dispatcher : RetryScheduler.Holds.NONE,
+            deadLetterQueue, retryMaxAttempts, retryBaseDelayMs, retryMaxPending, redrivePerSecond);
+        instrumentation.retryGauges(deadLetterQueue, retries::pending);
+    }
+
+    public record RedriveStatus(boolean running, String subscriber, long redriven, long limit) {}
+
+    private record Subscriber(String name, Consumer<InventoryEvent> onEvent, Consumer<List<InventoryEvent>> onBatch,
+                              EventBusInstrumentation.SubscriberMetrics metrics) {}
+
+    private static final class PublishEpoch {
+        final LongAdder active = new LongAdder();
+    }
+
+    /**
+     * Sync mode (consistency-first): delivers to all subscribers on the calling thread; if one fails, the
+     * publish fails right away and the delivery is retried in the background.
+     * Async mode: appends to the log first, then hands the event to its partition's dispatcher; readers that
+     * need their own writes wait on {@link #awaitApplied} with the returned token.
+     */
+    public long publish(InventoryEvent event) {
+        long[] lsn = new long[1];
+        long token = publishDeferred(event, lsn);
+        awaitDurable(lsn[0]);
+        return token;
+    }
+
+    /**
+     * Publishes like {@link #publish} but returns before the log's group commit, with the event already
+     * delivered (sync) or queued (async) and written to the log in order. Pass the returned log position to
+     * {@link #awaitDurable} after releasing the lock that orders the row's events, so writers to a hot row do
+     * not queue behind each other's fsync.
+     */
+    public long publishDeferred(InventoryEvent event) {
+        long[] lsn = new long[1];
+        publishDeferred(event, lsn);
+        return lsn[0];
+    }
+
+    // Returns the consistency token; lsn[0] is set to the log position the publish must be durable up to
+    private long publishDeferred(InventoryEvent event, long[] lsn) {
+        Observation span = instrumentation.publishSpan(event.getClass().getSimpleName(), event.sku(), 1);
+        return span == null ? doPublish(event, lsn) : span.observe(() -> doPublish(event, lsn));
+    }
+
+    private long doPublish(InventoryEvent event, long[] lsn) {
+        PublishEpoch epoch = publishing;
+        epoch.active.increment();
+        try {
+            if (dispatcher != null) {
+                lsn[0] = appendToLog(event);
+                return dispatcher.enqueue(event);
+            }
+            deliver(event);
+            lsn[0] = appendToLog(event);
+            return sequence.incrementAndGet();
+        } finally {
+            epoch.active.decrement();
+        }
+    }
+
+    /**
+     * Delivers the events to every subscriber as one batch (one delivery and one retry loop per subscriber)
+     * and appends them to the log with a single group commit. Subscribers must tolerate a batch being
+     * redelivered after a partial failure, which version checks already guarantee.
+     */
+    public long publishBatch(List<InventoryEvent> events) {
+        long[] lsn = new long[1];
+        long token = publishBatchDeferred(events, lsn);
+        awaitDurable(lsn[0]);
+        return token;
+    }
+
+    /** {@link #publishBatch} without the wait for the group commit; see {@link #publishDeferred}. */
+    public long publishBatchDeferred(List<InventoryEvent> events) {
+        long[] lsn = new long[1];
+        publishBatchDeferred(events, lsn);
+        return lsn[0];
+    }
+
+    private long publishBatchDeferred(List<InventoryEvent> events, long[] lsn) {
+        if (events.isEmpty()) return sequence.get();
+        Observation span = instrumentation.publishSpan("batch", null, events.size());
+        return span == null ? doPublishBatch(events, lsn) : span.observe(() -> doPublishBatch(events, lsn));
+    }
+
+    private long doPublishBatch(List<InventoryEvent> events, long[] lsn) {
+        PublishEpoch epoch = publishing;
+        epoch.active.increment();
+        try {
+            if (dispatcher != null) {
+                // Queued on every partition the rows route to, and delivered once all of them reach it
+                lsn[0] = appendToLog(events);
+                return events.size() == 1 ? dispatcher.enqueue(events.get(0)) : dispatcher.enqueue(events);
+            }
+            for (Subscriber s : subscribers) {
+                deliverOrRetry(s, null, events);
+            }
+            lsn[0] = appendToLog(events);
+            return sequence.addAndGet(events.size());
+        } finally {
+            epoch.active.decrement();
+        }
+    }
+
+    /**
+     * Waits until every publish that had started when this was called has returned or failed. In sync mode
+     * any event a subscriber saw before the call is then in the log; in async mode any event logged before
+     * the call is covered by {@link #currentSequence}. Publishes starting later are not waited for, so a
+     * steady stream of commands cannot hold it up.
+     */
+    public synchronized void awaitPublishes() {
+        PublishEpoch previous = publishing;
+        publishing = new PublishEpoch();
+        // Publishes take microseconds; this runs once per rebuild or snapshot
+        while (previous.active.sum() != 0) {
+            LockSupport.parkNanos(10_000);
+        }
+    }
+
+    /**
+     * Returns once the log holds everything up to a position from {@link #publishDeferred} durably, as the
+     * fsync policy defines it; at once without a log.
+     */
+    public void awaitDurable(long lsn) {
+        if (eventLog != null && lsn > 0) eventLog.awaitDurable(lsn);
+    }
+
+    // Writes without waiting for the group commit and returns the position to await; 0 if nothing was logged
+    private long appendToLog(InventoryEvent event) {
+        if (eventLog != null && event.durable()) {
+            return eventLog.appendDeferred(List.of(event));
+        }
+        return 0;
+    }
+
+    // A batch is still one log record; events that are not durable are left out of it
+    private long appendToLog(List<InventoryEvent> events) {
+        if (eventLog == null) return 0;
+        List<InventoryEvent> durable = events;
+        for (InventoryEvent event : events) {
+            if (!event.durable()) {
+                durable = events.stream().filter(InventoryEvent::durable).toList();
+                break;
+            }
+        }
+        return durable.isEmpty() ? 0 : eventLog.appendDeferred(durable);
+    }
+
+    /** Delivers an already recorded event (e.g. during log replay) without appending it again. */
+    public void redeliver(InventoryEvent event) {
+        deliver(event);
+    }
+
+    /** Delivers an already recorded group of events as one batch, as {@link #publishBatch} would. */
+    public void redeliver(List<InventoryEvent> events) {
+        for (Subscriber s : subscribers) {
+            deliverOrRetry(s, null, events);
+        }
+    }
+
+    private void deliver(InventoryEvent event) {
+        for (Subscriber s : subscribers) {
+            deliverOrRetry(s, event, null);
+        }
+    }
+
+    /**
+     * Synchronous delivery: one attempt on the calling thread. A failure hands the delivery to the retry
+     * scheduler and fails the publish at once, so the caller compensates instead of waiting out a backoff.
+     */
+    private void deliverOrRetry(Subscriber s, InventoryEvent event, List<InventoryEvent> batch) {
+        try {
+            deliverOnce(s, event, batch);
+        } catch (RuntimeException e) {
+            instrumentation.publishFailed();
+            retries.failed(s.name(), event, batch, e, false, 0);
+            throw new RuntimeException("Failed to deliver event to " + s.name() + "; retrying in the background", e);
+        }
+    }
+
+    // Async dispatchers never block or throw: a row with retries pending for a subscriber waits behind them,
+    // and the sequence stays unapplied for awaitApplied until the retries are done with it
+    private void deliverAsync(InventoryEvent event, long sequence) {
+        for (Subscriber s : subscribers) {
+            if (retries.queueBehind(s.name(), event, sequence)) continue;
+            try {
+                deliverOnce(s, event, null);
+            } catch (RuntimeException e) {
+                retries.failed(s.name(), event, null, e, true, sequence);
+            }
+        }
+    }
+
+    // A group goes to each subscriber as one batch. Events whose row has retries pending for the subscriber
+    // queue behind them instead, and a failed batch is retried event by event in row order, as nothing
+    // compensates in async mode; only then may the subscriber see the group's events apart
+    private void deliverAsync(List<InventoryEvent> events, long sequence) {
+        for (Subscriber s : subscribers) {
+            List<InventoryEvent> batch = new ArrayList<>(events.size());
+            for (InventoryEvent event : events) {
+                if (!retries.queueBehind(s.name(), event, sequence)) batch.add(event);
+            }
+            if (batch.isEmpty()) continue;
+            try {
+                deliverOnce(s, null, batch);
+            } catch (RuntimeException e) {
+                for (InventoryEvent event : batch) {
+                    retries.failed(s.name(), event, null, e, true, sequence);
                 }
-            });
+            }
+        }
+    }
+
+    // Used by the retry scheduler, which only keeps subscriber names
+    private void deliverTo(String subscriber, InventoryEvent event, List<InventoryEvent> batch) {
+        for (Subscriber s : subscribers) {
+            if (s.name().equals(subscriber)) {
+                deliverOnce(s, event, batch);
+                return;
+            }
+        }
+        throw new IllegalStateException("No subscriber named " + subscriber);
+    }
+
+    // Exactly one of event and batch is set; kept lambda-free on the unsampled path
+    private void deliverOnce(Subscriber s, InventoryEvent event, List<InventoryEvent> batch) {
+        try {
+            long start = s.metrics().start();
+            Observation consume = instrumentation.consumeSpan(batch == null ? event.getClass().getSimpleName() : "batch", s.name());
+            if (consume == null) {
+                invoke(s, event, batch);
+            } else {
+                consume.observe(() -> invoke(s, event, batch));
+            }
+            s.metrics().record(start, batch == null ? 1 : batch.size());
+        } catch (RuntimeException e) {
+            instrumentation.consumeFailed();
+            throw e;
+        }
+    }
+
+    private static void invoke(Subscriber s, InventoryEvent event, List<InventoryEvent> batch) {
+        if (batch == null) {
+            s.onEvent().accept(event);
+        } else {
+            s.onBatch().accept(batch);
+        }
     }
 
     public void subscribe(Consumer<InventoryEvent> handler) {
-        subscribers.add(handler);
+        subscribe("subscriber-" + subscribers.size(), handler);
+    }
+
+    /** The name tags this subscriber's delivery metrics and consume spans. */
+    public void subscribe(String name, Consumer<InventoryEvent> handler) {
+        subscribe(name, handler, events -> events.forEach(handler));
+    }
+
+    public void subscribe(Consumer<InventoryEvent> handler, Consumer<List<InventoryEvent>> batchHandler) {
+        subscribe("subscriber-" + subscribers.size(), handler, batchHandler);
+    }
+
+    /** Subscribes with a dedicated handler for batches published through {@link #publishBatch}. */
+    public void subscribe(String name, Consumer<InventoryEvent> handler, Consumer<List<InventoryEvent>> batchHandler) {
+        subscribers.add(new Subscriber(name, handler, batchHandler, instrumentation.forSubscriber(name)));
+    }
+
+    /** Starts the dispatcher threads in async mode; a no-op in synchronous mode. Idempotent. */
+    public synchronized void start() {
+        if (dispatcher != null) dispatcher.start();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (dispatcher != null) dispatcher.stop();
+        retries.stop();
     }
 
-    // Kept for backward compatibility; no-op in synchronous mode
-    public void start() { }
+    public Mode mode() {
+        return dispatcher == null ? Mode.SYNC : Mode.ASYNC;
+    }
+
+    /** Token covering every event published so far; hand it to readers that must observe those events. */
+    public long currentSequence() {
+        return sequence.get();
+    }
+
+    /**
+     * Waits until subscribers have applied every event up to the given token. An event whose delivery
+     * failed counts once its retries deliver it or it is dead-lettered, so a dead-lettered event is the one
+     * case where a read after this returns true can miss a write. Always true immediately in synchronous
+     * mode; false if the timeout elapses first.
+     */
+    public boolean awaitApplied(long token, Duration timeout) throws InterruptedException {
+        if (dispatcher == null || token <= 0) return true;
+        return dispatcher.awaitApplied(token, timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
 
-    public List<DLQEntry> deadLetters() {
+    /** Deliveries that still failed after every retry. */
+    public DeadLetterQueue deadLetters() {
         return deadLetterQueue;
     }
+
+    /** Deliveries waiting for a retry, including async events held behind a failed one for the same row. */
+    public int pendingRetries() {
+        return retries.pending();
+    }
+
+    /** Sends one dead letter back to its subscriber now; false if no entry has that id. */
+    public boolean redrive(long id) {
+        DeadLetterQueue.DeadLetter entry = deadLetterQueue.remove(id);
+        if (entry == null) return false;
+        retries.redrive(entry, dispatcher != null);
+        return true;
+    }
+
+    /**
+     * Starts a background job sending the current dead letters (all, or one subscriber's) back, oldest first,
+     * at up to {@code inventory.event-bus.dlq.redrive-per-second}. False if a job is already running.
+     */
+    public boolean startRedrive(String subscriber, long limit) {
+        return retries.startRedrive(subscriber, limit, dispatcher != null);
+    }
+
+    public void stopRedrive() {
+        retries.stopRedrive();
+    }
+
+    public RedriveStatus redriveStatus() {
+        return retries.redriveStatus();
+    }
 }
 
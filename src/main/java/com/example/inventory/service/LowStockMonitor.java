@@ -0,0 +1,185 @@
+package com.example.inventory.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Low-stock rules on the projection, per sku (on the global total) and per store|sku. Each projection change
+ * looks up the one rule for its key, so checking costs O(1) per event however many rules exist. An alert
+ * fires when a quantity drops below the threshold and the key stays listed as below until the quantity is
+ * back at threshold + hysteresis, so a quantity hovering around the threshold does not flap.
+ *
+ * Alerts go to a bounded queue that consumers drain; when it is full the oldest alert is dropped and counted.
+ * Rules live in memory and are not persisted.
+ */
+@Component
+public class LowStockMonitor implements CentralInventoryProjection.ChangeListener {
+
+    public record Rule(int threshold, int hysteresis) {}
+
+    public enum Scope { GLOBAL, STORE }
+
+    public enum Kind { BELOW, RECOVERED }
+
+    /** A key currently below its threshold; storeId is null for global rules. */
+    public record Breach(Scope scope, String storeId, String sku, int threshold, Instant since) {}
+
+    public record Alert(Kind kind, Scope scope, String storeId, String sku, int threshold, int quantity, Instant at) {}
+
+    private final CentralInventoryProjection projection;
+    private final int defaultHysteresis;
+    private final BlockingQueue<Alert> alerts;
+    private final LongAdder droppedAlerts = new LongAdder();
+    // Key: sku
+    private final Map<String, Rule> skuRules = new ConcurrentHashMap<>();
+    // Key: storeId|sku
+    private final Map<String, Rule> storeRules = new ConcurrentHashMap<>();
+    // Keys currently below threshold, keyed like the rules, so listing them never scans the projection
+    private final Map<String, Breach> globalBreaches = new ConcurrentHashMap<>();
+    private final Map<String, Breach> storeBreaches = new ConcurrentHashMap<>();
+
+    public LowStockMonitor(CentralInventoryProjection projection, MeterRegistry meterRegistry) {
+        this(projection, meterRegistry, 5, 10_000);
+    }
+
+    @Autowired
+    public LowStockMonitor(CentralInventoryProjection projection, MeterRegistry meterRegistry,
+                           @Value("${inventory.low-stock.default-hysteresis:5}") int defaultHysteresis,
+                           @Value("${inventory.low-stock.alert-queue-capacity:10000}") int alertQueueCapacity) {
+        this.projection = projection;
+        this.defaultHysteresis = defaultHysteresis;
+        this.alerts = new ArrayBlockingQueue<>(alertQueueCapacity);
+        FunctionCounter.builder("inventory.low_stock.alerts.dropped", droppedAlerts, LongAdder::sum)
+            .description("Low-stock alerts dropped because the alert queue was full")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void register() {
+        projection.addListener(this);
+    }
+
+    /** Sets the rule for the sku's global total (hysteresis null uses the default) and checks it right away. */
+    public void setRule(String sku, int threshold, Integer hysteresis) {
+        skuRules.put(sku, rule(threshold, hysteresis));
+        checkGlobal(sku);
+    }
+
+    public void setStoreRule(String storeId, String sku, int threshold, Integer hysteresis) {
+        storeRules.put(storeId + "|" + sku, rule(threshold, hysteresis));
+        checkStore(storeId, sku);
+    }
+
+    /** Removes the rule and its breach, if any, without an alert; false if there was no rule. */
+    public boolean removeRule(String sku) {
+        boolean removed = skuRules.remove(sku) != null;
+        globalBreaches.remove(sku);
+        return removed;
+    }
+
+    public boolean removeStoreRule(String storeId, String sku) {
+        String key = storeId + "|" + sku;
+        boolean removed = storeRules.remove(key) != null;
+        storeBreaches.remove(key);
+        return removed;
+    }
+
+    private Rule rule(int threshold, Integer hysteresis) {
+        if (threshold < 0) throw new IllegalArgumentException("threshold must be >= 0");
+        int band = hysteresis == null ? defaultHysteresis : hysteresis;
+        if (band < 0) throw new IllegalArgumentException("hysteresis must be >= 0");
+        return new Rule(threshold, band);
+    }
+
+    @Override
+    public void storeQuantityChanged(String storeId, String sku, int quantity) {
+        if (!storeRules.isEmpty()) checkStore(storeId, sku);
+    }
+
+    @Override
+    public void globalQuantityChanged(String sku, int quantity) {
+        if (!skuRules.isEmpty()) checkGlobal(sku);
+    }
+
+    private void checkGlobal(String sku) {
+        check(Scope.GLOBAL, sku, null, sku, skuRules, globalBreaches);
+    }
+
+    private void checkStore(String storeId, String sku) {
+        check(Scope.STORE, storeId + "|" + sku, storeId, sku, storeRules, storeBreaches);
+    }
+
+    /**
+     * Runs under the breach map's per-key lock and reads the quantity there, so when two deliveries for a key
+     * race, the later check sees the later value and the breach state ends up matching the projection.
+     */
+    private void check(Scope scope, String key, String storeId, String sku, Map<String, Rule> rules, Map<String, Breach> breaches) {
+        if (!rules.containsKey(key)) return;
+        Alert[] fired = new Alert[1];
+        breaches.compute(key, (k, breach) -> {
+            Rule rule = rules.get(k);
+            if (rule == null) return null;
+            int quantity = quantity(scope, storeId, sku);
+            if (breach == null && quantity < rule.threshold()) {
+                Instant now = Instant.now();
+                fired[0] = new Alert(Kind.BELOW, scope, storeId, sku, rule.threshold(), quantity, now);
+                return new Breach(scope, storeId, sku, rule.threshold(), now);
+            }
+            if (breach != null && quantity >= rule.threshold() + rule.hysteresis()) {
+                fired[0] = new Alert(Kind.RECOVERED, scope, storeId, sku, rule.threshold(), quantity, Instant.now());
+                return null;
+            }
+            return breach;
+        });
+        if (fired[0] != null) enqueue(fired[0]);
+    }
+
+    private int quantity(Scope scope, String storeId, String sku) {
+        return scope == Scope.GLOBAL ? projection.getGlobalQuantity(sku) : projection.getStoreQuantity(storeId, sku).orElse(0);
+    }
+
+    private void enqueue(Alert alert) {
+        while (!alerts.offer(alert)) {
+            if (alerts.poll() != null) droppedAlerts.increment();
+        }
+    }
+
+    /** Removes and returns up to max queued alerts, oldest first. */
+    public List<Alert> drainAlerts(int max) {
+        List<Alert> drained = new ArrayList<>(Math.min(max, alerts.size()));
+        alerts.drainTo(drained, max);
+        return drained;
+    }
+
+    public long droppedAlerts() {
+        return droppedAlerts.sum();
+    }
+
+    /** Global keys currently below threshold; costs O(breaches), not O(skus). */
+    public Collection<Breach> globalBreaches() {
+        return globalBreaches.values();
+    }
+
+    public Collection<Breach> storeBreaches() {
+        return storeBreaches.values();
+    }
+
+    /** Current quantity for a breach's key, read from the projection. */
+    public int currentQuantity(Breach breach) {
+        return quantity(breach.scope(), breach.storeId(), breach.sku());
+    }
+}
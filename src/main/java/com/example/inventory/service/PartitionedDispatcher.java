@@ -0,0 +1,261 @@
+package com.example.inventory.service;
+
+import com.example.inventory.event.InventoryEvent;
+import io.micrometer.context.ContextSnapshot;
+import io.micrometer.context.ContextSnapshotFactory;
+
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Asynchronous delivery for {@link InMemoryEventBus}: events are routed by storeId|sku to one of N bounded
+ * ring-buffer queues, each drained by its own dispatcher thread, so ordering per partition is preserved.
+ *
+ * A group of events (a batch or a transfer) is delivered as one unit: it is queued on every partition its
+ * rows route to, each of those partitions stops at it, and the last one to get there delivers the whole
+ * group. Rows keep their order, and a subscriber never sees one leg of a transfer without the others.
+ * Groups are queued under their partitions' enqueue locks, taken in index order, so two groups meet the
+ * partitions they share in the same order and never wait for each other.
+ *
+ * Every event gets a global sequence number. A partition's sequences are assigned under its enqueue lock,
+ * so they increase in queue order and "applied up to S" can be checked per partition. Events the bus
+ * hands to its retry scheduler stay unapplied until their retries deliver them or dead-letter them.
+ */
+class PartitionedDispatcher implements RetryScheduler.Holds {
+    // Exactly one of event and group is set
+    private record Envelope(long sequence, InventoryEvent event, Group group, ContextSnapshot context) {}
+
+    // Queued on each partition the events route to; delivered once, by the partition that reaches it last
+    private static final class Group {
+        final List<InventoryEvent> events;
+        final AtomicInteger arriving;
+        final CountDownLatch delivered = new CountDownLatch(1);
+
+        Group(List<InventoryEvent> events, int partitions) {
+            this.events = events;
+            this.arriving = new AtomicInteger(partitions);
+        }
+    }
+
+    private final Partition[] partitions;
+    private final AtomicLong sequence;
+    private final ObjLongConsumer<InventoryEvent> delivery;
+    private final ObjLongConsumer<List<InventoryEvent>> groupDelivery;
+    // Sequence -> subscribers whose retries still hold it
+    private final ConcurrentSkipListMap<Long, Integer> held = new ConcurrentSkipListMap<>();
+    private final ContextSnapshotFactory contextSnapshotFactory = ContextSnapshotFactory.builder().build();
+
+    private final ReentrantLock progressLock = new ReentrantLock();
+    private final Condition progress = progressLock.newCondition();
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    PartitionedDispatcher(int partitionCount, int queueCapacity, AtomicLong sequence, ObjLongConsumer<InventoryEvent> delivery,
+                          ObjLongConsumer<List<InventoryEvent>> groupDelivery) {
+        this.sequence = sequence;
+        this.delivery = delivery;
+        this.groupDelivery = groupDelivery;
+        this.partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition(i, queueCapacity);
+        }
+    }
+
+    void start() {
+        for (Partition partition : partitions) {
+            partition.start();
+        }
+    }
+
+    void stop() {
+        for (Partition partition : partitions) {
+            partition.stop();
+        }
+    }
+
+    /** Enqueues the event on its partition (blocking while that queue is full) and returns its sequence. */
+    long enqueue(InventoryEvent event) {
+        return partitions[partitionOf(event)].offer(event);
+    }
+
+    /**
+     * Enqueues the events as one group (blocking while a queue is full) and returns the sequence of the last;
+     * subscribers get them together, after every earlier event for their rows.
+     */
+    long enqueue(List<InventoryEvent> events) {
+        TreeSet<Integer> indexes = new TreeSet<>();
+        for (InventoryEvent event : events) {
+            indexes.add(partitionOf(event));
+        }
+        Group group = new Group(events, indexes.size());
+        ContextSnapshot context = contextSnapshotFactory.captureAll();
+        int locked = 0;
+        try {
+            for (int index : indexes) {
+                partitions[index].enqueueLock.lock();
+                locked++;
+            }
+            long seq = sequence.addAndGet(events.size());
+            for (int index : indexes) {
+                partitions[index].put(new Envelope(seq, null, group, context));
+            }
+            return seq;
+        } finally {
+            for (int index : indexes) {
+                if (locked-- == 0) break;
+                partitions[index].enqueueLock.unlock();
+            }
+        }
+    }
+
+    private int partitionOf(InventoryEvent event) {
+        int hash = (event.storeId() + "|" + event.sku()).hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), partitions.length);
+    }
+
+    /**
+     * Waits until every event with a sequence up to the given one that was enqueued before this call has
+     * been delivered, including its retries, or dead-lettered. Returns false on timeout.
+     */
+    boolean awaitApplied(long target, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        waiters.incrementAndGet();
+        progressLock.lock();
+        try {
+            while (!caughtUp(target)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return false;
+                progress.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            progressLock.unlock();
+            waiters.decrementAndGet();
+        }
+    }
+
+    private boolean caughtUp(long target) {
+        for (Partition partition : partitions) {
+            if (partition.appliedSequence < Math.min(target, partition.enqueuedSequence)) return false;
+        }
+        return held.isEmpty() || held.firstKey() > target;
+    }
+
+    // Called on the dispatcher thread, before the partition's watermark passes the sequence
+    @Override
+    public void held(long sequence) {
+        held.merge(sequence, 1, Integer::sum);
+    }
+
+    @Override
+    public void released(long sequence) {
+        held.computeIfPresent(sequence, (k, holders) -> holders == 1 ? null : holders - 1);
+        signalProgress();
+    }
+
+    private void signalProgress() {
+        if (waiters.get() == 0) return;
+        progressLock.lock();
+        try {
+            progress.signalAll();
+        } finally {
+            progressLock.unlock();
+        }
+    }
+
+    private final class Partition implements Runnable {
+        private final int index;
+        private final BlockingQueue<Envelope> queue;
+        private final ReentrantLock enqueueLock = new ReentrantLock();
+        private volatile long enqueuedSequence;
+        private volatile long appliedSequence;
+        private Thread thread;
+
+        Partition(int index, int capacity) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        long offer(InventoryEvent event) {
+            ContextSnapshot context = contextSnapshotFactory.captureAll();
+            enqueueLock.lock();
+            try {
+                long seq = sequence.incrementAndGet();
+                put(new Envelope(seq, event, null, context));
+                return seq;
+            } finally {
+                enqueueLock.unlock();
+            }
+        }
+
+        // Caller holds the enqueue lock
+        void put(Envelope envelope) {
+            try {
+                queue.put(envelope);
+                enqueuedSequence = envelope.sequence();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while enqueueing event", e);
+            }
+        }
+
+        void start() {
+            if (thread == null) {
+                thread = Thread.ofPlatform().daemon().name("event-dispatcher-" + index).start(this);
+            }
+        }
+
+        void stop() {
+            if (thread != null) thread.interrupt();
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                Envelope envelope;
+                try {
+                    envelope = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try (ContextSnapshot.Scope scope = envelope.context().setThreadLocals()) {
+                    if (envelope.group() == null) {
+                        delivery.accept(envelope.event(), envelope.sequence());
+                    } else {
+                        deliverGroup(envelope);
+                    }
+                } catch (RuntimeException e) {
+                    // The bus hands failures to its retry scheduler; anything else must not stop the partition
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    appliedSequence = envelope.sequence();
+                    signalProgress();
+                }
+            }
+        }
+
+        // The partitions that get here first wait, so none moves past the group before it is delivered
+        private void deliverGroup(Envelope envelope) throws InterruptedException {
+            Group group = envelope.group();
+            if (group.arriving.decrementAndGet() > 0) {
+                group.delivered.await();
+                return;
+            }
+            try {
+                groupDelivery.accept(group.events, envelope.sequence());
+            } finally {
+                group.delivered.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,4 @@
+package com.example.inventory.service;
+
+/** Quantity of one store|sku held for an order until it is confirmed, released or expires at expiresAtMillis. */
+public record ReservationHold(long id, String storeId, String sku, int quantity, long expiresAtMillis) {}
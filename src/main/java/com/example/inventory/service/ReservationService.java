@@ -0,0 +1,225 @@
+package com.example.inventory.service;
+
+import com.example.inventory.event.ReservationChanged;
+import com.example.inventory.model.InventoryRecord;
+import com.example.inventory.state.HeapInventoryStateTable;
+import com.example.inventory.state.InventoryStateTable;
+import com.example.inventory.state.InventoryStateTable.Row;
+import io.micrometer.observation.annotation.Observed;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Holds stock for orders until payment completes: reserve, then confirm (the units leave the store) or
+ * release. Unconfirmed holds lapse after their TTL. Expiry runs on a {@link HierarchicalTimingWheel} turned by
+ * one ticker thread, so an outstanding hold costs a wheel node and a map entry, never a scheduled task.
+ *
+ * A reserve checks on-hand minus already held quantity under the row's stock lock. Every change publishes
+ * {@link ReservationChanged} with the row's new held total. Holds are not in the event log or snapshots,
+ * so a restart drops them, which is the same as every hold lapsing at once.
+ */
+@Service
+public class ReservationService {
+    private final StoreInventoryService inventory;
+    private final InMemoryEventBus eventBus;
+    private final Duration defaultTtl;
+    private final long tickMillis;
+    private final HierarchicalTimingWheel<ReservationHold> expiries;
+    // Key: hold id -> its pending expiry, which also carries the hold
+    private final Map<Long, HierarchicalTimingWheel.Timeout<ReservationHold>> holds = new ConcurrentHashMap<>();
+    // Key: storeId|sku -> quantity held and the version of the last reservation change; written under the row lock
+    private final InventoryStateTable reserved = new HeapInventoryStateTable();
+    private final AtomicLong holdIds = new AtomicLong();
+    private Thread ticker;
+
+    public ReservationService(StoreInventoryService inventory, InMemoryEventBus eventBus) {
+        this(inventory, eventBus, 900, 100);
+    }
+
+    @Autowired
+    public ReservationService(StoreInventoryService inventory, InMemoryEventBus eventBus,
+                              @Value("${inventory.reservations.default-ttl-seconds:900}") long defaultTtlSeconds,
+                              @Value("${inventory.reservations.tick-ms:100}") long tickMillis) {
+        this.inventory = inventory;
+        this.eventBus = eventBus;
+        this.defaultTtl = Duration.ofSeconds(defaultTtlSeconds);
+        this.tickMillis = tickMillis;
+        // 64 slots over 4 levels covers 64^4 ticks, about 19 days at 100 ms
+        this.expiries = new HierarchicalTimingWheel<>(tickMillis, 64, 4, System.currentTimeMillis());
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (ticker != null) return;
+        ticker = Thread.ofPlatform().daemon().name("reservation-expiry").start(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(tickMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                expireDue(System.currentTimeMillis());
+            }
+        });
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (ticker != null) ticker.interrupt();
+    }
+
+    public Duration defaultTtl() {
+        return defaultTtl;
+    }
+
+    /** Holds quantity units if that much is on hand and not held yet; fails with InsufficientStockException otherwise. */
+    @Observed(name = "inventory.service.reserve")
+    public ReservationHold reserve(String storeId, String sku, int quantity, Duration ttl) {
+        if (quantity <= 0) throw new IllegalArgumentException("quantity must be > 0");
+        if (ttl.isNegative() || ttl.isZero()) throw new IllegalArgumentException("ttl must be > 0");
+        ReentrantLock lock = inventory.rowLock(storeId, sku);
+        lock.lock();
+        try {
+            int onHand = inventory.getStock(storeId, sku).map(InventoryRecord::getQuantity).orElse(0);
+            int available = onHand - heldQuantity(storeId, sku);
+            if (available < quantity) throw new StoreInventoryService.InsufficientStockException(storeId, sku, Math.max(0, available));
+            long now = System.currentTimeMillis();
+            ReservationHold hold = new ReservationHold(holdIds.incrementAndGet(), storeId, sku, quantity, now + ttl.toMillis());
+            ReservationChanged change = changeHeld(storeId, sku, quantity, now);
+            try {
+                eventBus.publish(change);
+            } catch (RuntimeException e) {
+                revertHeld(storeId, sku, quantity, e);
+                throw e;
+            }
+            holds.put(hold.id(), expiries.schedule(hold, hold.expiresAtMillis()));
+            return hold;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Turns a hold into a sale: the units leave on-hand stock and the hold is closed, in one event batch. */
+    @Observed(name = "inventory.service.reservation.confirm")
+    public InventoryRecord confirm(long holdId) {
+        ReservationHold hold = take(holdId);
+        ReentrantLock lock = inventory.rowLock(hold.storeId(), hold.sku());
+        InventoryRecord record;
+        long[] lsn = new long[1];
+        lock.lock();
+        try {
+            ReservationChanged change = changeHeld(hold.storeId(), hold.sku(), -hold.quantity(), System.currentTimeMillis());
+            try {
+                record = inventory.commitReserved(hold.storeId(), hold.sku(), hold.quantity(), change, lsn);
+            } catch (RuntimeException e) {
+                revertHeld(hold.storeId(), hold.sku(), -hold.quantity(), e);
+                holds.put(hold.id(), expiries.schedule(hold, hold.expiresAtMillis()));
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+        eventBus.awaitDurable(lsn[0]);
+        return record;
+    }
+
+    /** Gives the held units back to available stock. */
+    @Observed(name = "inventory.service.reservation.release")
+    public void release(long holdId) {
+        ReservationHold hold = take(holdId);
+        try {
+            releaseHeld(hold, true);
+        } catch (RuntimeException e) {
+            holds.put(hold.id(), expiries.schedule(hold, hold.expiresAtMillis()));
+            throw e;
+        }
+    }
+
+    /** Releases every hold whose TTL ran out by nowMillis and returns how many there were; called by the ticker. */
+    public int expireDue(long nowMillis) {
+        int expired = 0;
+        for (ReservationHold hold : expiries.advanceTo(nowMillis)) {
+            // The row lock orders this after the reserve that registered the hold
+            ReentrantLock lock = inventory.rowLock(hold.storeId(), hold.sku());
+            lock.lock();
+            try {
+                // A concurrent confirm or release may have taken the hold after it fell due
+                if (holds.remove(hold.id()) == null) continue;
+                expired++;
+                releaseHeld(hold, false);
+            } catch (RuntimeException e) {
+                // The bus retries the delivery itself. The held total on this side is correct and the next
+                // change to the row carries it to subscribers, so the hold is not retried.
+            } finally {
+                lock.unlock();
+            }
+        }
+        return expired;
+    }
+
+    public int openHolds() {
+        return holds.size();
+    }
+
+    public int heldQuantity(String storeId, String sku) {
+        Row row = reserved.get(storeId, sku);
+        return row == null ? 0 : row.quantity();
+    }
+
+    private ReservationHold take(long holdId) {
+        HierarchicalTimingWheel.Timeout<ReservationHold> pending = holds.remove(holdId);
+        if (pending == null) throw new UnknownHoldException(holdId);
+        expiries.cancel(pending);
+        return pending.payload();
+    }
+
+    private void releaseHeld(ReservationHold hold, boolean revertOnFailure) {
+        ReentrantLock lock = inventory.rowLock(hold.storeId(), hold.sku());
+        lock.lock();
+        try {
+            ReservationChanged change = changeHeld(hold.storeId(), hold.sku(), -hold.quantity(), System.currentTimeMillis());
+            try {
+                eventBus.publish(change);
+            } catch (RuntimeException e) {
+                if (revertOnFailure) revertHeld(hold.storeId(), hold.sku(), -hold.quantity(), e);
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the row lock
+    private ReservationChanged changeHeld(String storeId, String sku, int delta, long now) {
+        Row row = reserved.compute(storeId, sku, current -> new Row(
+            Math.max(0, (current == null ? 0 : current.quantity()) + delta),
+            (current == null ? 0 : current.version()) + 1,
+            now));
+        return new ReservationChanged(storeId, sku, row.quantity(), row.version(), Instant.ofEpochMilli(now));
+    }
+
+    // Undoes a change whose delivery failed under a new version, as StoreInventoryService compensates stock writes
+    private void revertHeld(String storeId, String sku, int delta, RuntimeException cause) {
+        try {
+            eventBus.publish(changeHeld(storeId, sku, -delta, System.currentTimeMillis()));
+        } catch (RuntimeException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    public static class UnknownHoldException extends RuntimeException {
+        public UnknownHoldException(long holdId) {
+            super("No open hold " + holdId + "; it was confirmed, released or has expired", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.example.inventory.service;
+
+import com.example.inventory.event.InventoryEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Retries failed deliveries for {@link InMemoryEventBus} on one timer thread, with exponential backoff, so
+ * neither a request thread nor an async dispatcher ever sleeps on a struggling subscriber. A delivery that
+ * is still failing after max attempts goes to the {@link DeadLetterQueue}.
+ *
+ * Retries of single events can be ordered: a subscriber's retries for one row form a chain, later events
+ * for that row queue behind it instead of overtaking it, and a chain whose head runs out of attempts is
+ * dead-lettered as a whole, in order. Async delivery needs this because nothing compensates a failed event
+ * there. In sync mode the failed command is compensated, so later events may go straight through.
+ *
+ * Async events carry their dispatch sequence while held here, failed or queued behind a failure, and
+ * {@link Holds} is told when one is taken and when it leaves, delivered or dead-lettered. The dispatcher
+ * keeps its applied watermark below held events, so read-your-writes waits for their retries.
+ *
+ * Also runs the rate-limited redrive job that feeds dead letters back through the retries.
+ */
+final class RetryScheduler {
+    private static final Logger log = LoggerFactory.getLogger(RetryScheduler.class);
+    private static final long REDRIVE_TICK_MS = 100;
+    // Deliveries per chain per timer run, so one long chain does not hold up other retries
+    private static final int DRAIN_BATCH = 256;
+
+    /** Delivers to the named subscriber once, throwing if it fails. */
+    interface Delivery {
+        void deliver(String subscriber, InventoryEvent event, List<InventoryEvent> batch);
+    }
+
+    /** Tracks the dispatch sequences of held async events; a sequence may be held once per subscriber. */
+    interface Holds {
+        Holds NONE = new Holds() {
+            @Override
+            public void held(long sequence) {
+            }
+
+            @Override
+            public void released(long sequence) {
+            }
+        };
+
+        void held(long sequence);
+
+        void released(long sequence);
+    }
+
+    // Exactly one of event and batch is set; sequence is 0 unless an async dispatcher holds its watermark for it
+    private static final class Retry {
+        final String subscriber;
+        final InventoryEvent event;
+        final List<InventoryEvent> batch;
+        final long sequence;
+        int attempts;
+        String lastError;
+
+        Retry(String subscriber, InventoryEvent event, List<InventoryEvent> batch, long sequence, int attempts, String lastError) {
+            this.subscriber = subscriber;
+            this.event = event;
+            this.batch = batch;
+            this.sequence = sequence;
+            this.attempts = attempts;
+            this.lastError = lastError;
+        }
+
+        int size() {
+            return batch == null ? 1 : batch.size();
+        }
+    }
+
+    private record RowKey(String subscriber, String storeId, String sku) {}
+
+    // Only touched inside the chain map's compute for its key
+    private static final class Chain {
+        final ArrayDeque<Retry> retries = new ArrayDeque<>();
+    }
+
+    private final Delivery delivery;
+    private final Holds holds;
+    private final DeadLetterQueue deadLetters;
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final int maxPending;
+    private final int redrivePerSecond;
+    private final ConcurrentHashMap<RowKey, Chain> chains = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile ScheduledExecutorService timer;
+
+    private ScheduledFuture<?> redriveTask;
+    private String redriveSubscriber;
+    private long redriveCursor;
+    private long redriveUntil;
+    private long redriven;
+    private long redriveLimit;
+
+    RetryScheduler(Delivery delivery, Holds holds, DeadLetterQueue deadLetters, int maxAttempts, long baseDelayMs, int maxPending,
+                   int redrivePerSecond) {
+        if (maxAttempts < 1) throw new IllegalArgumentException("max-attempts must be positive");
+        if (redrivePerSecond < 1) throw new IllegalArgumentException("redrive-per-second must be positive");
+        this.delivery = delivery;
+        this.holds = holds;
+        this.deadLetters = deadLetters;
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMs = baseDelayMs;
+        this.maxPending = maxPending;
+        this.redrivePerSecond = redrivePerSecond;
+    }
+
+    /**
+     * Takes over a delivery that just failed its first attempt. With ordered set, a single event joins its
+     * row's chain for this subscriber. A positive sequence is held until the retry leaves.
+     */
+    void failed(String subscriber, InventoryEvent event, List<InventoryEvent> batch, Exception error, boolean ordered, long sequence) {
+        if (sequence > 0) holds.held(sequence);
+        submit(new Retry(subscriber, event, batch, sequence, 1, message(error)), ordered);
+    }
+
+    /**
+     * Queues the event behind the subscriber's pending retries for its row, if there are any; returns false
+     * when the row has none and the event may be delivered right away.
+     */
+    boolean queueBehind(String subscriber, InventoryEvent event, long sequence) {
+        if (chains.isEmpty()) return false;
+        boolean[] queued = new boolean[1];
+        chains.computeIfPresent(new RowKey(subscriber, event.storeId(), event.sku()), (key, chain) -> {
+            // Before the drainer can see it, so it is never released ahead of being held
+            if (sequence > 0) holds.held(sequence);
+            chain.retries.add(new Retry(subscriber, event, null, sequence, 0, null));
+            queued[0] = true;
+            return chain;
+        });
+        if (queued[0]) pending.incrementAndGet();
+        return queued[0];
+    }
+
+    private void submit(Retry retry, boolean ordered) {
+        if (pending.get() >= maxPending) {
+            deadLetter(retry);
+            return;
+        }
+        pending.addAndGet(retry.size());
+        if (!ordered || retry.batch != null) {
+            schedule(() -> retryUnordered(retry), backoff(retry.attempts));
+            return;
+        }
+        RowKey key = new RowKey(retry.subscriber, retry.event.storeId(), retry.event.sku());
+        boolean[] started = new boolean[1];
+        chains.compute(key, (k, chain) -> {
+            if (chain == null) {
+                chain = new Chain();
+                started[0] = true;
+            }
+            chain.retries.add(retry);
+            return chain;
+        });
+        if (started[0]) schedule(() -> drain(key), backoff(retry.attempts));
+    }
+
+    private void retryUnordered(Retry retry) {
+        try {
+            retry.attempts++;
+            delivery.deliver(retry.subscriber, retry.event, retry.batch);
+            pending.addAndGet(-retry.size());
+            release(retry);
+        } catch (RuntimeException e) {
+            retry.lastError = message(e);
+            if (retry.attempts >= maxAttempts) {
+                pending.addAndGet(-retry.size());
+                deadLetter(retry);
+            } else {
+                schedule(() -> retryUnordered(retry), backoff(retry.attempts));
+            }
+        }
+    }
+
+    // Runs on the timer thread only, so a chain has one drainer at a time
+    private void drain(RowKey key) {
+        for (int delivered = 0; delivered < DRAIN_BATCH; delivered++) {
+            Retry[] head = new Retry[1];
+            chains.computeIfPresent(key, (k, chain) -> {
+                head[0] = chain.retries.peek();
+                return chain;
+            });
+            Retry retry = head[0];
+            if (retry == null) return;
+            try {
+                retry.attempts++;
+                delivery.deliver(retry.subscriber, retry.event, null);
+            } catch (RuntimeException e) {
+                retry.lastError = message(e);
+                if (retry.attempts >= maxAttempts) {
+                    deadLetterChain(key);
+                } else {
+                    schedule(() -> drain(key), backoff(retry.attempts));
+                }
+                return;
+            }
+            pending.decrementAndGet();
+            release(retry);
+            boolean[] done = new boolean[1];
+            chains.compute(key, (k, chain) -> {
+                chain.retries.poll();
+                done[0] = chain.retries.isEmpty();
+                return done[0] ? null : chain;
+            });
+            if (done[0]) return;
+        }
+        schedule(() -> drain(key), 0);
+    }
+
+    // Later events for the row were held for the head, so they go with it, in order
+    private void deadLetterChain(RowKey key) {
+        Chain[] removed = new Chain[1];
+        chains.computeIfPresent(key, (k, chain) -> {
+            removed[0] = chain;
+            return null;
+        });
+        if (removed[0] == null) return;
+        String cause = removed[0].retries.peek().lastError;
+        for (Retry retry : removed[0].retries) {
+            pending.decrementAndGet();
+            if (retry.lastError == null) retry.lastError = "Held behind a failed delivery: " + cause;
+            deadLetter(retry);
+        }
+    }
+
+    private void deadLetter(Retry retry) {
+        for (InventoryEvent event : retry.batch == null ? List.of(retry.event) : retry.batch) {
+            deadLetters.add(retry.subscriber, event, retry.lastError == null ? "unknown" : retry.lastError, retry.attempts);
+        }
+        release(retry);
+    }
+
+    private void release(Retry retry) {
+        if (retry.sequence > 0) holds.released(retry.sequence);
+    }
+
+    /** Sends one dead letter back through the retries right away, as its own first attempt. */
+    void redrive(DeadLetterQueue.DeadLetter entry, boolean ordered) {
+        submit(new Retry(entry.subscriber(), entry.event(), null, 0, 0, entry.errorMessage()), ordered);
+    }
+
+    /**
+     * Starts feeding the dead letters present now (optionally one subscriber's) back through the retries, at
+     * most redrive-per-second of them per second and limit in total, oldest first. Entries that fail again
+     * come back with new ids, past the job's end, so a job always finishes. Returns false if one is running.
+     */
+    synchronized boolean startRedrive(String subscriber, long limit, boolean ordered) {
+        if (redriveTask != null && !redriveTask.isDone()) return false;
+        redriveSubscriber = subscriber;
+        redriveCursor = 0;
+        redriveUntil = deadLetters.nextId();
+        redriven = 0;
+        redriveLimit = limit;
+        int perTick = (int) Math.max(1, redrivePerSecond * REDRIVE_TICK_MS / 1000);
+        redriveTask = timer().scheduleAtFixedRate(() -> redriveTick(perTick, ordered), 0, REDRIVE_TICK_MS, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    synchronized void stopRedrive() {
+        if (redriveTask != null) redriveTask.cancel(false);
+    }
+
+    synchronized InMemoryEventBus.RedriveStatus redriveStatus() {
+        boolean running = redriveTask != null && !redriveTask.isDone();
+        return new InMemoryEventBus.RedriveStatus(running, redriveSubscriber, redriven, redriveLimit);
+    }
+
+    private synchronized void redriveTick(int perTick, boolean ordered) {
+        int budget = (int) Math.min(perTick, redriveLimit - redriven);
+        List<DeadLetterQueue.DeadLetter> batch = budget <= 0 ? List.of()
+            : deadLetters.list(redriveCursor, redriveUntil, budget, redriveSubscriber);
+        for (DeadLetterQueue.DeadLetter entry : batch) {
+            redriveCursor = entry.id();
+            if (deadLetters.remove(entry.id()) != null) {
+                redrive(entry, ordered);
+                redriven++;
+            }
+        }
+        if (batch.size() < budget || redriven >= redriveLimit) {
+            redriveTask.cancel(false);
+        }
+    }
+
+    /** Deliveries waiting for a retry, including events held behind them. */
+    int pending() {
+        return pending.get();
+    }
+
+    void stop() {
+        ScheduledExecutorService current = timer;
+        if (current != null) current.shutdownNow();
+    }
+
+    private void schedule(Runnable task, long delayMs) {
+        try {
+            timer().schedule(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.error("Retry task failed", e);
+                }
+            }, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down; whatever is still pending is lost with the process
+        }
+    }
+
+    // Started on first use, so a bus that never sees a failure never starts a thread
+    private ScheduledExecutorService timer() {
+        ScheduledExecutorService current = timer;
+        if (current != null) return current;
+        synchronized (this) {
+            if (timer == null) {
+                timer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().name("event-retry").factory());
+            }
+            return timer;
+        }
+    }
+
+    private long backoff(int attempts) {
+        return attempts <= 0 ? 0 : baseDelayMs << Math.min(attempts - 1, 20);
+    }
+
+    private static String message(Exception e) {
+        return e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+    }
+}
@@ -0,0 +1,458 @@
+package com.example.inventory.service;
+
+import com.example.inventory.event.InventoryEvent;
+import com.example.inventory.event.StockAdjusted;
+import com.example.inventory.event.StockReplaced;
+import com.example.inventory.state.InventoryStateTable.Row;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Every quantity a store row has had, as (timestamp, version, quantity), for as-of and time-range queries.
+ * Fed by the stock events on the bus. A row's changes are packed in chunks of {@link #CHUNK_SIZE}: each
+ * change is stored as its offset from the chunk's first timestamp and version and from its lowest
+ * quantity, bit-packed at the widths the chunk needs. Entries are fixed width within a chunk, so a lookup
+ * is a binary search over chunk start times and then one inside the chunk. Changes not yet in a chunk sit in
+ * a varint tail of deltas to the previous change. A typical change costs 3 to 6 bytes.
+ *
+ * Timestamps are the events' occurredAt, clamped so they never go backwards within a row. The history is in
+ * memory only; with the event log it is rebuilt from whatever startup replays.
+ *
+ * Memory is bounded when a row seals a chunk: its oldest chunks go once a later one already starts
+ * retentionHours before the row's last change, so as-of and range answers within that window are unchanged,
+ * and while the whole history is over maxBytes. Queries before a row's oldest kept change find nothing.
+ */
+@Component
+public class StockHistory {
+    public static final int CHUNK_SIZE = 128;
+
+    /** The row as of a change: quantity and version from that change on, until the next one. */
+    public record Change(long millis, long version, int quantity) {}
+
+    private final InMemoryEventBus eventBus;
+    private final CentralInventoryProjection projection;
+    private final boolean enabled;
+    private final long retentionMillis;
+    private final long maxBytes;
+    // Key: storeId|sku
+    private final Map<String, RowHistory> rows = new ConcurrentHashMap<>();
+    private final LongAdder changes = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    public StockHistory(InMemoryEventBus eventBus, CentralInventoryProjection projection) {
+        this(eventBus, projection, 0, 0);
+    }
+
+    public StockHistory(InMemoryEventBus eventBus, CentralInventoryProjection projection, long retentionHours, long maxBytes) {
+        this(eventBus, projection, true, retentionHours, maxBytes, new SimpleMeterRegistry());
+    }
+
+    @Autowired
+    public StockHistory(InMemoryEventBus eventBus, CentralInventoryProjection projection,
+                        @Value("${inventory.history.enabled:true}") boolean enabled,
+                        @Value("${inventory.history.retention-hours:720}") long retentionHours,
+                        @Value("${inventory.history.max-bytes:268435456}") long maxBytes,
+                        MeterRegistry meterRegistry) {
+        if (retentionHours < 0 || maxBytes < 0) throw new IllegalArgumentException("history limits must be >= 0");
+        this.eventBus = eventBus;
+        this.projection = projection;
+        this.enabled = enabled;
+        this.retentionMillis = retentionHours * 3_600_000;
+        this.maxBytes = maxBytes;
+        Gauge.builder("inventory.history.changes", changes, LongAdder::sum).register(meterRegistry);
+        Gauge.builder("inventory.history.bytes", bytes, LongAdder::sum).baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("inventory.history.evicted", evicted, LongAdder::sum).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        if (enabled) eventBus.subscribe("history", this::record);
+    }
+
+    /** Records a stock event's outcome; a stale or repeated event is ignored. */
+    public void record(InventoryEvent event) {
+        if (!(event instanceof StockReplaced) && !(event instanceof StockAdjusted)) return;
+        RowHistory row = rows.computeIfAbsent(event.storeId() + "|" + event.sku(), k -> new RowHistory());
+        synchronized (row) {
+            if (row.count > 0 && event.version() <= row.lastVersion) return;
+            int quantity;
+            if (event instanceof StockReplaced replaced) {
+                quantity = replaced.quantity();
+            } else {
+                quantity = Math.max(0, baseline(row, event) + ((StockAdjusted) event).delta());
+            }
+            long before = row.footprintBytes();
+            boolean sealed = row.append(Math.max(event.occurredAt().toEpochMilli(), row.lastMillis), event.version(), quantity);
+            bytes.add(row.footprintBytes() - before);
+            changes.increment();
+            if (sealed) evict(row);
+        }
+    }
+
+    // Caller holds the row's monitor; only the row that just grew gives up chunks to the byte budget
+    private void evict(RowHistory row) {
+        long cutoff = retentionMillis == 0 ? Long.MIN_VALUE : row.lastMillis - retentionMillis;
+        while (row.chunkCount > 0) {
+            // The next chunk already holds the change in effect at the cutoff
+            boolean expired = row.chunkCount > 1 && row.chunks[1].firstMillis <= cutoff;
+            if (!expired && (maxBytes == 0 || bytes.sum() <= maxBytes)) return;
+            Chunk oldest = row.dropOldest();
+            bytes.add(-oldest.footprintBytes());
+            changes.add(-oldest.count);
+            evicted.add(oldest.count);
+        }
+    }
+
+    // The quantity an adjustment applies to. A row first seen through an adjustment (history switched on
+    // late, or a snapshot loaded) starts from the projection's row when that already holds this event.
+    private int baseline(RowHistory row, InventoryEvent event) {
+        if (row.count > 0) return row.lastQuantity;
+        Row current = projection.getStoreRow(event.storeId(), event.sku());
+        if (current != null && current.version() == event.version()) {
+            return current.quantity() - ((StockAdjusted) event).delta();
+        }
+        return 0;
+    }
+
+    /** The last change at or before millis, or null if the row had none by then. */
+    public Change asOf(String storeId, String sku, long millis) {
+        RowHistory row = rows.get(storeId + "|" + sku);
+        if (row == null) return null;
+        synchronized (row) {
+            return row.asOf(millis);
+        }
+    }
+
+    /**
+     * Up to limit changes from fromMillis to toMillis inclusive with versions above afterVersion, oldest first.
+     * Several changes can share a millisecond, so a page ends on a version rather than a time.
+     */
+    public List<Change> range(String storeId, String sku, long fromMillis, long toMillis, long afterVersion, int limit) {
+        RowHistory row = rows.get(storeId + "|" + sku);
+        if (row == null) return List.of();
+        synchronized (row) {
+            return row.range(fromMillis, toMillis, afterVersion, limit);
+        }
+    }
+
+    /** Changes held now, after eviction. */
+    public long changes() {
+        return changes.sum();
+    }
+
+    /** Changes dropped by the retention window or the byte budget. */
+    public long evicted() {
+        return evicted.sum();
+    }
+
+    /** Bytes held by the packed chunks and tails, without the map and per-row headers. */
+    public long footprintBytes() {
+        return bytes.sum();
+    }
+
+    private static final class RowHistory {
+        Chunk[] chunks = new Chunk[0];
+        int chunkCount;
+        // Varint deltas to the previous change; the first is against the last change of the last chunk
+        private byte[] tail = new byte[16];
+        private int tailLength;
+        private int tailCount;
+        private long tailBaseMillis;
+        private long tailBaseVersion;
+        private int tailBaseQuantity;
+        int count;
+        long lastMillis;
+        long lastVersion;
+        int lastQuantity;
+
+        // True when the change sealed a chunk
+        boolean append(long millis, long version, int quantity) {
+            if (tailLength + 3 * 10 > tail.length) tail = Arrays.copyOf(tail, tail.length * 2);
+            tailLength = Varints.writeUnsigned(tail, tailLength, millis - lastMillis);
+            tailLength = Varints.writeUnsigned(tail, tailLength, version - lastVersion - 1);
+            tailLength = Varints.writeSigned(tail, tailLength, (long) quantity - lastQuantity);
+            tailCount++;
+            count++;
+            lastMillis = millis;
+            lastVersion = version;
+            lastQuantity = quantity;
+            if (tailCount < CHUNK_SIZE) return false;
+            seal();
+            return true;
+        }
+
+        Chunk dropOldest() {
+            Chunk oldest = chunks[0];
+            System.arraycopy(chunks, 1, chunks, 0, --chunkCount);
+            chunks[chunkCount] = null;
+            return oldest;
+        }
+
+        private void seal() {
+            long[] millis = new long[tailCount];
+            long[] versions = new long[tailCount];
+            int[] quantities = new int[tailCount];
+            decodeTail(millis, versions, quantities);
+            if (chunkCount == chunks.length) chunks = Arrays.copyOf(chunks, Math.max(4, chunkCount * 2));
+            chunks[chunkCount++] = Chunk.pack(millis, versions, quantities, tailCount);
+            tailBaseMillis = lastMillis;
+            tailBaseVersion = lastVersion;
+            tailBaseQuantity = lastQuantity;
+            tail = new byte[16];
+            tailLength = 0;
+            tailCount = 0;
+        }
+
+        private void decodeTail(long[] millis, long[] versions, int[] quantities) {
+            long m = tailBaseMillis;
+            long v = tailBaseVersion;
+            long q = tailBaseQuantity;
+            int[] position = {0};
+            for (int i = 0; i < tailCount; i++) {
+                m += Varints.readUnsigned(tail, position);
+                v += Varints.readUnsigned(tail, position) + 1;
+                q += Varints.readSigned(tail, position);
+                millis[i] = m;
+                versions[i] = v;
+                quantities[i] = (int) q;
+            }
+        }
+
+        Change asOf(long at) {
+            if (tailCount > 0) {
+                long[] millis = new long[tailCount];
+                long[] versions = new long[tailCount];
+                int[] quantities = new int[tailCount];
+                decodeTail(millis, versions, quantities);
+                if (millis[0] <= at) {
+                    int i = lastAtOrBefore(millis, tailCount, at);
+                    return new Change(millis[i], versions[i], quantities[i]);
+                }
+            }
+            // Last chunk starting at or before at; the change is in it, as the next one starts later
+            int lo = 0;
+            int hi = chunkCount - 1;
+            int found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (chunks[mid].firstMillis <= at) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            if (found < 0) return null;
+            Chunk chunk = chunks[found];
+            return chunk.change(chunk.lastAtOrBefore(at));
+        }
+
+        List<Change> range(long from, long to, long afterVersion, int limit) {
+            List<Change> result = new ArrayList<>(Math.min(limit, 64));
+            // First chunk that can hold a change at or after from
+            int c = 0;
+            int hi = chunkCount - 1;
+            while (c <= hi) {
+                int mid = (c + hi) >>> 1;
+                if (chunks[mid].lastMillis() < from) {
+                    c = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            for (; c < chunkCount && result.size() < limit; c++) {
+                Chunk chunk = chunks[c];
+                for (int i = chunk.lastAtOrBefore(from - 1) + 1; i < chunk.count && result.size() < limit; i++) {
+                    if (chunk.millis(i) > to) return result;
+                    Change change = chunk.change(i);
+                    if (change.version() > afterVersion) result.add(change);
+                }
+            }
+            if (tailCount > 0 && result.size() < limit) {
+                long[] millis = new long[tailCount];
+                long[] versions = new long[tailCount];
+                int[] quantities = new int[tailCount];
+                decodeTail(millis, versions, quantities);
+                for (int i = 0; i < tailCount && result.size() < limit; i++) {
+                    if (millis[i] > to) break;
+                    if (millis[i] >= from && versions[i] > afterVersion) result.add(new Change(millis[i], versions[i], quantities[i]));
+                }
+            }
+            return result;
+        }
+
+        private static int lastAtOrBefore(long[] millis, int count, long at) {
+            int lo = 0;
+            int hi = count - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (millis[mid] <= at) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return lo;
+        }
+
+        long footprintBytes() {
+            long total = tail.length;
+            for (int i = 0; i < chunkCount; i++) {
+                total += chunks[i].footprintBytes();
+            }
+            return total;
+        }
+    }
+
+    /** Changes as offsets from the chunk's bases, each field at a fixed bit width: [millis | version | quantity]. */
+    private static final class Chunk {
+        // Object and array headers plus the fields, roughly
+        private static final int OVERHEAD_BYTES = 64;
+
+        final long firstMillis;
+        final long firstVersion;
+        final int minQuantity;
+        final int count;
+        final byte millisBits;
+        final byte versionBits;
+        final byte quantityBits;
+        final long[] words;
+
+        private Chunk(long firstMillis, long firstVersion, int minQuantity, int count, int millisBits, int versionBits,
+                      int quantityBits, long[] words) {
+            this.firstMillis = firstMillis;
+            this.firstVersion = firstVersion;
+            this.minQuantity = minQuantity;
+            this.count = count;
+            this.millisBits = (byte) millisBits;
+            this.versionBits = (byte) versionBits;
+            this.quantityBits = (byte) quantityBits;
+            this.words = words;
+        }
+
+        static Chunk pack(long[] millis, long[] versions, int[] quantities, int count) {
+            int minQuantity = Integer.MAX_VALUE;
+            int maxQuantity = Integer.MIN_VALUE;
+            for (int i = 0; i < count; i++) {
+                minQuantity = Math.min(minQuantity, quantities[i]);
+                maxQuantity = Math.max(maxQuantity, quantities[i]);
+            }
+            // Both series only grow, so the last entry has the largest offset
+            int millisBits = bits(millis[count - 1] - millis[0]);
+            int versionBits = bits(versions[count - 1] - versions[0]);
+            int quantityBits = bits((long) maxQuantity - minQuantity);
+            int width = millisBits + versionBits + quantityBits;
+            long[] words = new long[(int) (((long) width * count + 63) >>> 6)];
+            for (int i = 0; i < count; i++) {
+                long offset = (long) i * width;
+                write(words, offset, millisBits, millis[i] - millis[0]);
+                write(words, offset + millisBits, versionBits, versions[i] - versions[0]);
+                write(words, offset + millisBits + versionBits, quantityBits, (long) quantities[i] - minQuantity);
+            }
+            return new Chunk(millis[0], versions[0], minQuantity, count, millisBits, versionBits, quantityBits, words);
+        }
+
+        long millis(int i) {
+            return firstMillis + read(words, (long) i * width(), millisBits);
+        }
+
+        long lastMillis() {
+            return millis(count - 1);
+        }
+
+        Change change(int i) {
+            long offset = (long) i * width();
+            return new Change(firstMillis + read(words, offset, millisBits),
+                firstVersion + read(words, offset + millisBits, versionBits),
+                (int) (minQuantity + read(words, offset + millisBits + versionBits, quantityBits)));
+        }
+
+        /** Index of the last change at or before at, or -1 if the first is later. */
+        int lastAtOrBefore(long at) {
+            int lo = -1;
+            int hi = count - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (millis(mid) <= at) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return lo;
+        }
+
+        long footprintBytes() {
+            return OVERHEAD_BYTES + words.length * 8L;
+        }
+
+        private int width() {
+            return millisBits + versionBits + quantityBits;
+        }
+
+        private static int bits(long range) {
+            return 64 - Long.numberOfLeadingZeros(range);
+        }
+
+        private static long read(long[] words, long bitOffset, int bits) {
+            if (bits == 0) return 0;
+            int word = (int) (bitOffset >>> 6);
+            int shift = (int) (bitOffset & 63);
+            long value = words[word] >>> shift;
+            if (shift + bits > 64) value |= words[word + 1] << (64 - shift);
+            return bits == 64 ? value : value & ((1L << bits) - 1);
+        }
+
+        private static void write(long[] words, long bitOffset, int bits, long value) {
+            if (bits == 0) return;
+            int word = (int) (bitOffset >>> 6);
+            int shift = (int) (bitOffset & 63);
+            words[word] |= value << shift;
+            if (shift + bits > 64) words[word + 1] |= value >>> (64 - shift);
+        }
+    }
+
+    private static final class Varints {
+        static int writeUnsigned(byte[] buffer, int position, long value) {
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+            return position;
+        }
+
+        static int writeSigned(byte[] buffer, int position, long value) {
+            return writeUnsigned(buffer, position, (value << 1) ^ (value >> 63));
+        }
+
+        static long readUnsigned(byte[] buffer, int[] position) {
+            long value = 0;
+            int shift = 0;
+            while (true) {
+                byte b = buffer[position[0]++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return value;
+                shift += 7;
+            }
+        }
+
+        static long readSigned(byte[] buffer, int[] position) {
+            long raw = readUnsigned(buffer, position);
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+    }
+}
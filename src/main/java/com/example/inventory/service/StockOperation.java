@@ -0,0 +1,17 @@
+package com.example.inventory.service;
+
+/**
+ * One replace or adjust command, alone or inside a batch. amount is the new quantity for REPLACE and the delta
+ * for ADJUST; expectedVersion is -1 when the caller does not use optimistic locking.
+ */
+public record StockOperation(Kind kind, String storeId, String sku, int amount, long expectedVersion) {
+    public enum Kind { REPLACE, ADJUST }
+
+    public static StockOperation replace(String storeId, String sku, int quantity, long expectedVersion) {
+        return new StockOperation(Kind.REPLACE, storeId, sku, quantity, expectedVersion);
+    }
+
+    public static StockOperation adjust(String storeId, String sku, int delta, long expectedVersion) {
+        return new StockOperation(Kind.ADJUST, storeId, sku, delta, expectedVersion);
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.inventory.service;
+
+import com.example.inventory.model.InventoryRecord;
+
+/** Outcome of one {@link StockOperation}: the new record, or the current version when the expected one did not match. */
+public record StockOperationResult(InventoryRecord record, long currentVersion) {
+    public static StockOperationResult applied(InventoryRecord record) {
+        return new StockOperationResult(record, record.getVersion());
+    }
+
+    public static StockOperationResult conflict(long currentVersion) {
+        return new StockOperationResult(null, currentVersion);
+    }
+
+    public boolean isApplied() {
+        return record != null;
+    }
+}
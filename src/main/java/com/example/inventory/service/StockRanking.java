@@ -0,0 +1,59 @@
+package com.example.inventory.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.IntSupplier;
+
+/**
+ * Skus ordered by quantity, then sku, kept current as quantities change. An update is O(log n) and the lowest
+ * N are read in O(N) by walking the front of a skip list, so neither side scans every sku.
+ */
+public final class StockRanking {
+
+    public record Entry(String sku, int quantity) {}
+
+    private static final Comparator<Entry> ORDER = Comparator.comparingInt(Entry::quantity).thenComparing(Entry::sku);
+
+    private final NavigableSet<Entry> order = new ConcurrentSkipListSet<>(ORDER);
+    // Key: sku -> the quantity it is ranked under, i.e. its entry in order
+    private final Map<String, Integer> ranked = new ConcurrentHashMap<>();
+
+    /**
+     * Re-ranks the sku at its current quantity. The quantity is read under the sku's lock, so when two updates
+     * race the later one ranks the later value. The new entry goes in before the old one comes out, so a
+     * concurrent reader never misses the sku; it may briefly see it twice, which {@link #lowest} skips.
+     */
+    void update(String sku, IntSupplier currentQuantity) {
+        ranked.compute(sku, (k, previous) -> {
+            int quantity = currentQuantity.getAsInt();
+            if (previous != null && previous == quantity) return previous;
+            order.add(new Entry(sku, quantity));
+            if (previous != null) order.remove(new Entry(sku, previous));
+            return quantity;
+        });
+    }
+
+    /** Up to n skus with the lowest quantities, lowest first; ties in sku order. */
+    public List<Entry> lowest(int n) {
+        List<Entry> lowest = new ArrayList<>(Math.min(n, 1024));
+        Set<String> seen = new HashSet<>();
+        Iterator<Entry> it = order.iterator();
+        while (lowest.size() < n && it.hasNext()) {
+            Entry entry = it.next();
+            if (seen.add(entry.sku())) lowest.add(entry);
+        }
+        return lowest;
+    }
+
+    public int size() {
+        return ranked.size();
+    }
+}
@@ -0,0 +1,4 @@
+package com.example.inventory.service;
+
+/** Moves quantity units of one sku from one store to another; one line of a transfer. */
+public record StockTransfer(String sku, String fromStoreId, String toStoreId, int quantity) {}
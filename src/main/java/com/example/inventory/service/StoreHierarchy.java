@@ -0,0 +1,176 @@
+package com.example.inventory.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Store → district → region → global hierarchy with per-sku totals for districts and regions. The projection
+ * passes each store row's change up the tree, so a rollup is always current and reading one is a map lookup.
+ * Stores without a district count only towards the global total; districts without a region only towards
+ * their own.
+ *
+ * Moving a store or district shifts just its own totals from the old ancestors to the new ones. Row writes
+ * hold a read lock striped by store and moves hold the write lock, so no change is lost or counted twice
+ * while a move is running. Readers may see a region between the two halves of a move.
+ *
+ * The totals live in a {@link Rollups} apart from the tree, so a projection rebuild can fill fresh ones
+ * against the same tree and swap them in.
+ */
+@Component
+public class StoreHierarchy {
+
+    /** A store's rows, visited as sku and quantity while the store is write-locked. */
+    @FunctionalInterface
+    interface StoreRows {
+        void forEach(ObjIntConsumer<String> visitor);
+    }
+
+    /** Per-sku totals of every district and region. */
+    static final class Rollups {
+        // Key: district or region id -> sku -> quantity
+        private final Map<String, Map<String, Integer>> districtTotals = new ConcurrentHashMap<>();
+        private final Map<String, Map<String, Integer>> regionTotals = new ConcurrentHashMap<>();
+
+        private static void add(Map<String, Map<String, Integer>> totals, String id, String sku, int delta) {
+            totals.computeIfAbsent(id, k -> new ConcurrentHashMap<>()).merge(sku, delta, Integer::sum);
+        }
+    }
+
+    private static final int STRIPES = 64;
+
+    private final ReentrantReadWriteLock[] locks = new ReentrantReadWriteLock[STRIPES];
+    private final Map<String, String> districtByStore = new ConcurrentHashMap<>();
+    private final Map<String, String> regionByDistrict = new ConcurrentHashMap<>();
+    private volatile Rollups rollups = new Rollups();
+
+    public StoreHierarchy() {
+        this("", "");
+    }
+
+    /** Takes comma-separated child=parent pairs, e.g. {@code S1=NORTH-1,S2=NORTH-1} and {@code NORTH-1=NORTH}. */
+    @Autowired
+    public StoreHierarchy(@Value("${inventory.hierarchy.stores:}") String storeDistricts,
+                          @Value("${inventory.hierarchy.districts:}") String districtRegions) {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+        parsePairs(storeDistricts, districtByStore);
+        parsePairs(districtRegions, regionByDistrict);
+    }
+
+    private static void parsePairs(String pairs, Map<String, String> into) {
+        for (String pair : pairs.split(",")) {
+            if (pair.isBlank()) continue;
+            int eq = pair.indexOf('=');
+            if (eq <= 0 || eq == pair.length() - 1) throw new IllegalArgumentException("Expected child=parent but got '" + pair.trim() + "'");
+            into.put(pair.substring(0, eq).trim(), pair.substring(eq + 1).trim());
+        }
+    }
+
+    /** Held while a store row is written and its change propagated. */
+    Lock readLock(String storeId) {
+        return locks[stripe(storeId)].readLock();
+    }
+
+    private static int stripe(String storeId) {
+        int h = storeId.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    /** Adds a store row's change to its district and region in the given totals; the caller holds {@link #readLock}. */
+    void propagate(Rollups into, String storeId, String sku, int delta) {
+        if (districtByStore.isEmpty()) return;
+        addToDistrict(into, districtByStore.get(storeId), sku, delta);
+    }
+
+    private void addToDistrict(Rollups into, String districtId, String sku, int delta) {
+        if (districtId == null) return;
+        Rollups.add(into.districtTotals, districtId, sku, delta);
+        String regionId = regionByDistrict.get(districtId);
+        if (regionId != null) Rollups.add(into.regionTotals, regionId, sku, delta);
+    }
+
+    /** Totals the queries read. */
+    Rollups rollups() {
+        return rollups;
+    }
+
+    /** Replaces the totals the queries read; the tree must not have moved since the new ones were filled. */
+    void swapRollups(Rollups replacement) {
+        rollups = replacement;
+    }
+
+    /** Puts the store under a district, or under none with null, moving its rows' quantities across. */
+    void moveStore(String storeId, String districtId, StoreRows rows) {
+        Lock lock = locks[stripe(storeId)].writeLock();
+        lock.lock();
+        try {
+            String previous = districtId == null ? districtByStore.remove(storeId) : districtByStore.put(storeId, districtId);
+            if (districtId == null ? previous == null : districtId.equals(previous)) return;
+            Rollups current = rollups;
+            rows.forEach((sku, quantity) -> {
+                if (quantity == 0) return;
+                addToDistrict(current, previous, sku, -quantity);
+                addToDistrict(current, districtId, sku, quantity);
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Puts the district under a region, or under none with null, moving its totals across. */
+    void moveDistrict(String districtId, String regionId) {
+        // Every store of the district may be writing, so this takes every stripe
+        for (ReentrantReadWriteLock lock : locks) {
+            lock.writeLock().lock();
+        }
+        try {
+            String previous = regionId == null ? regionByDistrict.remove(districtId) : regionByDistrict.put(districtId, regionId);
+            if (regionId == null ? previous == null : regionId.equals(previous)) return;
+            Rollups current = rollups;
+            Map<String, Integer> totals = current.districtTotals.getOrDefault(districtId, Map.of());
+            totals.forEach((sku, quantity) -> {
+                if (previous != null) Rollups.add(current.regionTotals, previous, sku, -quantity);
+                if (regionId != null) Rollups.add(current.regionTotals, regionId, sku, quantity);
+            });
+        } finally {
+            for (int i = locks.length - 1; i >= 0; i--) {
+                locks[i].writeLock().unlock();
+            }
+        }
+    }
+
+    public String districtOf(String storeId) {
+        return districtByStore.get(storeId);
+    }
+
+    public String regionOf(String districtId) {
+        return regionByDistrict.get(districtId);
+    }
+
+    public int districtQuantity(String districtId, String sku) {
+        return rollups.districtTotals.getOrDefault(districtId, Map.of()).getOrDefault(sku, 0);
+    }
+
+    public int regionQuantity(String regionId, String sku) {
+        return rollups.regionTotals.getOrDefault(regionId, Map.of()).getOrDefault(sku, 0);
+    }
+
+    /** Read-only live view of store → district. */
+    public Map<String, String> storeDistricts() {
+        return Collections.unmodifiableMap(districtByStore);
+    }
+
+    /** Read-only live view of district → region. */
+    public Map<String, String> districtRegions() {
+        return Collections.unmodifiableMap(regionByDistrict);
+    }
+}
@@ -1,107 +1,333 @@
 package com.example.inventory.service;
 
+import com.example.inventory.event.InventoryEvent;
 import com.example.inventory.event.StockAdjusted;
 import com.example.inventory.event.StockReplaced;
 import com.example.inventory.model.InventoryRecord;
+import com.example.inventory.state.HeapInventoryStateTable;
+import com.example.inventory.state.InventoryStateTable;
+import com.example.inventory.state.InventoryStateTable.Row;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import io.micrometer.observation.annotation.Observed;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Service
 public class StoreInventoryService {
     private final InMemoryEventBus eventBus;
     // Key: storeId|sku
-    private final Map<String, InventoryRecord> storeState = new ConcurrentHashMap<>();
+    private final InventoryStateTable storeState;
+    // Held from state change to publish so each row's events are delivered and logged in version order; released
+    // before the wait for the log's group commit, so writers to a hot row do not queue behind each other's fsync
+    private final StripedLocks rowLocks = new StripedLocks(1024);
 
     public StoreInventoryService(InMemoryEventBus eventBus) {
-        this.eventBus = eventBus;
+        this(eventBus, new HeapInventoryStateTable());
     }
 
-    private String key(String storeId, String sku) {
-        return storeId + "|" + sku;
+    @Autowired
+    public StoreInventoryService(InMemoryEventBus eventBus, @Qualifier("storeStateTable") InventoryStateTable storeState) {
+        this.eventBus = eventBus;
+        this.storeState = storeState;
     }
 
     @Observed(name = "inventory.service.replace")
     public InventoryRecord replaceStock(String storeId, String sku, int quantity) {
-        Objects.requireNonNull(storeId);
-        Objects.requireNonNull(sku);
-        if (quantity < 0) throw new IllegalArgumentException("quantity must be >= 0");
-        InventoryRecord next = storeState.compute(key(storeId, sku), (k, current) -> {
-            long nextVersion = current == null ? 1 : current.getVersion() + 1;
-            return new InventoryRecord(storeId, sku, quantity, nextVersion, Instant.now());
-        });
-        eventBus.publish(new StockReplaced(storeId, sku, next.getQuantity(), next.getVersion(), next.getUpdatedAt()));
-        return next;
+        return replaceStockWithOptimisticLock(storeId, sku, quantity, -1L);
     }
 
     public InventoryRecord replaceStockWithOptimisticLock(String storeId, String sku, int quantity, long expectedVersion) {
-        InventoryRecord before = getStock(storeId, sku).orElse(null);
-        if (expectedVersion >= 0) {
-            long currentVersion = before == null ? 0 : before.getVersion();
-            if (currentVersion != expectedVersion) {
-                throw new OptimisticLockException(currentVersion);
+        if (quantity < 0) throw new IllegalArgumentException("quantity must be >= 0");
+        return execute(StockOperation.replace(storeId, sku, quantity, expectedVersion));
+    }
+
+    @Observed(name = "inventory.service.adjust")
+    public InventoryRecord adjustStock(String storeId, String sku, int delta) {
+        return adjustStockWithOptimisticLock(storeId, sku, delta, -1L);
+    }
+
+    public InventoryRecord adjustStockWithOptimisticLock(String storeId, String sku, int delta, long expectedVersion) {
+        return execute(StockOperation.adjust(storeId, sku, delta, expectedVersion));
+    }
+
+    private InventoryRecord execute(StockOperation op) {
+        Objects.requireNonNull(op.storeId());
+        Objects.requireNonNull(op.sku());
+        ReentrantLock lock = rowLocks.lockFor(op.storeId(), op.sku());
+        Write write;
+        long lsn;
+        lock.lock();
+        try {
+            write = conditionalWrite(op, System.currentTimeMillis());
+            try {
+                lsn = eventBus.publishDeferred(toEvent(op, write.after()));
+            } catch (RuntimeException e) {
+                compensate(List.of(op), List.of(write), e);
+                throw e;
             }
+        } finally {
+            lock.unlock();
         }
+        eventBus.awaitDurable(lsn);
+        return toRecord(op.storeId(), op.sku(), write.after());
+    }
+
+    /**
+     * Applies a mixed list of replace/adjust operations in one pass and publishes the resulting events as a
+     * single batch. Operations whose expected version does not match are reported as conflicts and skipped;
+     * if delivery fails, every applied operation is compensated.
+     */
+    @Observed(name = "inventory.service.batch")
+    public List<StockOperationResult> applyBatch(List<StockOperation> operations) {
+        int[] stripes = new int[operations.size()];
+        for (int i = 0; i < operations.size(); i++) {
+            StockOperation op = operations.get(i);
+            Objects.requireNonNull(op.storeId());
+            Objects.requireNonNull(op.sku());
+            if (op.kind() == StockOperation.Kind.REPLACE && op.amount() < 0) throw new IllegalArgumentException("quantity must be >= 0");
+            stripes[i] = rowLocks.stripeOf(op.storeId(), op.sku());
+        }
+        List<StockOperationResult> results = new ArrayList<>(operations.size());
+        long lsn;
+        int[] locked = rowLocks.lockAll(stripes);
         try {
-            return replaceStock(storeId, sku, quantity);
-        } catch (RuntimeException e) {
-            // rollback memory state to before
-            if (before == null) {
-                storeState.remove(key(storeId, sku));
-            } else {
-                storeState.put(key(storeId, sku), before);
+            long now = System.currentTimeMillis();
+            List<InventoryEvent> events = new ArrayList<>(operations.size());
+            List<Write> writes = new ArrayList<>(operations.size());
+            List<StockOperation> applied = new ArrayList<>(operations.size());
+            for (StockOperation op : operations) {
+                Write write;
+                try {
+                    write = conditionalWrite(op, now);
+                } catch (OptimisticLockException e) {
+                    results.add(StockOperationResult.conflict(e.getCurrentVersion()));
+                    continue;
+                }
+                events.add(toEvent(op, write.after()));
+                writes.add(write);
+                applied.add(op);
+                results.add(StockOperationResult.applied(toRecord(op.storeId(), op.sku(), write.after())));
             }
-            throw e;
+            try {
+                lsn = eventBus.publishBatchDeferred(events);
+            } catch (RuntimeException e) {
+                compensate(applied, writes, e);
+                throw e;
+            }
+        } finally {
+            rowLocks.unlockAll(locked);
         }
+        eventBus.awaitDurable(lsn);
+        return results;
     }
 
-    @Observed(name = "inventory.service.adjust")
-    public InventoryRecord adjustStock(String storeId, String sku, int delta) {
-        Objects.requireNonNull(storeId);
-        Objects.requireNonNull(sku);
-        InventoryRecord next = storeState.compute(key(storeId, sku), (k, current) -> {
-            int currentQty = current == null ? 0 : current.getQuantity();
-            long nextVersion = current == null ? 1 : current.getVersion() + 1;
-            int newQty = Math.max(0, currentQty + delta);
-            return new InventoryRecord(storeId, sku, newQty, nextVersion, Instant.now());
-        });
-        eventBus.publish(new StockAdjusted(storeId, sku, delta, next.getVersion(), next.getUpdatedAt()));
-        return next;
+    /**
+     * Moves stock between stores as one unit: the stripes of every row involved are locked in a fixed order,
+     * all sources are checked for enough stock, and the debits and credits are published as one event group.
+     * Transfers that touch different stripes run in parallel. Fails as a whole with
+     * {@link InsufficientStockException} if a source would go negative.
+     */
+    @Observed(name = "inventory.service.transfer")
+    public List<InventoryRecord> transfer(List<StockTransfer> lines) {
+        List<StockOperation> legs = new ArrayList<>(lines.size() * 2);
+        for (StockTransfer line : lines) {
+            Objects.requireNonNull(line.sku());
+            Objects.requireNonNull(line.fromStoreId());
+            Objects.requireNonNull(line.toStoreId());
+            if (line.quantity() <= 0) throw new IllegalArgumentException("transfer quantity must be > 0");
+            if (line.fromStoreId().equals(line.toStoreId())) throw new IllegalArgumentException("transfer source and target must differ");
+            legs.add(StockOperation.adjust(line.fromStoreId(), line.sku(), -line.quantity(), -1L));
+            legs.add(StockOperation.adjust(line.toStoreId(), line.sku(), line.quantity(), -1L));
+        }
+        int[] stripes = new int[legs.size()];
+        for (int i = 0; i < legs.size(); i++) {
+            stripes[i] = rowLocks.stripeOf(legs.get(i).storeId(), legs.get(i).sku());
+        }
+        List<InventoryRecord> records = new ArrayList<>(legs.size());
+        long lsn;
+        int[] locked = rowLocks.lockAll(stripes);
+        try {
+            // Quantities cannot change while the stripes are held, so check every leg before writing any
+            Map<String, Integer> projected = new HashMap<>();
+            for (StockOperation leg : legs) {
+                int quantity = projected.computeIfAbsent(leg.storeId() + "|" + leg.sku(), k -> {
+                    Row row = storeState.get(leg.storeId(), leg.sku());
+                    return row == null ? 0 : row.quantity();
+                }) + leg.amount();
+                if (quantity < 0) throw new InsufficientStockException(leg.storeId(), leg.sku(), quantity - leg.amount());
+                projected.put(leg.storeId() + "|" + leg.sku(), quantity);
+            }
+            long now = System.currentTimeMillis();
+            List<Write> writes = new ArrayList<>(legs.size());
+            List<InventoryEvent> events = new ArrayList<>(legs.size());
+            for (StockOperation leg : legs) {
+                Write write = conditionalWrite(leg, now);
+                writes.add(write);
+                events.add(toEvent(leg, write.after()));
+                records.add(toRecord(leg.storeId(), leg.sku(), write.after()));
+            }
+            try {
+                lsn = eventBus.publishBatchDeferred(events);
+            } catch (RuntimeException e) {
+                compensate(legs, writes, e);
+                throw e;
+            }
+        } finally {
+            rowLocks.unlockAll(locked);
+        }
+        eventBus.awaitDurable(lsn);
+        return records;
     }
 
-    public InventoryRecord adjustStockWithOptimisticLock(String storeId, String sku, int delta, long expectedVersion) {
-        InventoryRecord before = getStock(storeId, sku).orElse(null);
-        if (expectedVersion >= 0) {
-            long currentVersion = before == null ? 0 : before.getVersion();
-            if (currentVersion != expectedVersion) {
+    // Lets ReservationService check and change holds under the same lock as stock writes to the row
+    ReentrantLock rowLock(String storeId, String sku) {
+        return rowLocks.lockFor(storeId, sku);
+    }
+
+    /**
+     * Takes confirmed units off the row and publishes that in one batch with the matching reservation change,
+     * so subscribers never see the units both on hand and held. The caller holds the row lock, and passes
+     * lsn[0] to {@link InMemoryEventBus#awaitDurable} once it has released it.
+     */
+    InventoryRecord commitReserved(String storeId, String sku, int quantity, InventoryEvent reservationChange, long[] lsn) {
+        StockOperation op = StockOperation.adjust(storeId, sku, -quantity, -1L);
+        Write write = conditionalWrite(op, System.currentTimeMillis());
+        try {
+            lsn[0] = eventBus.publishBatchDeferred(List.of(toEvent(op, write.after()), reservationChange));
+        } catch (RuntimeException e) {
+            compensate(List.of(op), List.of(write), e);
+            throw e;
+        }
+        return toRecord(storeId, sku, write.after());
+    }
+
+    // The rows a conditional write replaced and produced
+    private record Write(Row before, Row after) {}
+
+    /**
+     * Checks the expected version (-1 skips the check) and applies the operation in the same atomic step,
+     * so there is no window between the check and the write and only one table lookup per operation.
+     */
+    private Write conditionalWrite(StockOperation op, long now) {
+        Row[] before = new Row[1];
+        Row after = storeState.compute(op.storeId(), op.sku(), current -> {
+            long currentVersion = current == null ? 0 : current.version();
+            if (op.expectedVersion() >= 0 && op.expectedVersion() != currentVersion) {
                 throw new OptimisticLockException(currentVersion);
             }
+            before[0] = current;
+            int quantity = op.kind() == StockOperation.Kind.REPLACE
+                ? op.amount()
+                : Math.max(0, (current == null ? 0 : current.quantity()) + op.amount());
+            return new Row(quantity, currentVersion + 1, now);
+        });
+        return new Write(before[0], after);
+    }
+
+    /**
+     * Undoes writes whose delivery failed by writing the earlier quantity under a new version rather than
+     * restoring the old row, so a version number is never reused and subscribers that already applied the
+     * failed event converge. Callers hold the row locks, so nothing else wrote these rows in between.
+     * Compensations go out as one batch; if that fails too the bus retries it and dead-letters what still fails.
+     */
+    private void compensate(List<StockOperation> ops, List<Write> writes, RuntimeException cause) {
+        // First write per row tells the quantity to go back to
+        Map<String, StockOperation> rows = new LinkedHashMap<>();
+        Map<String, Integer> quantityBefore = new LinkedHashMap<>();
+        for (int i = 0; i < ops.size(); i++) {
+            StockOperation op = ops.get(i);
+            Row before = writes.get(i).before();
+            String key = op.storeId() + "|" + op.sku();
+            rows.putIfAbsent(key, op);
+            quantityBefore.putIfAbsent(key, before == null ? 0 : before.quantity());
+        }
+        long now = System.currentTimeMillis();
+        List<InventoryEvent> compensations = new ArrayList<>(rows.size());
+        for (Map.Entry<String, StockOperation> row : rows.entrySet()) {
+            StockOperation op = row.getValue();
+            int quantity = quantityBefore.get(row.getKey());
+            Row written = storeState.compute(op.storeId(), op.sku(), current -> new Row(quantity, current.version() + 1, now));
+            compensations.add(new StockReplaced(op.storeId(), op.sku(), quantity, written.version(), Instant.ofEpochMilli(now)));
         }
         try {
-            return adjustStock(storeId, sku, delta);
+            eventBus.publishBatch(compensations);
         } catch (RuntimeException e) {
-            if (before == null) {
-                storeState.remove(key(storeId, sku));
-            } else {
-                storeState.put(key(storeId, sku), before);
-            }
-            throw e;
+            cause.addSuppressed(e);
         }
     }
 
+    private static InventoryEvent toEvent(StockOperation op, Row row) {
+        Instant at = Instant.ofEpochMilli(row.updatedAtMillis());
+        return op.kind() == StockOperation.Kind.REPLACE
+            ? new StockReplaced(op.storeId(), op.sku(), row.quantity(), row.version(), at)
+            : new StockAdjusted(op.storeId(), op.sku(), op.amount(), row.version(), at);
+    }
+
     public static class OptimisticLockException extends RuntimeException {
         private final long currentVersion;
-        public OptimisticLockException(long currentVersion) { super("Stale ETag"); this.currentVersion = currentVersion; }
+        // Conflicts are routine under contention, so skip the stack trace
+        public OptimisticLockException(long currentVersion) { super("Stale ETag", null, false, false); this.currentVersion = currentVersion; }
         public long getCurrentVersion() { return currentVersion; }
     }
 
+    public static class InsufficientStockException extends RuntimeException {
+        private final String storeId;
+        private final String sku;
+        private final int available;
+        public InsufficientStockException(String storeId, String sku, int available) {
+            super("Insufficient stock for " + sku + " at " + storeId + ": " + available + " available");
+            this.storeId = storeId;
+            this.sku = sku;
+            this.available = available;
+        }
+        public String getStoreId() { return storeId; }
+        public String getSku() { return sku; }
+        public int getAvailable() { return available; }
+    }
+
+    /** Re-applies a recorded event (e.g. from the event log) without publishing it; stale versions are ignored. */
+    public void restore(InventoryEvent event) {
+        storeState.compute(event.storeId(), event.sku(), current -> {
+            if (current != null && event.version() <= current.version()) return current;
+            int currentQty = current == null ? 0 : current.quantity();
+            int quantity;
+            if (event instanceof StockReplaced replaced) {
+                quantity = replaced.quantity();
+            } else if (event instanceof StockAdjusted adjusted) {
+                quantity = Math.max(0, currentQty + adjusted.delta());
+            } else {
+                return current;
+            }
+            return new Row(quantity, event.version(), event.occurredAt().toEpochMilli());
+        });
+    }
+
+    /** Loads a row from a snapshot; a row older than the current one is ignored. */
+    public void restoreRow(String storeId, String sku, Row row) {
+        storeState.compute(storeId, sku, current -> current != null && current.version() >= row.version() ? current : row);
+    }
+
+    public void forEachRow(InventoryStateTable.RowVisitor visitor) {
+        storeState.forEach(visitor);
+    }
+
     public Optional<InventoryRecord> getStock(String storeId, String sku) {
-        return Optional.ofNullable(storeState.get(key(storeId, sku)));
+        Row row = storeState.get(storeId, sku);
+        return row == null ? Optional.empty() : Optional.of(toRecord(storeId, sku, row));
+    }
+
+    private static InventoryRecord toRecord(String storeId, String sku, Row row) {
+        return new InventoryRecord(storeId, sku, row.quantity(), row.version(), Instant.ofEpochMilli(row.updatedAtMillis()));
     }
 }
 
@@ -0,0 +1,47 @@
+package com.example.inventory.service;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed pool of locks striped by storeId|sku. Writers hold a row's stripe from the state change until the
+ * event is published, so events for one row reach subscribers in version order. Multi-row writers take
+ * their stripes in ascending index order, which rules out deadlocks.
+ */
+final class StripedLocks {
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    StripedLocks(int stripes) {
+        if (Integer.bitCount(stripes) != 1) throw new IllegalArgumentException("stripes must be a power of two");
+        this.locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.mask = stripes - 1;
+    }
+
+    int stripeOf(String storeId, String sku) {
+        int h = storeId.hashCode() * 31 + sku.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    ReentrantLock lockFor(String storeId, String sku) {
+        return locks[stripeOf(storeId, sku)];
+    }
+
+    /** Locks the given stripes in ascending order, skipping duplicates; returns the stripes actually locked. */
+    int[] lockAll(int[] stripes) {
+        int[] sorted = Arrays.stream(stripes).sorted().distinct().toArray();
+        for (int stripe : sorted) {
+            locks[stripe].lock();
+        }
+        return sorted;
+    }
+
+    void unlockAll(int[] lockedStripes) {
+        for (int i = lockedStripes.length - 1; i >= 0; i--) {
+            locks[lockedStripes[i]].unlock();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.example.inventory.snapshot;
+
+import com.example.inventory.state.InventoryStateTable.Row;
+import com.example.inventory.state.InventoryStateTable.RowVisitor;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of the store and projection rows.
+ *
+ * <pre>
+ * magic(4) formatVersion(4) lsn(8) createdAtMillis(8)
+ * section* : rows terminated by a 0 byte; each row is 1 storeRef skuRef quantity version updatedAt (varints)
+ * crc32(8) over everything before it
+ * </pre>
+ *
+ * storeId and sku strings are written inline the first time they appear (ref == number of strings seen so far)
+ * and referenced by index afterwards, so a sku shared by 2k stores costs one string plus small varints.
+ * Files are written in 1 MiB chunks and read through read-only mappings of up to 64 MiB each, one after
+ * another, so a snapshot may outgrow the 2 GiB a single mapping can cover.
+ */
+public final class SnapshotFile {
+    private static final int MAGIC = 0x494E5653; // "INVS"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    private static final int CHUNK_BYTES = 1 << 20;
+    private static final int WINDOW_BYTES = 64 << 20;
+
+    private SnapshotFile() {}
+
+    public record Header(long lsn, long createdAtMillis) {}
+
+    public static final class Writer implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_BYTES);
+        private final CRC32 crc = new CRC32();
+        private final Map<String, Integer> strings = new HashMap<>();
+        private long rows;
+
+        public Writer(Path file, long lsn) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            buffer.putInt(MAGIC);
+            buffer.putInt(FORMAT_VERSION);
+            buffer.putLong(lsn);
+            buffer.putLong(System.currentTimeMillis());
+        }
+
+        /** Returns a visitor that appends rows to the current section. */
+        public RowVisitor section() {
+            return (storeId, sku, row) -> {
+                byte[] storeBytes = strings.containsKey(storeId) ? null : storeId.getBytes(StandardCharsets.UTF_8);
+                byte[] skuBytes = strings.containsKey(sku) ? null : sku.getBytes(StandardCharsets.UTF_8);
+                ensureRoom(1 + 3 * 10 + 2 * 10 + length(storeBytes) + length(skuBytes));
+                buffer.put((byte) 1);
+                putString(storeId, storeBytes);
+                putString(sku, skuBytes);
+                putVarLong(row.quantity() & 0xFFFFFFFFL);
+                putVarLong(row.version());
+                putVarLong(row.updatedAtMillis());
+                rows++;
+            };
+        }
+
+        public void endSection() {
+            ensureRoom(1);
+            buffer.put((byte) 0);
+        }
+
+        public long rows() {
+            return rows;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                drain();
+                buffer.putLong(crc.getValue());
+                buffer.flip();
+                while (buffer.hasRemaining()) channel.write(buffer);
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void putString(String value, byte[] bytes) {
+            if (bytes == null) {
+                putVarLong(strings.get(value));
+                return;
+            }
+            strings.put(value, strings.size());
+            putVarLong(strings.size() - 1);
+            putVarLong(bytes.length);
+            buffer.put(bytes);
+        }
+
+        private void putVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        private void ensureRoom(int bytes) {
+            if (buffer.remaining() >= bytes) return;
+            try {
+                drain();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (buffer.remaining() < bytes) throw new IllegalArgumentException("Row too large for snapshot chunk");
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        private static int length(byte[] bytes) {
+            return bytes == null ? 0 : bytes.length;
+        }
+    }
+
+    /** Checks the trailing checksum without decoding rows. */
+    public static boolean verify(Path file) throws IOException {
+        return verify(file, WINDOW_BYTES);
+    }
+
+    /** As {@link #verify(Path)}, mapping at most windowBytes at a time. */
+    public static boolean verify(Path file, int windowBytes) throws IOException {
+        checkWindow(windowBytes);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + Long.BYTES) return false;
+            long bodyBytes = size - Long.BYTES;
+            CRC32 crc = new CRC32();
+            for (long position = 0; position < bodyBytes; position += windowBytes) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowBytes, bodyBytes - position)));
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(Long.BYTES);
+            while (trailer.hasRemaining()) {
+                if (channel.read(trailer, bodyBytes + trailer.position()) < 0) return false;
+            }
+            return trailer.getLong(0) == crc.getValue();
+        }
+    }
+
+    /**
+     * Streams the sections of a snapshot into the given visitors, in order. Does not check the checksum;
+     * call {@link #verify} first.
+     */
+    public static Header read(Path file, List<RowVisitor> sections) throws IOException {
+        return read(file, sections, WINDOW_BYTES);
+    }
+
+    /** As {@link #read(Path, List)}, mapping at most windowBytes at a time. */
+    public static Header read(Path file, List<RowVisitor> sections, int windowBytes) throws IOException {
+        checkWindow(windowBytes);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) throw new IOException("Not a snapshot file");
+            MappedInput in = new MappedInput(channel, windowBytes);
+            Header header = header(in.window);
+            List<String> strings = new ArrayList<>();
+            for (RowVisitor section : sections) {
+                while (in.get() != 0) {
+                    String storeId = readString(in, strings);
+                    String sku = readString(in, strings);
+                    int quantity = (int) readVarLong(in);
+                    long version = readVarLong(in);
+                    long updatedAt = readVarLong(in);
+                    section.visit(storeId, sku, new Row(quantity, version, updatedAt));
+                }
+            }
+            return header;
+        }
+    }
+
+    private static void checkWindow(int windowBytes) {
+        if (windowBytes < HEADER_BYTES) throw new IllegalArgumentException("Window smaller than the snapshot header");
+    }
+
+    // The file through consecutive read-only windows; a value may straddle two of them
+    private static final class MappedInput {
+        private final FileChannel channel;
+        private final long size;
+        private final int windowBytes;
+        private long windowStart;
+        private MappedByteBuffer window;
+
+        MappedInput(FileChannel channel, int windowBytes) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.windowBytes = windowBytes;
+            this.window = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(windowBytes, size));
+        }
+
+        byte get() {
+            if (!window.hasRemaining()) next();
+            return window.get();
+        }
+
+        void get(byte[] bytes) {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!window.hasRemaining()) next();
+                int n = Math.min(window.remaining(), bytes.length - offset);
+                window.get(bytes, offset, n);
+                offset += n;
+            }
+        }
+
+        private void next() {
+            windowStart += window.capacity();
+            if (windowStart >= size) throw new UncheckedIOException(new EOFException("Snapshot ends mid-row"));
+            try {
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(windowBytes, size - windowStart));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static Header header(ByteBuffer in) throws IOException {
+        if (in.remaining() < HEADER_BYTES || in.getInt() != MAGIC) throw new IOException("Not a snapshot file");
+        int format = in.getInt();
+        if (format != FORMAT_VERSION) throw new IOException("Unsupported snapshot format " + format);
+        return new Header(in.getLong(), in.getLong());
+    }
+
+    private static String readString(MappedInput in, List<String> strings) {
+        int ref = (int) readVarLong(in);
+        if (ref < strings.size()) return strings.get(ref);
+        int length = (int) readVarLong(in);
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        strings.add(value);
+        return value;
+    }
+
+    private static long readVarLong(MappedInput in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.inventory.snapshot;
+
+import com.example.inventory.eventlog.MappedEventLog;
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.service.StoreInventoryService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically checkpoints store and projection rows so a restart only replays the log tail.
+ *
+ * Snapshots are fuzzy: the log position is taken first, then rows are copied while writers keep going.
+ * Every event before that position is applied before the copy starts (in async mode the bus logs an event
+ * before its dispatcher applies it, so the copy waits for that), and events after it may or may not be;
+ * replaying from the position is safe because both sides ignore events whose version they already have.
+ */
+@Component
+@ConditionalOnProperty(name = {"inventory.event-log.enabled", "inventory.snapshot.enabled"}, havingValue = "true")
+public class SnapshotManager {
+    private static final Logger log = LoggerFactory.getLogger(SnapshotManager.class);
+    private static final Duration APPLY_TIMEOUT = Duration.ofSeconds(30);
+
+    private final MappedEventLog eventLog;
+    private final StoreInventoryService storeInventoryService;
+    private final CentralInventoryProjection projection;
+    private final InMemoryEventBus eventBus;
+    private final Path directory;
+    private final long intervalSeconds;
+    private final int retain;
+    private final Timer loadTimer;
+    private final Timer writeTimer;
+    private volatile long lastSnapshotMillis = -1;
+    private ScheduledExecutorService scheduler;
+
+    public SnapshotManager(MappedEventLog eventLog, StoreInventoryService storeInventoryService, CentralInventoryProjection projection,
+                           InMemoryEventBus eventBus, MeterRegistry meterRegistry,
+                           @Value("${inventory.snapshot.directory}") String directory,
+                           @Value("${inventory.snapshot.interval-seconds}") long intervalSeconds,
+                           @Value("${inventory.snapshot.retain}") int retain) {
+        this.eventLog = eventLog;
+        this.storeInventoryService = storeInventoryService;
+        this.projection = projection;
+        this.eventBus = eventBus;
+        this.directory = Path.of(directory);
+        this.intervalSeconds = intervalSeconds;
+        this.retain = Math.max(1, retain);
+        this.loadTimer = Timer.builder("inventory.snapshot.load").register(meterRegistry);
+        this.writeTimer = Timer.builder("inventory.snapshot.write").register(meterRegistry);
+        Gauge.builder("inventory.snapshot.age.seconds", this, SnapshotManager::ageSeconds).register(meterRegistry);
+        try {
+            Files.createDirectories(this.directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create snapshot directory " + directory, e);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (intervalSeconds <= 0) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().name("snapshot-writer").factory());
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                writeSnapshot();
+            } catch (Exception e) {
+                log.warn("Snapshot failed", e);
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+
+    public synchronized Path writeSnapshot() throws IOException {
+        long started = System.nanoTime();
+        long lsn = eventLog.endLsn();
+        Path file = directory.resolve(String.format("snapshot-%020d.bin", lsn));
+        if (Files.exists(file)) {
+            // Nothing was logged since the last checkpoint, so it is still current
+            lastSnapshotMillis = System.currentTimeMillis();
+            return file;
+        }
+        awaitAppliedBelow(lsn);
+        Path tmp = directory.resolve(file.getFileName() + ".tmp");
+        long rows;
+        try (SnapshotFile.Writer writer = new SnapshotFile.Writer(tmp, lsn)) {
+            storeInventoryService.forEachRow(writer.section());
+            writer.endSection();
+            projection.forEachRow(writer.section());
+            writer.endSection();
+            rows = writer.rows();
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        lastSnapshotMillis = System.currentTimeMillis();
+        writeTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        prune();
+        log.info("Wrote snapshot {} ({} rows, {} bytes)", file.getFileName(), rows, Files.size(file));
+        return file;
+    }
+
+    // Publishes that logged below lsn have a sequence once awaitPublishes returns; then wait for the dispatchers
+    private void awaitAppliedBelow(long lsn) throws IOException {
+        eventBus.awaitPublishes();
+        try {
+            if (!eventBus.awaitApplied(eventBus.currentSequence(), APPLY_TIMEOUT)) {
+                throw new IOException("Events logged before LSN " + lsn + " were not applied within " + APPLY_TIMEOUT);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for events before LSN " + lsn + " to apply");
+        }
+    }
+
+    /**
+     * Loads the newest snapshot whose checksum is valid into the (empty) services and returns the log
+     * position to replay from, or 0 if there is none.
+     */
+    public long loadLatest() {
+        long started = System.nanoTime();
+        try {
+            for (Path file : snapshots().reversed()) {
+                if (!SnapshotFile.verify(file)) {
+                    log.warn("Skipping corrupt snapshot {}", file.getFileName());
+                    continue;
+                }
+                SnapshotFile.Header header = SnapshotFile.read(file, List.of(storeInventoryService::restoreRow, projection::restoreRow));
+                lastSnapshotMillis = header.createdAtMillis();
+                long elapsed = System.nanoTime() - started;
+                loadTimer.record(elapsed, TimeUnit.NANOSECONDS);
+                log.info("Loaded snapshot {} in {} ms", file.getFileName(), elapsed / 1_000_000);
+                return header.lsn();
+            }
+            return 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load snapshot from " + directory, e);
+        }
+    }
+
+    double ageSeconds() {
+        long last = lastSnapshotMillis;
+        return last < 0 ? Double.NaN : (System.currentTimeMillis() - last) / 1000.0;
+    }
+
+    private List<Path> snapshots() throws IOException {
+        try (var listing = Files.list(directory)) {
+            return listing.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith("snapshot-") && name.endsWith(".bin");
+            }).sorted(Comparator.comparing(Path::getFileName)).toList();
+        }
+    }
+
+    private void prune() throws IOException {
+        List<Path> all = snapshots();
+        for (int i = 0; i < all.size() - retain; i++) {
+            Files.deleteIfExists(all.get(i));
+        }
+    }
+}
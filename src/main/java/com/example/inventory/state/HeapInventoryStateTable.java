@@ -0,0 +1,54 @@
+package com.example.inventory.state;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Heap table keyed by the concatenated storeId|sku string; the original layout of both services. */
+public class HeapInventoryStateTable implements InventoryStateTable {
+    // Per row: CHM node + key String + Row, plus the table slot
+    static final long BYTES_PER_ROW = 32 + 24 + 32 + 32 + 6;
+
+    private final Map<String, Row> rows = new ConcurrentHashMap<>();
+
+    private String key(String storeId, String sku) {
+        return storeId + "|" + sku;
+    }
+
+    @Override
+    public Row get(String storeId, String sku) {
+        return rows.get(key(storeId, sku));
+    }
+
+    @Override
+    public Row compute(String storeId, String sku, RowFunction function) {
+        return rows.compute(key(storeId, sku), (k, current) -> function.apply(current));
+    }
+
+    @Override
+    public void remove(String storeId, String sku) {
+        rows.remove(key(storeId, sku));
+    }
+
+    @Override
+    public long size() {
+        return rows.size();
+    }
+
+    @Override
+    public void forEach(RowVisitor visitor) {
+        rows.forEach((key, row) -> {
+            int separator = key.indexOf('|');
+            visitor.visit(key.substring(0, separator), key.substring(separator + 1), row);
+        });
+    }
+
+    @Override
+    public long footprintBytes() {
+        return rows.size() * BYTES_PER_ROW;
+    }
+
+    @Override
+    public InventoryStateTable newEmpty() {
+        return new HeapInventoryStateTable();
+    }
+}
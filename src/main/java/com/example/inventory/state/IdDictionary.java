@@ -0,0 +1,47 @@
+package com.example.inventory.state;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns dense int ids (starting at 1) to strings such as storeIds and skus, so each
+ * distinct value is held once instead of once per store|sku row.
+ */
+public class IdDictionary {
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[1024];
+    private int next = 1;
+
+    /** Returns the id for value, assigning a new one if needed. */
+    public int intern(String value) {
+        Integer id = ids.get(value);
+        if (id != null) return id;
+        return ids.computeIfAbsent(value, this::assign);
+    }
+
+    /** Returns the id for value, or 0 if it was never interned. */
+    public int idOf(String value) {
+        return ids.getOrDefault(value, 0);
+    }
+
+    public String valueOf(int id) {
+        String[] snapshot = values;
+        return id > 0 && id < snapshot.length ? snapshot[id] : null;
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    private synchronized int assign(String value) {
+        int id = next++;
+        String[] snapshot = values;
+        if (id >= snapshot.length) {
+            snapshot = Arrays.copyOf(snapshot, snapshot.length * 2);
+        }
+        snapshot[id] = value;
+        values = snapshot;
+        return id;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.inventory.state;
+
+/**
+ * Per store|sku state (quantity, version, timestamp) shared by the command side and the projection.
+ * Implementations must apply {@link #compute} atomically per key and invoke the function exactly once.
+ */
+public interface InventoryStateTable {
+
+    record Row(int quantity, long version, long updatedAtMillis) {}
+
+    @FunctionalInterface
+    interface RowFunction {
+        /** Receives the current row (null if absent) and returns the new one (null removes it). */
+        Row apply(Row current);
+    }
+
+    @FunctionalInterface
+    interface RowVisitor {
+        void visit(String storeId, String sku, Row row);
+    }
+
+    /** Returns the current row, or null if absent. */
+    Row get(String storeId, String sku);
+
+    Row compute(String storeId, String sku, RowFunction function);
+
+    void remove(String storeId, String sku);
+
+    long size();
+
+    /**
+     * Visits every row without blocking writers for the whole pass. The view is weakly consistent:
+     * rows changed during the pass may be seen in either state.
+     */
+    void forEach(RowVisitor visitor);
+
+    /** Approximate bytes held by the table, including key storage. */
+    long footprintBytes();
+
+    /** A new, empty table of the same engine, e.g. for a projection rebuild to fill. */
+    InventoryStateTable newEmpty();
+
+    static InventoryStateTable forEngine(String engine) {
+        return switch (engine) {
+            case "heap" -> new HeapInventoryStateTable();
+            case "offheap" -> new OffHeapInventoryStateTable();
+            default -> throw new IllegalArgumentException("Unknown state engine: " + engine);
+        };
+    }
+}
@@ -0,0 +1,303 @@
+package com.example.inventory.state;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Open-addressing (linear probing) table stored in direct buffers. storeId and sku are dictionary
+ * encoded to int ids and packed into one long key, so a row costs a fixed 32-byte slot off-heap and
+ * nothing on the heap besides the two dictionaries.
+ */
+public class OffHeapInventoryStateTable implements InventoryStateTable {
+    // Slot layout: key(8) version(8) updatedAt(8) quantity(4) padding(4); key 0 marks an empty slot
+    static final int SLOT_BYTES = 32;
+    private static final int KEY = 0;
+    private static final int VERSION = 8;
+    private static final int UPDATED_AT = 16;
+    private static final int QUANTITY = 24;
+    // 2^25 slots * 32 bytes = 1 GiB, the largest power of two a ByteBuffer can address
+    private static final int MAX_SEGMENT_CAPACITY = 1 << 25;
+    private static final int DEFAULT_SEGMENTS = 64;
+    private static final int DEFAULT_SEGMENT_CAPACITY = 1024;
+    // Rough heap cost of one dictionary entry (CHM node, boxed id, string, reverse slot)
+    static final long DICTIONARY_BYTES_PER_ENTRY = 96;
+
+    private final IdDictionary stores = new IdDictionary();
+    private final IdDictionary skus = new IdDictionary();
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    public OffHeapInventoryStateTable() {
+        this(DEFAULT_SEGMENTS, DEFAULT_SEGMENT_CAPACITY);
+    }
+
+    public OffHeapInventoryStateTable(int segmentCount, int initialSegmentCapacity) {
+        if (Integer.bitCount(segmentCount) != 1 || Integer.bitCount(initialSegmentCapacity) != 1) {
+            throw new IllegalArgumentException("segmentCount and initialSegmentCapacity must be powers of two");
+        }
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(initialSegmentCapacity);
+        }
+        this.segmentShift = 64 - Integer.numberOfTrailingZeros(segmentCount);
+    }
+
+    @Override
+    public Row get(String storeId, String sku) {
+        int storeKey = stores.idOf(storeId);
+        int skuKey = skus.idOf(sku);
+        if (storeKey == 0 || skuKey == 0) return null;
+        long key = pack(storeKey, skuKey);
+        long hash = hash(key);
+        return segmentFor(hash).get(key, hash);
+    }
+
+    @Override
+    public Row compute(String storeId, String sku, RowFunction function) {
+        long key = pack(stores.intern(storeId), skus.intern(sku));
+        long hash = hash(key);
+        return segmentFor(hash).compute(key, hash, function);
+    }
+
+    @Override
+    public void remove(String storeId, String sku) {
+        int storeKey = stores.idOf(storeId);
+        int skuKey = skus.idOf(sku);
+        if (storeKey == 0 || skuKey == 0) return;
+        long key = pack(storeKey, skuKey);
+        long hash = hash(key);
+        segmentFor(hash).compute(key, hash, current -> null);
+    }
+
+    @Override
+    public long size() {
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.size();
+        }
+        return total;
+    }
+
+    @Override
+    public void forEach(RowVisitor visitor) {
+        for (Segment segment : segments) {
+            // Copy one segment at a time so writers are only held up for a memory copy
+            ByteBuffer copy = segment.copySlots();
+            for (int offset = 0; offset < copy.capacity(); offset += SLOT_BYTES) {
+                long key = copy.getLong(offset + KEY);
+                if (key == 0) continue;
+                visitor.visit(stores.valueOf((int) (key >>> 32)), skus.valueOf((int) key), Segment.read(copy, offset));
+            }
+        }
+    }
+
+    @Override
+    public long footprintBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.capacityBytes();
+        }
+        return bytes + (long) (stores.size() + skus.size()) * DICTIONARY_BYTES_PER_ENTRY;
+    }
+
+    @Override
+    public InventoryStateTable newEmpty() {
+        return new OffHeapInventoryStateTable(segments.length, DEFAULT_SEGMENT_CAPACITY);
+    }
+
+    /** Off-heap bytes needed for the given number of rows, assuming keys spread evenly over segments. */
+    public static long estimateSlotBytes(long rows, int segmentCount, int initialSegmentCapacity) {
+        long perSegment = (rows + segmentCount - 1) / segmentCount;
+        long capacity = initialSegmentCapacity;
+        while (perSegment > capacity * 3 / 4) {
+            capacity <<= 1;
+        }
+        return capacity * SLOT_BYTES * segmentCount;
+    }
+
+    public static long estimateSlotBytes(long rows) {
+        return estimateSlotBytes(rows, DEFAULT_SEGMENTS, DEFAULT_SEGMENT_CAPACITY);
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> segmentShift)];
+    }
+
+    private static long pack(int storeKey, int skuKey) {
+        return ((long) storeKey << 32) | (skuKey & 0xFFFFFFFFL);
+    }
+
+    // Murmur3 fmix64: segment index uses the high bits, slot index the low bits
+    private static long hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private static final class Segment {
+        private final StampedLock lock = new StampedLock();
+        // Guarded by lock; readers go optimistic and derive the mask from the buffer they read
+        private ByteBuffer slots;
+        private int size;
+
+        Segment(int capacity) {
+            this.slots = ByteBuffer.allocateDirect(capacity * SLOT_BYTES);
+        }
+
+        Row get(long key, long hash) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                ByteBuffer buffer = slots;
+                int offset = find(buffer, key, hash);
+                Row row = offset < 0 ? null : read(buffer, offset);
+                if (lock.validate(stamp)) return row;
+            }
+            stamp = lock.readLock();
+            try {
+                int offset = find(slots, key, hash);
+                return offset < 0 ? null : read(slots, offset);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        Row compute(long key, long hash, RowFunction function) {
+            long stamp = lock.writeLock();
+            try {
+                int offset = find(slots, key, hash);
+                Row current = offset < 0 ? null : read(slots, offset);
+                Row next = function.apply(current);
+                if (next == null) {
+                    if (offset >= 0) delete(offset);
+                } else if (offset >= 0) {
+                    write(slots, offset, key, next);
+                } else {
+                    if (size + 1 > capacity() * 3 / 4) grow();
+                    write(slots, emptySlotFor(slots, hash), key, next);
+                    size++;
+                }
+                return next;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        long size() {
+            long stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        ByteBuffer copySlots() {
+            long stamp = lock.readLock();
+            try {
+                ByteBuffer copy = ByteBuffer.allocateDirect(slots.capacity());
+                copy.put(slots.duplicate().clear());
+                return copy;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        long capacityBytes() {
+            long stamp = lock.readLock();
+            try {
+                return slots.capacity();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private int capacity() {
+            return slots.capacity() / SLOT_BYTES;
+        }
+
+        private static int find(ByteBuffer buffer, long key, long hash) {
+            int capacity = buffer.capacity() / SLOT_BYTES;
+            int mask = capacity - 1;
+            int index = (int) hash & mask;
+            for (int probes = 0; probes < capacity; probes++) {
+                int offset = index * SLOT_BYTES;
+                long candidate = buffer.getLong(offset + KEY);
+                if (candidate == 0) return -1;
+                if (candidate == key) return offset;
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+
+        private static int emptySlotFor(ByteBuffer buffer, long hash) {
+            int mask = buffer.capacity() / SLOT_BYTES - 1;
+            int index = (int) hash & mask;
+            while (buffer.getLong(index * SLOT_BYTES + KEY) != 0) {
+                index = (index + 1) & mask;
+            }
+            return index * SLOT_BYTES;
+        }
+
+        private static Row read(ByteBuffer buffer, int offset) {
+            return new Row(buffer.getInt(offset + QUANTITY), buffer.getLong(offset + VERSION), buffer.getLong(offset + UPDATED_AT));
+        }
+
+        private static void write(ByteBuffer buffer, int offset, long key, Row row) {
+            buffer.putLong(offset + VERSION, row.version());
+            buffer.putLong(offset + UPDATED_AT, row.updatedAtMillis());
+            buffer.putInt(offset + QUANTITY, row.quantity());
+            buffer.putLong(offset + KEY, key);
+        }
+
+        // Backward-shift deletion keeps probe chains intact without tombstones
+        private void delete(int offset) {
+            int mask = capacity() - 1;
+            int hole = offset / SLOT_BYTES;
+            int index = hole;
+            while (true) {
+                index = (index + 1) & mask;
+                long key = slots.getLong(index * SLOT_BYTES + KEY);
+                if (key == 0) break;
+                int home = (int) hash(key) & mask;
+                boolean homeInRange = hole <= index ? (home > hole && home <= index) : (home > hole || home <= index);
+                if (!homeInRange) {
+                    copySlot(index * SLOT_BYTES, hole * SLOT_BYTES);
+                    hole = index;
+                }
+            }
+            clearSlot(hole * SLOT_BYTES);
+            size--;
+        }
+
+        private void copySlot(int from, int to) {
+            for (int i = 0; i < SLOT_BYTES; i += Long.BYTES) {
+                slots.putLong(to + i, slots.getLong(from + i));
+            }
+        }
+
+        private void clearSlot(int offset) {
+            for (int i = 0; i < SLOT_BYTES; i += Long.BYTES) {
+                slots.putLong(offset + i, 0L);
+            }
+        }
+
+        private void grow() {
+            int capacity = capacity();
+            if (capacity >= MAX_SEGMENT_CAPACITY) {
+                throw new IllegalStateException("State table segment is full (" + capacity + " slots)");
+            }
+            ByteBuffer old = slots;
+            ByteBuffer grown = ByteBuffer.allocateDirect(capacity * 2 * SLOT_BYTES);
+            for (int offset = 0; offset < old.capacity(); offset += SLOT_BYTES) {
+                long key = old.getLong(offset + KEY);
+                if (key == 0) continue;
+                int target = emptySlotFor(grown, hash(key));
+                write(grown, target, key, read(old, offset));
+            }
+            slots = grown;
+        }
+    }
+}
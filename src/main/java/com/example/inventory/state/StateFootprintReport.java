@@ -0,0 +1,46 @@
+package com.example.inventory.state;
+
+/**
+ * Estimates the memory needed for store|sku state, comparing the original String-keyed maps with the
+ * dictionary-encoded off-heap table. Object sizes assume a 64-bit JVM with compressed oops and keys
+ * like "S0001|SKU-000001" (16 Latin-1 chars).
+ *
+ * <pre>java -cp target/classes com.example.inventory.state.StateFootprintReport</pre>
+ */
+public final class StateFootprintReport {
+    // CHM node 32 + key String 24 + byte[16] 32 + amortized table slot (4 bytes / 0.75)
+    private static final long STRING_KEYED_ENTRY = 32 + 24 + 32 + 6;
+    // StoreInventoryService.storeState: entry + InventoryRecord 40 + Instant 24
+    static final long STORE_SERVICE_MAPS_PER_ROW = STRING_KEYED_ENTRY + 40 + 24;
+    // CentralInventoryProjection: perStoreQuantities (entry + Integer 16) and versionByStoreSku (entry + Long 24)
+    static final long PROJECTION_MAPS_PER_ROW = (STRING_KEYED_ENTRY + 16) + (STRING_KEYED_ENTRY + 24);
+
+    private StateFootprintReport() {}
+
+    public record Estimate(long rows, long heapMapsBytes, long offHeapBytes, long onHeapBytes) {}
+
+    /**
+     * @param rows    store|sku rows held by each service
+     * @param stores  distinct storeIds (dictionary entries)
+     * @param skus    distinct skus (dictionary entries)
+     */
+    public static Estimate estimate(long rows, long stores, long skus) {
+        long heapMaps = rows * (STORE_SERVICE_MAPS_PER_ROW + PROJECTION_MAPS_PER_ROW);
+        // One table per service; each keeps its own dictionaries
+        long offHeap = 2 * OffHeapInventoryStateTable.estimateSlotBytes(rows);
+        long onHeap = 2 * (stores + skus) * OffHeapInventoryStateTable.DICTIONARY_BYTES_PER_ENTRY;
+        return new Estimate(rows, heapMaps, offHeap, onHeap);
+    }
+
+    public static void main(String[] args) {
+        System.out.printf("%12s %16s %16s %16s%n", "rows", "heap maps", "off-heap table", "table on-heap");
+        for (long rows : new long[] {10_000_000L, 100_000_000L}) {
+            Estimate e = estimate(rows, 2_000, 400_000);
+            System.out.printf("%12d %16s %16s %16s%n", rows, human(e.heapMapsBytes()), human(e.offHeapBytes()), human(e.onHeapBytes()));
+        }
+    }
+
+    private static String human(long bytes) {
+        return String.format("%.2f GiB", bytes / (1024.0 * 1024 * 1024));
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.inventory;
+
+import com.example.inventory.event.StockAdjusted;
+import com.example.inventory.event.StockReplaced;
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.service.StockTransfer;
+import com.example.inventory.service.StoreInventoryService;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {"inventory.event-bus.mode=async", "inventory.event-bus.partitions=4"})
+class AsyncEventBusIntegrationTest {
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    TestRestTemplate rest;
+
+    @Test
+    void queriesWithTokenReadTheirOwnWrites() {
+        String base = "http://localhost:" + port;
+        for (int i = 1; i <= 20; i++) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            ResponseEntity<Map> resp = rest.postForEntity(base + "/api/commands/inventory/adjust",
+                new HttpEntity<>(Map.of("storeId", "A", "sku", "RYW1", "delta", 1), headers), Map.class);
+            String token = resp.getHeaders().getFirst("X-Consistency-Token");
+            assertThat(token).isNotNull();
+
+            Map<?, ?> store = rest.getForObject(base + "/api/query/inventory/store/A/RYW1?minVersion=" + token, Map.class);
+            Map<?, ?> global = rest.getForObject(base + "/api/query/inventory/global/RYW1?minVersion=" + token, Map.class);
+            assertThat(store.get("quantity")).isEqualTo(i);
+            assertThat(global.get("quantity")).isEqualTo(i);
+        }
+    }
+
+    @Test
+    void preservesOrderWithinPartition() throws Exception {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new io.micrometer.core.instrument.simple.SimpleMeterRegistry(),
+            Optional.empty(), "async", 4, 16);
+        List<Long> versionsSeen = new ArrayList<>();
+        bus.subscribe(e -> {
+            if (e.storeId().equals("S0")) versionsSeen.add(e.version());
+        });
+        CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+        proj.subscribe();
+        try {
+            long token = 0;
+            for (int v = 1; v <= 1_000; v++) {
+                for (int s = 0; s < 8; s++) {
+                    token = bus.publish(v == 1
+                        ? new StockReplaced("S" + s, "SKU-P", 5, v, Instant.now())
+                        : new StockAdjusted("S" + s, "SKU-P", 1, v, Instant.now()));
+                }
+            }
+            assertThat(bus.awaitApplied(token, Duration.ofSeconds(10))).isTrue();
+            // Any reordering inside a partition would make the projection drop later versions as stale
+            assertThat(proj.getGlobalQuantity("SKU-P")).isEqualTo(8 * (5 + 999));
+            assertThat(versionsSeen).hasSize(1_000).isSorted();
+        } finally {
+            bus.stop();
+        }
+    }
+
+    @Test
+    void transfersReachTheProjectionAsOneUnit() throws Exception {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new io.micrometer.core.instrument.simple.SimpleMeterRegistry(),
+            Optional.empty(), "async", 4, 64);
+        List<Integer> groupSizes = new CopyOnWriteArrayList<>();
+        bus.subscribe("groups", e -> groupSizes.add(1), events -> groupSizes.add(events.size()));
+        CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+        proj.subscribe();
+        StoreInventoryService svc = new StoreInventoryService(bus);
+        String[] stores = {"S0", "S1", "S2", "S3", "S4", "S5", "S6", "S7"};
+        try {
+            for (String store : stores) svc.replaceStock(store, "XFER", 100);
+            assertThat(bus.awaitApplied(bus.currentSequence(), Duration.ofSeconds(10))).isTrue();
+            groupSizes.clear();
+
+            // Legs on different stores route to different partitions; the total must not move while they apply
+            AtomicBoolean running = new AtomicBoolean(true);
+            AtomicInteger torn = new AtomicInteger();
+            Thread reader = Thread.ofPlatform().start(() -> {
+                while (running.get()) if (proj.getGlobalQuantity("XFER") != 800) torn.incrementAndGet();
+            });
+            try (var pool = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int t = 0; t < 50; t++) {
+                    int seed = t;
+                    pool.submit(() -> {
+                        SplittableRandom random = new SplittableRandom(seed);
+                        for (int i = 0; i < 100; i++) {
+                            int from = random.nextInt(stores.length);
+                            int to = (from + 1 + random.nextInt(stores.length - 1)) % stores.length;
+                            try {
+                                svc.transfer(List.of(new StockTransfer("XFER", stores[from], stores[to], 1 + random.nextInt(20))));
+                            } catch (StoreInventoryService.InsufficientStockException e) {
+                                // Source ran dry; try another pair
+                            }
+                        }
+                    });
+                }
+            }
+            assertThat(bus.awaitApplied(bus.currentSequence(), Duration.ofSeconds(10))).isTrue();
+            running.set(false);
+            reader.join();
+
+            assertThat(torn).hasValue(0);
+            assertThat(groupSizes).isNotEmpty().containsOnly(2);
+            int total = 0;
+            for (String store : stores) {
+                int quantity = svc.getStock(store, "XFER").orElseThrow().getQuantity();
+                assertThat(proj.getStoreQuantity(store, "XFER")).contains(quantity);
+                total += quantity;
+            }
+            assertThat(total).isEqualTo(800);
+            assertThat(proj.getGlobalQuantity("XFER")).isEqualTo(800);
+        } finally {
+            bus.stop();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.inventory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Same adjustment load sent as single calls and as batches. Opt-in:
+ * <pre>mvn test -Dtest=BatchCommandBenchmarkTest -Dbenchmark=true</pre>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class BatchCommandBenchmarkTest {
+    private static final int CLIENTS = 8;
+    private static final int OPERATIONS_PER_CLIENT = 2_000;
+    private static final int BATCH_SIZE = 200;
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    TestRestTemplate rest;
+
+    @Test
+    void batch_versus_single_calls() throws Exception {
+        String base = "http://localhost:" + port + "/api/commands/inventory";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        run("warmup", 200, client -> {
+            for (int i = 0; i < 200; i++) {
+                rest.postForEntity(base + "/adjust", new HttpEntity<>(Map.of("storeId", "W" + client, "sku", "SKU-" + i, "delta", 1), headers), String.class);
+            }
+        });
+        double single = run("single", OPERATIONS_PER_CLIENT, client -> {
+            for (int i = 0; i < OPERATIONS_PER_CLIENT; i++) {
+                rest.postForEntity(base + "/adjust", new HttpEntity<>(Map.of("storeId", "S" + client, "sku", "SKU-" + (i % 400), "delta", 1), headers), String.class);
+            }
+        });
+        double batched = run("batch", OPERATIONS_PER_CLIENT, client -> {
+            for (int i = 0; i < OPERATIONS_PER_CLIENT; i += BATCH_SIZE) {
+                List<Map<String, Object>> operations = new ArrayList<>(BATCH_SIZE);
+                for (int j = i; j < i + BATCH_SIZE; j++) {
+                    operations.add(Map.of("type", "adjust", "storeId", "B" + client, "sku", "SKU-" + (j % 400), "delta", 1));
+                }
+                rest.postForEntity(base + "/batch", new HttpEntity<>(Map.of("operations", operations), headers), String.class);
+            }
+        });
+        System.out.printf("batch speedup: %.1fx%n", batched / single);
+        assertThat(batched).isGreaterThan(single);
+    }
+
+    private double run(String label, int operationsPerClient, ClientLoop loop) throws Exception {
+        long started = System.nanoTime();
+        try (var pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> clients = new ArrayList<>();
+            for (int c = 0; c < CLIENTS; c++) {
+                int client = c;
+                clients.add(pool.submit(() -> { loop.run(client); return null; }));
+            }
+            for (Future<?> client : clients) client.get();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        double opsPerSecond = CLIENTS * operationsPerClient / seconds;
+        System.out.printf("%-7s %10.0f ops/s%n", label, opsPerSecond);
+        return opsPerSecond;
+    }
+
+    private interface ClientLoop {
+        void run(int client) throws Exception;
+    }
+}
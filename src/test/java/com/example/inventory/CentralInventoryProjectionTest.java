@@ -4,9 +4,17 @@ import com.example.inventory.event.StockAdjusted;
 import com.example.inventory.event.StockReplaced;
 import com.example.inventory.service.CentralInventoryProjection;
 import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.service.StockRanking;
 import io.micrometer.observation.ObservationRegistry;
 import org.junit.jupiter.api.Test;
 
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 class CentralInventoryProjectionTest {
@@ -39,6 +47,79 @@ class CentralInventoryProjectionTest {
         assertThat(proj.getStoreQuantity("A", "SKU-Z").orElse(-1)).isEqualTo(5);
         assertThat(proj.getStoreQuantity("B", "SKU-Z").orElse(-1)).isEqualTo(6);
     }
-}
 
+    @Test
+    void incremental_totals_match_full_scan() {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new io.micrometer.core.instrument.simple.SimpleMeterRegistry());
+        CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+        proj.subscribe();
+
+        // Reference model: the previous implementation, which re-summed every store|sku entry per event
+        Map<String, Integer> perStore = new HashMap<>();
+        Map<String, Long> versions = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 5_000; i++) {
+            String store = "S" + random.nextInt(20);
+            String sku = "SKU-" + random.nextInt(50);
+            String key = store + "|" + sku;
+            // occasionally replay an old version to exercise stale-event handling
+            long version = versions.getOrDefault(key, 0L) + (random.nextInt(10) == 0 ? 0 : 1);
+            if (random.nextBoolean()) {
+                int qty = random.nextInt(100);
+                bus.publish(new StockReplaced(store, sku, qty, version, Instant.now()));
+                if (version > versions.getOrDefault(key, 0L)) perStore.put(key, qty);
+            } else {
+                int delta = random.nextInt(21) - 10;
+                bus.publish(new StockAdjusted(store, sku, delta, version, Instant.now()));
+                if (version > versions.getOrDefault(key, 0L)) perStore.put(key, Math.max(0, perStore.getOrDefault(key, 0) + delta));
+            }
+            versions.merge(key, version, Math::max);
+        }
+
+        for (int s = 0; s < 50; s++) {
+            String sku = "SKU-" + s;
+            int fullScan = perStore.entrySet().stream()
+                .filter(en -> en.getKey().endsWith("|" + sku))
+                .mapToInt(Map.Entry::getValue)
+                .sum();
+            assertThat(proj.getGlobalQuantity(sku)).as(sku).isEqualTo(fullScan);
+        }
+        perStore.forEach((key, qty) -> {
+            String[] parts = key.split("\\|");
+            assertThat(proj.getStoreQuantity(parts[0], parts[1])).contains(qty);
+        });
+    }
+
+    @Test
+    void lowest_stock_rankings_match_a_full_sort() {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new io.micrometer.core.instrument.simple.SimpleMeterRegistry());
+        CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+        proj.subscribe();
 
+        Random random = new Random(7);
+        Map<String, Long> versions = new HashMap<>();
+        for (int i = 0; i < 5_000; i++) {
+            String store = "S" + random.nextInt(5);
+            String sku = "SKU-" + random.nextInt(200);
+            long version = versions.merge(store + "|" + sku, 1L, Long::sum);
+            if (random.nextBoolean()) {
+                bus.publish(new StockReplaced(store, sku, random.nextInt(100), version, Instant.now()));
+            } else {
+                bus.publish(new StockAdjusted(store, sku, random.nextInt(41) - 20, version, Instant.now()));
+            }
+        }
+
+        Comparator<StockRanking.Entry> order = Comparator.comparingInt(StockRanking.Entry::quantity).thenComparing(StockRanking.Entry::sku);
+        List<StockRanking.Entry> global = versions.keySet().stream()
+            .map(key -> key.split("\\|")[1]).distinct()
+            .map(sku -> new StockRanking.Entry(sku, proj.getGlobalQuantity(sku)))
+            .sorted(order).limit(50).toList();
+        assertThat(proj.lowestGlobalStock(50)).isEqualTo(global);
+
+        List<StockRanking.Entry> store = proj.storeSkus("S3").stream()
+            .map(sku -> new StockRanking.Entry(sku, proj.getStoreQuantity("S3", sku).orElseThrow()))
+            .sorted(order).limit(20).toList();
+        assertThat(proj.lowestStoreStock("S3", 20)).isEqualTo(store);
+        assertThat(proj.lowestStoreStock("unknown", 20)).isEmpty();
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.inventory;
+
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.ChangeFeed;
+import com.example.inventory.service.ChangeFeed.Update;
+import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.service.StoreInventoryService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChangeFeedTest {
+
+    @Test
+    void slow_subscriber_gets_latest_value_per_key_without_stalling_delivery() throws Exception {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry());
+        CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+        proj.subscribe();
+        ChangeFeed feed = new ChangeFeed(proj);
+        feed.register();
+        StoreInventoryService svc = new StoreInventoryService(bus);
+
+        CountDownLatch unblock = new CountDownLatch(1);
+        List<Update> slow = new CopyOnWriteArrayList<>();
+        feed.subscribe(Set.of(), null, update -> {
+            unblock.await();
+            slow.add(update);
+        });
+        List<Update> fast = new CopyOnWriteArrayList<>();
+        feed.subscribe(Set.of("SKU-F"), "A", fast::add);
+
+        long started = System.nanoTime();
+        for (int i = 1; i <= 10_000; i++) {
+            svc.replaceStock("A", "SKU-F", i);
+        }
+        // The blocked client did not hold up 10,000 deliveries
+        assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started)).isLessThan(5);
+        awaitUntil(() -> !fast.isEmpty() && fast.get(fast.size() - 1).quantity() == 10_000);
+        assertThat(fast).allMatch(u -> "A".equals(u.storeId()));
+
+        unblock.countDown();
+        awaitUntil(() -> slow.stream().filter(u -> u.global()).anyMatch(u -> u.quantity() == 10_000)
+            && slow.stream().filter(u -> !u.global()).anyMatch(u -> u.quantity() == 10_000));
+        // One store key and one global key, each sent a handful of times at most
+        assertThat(slow.size()).isLessThan(10);
+    }
+
+    @Test
+    void filters_by_sku_and_store_and_unsubscribes_on_close() throws Exception {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry());
+        CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+        proj.subscribe();
+        ChangeFeed feed = new ChangeFeed(proj);
+        feed.register();
+        StoreInventoryService svc = new StoreInventoryService(bus);
+        svc.replaceStock("A", "SKU-1", 3);
+
+        List<Update> bySku = new CopyOnWriteArrayList<>();
+        ChangeFeed.Subscription skuSub = feed.subscribe(Set.of("SKU-1"), null, bySku::add);
+        List<Update> byStore = new CopyOnWriteArrayList<>();
+        feed.subscribe(Set.of(), "B", byStore::add);
+        // Listed skus start with their current value
+        awaitUntil(() -> bySku.contains(new Update(null, "SKU-1", 3)));
+
+        svc.replaceStock("B", "SKU-1", 4);
+        svc.replaceStock("B", "SKU-2", 5);
+        svc.replaceStock("A", "SKU-2", 6);
+        awaitUntil(() -> bySku.contains(new Update(null, "SKU-1", 7)) && byStore.size() == 2);
+        assertThat(bySku).allMatch(u -> u.sku().equals("SKU-1"));
+        assertThat(byStore).containsExactlyInAnyOrder(new Update("B", "SKU-1", 4), new Update("B", "SKU-2", 5));
+
+        skuSub.close();
+        assertThat(feed.subscriberCount()).isEqualTo(1);
+    }
+
+    @Test
+    void thousands_of_subscribers_each_converge_on_the_final_value() throws Exception {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry());
+        CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+        proj.subscribe();
+        ChangeFeed feed = new ChangeFeed(proj, 5000);
+        feed.register();
+        StoreInventoryService svc = new StoreInventoryService(bus);
+
+        AtomicIntegerArray latest = new AtomicIntegerArray(5000);
+        for (int i = 0; i < 5000; i++) {
+            int slot = i;
+            feed.subscribe(Set.of("SKU-M"), null, update -> latest.set(slot, update.quantity()));
+        }
+        assertThat(feed.subscribe(Set.of(), null, update -> { })).isNull();
+        for (int q = 1; q <= 200; q++) {
+            svc.replaceStock("A", "SKU-M", q);
+        }
+        awaitUntil(() -> IntStream.range(0, 5000).allMatch(i -> latest.get(i) == 200));
+        feed.closeAll();
+        assertThat(feed.subscriberCount()).isZero();
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met within 5s").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
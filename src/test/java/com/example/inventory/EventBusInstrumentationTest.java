@@ -0,0 +1,62 @@
+package com.example.inventory;
+
+import com.example.inventory.event.StockReplaced;
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.EventBusInstrumentation;
+import com.example.inventory.service.InMemoryEventBus;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EventBusInstrumentationTest {
+
+    @Test
+    void meters_are_per_subscriber_and_never_tagged_by_sku() {
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        ObservationRegistry registry = ObservationRegistry.create();
+        registry.observationConfig().observationHandler(new DefaultMeterObservationHandler(meters));
+        InMemoryEventBus bus = new InMemoryEventBus(new EventBusInstrumentation(registry, meters, true, 1.0), Optional.empty(), "sync", 0, 0);
+        new CentralInventoryProjection(bus).subscribe();
+
+        for (int i = 0; i < 500; i++) {
+            bus.publish(new StockReplaced("A", "SKU-" + i, 1, 1, Instant.now()));
+        }
+
+        assertThat(meters.getMeters()).allSatisfy(m -> assertThat(m.getId().getTag("sku")).isNull());
+        assertThat(meters.getMeters().size()).isLessThan(20);
+        assertThat(meters.get("inventory.event.delivery").tag("subscriber", "projection").timer().count()).isEqualTo(500);
+        assertThat(meters.get("inventory.event.delivered").tag("subscriber", "projection").counter().count()).isEqualTo(500);
+        assertThat(meters.get("inventory.event.publish").timer().count()).isEqualTo(500);
+    }
+
+    @Test
+    void sampling_limits_spans_but_not_delivery_metrics() {
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        ObservationRegistry registry = ObservationRegistry.create();
+        registry.observationConfig().observationHandler(new DefaultMeterObservationHandler(meters));
+        InMemoryEventBus sampled = new InMemoryEventBus(new EventBusInstrumentation(registry, meters, true, 0.0), Optional.empty(), "sync", 0, 0);
+        new CentralInventoryProjection(sampled).subscribe();
+
+        for (int i = 0; i < 100; i++) {
+            sampled.publish(new StockReplaced("A", "SKU-" + i, 1, 1, Instant.now()));
+        }
+
+        assertThat(meters.find("inventory.event.publish").meters()).isEmpty();
+        assertThat(meters.find("inventory.event.consume").meters()).isEmpty();
+        assertThat(meters.get("inventory.event.delivery").timer().count()).isEqualTo(100);
+
+        SimpleMeterRegistry offMeters = new SimpleMeterRegistry();
+        InMemoryEventBus off = new InMemoryEventBus(new EventBusInstrumentation(registry, offMeters, false, 1.0), Optional.empty(), "sync", 0, 0);
+        new CentralInventoryProjection(off).subscribe();
+        off.publish(new StockReplaced("A", "SKU-1", 1, 1, Instant.now()));
+        assertThat(offMeters.getMeters()).extracting(Meter::getId).extracting(id -> id.getName())
+            .containsOnly("event_bus.publish.failures", "event_bus.consume.failures");
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.inventory;
+
+import com.example.inventory.event.InventoryEvent;
+import com.example.inventory.event.StockAdjusted;
+import com.example.inventory.service.DeadLetterQueue;
+import com.example.inventory.service.DeadLetterQueue.DeadLetter;
+import com.example.inventory.service.DeadLetterQueue.OverflowPolicy;
+import com.example.inventory.service.EventBusInstrumentation;
+import com.example.inventory.service.InMemoryEventBus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EventBusRetryTest {
+
+    @Test
+    void syncPublishFailsFastAndTheDeliveryIsRetriedInTheBackground() throws InterruptedException {
+        // A 1 s backoff: under the old sleeping retries the publish would take seconds to fail
+        InMemoryEventBus bus = bus("sync", 3, 1_000);
+        List<InventoryEvent> received = new CopyOnWriteArrayList<>();
+        boolean[] down = {true};
+        bus.subscribe("flaky", event -> {
+            if (down[0]) throw new IllegalStateException("subscriber down");
+            received.add(event);
+        });
+        try {
+            long started = System.nanoTime();
+            assertThatThrownBy(() -> bus.publish(adjusted("S1", "A", 1))).isInstanceOf(RuntimeException.class);
+            assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofMillis(500));
+            assertThat(bus.pendingRetries()).isEqualTo(1);
+
+            down[0] = false;
+            // The subscriber sees the event just before the scheduler counts the retry as done
+            awaitUntil(() -> received.size() == 1 && bus.pendingRetries() == 0);
+            assertThat(bus.deadLetters().size()).isZero();
+        } finally {
+            bus.stop();
+        }
+    }
+
+    @Test
+    void asyncEventsForARowWaitBehindItsRetryAndAreDeadLetteredWithIt() throws InterruptedException {
+        InMemoryEventBus bus = bus("async", 3, 5);
+        List<Long> versions = new CopyOnWriteArrayList<>();
+        boolean[] down = {true};
+        bus.subscribe("flaky", event -> {
+            if (down[0] && event.storeId().equals("S1")) throw new IllegalStateException("subscriber down");
+            versions.add(event.version());
+        });
+        bus.start();
+        try {
+            // Row S1 keeps failing: the retries run out and every event queued behind goes with the first
+            for (int v = 1; v <= 3; v++) bus.publish(adjusted("S1", "A", v));
+            long token = bus.publish(adjusted("S2", "A", 1));
+            assertThat(bus.awaitApplied(token, Duration.ofSeconds(5))).isTrue();
+            awaitUntil(() -> bus.deadLetters().size() == 3);
+            assertThat(versions).containsExactly(1L);
+            List<DeadLetter> letters = bus.deadLetters().list(0, 10, "flaky");
+            assertThat(letters).extracting(letter -> letter.event().version()).containsExactly(1L, 2L, 3L);
+            assertThat(letters.get(0).attempts()).isEqualTo(3);
+            assertThat(letters.get(1).errorMessage()).startsWith("Held behind a failed delivery");
+
+            // Recovers during the retries: the row's events arrive in publish order
+            versions.clear();
+            for (int v = 4; v <= 6; v++) bus.publish(adjusted("S1", "A", v));
+            awaitUntil(() -> bus.pendingRetries() == 3);
+            down[0] = false;
+            awaitUntil(() -> versions.size() == 3);
+            assertThat(versions).containsExactly(4L, 5L, 6L);
+            assertThat(bus.deadLetters().size()).isEqualTo(3);
+        } finally {
+            bus.stop();
+        }
+    }
+
+    @Test
+    void asyncAwaitAppliedWaitsForRetriesAndTheEventsHeldBehindThem() throws InterruptedException {
+        // A 200 ms backoff: a watermark that moved past the retry would let the wait return long before it
+        InMemoryEventBus bus = bus("async", 3, 200);
+        List<Long> versions = new CopyOnWriteArrayList<>();
+        AtomicInteger failures = new AtomicInteger(1);
+        bus.subscribe("flaky", event -> {
+            if (failures.getAndDecrement() > 0) throw new IllegalStateException("subscriber down");
+            versions.add(event.version());
+        });
+        bus.start();
+        try {
+            bus.publish(adjusted("S1", "A", 1));
+            long token = bus.publish(adjusted("S1", "A", 2));
+            assertThat(bus.awaitApplied(token, Duration.ofSeconds(5))).isTrue();
+            assertThat(versions).containsExactly(1L, 2L);
+            assertThat(bus.pendingRetries()).isZero();
+
+            // A dead-lettered event stops holding the wait back
+            failures.set(Integer.MAX_VALUE);
+            long lost = bus.publish(adjusted("S2", "A", 1));
+            assertThat(bus.awaitApplied(lost, Duration.ofSeconds(5))).isTrue();
+            assertThat(bus.deadLetters().size()).isEqualTo(1);
+        } finally {
+            bus.stop();
+        }
+    }
+
+    @Test
+    void redriveSendsDeadLettersBackToTheirSubscriber() throws InterruptedException {
+        InMemoryEventBus bus = bus("sync", 1, 1);
+        List<InventoryEvent> received = new CopyOnWriteArrayList<>();
+        boolean[] down = {true};
+        bus.subscribe("flaky", event -> {
+            if (down[0]) throw new IllegalStateException("subscriber down");
+            received.add(event);
+        });
+        try {
+            for (int i = 0; i < 20; i++) {
+                int version = i + 1;
+                assertThatThrownBy(() -> bus.publish(adjusted("S" + version, "A", version))).isInstanceOf(RuntimeException.class);
+            }
+            awaitUntil(() -> bus.deadLetters().size() == 20);
+            long first = bus.deadLetters().list(0, 1, null).get(0).id();
+            down[0] = false;
+
+            assertThat(bus.redrive(first)).isTrue();
+            assertThat(bus.redrive(first)).isFalse();
+            awaitUntil(() -> received.size() == 1);
+
+            assertThat(bus.startRedrive("flaky", 10)).isTrue();
+            assertThat(bus.startRedrive("flaky", 10)).isFalse();
+            awaitUntil(() -> !bus.redriveStatus().running());
+            awaitUntil(() -> received.size() == 11);
+            assertThat(bus.redriveStatus().redriven()).isEqualTo(10);
+            assertThat(bus.deadLetters().size()).isEqualTo(9);
+            assertThat(bus.deadLetters().purge("flaky")).isEqualTo(9);
+        } finally {
+            bus.stop();
+        }
+    }
+
+    @Test
+    void deadLetterQueueIsBoundedByItsOverflowPolicy() {
+        DeadLetterQueue dropOldest = new DeadLetterQueue(4, OverflowPolicy.DROP_OLDEST);
+        DeadLetterQueue dropNewest = new DeadLetterQueue(4, OverflowPolicy.DROP_NEWEST);
+        for (int v = 1; v <= 6; v++) {
+            dropOldest.add("s", adjusted("S1", "A", v), "down", 3);
+            dropNewest.add("s", adjusted("S1", "A", v), "down", 3);
+        }
+        assertThat(dropOldest.size()).isEqualTo(4);
+        assertThat(dropOldest.overflowed()).isEqualTo(2);
+        assertThat(dropOldest.list(0, 10, null)).extracting(letter -> letter.event().version()).containsExactly(3L, 4L, 5L, 6L);
+        assertThat(dropNewest.size()).isEqualTo(4);
+        assertThat(dropNewest.overflowed()).isEqualTo(2);
+        assertThat(dropNewest.list(0, 10, null)).extracting(letter -> letter.event().version()).containsExactly(1L, 2L, 3L, 4L);
+
+        // Removing by id frees that slot, and the next entry finds it
+        DeadLetter second = dropNewest.list(1, 1, null).get(0);
+        assertThat(dropNewest.get(second.id())).isEqualTo(second);
+        assertThat(dropNewest.remove(second.id())).isEqualTo(second);
+        assertThat(dropNewest.remove(second.id())).isNull();
+        assertThat(dropNewest.add("s", adjusted("S1", "A", 7), "down", 3)).isPositive();
+        assertThat(dropNewest.list(0, 10, null)).extracting(letter -> letter.event().version()).containsExactly(1L, 3L, 4L, 7L);
+        assertThat(dropNewest.list(0, 2, null)).extracting(DeadLetter::id).containsExactly(1L, 3L);
+    }
+
+    private static InMemoryEventBus bus(String mode, int maxAttempts, long baseDelayMs) {
+        return new InMemoryEventBus(new EventBusInstrumentation(ObservationRegistry.create(), new SimpleMeterRegistry()),
+            Optional.empty(), mode, 2, 1024, maxAttempts, baseDelayMs, 1024, 64, "drop-oldest", 50);
+    }
+
+    private static StockAdjusted adjusted(String storeId, String sku, long version) {
+        return new StockAdjusted(storeId, sku, 1, version, Instant.now());
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) throw new AssertionError("condition not met in time");
+            Thread.sleep(5);
+        }
+    }
+}
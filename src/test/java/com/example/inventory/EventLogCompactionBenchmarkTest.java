@@ -0,0 +1,93 @@
+package com.example.inventory;
+
+import com.example.inventory.event.InventoryEvent;
+import com.example.inventory.event.StockAdjusted;
+import com.example.inventory.event.StockReplaced;
+import com.example.inventory.eventlog.EventLogCompactor;
+import com.example.inventory.eventlog.MappedEventLog;
+import com.example.inventory.eventlog.MappedEventLog.FsyncPolicy;
+import com.example.inventory.eventlog.MappedEventLog.SegmentInfo;
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.InMemoryEventBus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Log size and startup replay time before and after compaction, over a synthetic day of adjustment-heavy
+ * traffic (2M events on 20k rows, one replace in fifty). Opt-in:
+ * <pre>mvn test -Dtest=EventLogCompactionBenchmarkTest -Dbenchmark=true</pre>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class EventLogCompactionBenchmarkTest {
+    private static final int STORES = 50;
+    private static final int SKUS = 400;
+    private static final int EVENTS = 2_000_000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void bytes_and_replay_time_before_and_after() {
+        try (MappedEventLog log = new MappedEventLog(dir, 8 << 20, FsyncPolicy.INTERVAL, 1_000)) {
+            long[] versions = new long[STORES * SKUS];
+            Random random = new Random(1);
+            Instant now = Instant.now();
+            List<InventoryEvent> record = new ArrayList<>();
+            for (int i = 0; i < EVENTS; i++) {
+                int row = random.nextInt(versions.length);
+                String store = "S" + row / SKUS;
+                String sku = "SKU-" + row % SKUS;
+                long version = ++versions[row];
+                record.add(version == 1 || random.nextInt(50) == 0
+                    ? new StockReplaced(store, sku, random.nextInt(1_000), version, now)
+                    : new StockAdjusted(store, sku, random.nextInt(21) - 10, version, now));
+                if (record.size() == 10) {
+                    log.append(record);
+                    record.clear();
+                }
+            }
+
+            long bytesBefore = log.sealedSegments().stream().mapToLong(SegmentInfo::fileBytes).sum();
+            long[] before = replay(log);
+            EventLogCompactor compactor = new EventLogCompactor(log);
+            long started = System.nanoTime();
+            compactor.compact();
+            long compactMs = (System.nanoTime() - started) / 1_000_000;
+            long bytesAfter = log.sealedSegments().stream().mapToLong(SegmentInfo::fileBytes).sum();
+            long[] after = replay(log);
+
+            EventLogCompactor.Stats stats = compactor.stats();
+            System.out.printf("cores=%d segments=%d compaction=%d ms (unthrottled)%n", Runtime.getRuntime().availableProcessors(),
+                stats.segments(), compactMs);
+            System.out.printf("%-8s %12s %10s %16s %16s%n", "", "sealed bytes", "events", "decode only (ms)", "into projection (ms)");
+            System.out.printf("%-8s %12d %10d %16d %16d%n", "before", bytesBefore, before[0], before[1], before[2]);
+            System.out.printf("%-8s %12d %10d %16d %16d%n", "after", bytesAfter, after[0], after[1], after[2]);
+        }
+    }
+
+    // Events, decode-only ms and ms to redeliver into an empty projection for the whole log, best of three
+    private static long[] replay(MappedEventLog log) {
+        long[] best = {0, Long.MAX_VALUE, Long.MAX_VALUE};
+        for (int run = 0; run < 3; run++) {
+            long started = System.nanoTime();
+            best[0] = log.replay(0, event -> { });
+            best[1] = Math.min(best[1], (System.nanoTime() - started) / 1_000_000);
+
+            InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry());
+            new CentralInventoryProjection(bus).subscribe();
+            started = System.nanoTime();
+            log.replay(0, bus::redeliver);
+            best[2] = Math.min(best[2], (System.nanoTime() - started) / 1_000_000);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.inventory;
+
+import com.example.inventory.event.InventoryEvent;
+import com.example.inventory.event.StockAdjusted;
+import com.example.inventory.event.StockReplaced;
+import com.example.inventory.eventlog.EventLogCompactor;
+import com.example.inventory.eventlog.MappedEventLog;
+import com.example.inventory.eventlog.MappedEventLog.FsyncPolicy;
+import com.example.inventory.eventlog.MappedEventLog.SegmentInfo;
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.service.StockTransfer;
+import com.example.inventory.service.StoreInventoryService;
+import com.example.inventory.state.InventoryStateTable.Row;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EventLogCompactorTest {
+    private static final int STORES = 4;
+    private static final int SKUS = 20;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void compactedLogReplaysToTheSameState() {
+        Map<String, Row> expected = new HashMap<>();
+        long midLsn;
+        try (MappedEventLog log = new MappedEventLog(dir, 16 << 10, FsyncPolicy.INTERVAL, 5)) {
+            InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry(), Optional.of(log));
+            StoreInventoryService svc = new StoreInventoryService(bus);
+            Random random = new Random(5);
+            for (int i = 0; i < 4_000; i++) {
+                command(svc, random);
+            }
+            midLsn = log.sealedSegments().get(2).baseLsn() + 100;
+            svc.forEachRow((store, sku, row) -> expected.put(store + "|" + sku, row));
+
+            List<SegmentInfo> before = log.sealedSegments();
+            EventLogCompactor compactor = new EventLogCompactor(log);
+            assertThat(compactor.compact()).isEqualTo(before.size() - 1);
+            // Nothing left to do until another segment is sealed
+            assertThat(compactor.compact()).isZero();
+
+            EventLogCompactor.Stats stats = compactor.stats();
+            assertThat(stats.eventsAfter()).isLessThan(stats.eventsBefore() / 4);
+            assertThat(stats.bytesReclaimed()).isPositive();
+            List<SegmentInfo> after = log.sealedSegments();
+            assertThat(after).extracting(SegmentInfo::baseLsn).isEqualTo(before.stream().map(SegmentInfo::baseLsn).toList());
+            assertThat(after.get(after.size() - 1).compacted()).isFalse();
+        }
+
+        try (MappedEventLog log = new MappedEventLog(dir, 16 << 10, FsyncPolicy.INTERVAL, 5)) {
+            assertThat(log.sealedSegments().get(0).compacted()).isTrue();
+            InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry(), Optional.of(log));
+            StoreInventoryService svc = new StoreInventoryService(bus);
+            CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+            proj.subscribe();
+            log.replay(0, e -> {
+                svc.restore(e);
+                bus.redeliver(e);
+            });
+            assertRows(svc, proj, expected);
+
+            // A fuzzy snapshot: its rows are already past its position, which falls inside a folded segment
+            StoreInventoryService fromSnapshot = new StoreInventoryService(bus);
+            List<InventoryEvent> prefix = new ArrayList<>();
+            log.replay(0, log.sealedSegments().get(3).baseLsn(), prefix::add);
+            prefix.forEach(fromSnapshot::restore);
+            long replayed = log.replay(midLsn, fromSnapshot::restore);
+            assertThat(replayed).isPositive();
+            expected.forEach((key, row) -> {
+                String[] parts = key.split("\\|");
+                assertThat(fromSnapshot.getStock(parts[0], parts[1]).orElseThrow().getQuantity()).as(key).isEqualTo(row.quantity());
+            });
+
+            // Commands carry on from the compacted versions
+            Row row = expected.get("S0|SKU-1");
+            assertThat(svc.adjustStock("S0", "SKU-1", 1).getVersion()).isEqualTo(row.version() + 1);
+        }
+    }
+
+    @Test
+    void aCompactedCopyLeftBesideItsOriginalWins() throws Exception {
+        try (MappedEventLog log = new MappedEventLog(dir, 4096, FsyncPolicy.INTERVAL, 5)) {
+            Instant now = Instant.now();
+            for (int version = 1; version <= 400; version++) {
+                log.append(version == 1
+                    ? new StockReplaced("S1", "A", 50, version, now)
+                    : new StockAdjusted("S1", "A", version % 3 == 0 ? -40 : 7, version, now));
+            }
+            Path original = dir.resolve(String.format("%020d.log", 0));
+            Path copy = dir.resolve("original.bak");
+            Files.copy(original, copy);
+            assertThat(new EventLogCompactor(log).compact()).isPositive();
+            // As if the process died between renaming the copy into place and deleting the original
+            Files.copy(copy, original);
+            Files.delete(copy);
+        }
+
+        try (MappedEventLog log = new MappedEventLog(dir, 4096, FsyncPolicy.INTERVAL, 5)) {
+            assertThat(Files.exists(dir.resolve(String.format("%020d.log", 0)))).isFalse();
+            InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry());
+            StoreInventoryService svc = new StoreInventoryService(bus);
+            List<InventoryEvent> first = new ArrayList<>();
+            SegmentInfo segment = log.sealedSegments().get(0);
+            log.replay(segment.baseLsn(), segment.endLsn(), first::add);
+            assertThat(first).hasSize(1);
+            log.replay(0, svc::restore);
+            int quantity = 50;
+            for (int version = 2; version <= 400; version++) quantity = Math.max(0, quantity + (version % 3 == 0 ? -40 : 7));
+            assertThat(svc.getStock("S1", "A").orElseThrow().getQuantity()).isEqualTo(quantity);
+            assertThat(svc.getStock("S1", "A").orElseThrow().getVersion()).isEqualTo(400);
+        }
+    }
+
+    private static void assertRows(StoreInventoryService svc, CentralInventoryProjection proj, Map<String, Row> expected) {
+        Map<String, Integer> totals = new HashMap<>();
+        expected.forEach((key, row) -> {
+            String[] parts = key.split("\\|");
+            var record = svc.getStock(parts[0], parts[1]).orElseThrow();
+            assertThat(record.getQuantity()).as(key).isEqualTo(row.quantity());
+            assertThat(record.getVersion()).as(key).isEqualTo(row.version());
+            assertThat(proj.getStoreQuantity(parts[0], parts[1])).as(key).contains(row.quantity());
+            totals.merge(parts[1], row.quantity(), Integer::sum);
+        });
+        totals.forEach((sku, total) -> assertThat(proj.getGlobalQuantity(sku)).as(sku).isEqualTo(total));
+    }
+
+    private static void command(StoreInventoryService svc, Random random) {
+        String store = "S" + random.nextInt(STORES);
+        String sku = "SKU-" + random.nextInt(SKUS);
+        switch (random.nextInt(20)) {
+            case 0 -> svc.replaceStock(store, sku, random.nextInt(100));
+            case 1 -> {
+                try {
+                    svc.transfer(List.of(new StockTransfer(sku, store, "S" + random.nextInt(STORES), 1)));
+                } catch (StoreInventoryService.InsufficientStockException | IllegalArgumentException e) {
+                    // Nothing to move, or to the same store
+                }
+            }
+            default -> svc.adjustStock(store, sku, random.nextInt(21) - 8);
+        }
+    }
+}
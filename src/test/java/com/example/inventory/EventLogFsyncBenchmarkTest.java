@@ -0,0 +1,61 @@
+package com.example.inventory;
+
+import com.example.inventory.event.StockAdjusted;
+import com.example.inventory.eventlog.MappedEventLog;
+import com.example.inventory.eventlog.MappedEventLog.FsyncPolicy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Throughput and p99 append latency per fsync policy. Opt-in, as results depend on the disk:
+ * <pre>mvn test -Dtest=EventLogFsyncBenchmarkTest -Dbenchmark=true</pre>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class EventLogFsyncBenchmarkTest {
+    private static final int WRITERS = 32;
+    private static final int APPENDS_PER_WRITER = 500;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void compare_fsync_policies() throws Exception {
+        System.out.printf("%-10s %14s %12s%n", "policy", "events/s", "p99 (us)");
+        for (FsyncPolicy policy : FsyncPolicy.values()) {
+            try (MappedEventLog log = new MappedEventLog(dir.resolve(policy.name()), 64 << 20, policy, 5);
+                 var pool = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<long[]>> writers = new ArrayList<>();
+                long started = System.nanoTime();
+                for (int w = 0; w < WRITERS; w++) {
+                    String store = "S" + w;
+                    writers.add(pool.submit(() -> {
+                        long[] latencies = new long[APPENDS_PER_WRITER];
+                        for (int i = 0; i < APPENDS_PER_WRITER; i++) {
+                            long t0 = System.nanoTime();
+                            log.append(new StockAdjusted(store, "SKU-" + i, 1, i + 1, Instant.now()));
+                            latencies[i] = System.nanoTime() - t0;
+                        }
+                        return latencies;
+                    }));
+                }
+                long[] all = new long[WRITERS * APPENDS_PER_WRITER];
+                int n = 0;
+                for (Future<long[]> writer : writers) {
+                    for (long latency : writer.get()) all[n++] = latency;
+                }
+                double seconds = (System.nanoTime() - started) / 1e9;
+                Arrays.sort(all);
+                System.out.printf("%-10s %14.0f %12.1f%n", policy, all.length / seconds, all[(int) (all.length * 0.99)] / 1e3);
+            }
+        }
+    }
+}
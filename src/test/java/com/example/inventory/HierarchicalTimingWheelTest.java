@@ -0,0 +1,60 @@
+package com.example.inventory;
+
+import com.example.inventory.service.HierarchicalTimingWheel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HierarchicalTimingWheelTest {
+
+    @Test
+    void expires_every_timeout_at_its_tick_across_levels_and_overflow() {
+        // 8 slots x 3 levels covers 512 ticks; deadlines run to 5000 so many are parked and re-placed
+        HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<>(1, 8, 3, 0);
+        SplittableRandom random = new SplittableRandom(7);
+        Map<Long, HierarchicalTimingWheel.Timeout<Long>> pending = new HashMap<>();
+        for (long i = 0; i < 20_000; i++) {
+            long deadline = 1 + random.nextLong(5000);
+            pending.put(i, wheel.schedule(deadline * 100_000 + i, deadline));
+        }
+        List<Long> cancelled = new ArrayList<>();
+        for (long i = 0; i < 20_000; i += 10) {
+            assertThat(wheel.cancel(pending.get(i))).isTrue();
+            cancelled.add(i);
+        }
+
+        int expired = 0;
+        for (long now = 0; now <= 5000; now++) {
+            for (long payload : wheel.advanceTo(now)) {
+                assertThat(payload / 100_000).isEqualTo(now);
+                assertThat(payload % 100_000 % 10).isNotZero();
+                expired++;
+            }
+        }
+        assertThat(expired).isEqualTo(20_000 - cancelled.size());
+        assertThat(wheel.size()).isZero();
+        assertThat(wheel.cancel(pending.get(1L))).isFalse();
+    }
+
+    @Test
+    void large_jumps_expire_everything_due_and_nothing_early() {
+        HierarchicalTimingWheel<Integer> wheel = new HierarchicalTimingWheel<>(100, 64, 4, 1_000_000);
+        for (int i = 0; i < 1_000_000; i++) {
+            // 25 holds per tick over 40,000 ticks (a bit over an hour)
+            wheel.schedule(i, 1_000_000 + (i % 40_000) * 100L + 1);
+        }
+        assertThat(wheel.advanceTo(1_000_000 + 1_999_999)).hasSize(499_975);
+        assertThat(wheel.advanceTo(1_000_000 + 2_000_000)).hasSize(25);
+        assertThat(wheel.size()).isEqualTo(500_000);
+        assertThat(wheel.advanceTo(1_000_000 + 4_000_000)).hasSize(500_000);
+        // Past deadlines fall due on the next tick
+        wheel.schedule(-1, 0);
+        assertThat(wheel.advanceTo(1_000_000 + 4_000_100)).containsExactly(-1);
+    }
+}
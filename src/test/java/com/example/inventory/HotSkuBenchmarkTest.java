@@ -0,0 +1,81 @@
+package com.example.inventory;
+
+import com.example.inventory.eventlog.MappedEventLog;
+import com.example.inventory.eventlog.MappedEventLog.FsyncPolicy;
+import com.example.inventory.service.InMemoryEventBus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Throughput of the {@link HotSkuStressTest} workloads: 25k optimistic ({@code If-Match}) increments from 500
+ * virtual threads and 100k blind adjusts from 1,000, all on one sku. Each run builds a fresh service and
+ * projection, and still checks that no update was lost. The workloads run once without an event log and once
+ * with one under the default {@code fsync: batched}. Opt-in:
+ * <pre>mvn test -Dtest=HotSkuBenchmarkTest -Dbenchmark=true</pre>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class HotSkuBenchmarkTest {
+    private static final int WARMUP_RUNS = 2;
+    private static final int RUNS = 5;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void hot_sku_throughput() throws Exception {
+        run("", new HotSkuStressTest());
+    }
+
+    @Test
+    void hot_sku_throughput_with_event_log() throws Exception {
+        List<MappedEventLog> logs = new ArrayList<>();
+        try {
+            run(" (event log)", new HotSkuStressTest() {
+                @Override
+                InMemoryEventBus newBus() {
+                    try {
+                        MappedEventLog log = new MappedEventLog(Files.createTempDirectory(dir, "log"), 64 << 20, FsyncPolicy.BATCHED, 5);
+                        logs.add(log);
+                        return new InMemoryEventBus(ObservationRegistry.NOOP, new SimpleMeterRegistry(), Optional.of(log));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        } finally {
+            logs.forEach(MappedEventLog::close);
+        }
+    }
+
+    private static void run(String label, HotSkuStressTest workloads) throws Exception {
+        measure("optimistic increments" + label, 500 * 50, workloads::optimistic_increments_on_one_sku_lose_no_updates);
+        measure("blind adjusts" + label, 1_000 * 100, workloads::blind_adjusts_on_one_sku_reach_the_projection_in_order);
+    }
+
+    private interface Workload {
+        void run() throws Exception;
+    }
+
+    private static void measure(String name, int operations, Workload workload) throws Exception {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            workload.run();
+        }
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            workload.run();
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("hot sku %s: %d in %d ms (%.0f ops/s)%n", name, operations, elapsed / 1_000_000, operations * 1e9 / elapsed);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.inventory;
+
+import com.example.inventory.model.InventoryRecord;
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.service.StoreInventoryService;
+import com.example.inventory.service.StoreInventoryService.OptimisticLockException;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HotSkuStressTest {
+
+    // HotSkuBenchmarkTest overrides this to time the workloads with an event log behind the bus
+    InMemoryEventBus newBus() {
+        return new InMemoryEventBus(ObservationRegistry.NOOP, new io.micrometer.core.instrument.simple.SimpleMeterRegistry());
+    }
+
+    @Test
+    void optimistic_increments_on_one_sku_lose_no_updates() throws Exception {
+        InMemoryEventBus bus = newBus();
+        CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+        proj.subscribe();
+        StoreInventoryService svc = new StoreInventoryService(bus);
+
+        int threads = 500;
+        int incrementsPerThread = 50;
+        Set<Long> versions = ConcurrentHashMap.newKeySet();
+        AtomicLong wrongVersions = new AtomicLong();
+
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int t = 0; t < threads; t++) {
+                pool.submit(() -> {
+                    long expected = svc.getStock("S", "HOT").map(InventoryRecord::getVersion).orElse(0L);
+                    for (int i = 0; i < incrementsPerThread; ) {
+                        try {
+                            InventoryRecord r = svc.adjustStockWithOptimisticLock("S", "HOT", 1, expected);
+                            // A write accepted with If-Match must produce exactly the next version
+                            if (r.getVersion() != expected + 1) wrongVersions.incrementAndGet();
+                            versions.add(r.getVersion());
+                            expected = r.getVersion();
+                            i++;
+                        } catch (OptimisticLockException e) {
+                            expected = e.getCurrentVersion();
+                        }
+                        if (i % 10 == 0) Thread.yield();
+                    }
+                });
+            }
+            pool.shutdown();
+            assertThat(pool.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+        }
+
+        int total = threads * incrementsPerThread;
+        InventoryRecord last = svc.getStock("S", "HOT").orElseThrow();
+        assertThat(wrongVersions.get()).isZero();
+        assertThat(versions).hasSize(total);
+        assertThat(last.getQuantity()).isEqualTo(total);
+        assertThat(last.getVersion()).isEqualTo(total);
+        assertThat(proj.getStoreQuantity("S", "HOT")).contains(total);
+        assertThat(proj.getGlobalQuantity("HOT")).isEqualTo(total);
+    }
+
+    @Test
+    void blind_adjusts_on_one_sku_reach_the_projection_in_order() throws Exception {
+        InMemoryEventBus bus = newBus();
+        CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+        proj.subscribe();
+        StoreInventoryService svc = new StoreInventoryService(bus);
+
+        int threads = 1_000;
+        int adjustsPerThread = 100;
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int t = 0; t < threads; t++) {
+                pool.submit(() -> {
+                    for (int i = 0; i < adjustsPerThread; i++) {
+                        svc.adjustStock("S", "HOT", 1);
+                        if (i % 10 == 0) Thread.yield();
+                    }
+                });
+            }
+            pool.shutdown();
+            assertThat(pool.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+        }
+
+        int total = threads * adjustsPerThread;
+        assertThat(svc.getStock("S", "HOT").orElseThrow().getQuantity()).isEqualTo(total);
+        // Out-of-order delivery would make the projection drop earlier adjusts as stale
+        assertThat(proj.getStoreQuantity("S", "HOT")).contains(total);
+        assertThat(proj.getGlobalQuantity("HOT")).isEqualTo(total);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.inventory;
+
+import com.example.inventory.api.IdempotencyCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdempotencyCacheTest {
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @Test
+    void repeatsGetTheStoredResponseUntilTheKeyExpires() {
+        IdempotencyCache cache = new IdempotencyCache(4, 64, 60, new SimpleMeterRegistry(), now::get);
+
+        ResponseEntity<String> first = cache.execute("k1", "body", this::command);
+        ResponseEntity<String> replay = cache.execute("k1", "body", this::command);
+        assertThat(runs).hasValue(1);
+        assertThat(replay.getBody()).isEqualTo(first.getBody());
+        assertThat(replay.getHeaders().getETag()).isEqualTo(first.getHeaders().getETag());
+        assertThat(replay.getHeaders().getFirst("Idempotent-Replayed")).isEqualTo("true");
+
+        assertThatThrownBy(() -> cache.execute("k1", "other body", this::command))
+            .isInstanceOf(IdempotencyCache.KeyReusedException.class);
+
+        // Same hash code, different request
+        assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+        cache.execute("k2", "Aa", this::command);
+        assertThatThrownBy(() -> cache.execute("k2", "BB", this::command))
+            .isInstanceOf(IdempotencyCache.KeyReusedException.class);
+
+        now.addAndGet(60_000_000_000L);
+        assertThat(cache.execute("k1", "body", this::command).getBody()).isEqualTo("run 3");
+    }
+
+    @Test
+    void failuresReleaseTheKey() {
+        IdempotencyCache cache = new IdempotencyCache(4, 64, 60, new SimpleMeterRegistry(), now::get);
+
+        assertThatThrownBy(() -> cache.execute("k1", "body", () -> { throw new IllegalStateException("boom"); }))
+            .isInstanceOf(IllegalStateException.class);
+        cache.execute("k2", "body", () -> ResponseEntity.status(HttpStatus.CONFLICT).<String>build());
+        assertThat(cache.size()).isZero();
+
+        assertThat(cache.execute("k1", "body", this::command).getBody()).isEqualTo("run 1");
+    }
+
+    @Test
+    void aRepeatWhileTheFirstIsRunningIsRefused() throws Exception {
+        IdempotencyCache cache = new IdempotencyCache(4, 64, 60, new SimpleMeterRegistry(), now::get);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread first = Thread.ofVirtual().start(() -> cache.execute("k1", "body", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return command();
+        }));
+        started.await();
+
+        assertThatThrownBy(() -> cache.execute("k1", "body", this::command))
+            .isInstanceOf(IdempotencyCache.KeyInUseException.class);
+        release.countDown();
+        first.join();
+        assertThat(cache.execute("k1", "body", this::command).getBody()).isEqualTo("run 1");
+    }
+
+    @Test
+    void sizeStaysBoundedUnderAStreamOfNewKeys() {
+        IdempotencyCache cache = new IdempotencyCache(16, 1_024, 600, new SimpleMeterRegistry(), now::get);
+        for (int i = 0; i < 1_000_000; i++) {
+            now.addAndGet(1_000_000);
+            cache.execute("key-" + i, i, () -> ResponseEntity.ok("x"));
+            assertThat(cache.size()).isLessThanOrEqualTo(1_024);
+        }
+        // The newest keys survive eviction
+        assertThat(cache.execute("key-999999", 999_999, this::command).getBody()).isEqualTo("x");
+        assertThat(runs).hasValue(0);
+    }
+
+    private ResponseEntity<String> command() {
+        int run = runs.incrementAndGet();
+        return ResponseEntity.ok().eTag("\"" + run + "\"").body("run " + run);
+    }
+}
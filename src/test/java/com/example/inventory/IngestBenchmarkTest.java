@@ -0,0 +1,120 @@
+package com.example.inventory;
+
+import com.example.inventory.ingest.IngestProtocol;
+import com.example.inventory.ingest.IngestServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The same adjustments sent as JSON over HTTP and over the binary ingest port, one at a time and pipelined.
+ * Opt-in:
+ * <pre>mvn test -Dtest=IngestBenchmarkTest -Dbenchmark=true</pre>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {"inventory.ingest.enabled=true", "inventory.ingest.port=0"})
+class IngestBenchmarkTest {
+    private static final int CLIENTS = 8;
+    private static final int OPERATIONS_PER_CLIENT = 2_000;
+    // Requests a pipelining client keeps in flight
+    private static final int WINDOW = 64;
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    TestRestTemplate rest;
+
+    @Autowired
+    IngestServer ingest;
+
+    @Test
+    void binary_versus_http() throws Exception {
+        String url = "http://localhost:" + port + "/api/commands/inventory/adjust";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        run("warmup", 500, client -> {
+            for (int i = 0; i < 500; i++) {
+                rest.postForEntity(url, new HttpEntity<>(Map.of("storeId", "W" + client, "sku", "SKU-" + i, "delta", 1), headers), String.class);
+            }
+            binary("WB" + client, 500, WINDOW);
+        });
+        double http = run("http", OPERATIONS_PER_CLIENT, client -> {
+            for (int i = 0; i < OPERATIONS_PER_CLIENT; i++) {
+                rest.postForEntity(url, new HttpEntity<>(Map.of("storeId", "H" + client, "sku", "SKU-" + (i % 400), "delta", 1), headers), String.class);
+            }
+        });
+        double binary = run("binary", OPERATIONS_PER_CLIENT, client -> binary("B" + client, OPERATIONS_PER_CLIENT, 1));
+        double pipelined = run("binary pipelined", OPERATIONS_PER_CLIENT, client -> binary("P" + client, OPERATIONS_PER_CLIENT, WINDOW));
+        System.out.printf("binary speedup: %.1fx, pipelined: %.1fx%n", binary / http, pipelined / http);
+        assertThat(pipelined).isGreaterThan(http);
+    }
+
+    // Keeps up to window requests in flight and checks every response
+    private void binary(String storeId, int operations, int window) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", ingest.port()))) {
+            ByteBuffer out = ByteBuffer.allocate(window * 64);
+            ByteBuffer in = ByteBuffer.allocate(window * IngestProtocol.RESPONSE_BYTES);
+            int sent = 0;
+            int answered = 0;
+            while (answered < operations) {
+                out.clear();
+                while (sent < operations && sent - answered < window) {
+                    IngestProtocol.writeRequest(out, IngestProtocol.ADJUST, sent, -1, 1, storeId, "SKU-" + (sent % 400));
+                    sent++;
+                }
+                out.flip();
+                while (out.hasRemaining()) channel.write(out);
+                if (channel.read(in) < 0) throw new IOException("closed");
+                in.flip();
+                while (in.remaining() >= IngestProtocol.RESPONSE_BYTES) {
+                    if (in.get() != IngestProtocol.OK) throw new IllegalStateException("request failed");
+                    if (in.getInt() != answered) throw new IllegalStateException("out of order");
+                    in.position(in.position() + 12);
+                    answered++;
+                }
+                in.compact();
+            }
+        }
+    }
+
+    private double run(String label, int operationsPerClient, ClientLoop loop) throws Exception {
+        long started = System.nanoTime();
+        try (var pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> clients = new ArrayList<>();
+            for (int c = 0; c < CLIENTS; c++) {
+                int client = c;
+                clients.add(pool.submit(() -> { loop.run(client); return null; }));
+            }
+            for (Future<?> client : clients) client.get();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        double opsPerSecond = CLIENTS * operationsPerClient / seconds;
+        System.out.printf("%-17s %10.0f ops/s%n", label, opsPerSecond);
+        return opsPerSecond;
+    }
+
+    private interface ClientLoop {
+        void run(int client) throws Exception;
+    }
+}
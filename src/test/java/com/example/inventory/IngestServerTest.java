@@ -0,0 +1,106 @@
+package com.example.inventory;
+
+import com.example.inventory.ingest.IngestProtocol;
+import com.example.inventory.ingest.IngestServer;
+import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.service.StoreInventoryService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IngestServerTest {
+    private StoreInventoryService service;
+    private IngestServer server;
+
+    @BeforeEach
+    void start() {
+        service = new StoreInventoryService(new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry()));
+        server = new IngestServer(service, new SimpleMeterRegistry());
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop();
+    }
+
+    @Test
+    void pipelinedRequestsAreAnsweredInOrderWithTheirVersions() throws IOException {
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", server.port()))) {
+            int requests = 5_000;
+            ByteBuffer out = ByteBuffer.allocate(requests * 64);
+            IngestProtocol.writeRequest(out, IngestProtocol.REPLACE, 0, -1, 100, "POS-1", "SKU");
+            for (int i = 1; i < requests; i++) {
+                IngestProtocol.writeRequest(out, IngestProtocol.ADJUST, i, -1, -1, "POS-1", i % 2 == 0 ? "SKU" : "OTHER");
+            }
+            write(channel, out.flip());
+
+            ByteBuffer in = read(channel, requests);
+            int expectedSkuVersion = 0;
+            for (int i = 0; i < requests; i++) {
+                assertThat(in.get()).isEqualTo(IngestProtocol.OK);
+                assertThat(in.getInt()).isEqualTo(i);
+                long version = in.getLong();
+                int quantity = in.getInt();
+                if (i % 2 == 0) {
+                    assertThat(version).isEqualTo(++expectedSkuVersion);
+                    if (i > 0) assertThat(quantity).isEqualTo(Math.max(0, 100 - i / 2));
+                }
+            }
+        }
+        assertThat(service.getStock("POS-1", "SKU").orElseThrow().getVersion()).isEqualTo(2_500);
+    }
+
+    @Test
+    void conflictsAndInvalidRequestsAreAnsweredWithoutDroppingTheConnection() throws IOException {
+        service.replaceStock("S1", "A", 5);
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", server.port()))) {
+            ByteBuffer out = ByteBuffer.allocate(1024);
+            IngestProtocol.writeRequest(out, IngestProtocol.ADJUST, 1, 7, 1, "S1", "A");
+            IngestProtocol.writeRequest(out, IngestProtocol.REPLACE, 2, -1, -3, "S1", "A");
+            IngestProtocol.writeRequest(out, IngestProtocol.ADJUST, 3, -1, 1, " ", "A");
+            // Declares a sku longer than the frame
+            int start = out.position();
+            IngestProtocol.writeRequest(out, IngestProtocol.ADJUST, 4, -1, 1, "S1", "A");
+            out.putShort(start + 4 + 1 + 4 + 8 + 4 + 2 + 2, (short) 9);
+            IngestProtocol.writeRequest(out, IngestProtocol.ADJUST, 5, 1, 2, "S1", "A");
+            write(channel, out.flip());
+
+            ByteBuffer in = read(channel, 5);
+            assertResponse(in, IngestProtocol.VERSION_CONFLICT, 1, 1);
+            assertResponse(in, IngestProtocol.REJECTED, 2, -1);
+            assertResponse(in, IngestProtocol.REJECTED, 3, -1);
+            assertResponse(in, IngestProtocol.REJECTED, 4, -1);
+            assertResponse(in, IngestProtocol.OK, 5, 2);
+        }
+        assertThat(service.getStock("S1", "A").orElseThrow().getQuantity()).isEqualTo(7);
+    }
+
+    private static void assertResponse(ByteBuffer in, byte status, int correlationId, long version) {
+        assertThat(in.get()).isEqualTo(status);
+        assertThat(in.getInt()).isEqualTo(correlationId);
+        assertThat(in.getLong()).isEqualTo(version);
+        in.getInt();
+    }
+
+    private static void write(SocketChannel channel, ByteBuffer out) throws IOException {
+        while (out.hasRemaining()) channel.write(out);
+    }
+
+    private static ByteBuffer read(SocketChannel channel, int responses) throws IOException {
+        ByteBuffer in = ByteBuffer.allocate(responses * IngestProtocol.RESPONSE_BYTES);
+        while (in.hasRemaining()) {
+            if (channel.read(in) < 0) throw new IOException("closed");
+        }
+        return in.flip();
+    }
+}
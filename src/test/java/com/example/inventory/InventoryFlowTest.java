@@ -1,5 +1,6 @@
 package com.example.inventory;
 
+import com.example.inventory.api.ResponseEncoder;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -7,10 +8,19 @@ import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -48,6 +58,314 @@ class InventoryFlowTest {
         assertThat(storeA.get("quantity")).isEqualTo(10);
     }
 
+    @Test
+    void batchReportsPerItemResults() {
+        String base = "http://localhost:" + port;
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        Map<String, Object> body = Map.of("operations", List.of(
+            Map.of("type", "replace", "storeId", "A", "sku", "BATCH1", "quantity", 10),
+            Map.of("type", "adjust", "storeId", "B", "sku", "BATCH1", "delta", 4),
+            Map.of("type", "adjust", "storeId", "A", "sku", "BATCH1", "delta", 1, "expectedVersion", 7)));
+        ResponseEntity<Map> response = rest.postForEntity(base + "/api/commands/inventory/batch", new HttpEntity<>(body, headers), Map.class);
+
+        assertThat(response.getStatusCode().is2xxSuccessful()).isTrue();
+        List<Map<String, Object>> results = (List<Map<String, Object>>) response.getBody().get("results");
+        assertThat(results).extracting(r -> r.get("status")).containsExactly(200, 200, 412);
+        assertThat(results.get(0).get("etag")).isEqualTo("\"1\"");
+        assertThat(results.get(2).get("currentVersion")).isEqualTo(1);
+        Map<?,?> g = rest.getForObject(base + "/api/query/inventory/global/BATCH1", Map.class);
+        assertThat(g.get("quantity")).isEqualTo(14);
+
+        ResponseEntity<String> invalid = rest.postForEntity(base + "/api/commands/inventory/batch",
+            new HttpEntity<>(Map.of("operations", List.of(Map.of("type", "replace", "storeId", "A", "sku", "BATCH1"))), headers), String.class);
+        assertThat(invalid.getStatusCode().is4xxClientError()).isTrue();
+    }
+
+    @Test
+    void bulkQueriesStreamNdjsonWithCursorPaging() {
+        String base = "http://localhost:" + port;
+        for (int i = 0; i < 25; i++) {
+            postJson(base + "/api/commands/inventory/replace", Map.of("storeId", "BULK", "sku", String.format("B-%02d", i), "quantity", i));
+        }
+        postJson(base + "/api/commands/inventory/replace", Map.of("storeId", "OTHER", "sku", "B-01", "quantity", 100));
+
+        List<String> skus = new java.util.ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            String url = base + "/api/query/inventory/store/BULK?limit=10" + (cursor == null ? "" : "&cursor=" + cursor);
+            ResponseEntity<String> page = rest.getForEntity(url, String.class);
+            assertThat(page.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_NDJSON);
+            for (String line : page.getBody().split("\n")) {
+                skus.add(line.substring(line.indexOf("B-"), line.indexOf("B-") + 4));
+            }
+            cursor = page.getHeaders().getFirst("X-Next-Cursor");
+            pages++;
+        } while (cursor != null);
+        assertThat(pages).isEqualTo(3);
+        assertThat(skus).hasSize(25).isSorted().doesNotHaveDuplicates();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        String global = rest.postForObject(base + "/api/query/inventory/global",
+            new HttpEntity<>(Map.of("skus", List.of("B-01", "B-24", "NONE")), headers), String.class);
+        assertThat(global.split("\n")).containsExactly(
+            "{\"sku\":\"B-01\",\"quantity\":101}",
+            "{\"sku\":\"B-24\",\"quantity\":24}",
+            "{\"sku\":\"NONE\",\"quantity\":0}");
+    }
+
+    @Test
+    void transferMovesStockOrRejectsWithConflict() {
+        String base = "http://localhost:" + port;
+        postJson(base + "/api/commands/inventory/replace", Map.of("storeId", "A", "sku", "XFER1", "quantity", 10));
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        ResponseEntity<Map> ok = rest.postForEntity(base + "/api/commands/inventory/transfer", new HttpEntity<>(Map.of("lines", List.of(
+            Map.of("sku", "XFER1", "fromStoreId", "A", "toStoreId", "B", "quantity", 4))), headers), Map.class);
+        assertThat(ok.getStatusCode().value()).isEqualTo(200);
+        assertThat(ok.getHeaders().getFirst("X-Consistency-Token")).isNotNull();
+        assertThat((List<?>) ok.getBody().get("records")).hasSize(2);
+
+        ResponseEntity<String> shortOfStock = rest.postForEntity(base + "/api/commands/inventory/transfer", new HttpEntity<>(Map.of("lines", List.of(
+            Map.of("sku", "XFER1", "fromStoreId", "A", "toStoreId", "B", "quantity", 7))), headers), String.class);
+        assertThat(shortOfStock.getStatusCode().value()).isEqualTo(409);
+        ResponseEntity<String> sameStore = rest.postForEntity(base + "/api/commands/inventory/transfer", new HttpEntity<>(Map.of("lines", List.of(
+            Map.of("sku", "XFER1", "fromStoreId", "A", "toStoreId", "A", "quantity", 1))), headers), String.class);
+        assertThat(sameStore.getStatusCode().value()).isEqualTo(400);
+
+        Map<?,?> storeB = rest.getForObject(base + "/api/query/inventory/store/B/XFER1", Map.class);
+        assertThat(storeB.get("quantity")).isEqualTo(4);
+        Map<?,?> global = rest.getForObject(base + "/api/query/inventory/global/XFER1", Map.class);
+        assertThat(global.get("quantity")).isEqualTo(10);
+    }
+
+    @Test
+    void reservationsHoldStockUntilConfirmed() {
+        String base = "http://localhost:" + port;
+        postJson(base + "/api/commands/inventory/replace", Map.of("storeId", "A", "sku", "HOLD1", "quantity", 5));
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        ResponseEntity<Map> hold = rest.postForEntity(base + "/api/commands/reservations",
+            new HttpEntity<>(Map.of("storeId", "A", "sku", "HOLD1", "quantity", 3, "ttlSeconds", 60), headers), Map.class);
+        assertThat(hold.getStatusCode().value()).isEqualTo(201);
+        long holdId = ((Number) hold.getBody().get("holdId")).longValue();
+        ResponseEntity<String> tooMuch = rest.postForEntity(base + "/api/commands/reservations",
+            new HttpEntity<>(Map.of("storeId", "A", "sku", "HOLD1", "quantity", 3), headers), String.class);
+        assertThat(tooMuch.getStatusCode().value()).isEqualTo(409);
+
+        Map<?,?> store = rest.getForObject(base + "/api/query/inventory/store/A/HOLD1", Map.class);
+        assertThat(store.get("quantity")).isEqualTo(5);
+        assertThat(store.get("reserved")).isEqualTo(3);
+        assertThat(store.get("available")).isEqualTo(2);
+
+        ResponseEntity<Map> confirmed = rest.postForEntity(base + "/api/commands/reservations/" + holdId + "/confirm", null, Map.class);
+        assertThat(confirmed.getBody().get("quantity")).isEqualTo(2);
+        ResponseEntity<String> again = rest.postForEntity(base + "/api/commands/reservations/" + holdId + "/confirm", null, String.class);
+        assertThat(again.getStatusCode().value()).isEqualTo(404);
+        Map<?,?> global = rest.getForObject(base + "/api/query/inventory/global/HOLD1", Map.class);
+        assertThat(global.get("reserved")).isEqualTo(0);
+        assertThat(global.get("available")).isEqualTo(2);
+    }
+
+    @Test
+    void lowStockListsBreachesAndQueuesAlerts() {
+        String base = "http://localhost:" + port;
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        rest.put(base + "/api/low-stock/rules/LOW1", new HttpEntity<>(Map.of("threshold", 10, "hysteresis", 2), headers));
+        postJson(base + "/api/commands/inventory/replace", Map.of("storeId", "A", "sku", "LOW1", "quantity", 4));
+
+        List<?> below = rest.getForObject(base + "/api/low-stock/below", List.class);
+        assertThat(below).anySatisfy(e -> {
+            assertThat(((Map<?, ?>) e).get("sku")).isEqualTo("LOW1");
+            assertThat(((Map<?, ?>) e).get("quantity")).isEqualTo(4);
+        });
+        Map<?,?> drained = rest.postForObject(base + "/api/low-stock/alerts/drain", null, Map.class);
+        assertThat((List<?>) drained.get("alerts")).anySatisfy(a -> assertThat(((Map<?, ?>) a).get("kind")).isEqualTo("BELOW"));
+    }
+
+    @Test
+    void changeFeedStreamsServerSentEvents() throws Exception {
+        String base = "http://localhost:" + port;
+        HttpClient client = HttpClient.newHttpClient();
+        HttpResponse<Stream<String>> feed = client.send(HttpRequest.newBuilder(URI.create(base + "/api/query/inventory/changes?sku=FEED1&storeId=A"))
+            .header("Accept", "text/event-stream").build(), HttpResponse.BodyHandlers.ofLines());
+        assertThat(feed.statusCode()).isEqualTo(200);
+
+        postJson(base + "/api/commands/inventory/replace", Map.of("storeId", "A", "sku", "FEED1", "quantity", 8));
+        try (Stream<String> lines = feed.body()) {
+            // The subscription starts with the current value (0 or 8), then sees 8 once the write lands
+            String data = lines.filter(l -> l.startsWith("data:") && l.contains("\"quantity\":8")).findFirst().orElseThrow();
+            assertThat(data).contains("\"storeId\":\"A\"").contains("\"sku\":\"FEED1\"");
+        }
+    }
+
+    @Test
+    void queriesAnswerIfNoneMatchWith304UntilTheRowChanges() {
+        String base = "http://localhost:" + port;
+        postJson(base + "/api/commands/inventory/replace", Map.of("storeId", "A", "sku", "ETAG1", "quantity", 3));
+
+        for (String url : List.of(base + "/api/query/inventory/global/ETAG1", base + "/api/query/inventory/store/A/ETAG1")) {
+            ResponseEntity<Map> first = rest.getForEntity(url, Map.class);
+            String etag = first.getHeaders().getETag();
+            assertThat(etag).isNotNull();
+            assertThat(first.getBody().get("quantity")).isEqualTo(3);
+
+            HttpHeaders conditional = new HttpHeaders();
+            conditional.setIfNoneMatch(etag);
+            ResponseEntity<String> notModified = rest.exchange(url, HttpMethod.GET, new HttpEntity<>(conditional), String.class);
+            assertThat(notModified.getStatusCode().value()).isEqualTo(304);
+            assertThat(notModified.getBody()).isNull();
+            // Served again from the cached body under the same tag
+            assertThat(rest.getForEntity(url, String.class).getHeaders().getETag()).isEqualTo(etag);
+        }
+
+        HttpHeaders conditional = new HttpHeaders();
+        conditional.setIfNoneMatch(rest.getForEntity(base + "/api/query/inventory/store/A/ETAG1", String.class).getHeaders().getETag());
+        HttpHeaders json = new HttpHeaders();
+        json.setContentType(MediaType.APPLICATION_JSON);
+        rest.postForEntity(base + "/api/commands/reservations", new HttpEntity<>(Map.of("storeId", "A", "sku", "ETAG1", "quantity", 1), json), String.class);
+        ResponseEntity<Map> changed = rest.exchange(base + "/api/query/inventory/store/A/ETAG1", HttpMethod.GET, new HttpEntity<>(conditional), Map.class);
+        assertThat(changed.getStatusCode().value()).isEqualTo(200);
+        assertThat(changed.getBody().get("reserved")).isEqualTo(1);
+        assertThat(changed.getHeaders().getETag()).isNotEqualTo(conditional.getIfNoneMatch().get(0));
+    }
+
+    @Test
+    void lowestStockListsTheLeastStockedSkusOfAStore() {
+        String base = "http://localhost:" + port;
+        postJson(base + "/api/commands/inventory/replace", Map.of("storeId", "RANK", "sku", "R-1", "quantity", 30));
+        postJson(base + "/api/commands/inventory/replace", Map.of("storeId", "RANK", "sku", "R-2", "quantity", 10));
+        postJson(base + "/api/commands/inventory/replace", Map.of("storeId", "RANK", "sku", "R-3", "quantity", 20));
+        postJson(base + "/api/commands/inventory/adjust", Map.of("storeId", "RANK", "sku", "R-1", "delta", -25));
+
+        String lowest = rest.getForObject(base + "/api/query/inventory/lowest?storeId=RANK&limit=2", String.class);
+        assertThat(lowest.split("\n")).containsExactly(
+            "{\"sku\":\"R-1\",\"quantity\":5}",
+            "{\"sku\":\"R-2\",\"quantity\":10}");
+        assertThat(rest.getForEntity(base + "/api/query/inventory/lowest?limit=0", String.class).getStatusCode().value()).isEqualTo(400);
+    }
+
+    @Test
+    void hierarchyRollsStoresUpToDistrictsAndRegions() {
+        String base = "http://localhost:" + port;
+        postJson(base + "/api/commands/inventory/replace", Map.of("storeId", "H1", "sku", "ROLL1", "quantity", 4));
+        postJson(base + "/api/commands/inventory/replace", Map.of("storeId", "H2", "sku", "ROLL1", "quantity", 6));
+
+        HttpHeaders json = new HttpHeaders();
+        json.setContentType(MediaType.APPLICATION_JSON);
+        rest.put(base + "/api/hierarchy/stores/H1", new HttpEntity<>(Map.of("parentId", "HD"), json));
+        rest.put(base + "/api/hierarchy/stores/H2", new HttpEntity<>(Map.of("parentId", "HD"), json));
+        rest.put(base + "/api/hierarchy/districts/HD", new HttpEntity<>(Map.of("parentId", "HR"), json));
+        postJson(base + "/api/commands/inventory/adjust", Map.of("storeId", "H2", "sku", "ROLL1", "delta", 1));
+
+        Map<?, ?> district = rest.getForObject(base + "/api/query/inventory/district/HD/ROLL1", Map.class);
+        assertThat(district.get("quantity")).isEqualTo(11);
+        Map<?, ?> region = rest.getForObject(base + "/api/query/inventory/region/HR/ROLL1", Map.class);
+        assertThat(region.get("quantity")).isEqualTo(11);
+
+        rest.delete(base + "/api/hierarchy/stores/H1");
+        assertThat(rest.getForObject(base + "/api/query/inventory/region/HR/ROLL1", Map.class).get("quantity")).isEqualTo(7);
+        assertThat(rest.getForObject(base + "/api/hierarchy", Map.class).get("districtRegions")).isEqualTo(Map.of("HD", "HR"));
+    }
+
+    @Test
+    void idempotencyKeyReplaysTheFirstResponse() {
+        String base = "http://localhost:" + port;
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("Idempotency-Key", "pos-7-txn-1");
+        HttpEntity<Map<String, Object>> adjust = new HttpEntity<>(Map.of("storeId", "A", "sku", "IDEM1", "delta", 3), headers);
+
+        ResponseEntity<Map> first = rest.postForEntity(base + "/api/commands/inventory/adjust", adjust, Map.class);
+        ResponseEntity<Map> retry = rest.postForEntity(base + "/api/commands/inventory/adjust", adjust, Map.class);
+        assertThat(retry.getStatusCode().value()).isEqualTo(200);
+        assertThat(retry.getHeaders().getETag()).isEqualTo(first.getHeaders().getETag());
+        assertThat(retry.getHeaders().getFirst("Idempotent-Replayed")).isEqualTo("true");
+        assertThat(retry.getBody()).isEqualTo(first.getBody());
+        // Applied once
+        Map<?, ?> store = rest.getForObject(base + "/api/query/inventory/store/A/IDEM1", Map.class);
+        assertThat(store.get("quantity")).isEqualTo(3);
+
+        HttpEntity<Map<String, Object>> different = new HttpEntity<>(Map.of("storeId", "A", "sku", "IDEM1", "delta", 4), headers);
+        assertThat(rest.postForEntity(base + "/api/commands/inventory/adjust", different, String.class).getStatusCode().value()).isEqualTo(422);
+
+        // The stored response is JSON, so the same request asking for the binary encoding is refused too
+        HttpHeaders binary = new HttpHeaders(headers);
+        binary.setAccept(List.of(ResponseEncoder.BINARY));
+        assertThat(rest.postForEntity(base + "/api/commands/inventory/adjust", new HttpEntity<>(adjust.getBody(), binary), byte[].class)
+            .getStatusCode().value()).isEqualTo(422);
+    }
+
+    @Test
+    void historyAnswersAsOfAndRangeQueries() throws InterruptedException {
+        String base = "http://localhost:" + port;
+        postJson(base + "/api/commands/inventory/replace", Map.of("storeId", "A", "sku", "HIST1", "quantity", 10));
+        Thread.sleep(5);
+        Instant between = Instant.now();
+        Thread.sleep(5);
+        postJson(base + "/api/commands/inventory/adjust", Map.of("storeId", "A", "sku", "HIST1", "delta", -3));
+
+        Map<?, ?> asOf = rest.getForObject(base + "/api/query/inventory/history/A/HIST1/as-of?at=" + between, Map.class);
+        assertThat(((Map<?, ?>) asOf.get("change")).get("quantity")).isEqualTo(10);
+        Map<?, ?> range = rest.getForObject(base + "/api/query/inventory/history/A/HIST1?from=" + between + "&to=" + Instant.now(), Map.class);
+        assertThat(((Map<?, ?>) range.get("initial")).get("quantity")).isEqualTo(10);
+        List<?> changes = (List<?>) range.get("changes");
+        assertThat(changes).hasSize(1);
+        assertThat(((Map<?, ?>) changes.get(0)).get("quantity")).isEqualTo(7);
+        assertThat(rest.getForEntity(base + "/api/query/inventory/history/A/HIST1/as-of?at=2000-01-01T00:00:00Z", String.class)
+            .getStatusCode().value()).isEqualTo(404);
+    }
+
+    @Test
+    void deadLetterAdminEndpointsAnswerForAnEmptyQueue() {
+        String base = "http://localhost:" + port + "/api/admin/dead-letters";
+        Map<?, ?> page = rest.getForObject(base + "?limit=10", Map.class);
+        assertThat(page.get("entries")).isEqualTo(List.of());
+        assertThat(page.get("capacity")).isEqualTo(65_536);
+        assertThat(rest.getForEntity(base + "/42", String.class).getStatusCode().value()).isEqualTo(404);
+        assertThat(rest.postForEntity(base + "/42/redrive", null, String.class).getStatusCode().value()).isEqualTo(404);
+
+        ResponseEntity<Map> redrive = rest.postForEntity(base + "/redrive", null, Map.class);
+        assertThat(redrive.getStatusCode().value()).isEqualTo(202);
+        assertThat(rest.getForObject(base + "/redrive", Map.class)).containsKey("running");
+        assertThat(rest.exchange(base, HttpMethod.DELETE, null, Map.class).getBody().get("purged")).isEqualTo(0);
+    }
+
+    @Test
+    void binaryAcceptGetsTheCompactEncoding() {
+        String base = "http://localhost:" + port;
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set(HttpHeaders.ACCEPT, ResponseEncoder.BINARY_VALUE + ", application/json;q=0.5");
+        ResponseEntity<byte[]> command = rest.postForEntity(base + "/api/commands/inventory/replace",
+            new HttpEntity<>(Map.of("storeId", "BIN", "sku", "B1", "quantity", 12), headers), byte[].class);
+        assertThat(command.getHeaders().getContentType()).isEqualTo(ResponseEncoder.BINARY);
+        ByteBuffer record = ByteBuffer.wrap(command.getBody());
+        record.position(2 + 3 + 2 + 2);
+        assertThat(record.getInt()).isEqualTo(12);
+        assertThat(record.getLong()).isEqualTo(1);
+
+        ResponseEntity<byte[]> binary = rest.exchange(base + "/api/query/inventory/store/BIN/B1", HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+        assertThat(binary.getHeaders().getContentType()).isEqualTo(ResponseEncoder.BINARY);
+        assertThat(binary.getHeaders().getVary()).contains(HttpHeaders.ACCEPT);
+        ByteBuffer row = ByteBuffer.wrap(binary.getBody());
+        row.position(2 + 3 + 2 + 2);
+        assertThat(List.of(row.getInt(), row.getInt(), row.getInt())).containsExactly(12, 0, 12);
+
+        // JSON and binary bodies are tagged apart
+        ResponseEntity<Map> json = rest.getForEntity(base + "/api/query/inventory/store/BIN/B1", Map.class);
+        assertThat(json.getBody().get("available")).isEqualTo(12);
+        assertThat(json.getHeaders().getETag()).isNotEqualTo(binary.getHeaders().getETag());
+        ResponseEntity<Map> adjusted = rest.postForEntity(base + "/api/commands/inventory/adjust",
+            new HttpEntity<>(Map.of("storeId", "BIN", "sku", "B1", "delta", -2)), Map.class);
+        assertThat(adjusted.getBody()).containsEntry("quantity", 10).containsEntry("version", 2).containsKey("updatedAt");
+    }
+
     private void postJson(String url, Map<String, Object> body) {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
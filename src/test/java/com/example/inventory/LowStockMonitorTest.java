@@ -0,0 +1,91 @@
+package com.example.inventory;
+
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.service.LowStockMonitor;
+import com.example.inventory.service.LowStockMonitor.Alert;
+import com.example.inventory.service.LowStockMonitor.Kind;
+import com.example.inventory.service.StockTransfer;
+import com.example.inventory.service.StoreInventoryService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LowStockMonitorTest {
+
+    @Test
+    void alerts_once_per_crossing_and_clears_only_above_the_hysteresis_band() {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry());
+        CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+        proj.subscribe();
+        LowStockMonitor monitor = new LowStockMonitor(proj, new SimpleMeterRegistry());
+        monitor.register();
+        StoreInventoryService svc = new StoreInventoryService(bus);
+        svc.replaceStock("A", "SKU-L", 12);
+        monitor.setRule("SKU-L", 10, 5);
+
+        // Hovering around the threshold: below once, then no further alerts until 15 is reached
+        for (int q : new int[] {9, 11, 8, 10, 14, 9}) {
+            svc.replaceStock("A", "SKU-L", q);
+        }
+        assertThat(monitor.globalBreaches()).hasSize(1);
+        svc.replaceStock("A", "SKU-L", 15);
+        assertThat(monitor.globalBreaches()).isEmpty();
+
+        List<Alert> alerts = monitor.drainAlerts(100);
+        assertThat(alerts).extracting(Alert::kind).containsExactly(Kind.BELOW, Kind.RECOVERED);
+        assertThat(alerts.get(0).quantity()).isEqualTo(9);
+        assertThat(alerts.get(1).quantity()).isEqualTo(15);
+    }
+
+    @Test
+    void store_rules_and_global_rules_are_independent() {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry());
+        CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+        proj.subscribe();
+        LowStockMonitor monitor = new LowStockMonitor(proj, new SimpleMeterRegistry());
+        monitor.register();
+        StoreInventoryService svc = new StoreInventoryService(bus);
+        svc.replaceStock("A", "SKU-S", 20);
+        svc.replaceStock("B", "SKU-S", 2);
+
+        // Rules are checked against current quantities as soon as they are set
+        monitor.setStoreRule("B", "SKU-S", 5, 0);
+        monitor.setRule("SKU-S", 10, 0);
+        assertThat(monitor.storeBreaches()).singleElement().satisfies(b -> assertThat(b.storeId()).isEqualTo("B"));
+        assertThat(monitor.globalBreaches()).isEmpty();
+
+        // The transfer leaves the global total alone and clears B's breach
+        svc.transfer(List.of(new StockTransfer("SKU-S", "A", "B", 10)));
+        assertThat(monitor.storeBreaches()).isEmpty();
+        svc.adjustStock("A", "SKU-S", -5);
+        assertThat(monitor.globalBreaches()).isEmpty();
+        svc.adjustStock("B", "SKU-S", -10);
+        assertThat(monitor.globalBreaches()).singleElement().satisfies(b -> assertThat(monitor.currentQuantity(b)).isEqualTo(7));
+        assertThat(monitor.storeBreaches()).singleElement().satisfies(b -> assertThat(monitor.currentQuantity(b)).isEqualTo(2));
+
+        assertThat(monitor.removeStoreRule("B", "SKU-S")).isTrue();
+        assertThat(monitor.storeBreaches()).isEmpty();
+    }
+
+    @Test
+    void full_alert_queue_drops_the_oldest_and_counts_it() {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry());
+        CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+        proj.subscribe();
+        LowStockMonitor monitor = new LowStockMonitor(proj, new SimpleMeterRegistry(), 0, 3);
+        monitor.register();
+        StoreInventoryService svc = new StoreInventoryService(bus);
+        for (int i = 0; i < 5; i++) {
+            monitor.setRule("SKU-" + i, 1, 0);
+            svc.replaceStock("A", "SKU-" + i, 0);
+        }
+
+        assertThat(monitor.droppedAlerts()).isEqualTo(2);
+        assertThat(monitor.drainAlerts(10)).extracting(Alert::sku).containsExactly("SKU-2", "SKU-3", "SKU-4");
+    }
+}
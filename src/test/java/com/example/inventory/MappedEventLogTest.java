@@ -0,0 +1,181 @@
+package com.example.inventory;
+
+import com.example.inventory.event.InventoryEvent;
+import com.example.inventory.event.StockAdjusted;
+import com.example.inventory.event.StockReplaced;
+import com.example.inventory.eventlog.MappedEventLog;
+import com.example.inventory.eventlog.MappedEventLog.FsyncPolicy;
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.service.StockTransfer;
+import com.example.inventory.service.StoreInventoryService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedEventLogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replays_across_segments_after_reopen() throws Exception {
+        List<InventoryEvent> written = new ArrayList<>();
+        try (MappedEventLog log = new MappedEventLog(dir, 4096, FsyncPolicy.PER_EVENT, 5)) {
+            for (int i = 1; i <= 500; i++) {
+                InventoryEvent e = i % 2 == 0
+                    ? new StockAdjusted("S" + (i % 7), "SKU-ç-" + i, -i, i, Instant.ofEpochSecond(1_700_000_000L, i))
+                    : new StockReplaced("S" + (i % 7), "SKU-" + i, i, i, Instant.ofEpochSecond(1_700_000_000L, i));
+                log.append(e);
+                written.add(e);
+            }
+        }
+        try (var files = Files.list(dir)) {
+            assertThat(files.count()).isGreaterThan(1);
+        }
+
+        try (MappedEventLog log = new MappedEventLog(dir, 4096, FsyncPolicy.PER_EVENT, 5)) {
+            List<InventoryEvent> replayed = new ArrayList<>();
+            assertThat(log.replay(0, replayed::add)).isEqualTo(500);
+            assertThat(replayed).isEqualTo(written);
+        }
+    }
+
+    @Test
+    void torn_tail_is_ignored_and_overwritten() throws Exception {
+        long end;
+        try (MappedEventLog log = new MappedEventLog(dir, 1 << 16, FsyncPolicy.BATCHED, 5)) {
+            log.append(new StockReplaced("A", "SKU-1", 1, 1, Instant.now()));
+            end = log.append(new StockReplaced("A", "SKU-1", 2, 2, Instant.now()));
+        }
+        // Simulate a crash halfway through writing a third record
+        try (RandomAccessFile file = new RandomAccessFile(dir.resolve(String.format("%020d.log", 0)).toFile(), "rw")) {
+            file.seek(end);
+            file.writeInt(40);
+            file.writeInt(12345);
+        }
+
+        try (MappedEventLog log = new MappedEventLog(dir, 1 << 16, FsyncPolicy.INTERVAL, 5)) {
+            assertThat(log.endLsn()).isEqualTo(end);
+            log.append(new StockAdjusted("A", "SKU-1", 3, 3, Instant.now()));
+            List<InventoryEvent> replayed = new ArrayList<>();
+            log.replay(0, replayed::add);
+            assertThat(replayed).hasSize(3);
+            assertThat(replayed.get(2)).isInstanceOf(StockAdjusted.class);
+        }
+    }
+
+    @Test
+    void group_commit_makes_concurrent_appends_durable() throws Exception {
+        try (MappedEventLog log = new MappedEventLog(dir, 1 << 20, FsyncPolicy.BATCHED, 5);
+             var pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<java.util.concurrent.Future<Long>> lsns = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                int n = i;
+                lsns.add(pool.submit(() -> log.append(new StockReplaced("S", "SKU-" + n, n, 1, Instant.now()))));
+            }
+            for (var lsn : lsns) {
+                long appended = lsn.get();
+                assertThat(log.durableLsn()).isGreaterThanOrEqualTo(appended);
+            }
+            assertThat(log.replay(0, e -> { })).isEqualTo(200);
+        }
+    }
+
+    @Test
+    void hot_row_writers_wait_for_the_group_commit_outside_the_row_lock_and_log_in_version_order() throws Exception {
+        try (MappedEventLog log = new MappedEventLog(dir, 1 << 20, FsyncPolicy.BATCHED, 5);
+             var pool = Executors.newFixedThreadPool(8)) {
+            InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry(), Optional.of(log));
+            StoreInventoryService svc = new StoreInventoryService(bus);
+            List<java.util.concurrent.Future<Boolean>> writes = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                // Each write is acknowledged only once its record is durable
+                writes.add(pool.submit(() -> {
+                    svc.adjustStock("S", "HOT", 1);
+                    return log.durableLsn() > 0;
+                }));
+            }
+            for (var write : writes) {
+                assertThat(write.get()).isTrue();
+            }
+            svc.adjustStock("S", "HOT", 1);
+            assertThat(log.durableLsn()).isEqualTo(log.endLsn());
+
+            List<Long> versions = new ArrayList<>();
+            log.replay(0, e -> versions.add(e.version()));
+            assertThat(versions).hasSize(401).isSorted().doesNotHaveDuplicates();
+        }
+    }
+
+    @Test
+    void restart_rebuilds_service_and_projection() {
+        try (MappedEventLog log = new MappedEventLog(dir, 1 << 16, FsyncPolicy.BATCHED, 5)) {
+            InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry(), Optional.of(log));
+            StoreInventoryService svc = new StoreInventoryService(bus);
+            CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+            proj.subscribe();
+            svc.replaceStock("A", "SKU-R", 10);
+            svc.adjustStock("A", "SKU-R", -15);
+            svc.adjustStock("A", "SKU-R", 4);
+            svc.replaceStock("B", "SKU-R", 7);
+        }
+
+        try (MappedEventLog log = new MappedEventLog(dir, 1 << 16, FsyncPolicy.BATCHED, 5)) {
+            InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry(), Optional.of(log));
+            StoreInventoryService svc = new StoreInventoryService(bus);
+            CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+            proj.subscribe();
+            log.replay(0, e -> {
+                svc.restore(e);
+                bus.redeliver(e);
+            });
+
+            assertThat(svc.getStock("A", "SKU-R").orElseThrow().getQuantity()).isEqualTo(4);
+            assertThat(svc.getStock("A", "SKU-R").orElseThrow().getVersion()).isEqualTo(3);
+            assertThat(proj.getGlobalQuantity("SKU-R")).isEqualTo(11);
+            assertThat(svc.adjustStock("B", "SKU-R", 1).getVersion()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void transfer_is_logged_as_one_record_and_replayed_whole() {
+        try (MappedEventLog log = new MappedEventLog(dir, 1 << 16, FsyncPolicy.BATCHED, 5)) {
+            InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry(), Optional.of(log));
+            StoreInventoryService svc = new StoreInventoryService(bus);
+            svc.replaceStock("A", "SKU-G", 10);
+            long before = log.endLsn();
+            svc.transfer(List.of(new StockTransfer("SKU-G", "A", "B", 3), new StockTransfer("SKU-G", "A", "C", 2)));
+            long groupEnd = log.endLsn();
+
+            List<InventoryEvent> replayed = new ArrayList<>();
+            log.replay(before, replayed::add);
+            assertThat(replayed).hasSize(4);
+            assertThat(replayed).extracting(InventoryEvent::storeId).containsExactly("A", "B", "A", "C");
+            assertThat(groupEnd).isGreaterThan(before);
+        }
+
+        try (MappedEventLog log = new MappedEventLog(dir, 1 << 16, FsyncPolicy.BATCHED, 5)) {
+            InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry(), Optional.of(log));
+            CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+            proj.subscribe();
+            log.replay(0, bus::redeliver);
+
+            assertThat(proj.getStoreQuantity("A", "SKU-G")).contains(5);
+            assertThat(proj.getStoreQuantity("C", "SKU-G")).contains(2);
+            assertThat(proj.getGlobalQuantity("SKU-G")).isEqualTo(10);
+        }
+    }
+}
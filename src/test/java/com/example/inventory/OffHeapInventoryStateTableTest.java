@@ -0,0 +1,83 @@
+package com.example.inventory;
+
+import com.example.inventory.event.StockAdjusted;
+import com.example.inventory.event.StockReplaced;
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.state.InventoryStateTable.Row;
+import com.example.inventory.state.OffHeapInventoryStateTable;
+import com.example.inventory.state.StateFootprintReport;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OffHeapInventoryStateTableTest {
+
+    @Test
+    void matches_hash_map_across_resizes_and_deletes() {
+        // Tiny segments force many resizes and long probe chains
+        OffHeapInventoryStateTable table = new OffHeapInventoryStateTable(4, 8);
+        Map<String, Row> reference = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 50_000; i++) {
+            String store = "S" + random.nextInt(40);
+            String sku = "SKU-" + random.nextInt(500);
+            String key = store + "|" + sku;
+            if (random.nextInt(5) == 0) {
+                table.remove(store, sku);
+                reference.remove(key);
+            } else {
+                Row row = new Row(random.nextInt(1000), i, i * 10L);
+                table.compute(store, sku, current -> row);
+                reference.put(key, row);
+            }
+        }
+
+        assertThat(table.size()).isEqualTo(reference.size());
+        for (int s = 0; s < 40; s++) {
+            for (int k = 0; k < 500; k++) {
+                assertThat(table.get("S" + s, "SKU-" + k)).isEqualTo(reference.get("S" + s + "|SKU-" + k));
+            }
+        }
+    }
+
+    @Test
+    void footprint_follows_estimate_and_beats_string_keyed_maps() {
+        OffHeapInventoryStateTable table = new OffHeapInventoryStateTable();
+        // ~1000 rows per segment, comfortably between resize thresholds
+        int rows = 0;
+        for (int s = 0; s < 80; s++) {
+            for (int k = 0; k < 800; k++) {
+                table.compute("S" + s, "SKU-" + k, current -> new Row(1, 1, 0));
+                rows++;
+            }
+        }
+        long slotBytes = table.footprintBytes() - 880L * 96;
+        assertThat(slotBytes).isEqualTo(OffHeapInventoryStateTable.estimateSlotBytes(rows));
+
+        StateFootprintReport.Estimate estimate = StateFootprintReport.estimate(100_000_000L, 2_000, 400_000);
+        assertThat(estimate.offHeapBytes() + estimate.onHeapBytes()).isLessThan(estimate.heapMapsBytes());
+    }
+
+    @Test
+    void projection_runs_on_off_heap_table() {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new io.micrometer.core.instrument.simple.SimpleMeterRegistry());
+        CentralInventoryProjection proj = new CentralInventoryProjection(bus, new OffHeapInventoryStateTable());
+        proj.subscribe();
+
+        bus.publish(new StockReplaced("A", "SKU-O", 4, 1, Instant.now()));
+        bus.publish(new StockReplaced("B", "SKU-O", 6, 1, Instant.now()));
+        bus.publish(new StockAdjusted("A", "SKU-O", -1, 2, Instant.now()));
+        bus.publish(new StockAdjusted("A", "SKU-O", 100, 1, Instant.now())); // stale
+
+        assertThat(proj.getGlobalQuantity("SKU-O")).isEqualTo(9);
+        assertThat(proj.getStoreQuantity("A", "SKU-O")).contains(3);
+        assertThat(proj.getStoreQuantity("C", "SKU-O")).isEmpty();
+    }
+}
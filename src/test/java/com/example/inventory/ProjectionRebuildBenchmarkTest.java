@@ -0,0 +1,81 @@
+package com.example.inventory;
+
+import com.example.inventory.event.InventoryEvent;
+import com.example.inventory.event.StockAdjusted;
+import com.example.inventory.event.StockReplaced;
+import com.example.inventory.eventlog.MappedEventLog;
+import com.example.inventory.eventlog.MappedEventLog.FsyncPolicy;
+import com.example.inventory.eventlog.ProjectionRebuilder;
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.InMemoryEventBus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Rebuild throughput by thread count over a synthetic log (2M events, 200k rows). Opt-in, as results depend on
+ * the cores available:
+ * <pre>mvn test -Dtest=ProjectionRebuildBenchmarkTest -Dbenchmark=true</pre>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ProjectionRebuildBenchmarkTest {
+    private static final int STORES = 100;
+    private static final int SKUS = 2_000;
+    private static final int EVENTS = 2_000_000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void events_per_second_by_parallelism() {
+        try (MappedEventLog log = new MappedEventLog(dir, 64 << 20, FsyncPolicy.INTERVAL, 1_000)) {
+            long[] versions = new long[STORES * SKUS];
+            Random random = new Random(1);
+            Instant now = Instant.now();
+            List<InventoryEvent> record = new ArrayList<>();
+            for (int i = 0; i < EVENTS; i++) {
+                int row = random.nextInt(versions.length);
+                String store = "S" + row / SKUS;
+                String sku = "SKU-" + row % SKUS;
+                long version = ++versions[row];
+                record.add(version == 1 || random.nextInt(10) == 0
+                    ? new StockReplaced(store, sku, random.nextInt(1_000), version, now)
+                    : new StockAdjusted(store, sku, random.nextInt(21) - 10, version, now));
+                if (record.size() == 100) {
+                    log.append(record);
+                    record.clear();
+                }
+            }
+
+            InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry());
+            CentralInventoryProjection projection = new CentralInventoryProjection(bus);
+            projection.subscribe();
+            ProjectionRebuilder rebuilder = new ProjectionRebuilder(log, projection);
+            // Warm-up
+            rebuilder.rebuild(1);
+
+            int cores = Runtime.getRuntime().availableProcessors();
+            System.out.printf("cores=%d%n%-11s %12s %14s %14s%n", cores, "parallelism", "events/s", "replay (ms)", "total (ms)");
+            // Baseline: delivering the log event by event into an empty projection, as startup recovery does
+            InMemoryEventBus replayBus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry());
+            new CentralInventoryProjection(replayBus).subscribe();
+            long started = System.nanoTime();
+            log.replay(0, replayBus::redeliver);
+            long nanos = System.nanoTime() - started;
+            System.out.printf("%-11s %12d %14d %14d%n", "redeliver", EVENTS * 1_000_000_000L / nanos, nanos / 1_000_000, nanos / 1_000_000);
+            for (int parallelism = 1; parallelism <= Math.max(4, cores); parallelism *= 2) {
+                ProjectionRebuilder.Result result = rebuilder.rebuild(parallelism);
+                System.out.printf("%-11d %12d %14d %14d%n", parallelism, result.eventsPerSecond(),
+                    result.replayNanos() / 1_000_000, result.totalNanos() / 1_000_000);
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.inventory;
+
+import com.example.inventory.event.StockReplaced;
+import com.example.inventory.eventlog.MappedEventLog;
+import com.example.inventory.eventlog.MappedEventLog.FsyncPolicy;
+import com.example.inventory.eventlog.ProjectionRebuilder;
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.service.StockTransfer;
+import com.example.inventory.service.StoreHierarchy;
+import com.example.inventory.service.StoreInventoryService;
+import com.example.inventory.state.HeapInventoryStateTable;
+import com.example.inventory.state.InventoryStateTable.Row;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ProjectionRebuildTest {
+    private static final int STORES = 8;
+    private static final int SKUS = 200;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void rebuildRepairsTheProjectionWhileCommandsAndQueriesKeepRunning() throws Exception {
+        try (MappedEventLog log = new MappedEventLog(dir, 1 << 20, FsyncPolicy.INTERVAL, 5)) {
+            InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry(), Optional.of(log));
+            StoreInventoryService svc = new StoreInventoryService(bus);
+            CentralInventoryProjection proj = new CentralInventoryProjection(bus, new HeapInventoryStateTable(),
+                new StoreHierarchy("S0=D0,S1=D0,S2=D1,S3=D1,S4=D2", "D0=R0,D1=R0,D2=R1"));
+            proj.subscribe();
+            Random random = new Random(7);
+            for (int i = 0; i < 20_000; i++) {
+                command(svc, random);
+            }
+
+            // Corrupt a row and a total behind the log's back
+            proj.restoreRow("S0", "SKU-1", new Row(999_999, Long.MAX_VALUE, 0));
+            Map<String, Integer> notified = new HashMap<>();
+            proj.addListener(new CentralInventoryProjection.ChangeListener() {
+                @Override
+                public synchronized void storeQuantityChanged(String storeId, String sku, int quantity) {
+                    if (storeId.equals("S0") && sku.equals("SKU-1")) notified.put("row", quantity);
+                }
+
+                @Override
+                public synchronized void globalQuantityChanged(String sku, int quantity) {
+                    if (sku.equals("SKU-1")) notified.put("global", quantity);
+                }
+            });
+
+            AtomicBoolean running = new AtomicBoolean(true);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            AtomicLong reads = new AtomicLong();
+            Thread writer = Thread.ofPlatform().start(() -> {
+                Random r = new Random(11);
+                try {
+                    while (running.get()) command(svc, r);
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            });
+            Thread reader = Thread.ofPlatform().start(() -> {
+                try {
+                    while (running.get()) {
+                        // The old state answers until the swap, the new one after
+                        assertThat(proj.storeSkus("S1")).isNotEmpty();
+                        proj.getGlobalQuantity("SKU-2");
+                        reads.incrementAndGet();
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            });
+
+            ProjectionRebuilder.Result result;
+            try {
+                result = new ProjectionRebuilder(log, proj, 4, 4, 1_024).rebuild(4);
+            } finally {
+                running.set(false);
+                writer.join();
+                reader.join();
+            }
+            assertThat(failure.get()).isNull();
+            assertThat(reads.get()).isPositive();
+            assertThat(result.events()).isGreaterThanOrEqualTo(20_000);
+            assertThat(proj.generation()).isEqualTo(1);
+
+            // Every row matches the command side, and totals and rollups match the rows
+            Map<String, Integer> totals = new HashMap<>();
+            Map<String, Integer> districtTotals = new HashMap<>();
+            for (int s = 0; s < STORES; s++) {
+                String store = "S" + s;
+                for (int k = 0; k < SKUS; k++) {
+                    String sku = "SKU-" + k;
+                    int expected = svc.getStock(store, sku).map(record -> record.getQuantity()).orElse(0);
+                    assertThat(proj.getStoreQuantity(store, sku).orElse(0)).as("%s %s", store, sku).isEqualTo(expected);
+                    totals.merge(sku, expected, Integer::sum);
+                    String district = proj.hierarchy().districtOf(store);
+                    if (district != null) districtTotals.merge(district + "|" + sku, expected, Integer::sum);
+                }
+            }
+            totals.forEach((sku, total) -> assertThat(proj.getGlobalQuantity(sku)).as(sku).isEqualTo(total));
+            districtTotals.forEach((key, total) -> {
+                String[] parts = key.split("\\|");
+                assertThat(proj.hierarchy().districtQuantity(parts[0], parts[1])).as(key).isEqualTo(total);
+            });
+            assertThat(proj.hierarchy().regionQuantity("R1", "SKU-3")).isEqualTo(proj.hierarchy().districtQuantity("D2", "SKU-3"));
+
+            int repaired = svc.getStock("S0", "SKU-1").orElseThrow().getQuantity();
+            assertThat(notified).containsEntry("row", repaired).containsEntry("global", totals.get("SKU-1"));
+        }
+    }
+
+    @Test
+    void aPublishDeliveredButNotYetLoggedAtTheCaptureSurvivesTheSwap() throws Exception {
+        try (MappedEventLog log = new MappedEventLog(dir, 1 << 20, FsyncPolicy.INTERVAL, 5)) {
+            InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry(), Optional.of(log));
+            StoreInventoryService svc = new StoreInventoryService(bus);
+            CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+            proj.subscribe();
+            svc.replaceStock("S1", "SKU-A", 5);
+
+            // Subscribed after the projection: holds the publish between its delivery there and the log append
+            CountDownLatch delivered = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            bus.subscribe("gate", event -> {
+                if (event.sku().equals("SKU-A") && delivered.getCount() > 0) {
+                    delivered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            Thread publisher = Thread.ofPlatform().start(() -> svc.adjustStock("S1", "SKU-A", 3));
+            delivered.await();
+            assertThat(proj.getStoreQuantity("S1", "SKU-A")).contains(8);
+
+            CentralInventoryProjection.Rebuild rebuild = proj.startRebuild();
+            Thread catchUp = Thread.ofPlatform().start(() -> {
+                rebuild.captureDeliveries();
+                log.replay(0, event -> rebuild.apply(List.of(event)));
+            });
+            // Let the publish append only once the capture waits for it, or has gone ahead without waiting
+            while (catchUp.isAlive() && catchUp.getState() != Thread.State.TIMED_WAITING) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+            catchUp.join();
+            publisher.join();
+            rebuild.commit();
+
+            assertThat(proj.getStoreQuantity("S1", "SKU-A")).contains(8);
+            assertThat(proj.getGlobalQuantity("SKU-A")).isEqualTo(8);
+        }
+    }
+
+    @Test
+    void oneRebuildAtATimeAndAnAbortedOneChangesNothing() {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry());
+        StoreInventoryService svc = new StoreInventoryService(bus);
+        CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+        proj.subscribe();
+        svc.replaceStock("S1", "SKU-A", 5);
+
+        CentralInventoryProjection.Rebuild rebuild = proj.startRebuild();
+        assertThatThrownBy(proj::startRebuild).isInstanceOf(IllegalStateException.class);
+        svc.adjustStock("S1", "SKU-A", 2);
+        rebuild.abort();
+
+        assertThat(proj.getGlobalQuantity("SKU-A")).isEqualTo(7);
+        assertThat(proj.generation()).isZero();
+        proj.startRebuild().abort();
+    }
+
+    @Test
+    void aViewKeepsReadingTheStateItWasTakenFromAcrossASwap() {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry());
+        StoreInventoryService svc = new StoreInventoryService(bus);
+        CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+        proj.subscribe();
+        for (int i = 0; i < 5; i++) svc.adjustStock("S1", "SKU-A", 1);
+
+        CentralInventoryProjection.View before = proj.view();
+        CentralInventoryProjection.Rebuild rebuild = proj.startRebuild();
+        CentralInventoryProjection.Partition partition = new CentralInventoryProjection.Partition();
+        partition.apply(new StockReplaced("S1", "SKU-A", 2, 1, Instant.now()));
+        rebuild.merge(partition);
+        rebuild.captureDeliveries();
+        rebuild.commit();
+
+        // The swapped-in state restarts its versions, so only the generation tells the two apart
+        CentralInventoryProjection.View after = proj.view();
+        assertThat(before.generation()).isZero();
+        assertThat(before.globalVersion("SKU-A")).isEqualTo(5);
+        assertThat(before.globalQuantity("SKU-A")).isEqualTo(5);
+        assertThat(before.storeRow("S1", "SKU-A").quantity()).isEqualTo(5);
+        assertThat(after.generation()).isEqualTo(1).isEqualTo(proj.generation());
+        assertThat(after.globalVersion("SKU-A")).isEqualTo(1);
+        assertThat(after.globalQuantity("SKU-A")).isEqualTo(2);
+    }
+
+    private static void command(StoreInventoryService svc, Random random) {
+        String store = "S" + random.nextInt(STORES);
+        String sku = "SKU-" + random.nextInt(SKUS);
+        switch (random.nextInt(10)) {
+            case 0 -> svc.replaceStock(store, sku, random.nextInt(100));
+            case 1 -> {
+                try {
+                    svc.transfer(List.of(new StockTransfer(sku, store, "S" + random.nextInt(STORES), 1)));
+                } catch (StoreInventoryService.InsufficientStockException | IllegalArgumentException e) {
+                    // Nothing to move, or to the same store
+                }
+            }
+            default -> svc.adjustStock(store, sku, random.nextInt(21) - 8);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.inventory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Read throughput of the single-key query endpoints before (no conditional requests, no response cache) and
+ * after (clients revalidate with If-None-Match, cache on). The mix is 95% reads and 5% adjustments over
+ * 2,000 skus with a Zipf-like skew, so hot keys change under the readers. Opt-in:
+ * <pre>mvn test -Dtest=QueryCacheBenchmarkTest -Dbenchmark=true</pre>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class QueryCacheBenchmarkTest {
+    private static final int CLIENTS = 16;
+    private static final int SKUS = 2_000;
+    private static final long PHASE_NANOS = 10_000_000_000L;
+
+    @Test
+    void conditional_reads_versus_full_reads() throws Exception {
+        double before = run("before", false);
+        double after = run("after", true);
+        System.out.printf("read speedup: %.2fx%n", after / before);
+        assertThat(after).isGreaterThan(0);
+    }
+
+    private double run(String label, boolean conditional) throws Exception {
+        // Command-line style arguments, which take precedence over application.yml
+        try (ConfigurableApplicationContext app = new SpringApplicationBuilder(DistributedInventoryApplication.class)
+            .run("--server.port=0", "--management.tracing.enabled=false",
+                "--inventory.query-cache.entries=" + (conditional ? 4096 : 0))) {
+            String base = "http://localhost:" + app.getEnvironment().getProperty("local.server.port");
+            HttpClient http = HttpClient.newHttpClient();
+            for (int i = 0; i < SKUS; i++) {
+                post(http, base, "/api/commands/inventory/replace", "{\"storeId\":\"S" + (i % 20) + "\",\"sku\":\"SKU-" + i + "\",\"quantity\":100}");
+            }
+            LongAdder reads = new LongAdder();
+            LongAdder notModified = new LongAdder();
+            long deadline = System.nanoTime() + PHASE_NANOS;
+            try (var pool = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<?>> clients = new ArrayList<>();
+                for (int c = 0; c < CLIENTS; c++) {
+                    int client = c;
+                    clients.add(pool.submit(() -> {
+                        SplittableRandom random = new SplittableRandom(client);
+                        // Each client remembers the last ETag per url, as a browser or CDN would
+                        Map<String, String> etags = new HashMap<>();
+                        while (System.nanoTime() < deadline) {
+                            int sku = skewed(random);
+                            if (random.nextInt(100) < 5) {
+                                post(http, base, "/api/commands/inventory/adjust", "{\"storeId\":\"S" + (sku % 20) + "\",\"sku\":\"SKU-" + sku + "\",\"delta\":1}");
+                                continue;
+                            }
+                            String url = random.nextBoolean()
+                                ? base + "/api/query/inventory/global/SKU-" + sku
+                                : base + "/api/query/inventory/store/S" + (sku % 20) + "/SKU-" + sku;
+                            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url));
+                            String etag = etags.get(url);
+                            if (conditional && etag != null) request.header("If-None-Match", etag);
+                            HttpResponse<byte[]> response = http.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+                            if (response.statusCode() == 304) notModified.increment();
+                            response.headers().firstValue("ETag").ifPresent(tag -> etags.put(url, tag));
+                            reads.increment();
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> client : clients) client.get();
+            }
+            double readsPerSecond = reads.sum() / (PHASE_NANOS / 1e9);
+            System.out.printf("%-7s %10.0f reads/s, %5.1f%% answered 304%n", label, readsPerSecond, 100.0 * notModified.sum() / reads.sum());
+            return readsPerSecond;
+        }
+    }
+
+    // Roughly Zipf: a few hundred hot skus take most of the traffic
+    private static int skewed(SplittableRandom random) {
+        return (int) Math.min(SKUS - 1, Math.floor(Math.pow(SKUS, random.nextDouble())) - 1);
+    }
+
+    private static void post(HttpClient http, String base, String path, String json) throws Exception {
+        http.send(HttpRequest.newBuilder(URI.create(base + path)).header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(json)).build(), HttpResponse.BodyHandlers.discarding());
+    }
+}
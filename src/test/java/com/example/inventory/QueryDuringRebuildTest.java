@@ -0,0 +1,105 @@
+package com.example.inventory;
+
+import com.example.inventory.eventlog.ProjectionRebuilder;
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.StoreInventoryService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {"inventory.event-log.enabled=true", "inventory.event-log.fsync=interval"})
+class QueryDuringRebuildTest {
+
+    @DynamicPropertySource
+    static void eventLogDirectory(DynamicPropertyRegistry registry) throws IOException {
+        String directory = Files.createTempDirectory("query-rebuild").toString();
+        registry.add("inventory.event-log.directory", () -> directory);
+    }
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    StoreInventoryService service;
+
+    @Autowired
+    CentralInventoryProjection projection;
+
+    @Autowired
+    ProjectionRebuilder rebuilder;
+
+    @Test
+    void anEtagNeverLabelsTwoBodiesAcrossRebuilds() throws Exception {
+        String base = "http://localhost:" + port + "/api/query/inventory";
+        List<String> urls = List.of(base + "/global/RB-1", base + "/store/S1/RB-1", base + "/global/RB-2");
+        service.replaceStock("S1", "RB-1", 0);
+        service.replaceStock("S2", "RB-2", 0);
+
+        // Quantities only grow, so two bodies under one tag are never a repeat of the same response
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Map<String, String> bodyByTag = new ConcurrentHashMap<>();
+        AtomicLong reads = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        threads.add(Thread.ofPlatform().start(() -> {
+            try {
+                while (running.get()) {
+                    service.adjustStock("S1", "RB-1", 1);
+                    service.adjustStock("S2", "RB-2", 1);
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        }));
+        for (int r = 0; r < 3; r++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                try (HttpClient client = HttpClient.newHttpClient()) {
+                    while (running.get()) {
+                        for (String url : urls) {
+                            HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(url)).build(),
+                                HttpResponse.BodyHandlers.ofString());
+                            String tag = response.headers().firstValue("ETag").orElseThrow();
+                            String previous = bodyByTag.putIfAbsent(url + " " + tag, response.body());
+                            if (previous != null) assertThat(response.body()).as("%s %s", url, tag).isEqualTo(previous);
+                            reads.incrementAndGet();
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }));
+        }
+
+        try {
+            for (int i = 0; i < 20 && failure.get() == null; i++) {
+                rebuilder.rebuild(1);
+            }
+        } finally {
+            running.set(false);
+            for (Thread thread : threads) thread.join();
+        }
+        assertThat(failure.get()).isNull();
+        assertThat(reads.get()).isPositive();
+        assertThat(projection.generation()).isEqualTo(20);
+    }
+}
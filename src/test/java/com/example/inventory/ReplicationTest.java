@@ -0,0 +1,179 @@
+package com.example.inventory;
+
+import com.example.inventory.replication.ReplicationFollower;
+import com.example.inventory.replication.ReplicationPrimary;
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.service.ReservationService;
+import com.example.inventory.service.StockOperation;
+import com.example.inventory.service.StockTransfer;
+import com.example.inventory.service.StoreInventoryService;
+import com.example.inventory.state.InventoryStateTable.Row;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReplicationTest {
+
+    private record Node(InMemoryEventBus bus, CentralInventoryProjection projection) {}
+
+    private final List<Runnable> cleanup = new ArrayList<>();
+
+    @AfterEach
+    void stopNodes() {
+        cleanup.forEach(Runnable::run);
+    }
+
+    private static Node node() {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry());
+        CentralInventoryProjection projection = new CentralInventoryProjection(bus);
+        projection.subscribe();
+        return new Node(bus, projection);
+    }
+
+    private ReplicationFollower follow(Node node, String nodeId, ReplicationPrimary primary) {
+        ReplicationFollower follower = new ReplicationFollower(node.bus(), node.projection(), new SimpleMeterRegistry(), nodeId, "localhost", primary.port(), 50);
+        follower.start();
+        cleanup.add(follower::stop);
+        return follower;
+    }
+
+    @Test
+    void followersConvergeResumeFromTheirOffsetAndResyncWhenTooFarBehind() throws Exception {
+        Node primaryNode = node();
+        StoreInventoryService service = new StoreInventoryService(primaryNode.bus());
+        ReservationService reservations = new ReservationService(service, primaryNode.bus());
+        SimpleMeterRegistry primaryMetrics = new SimpleMeterRegistry();
+        // A small backlog, so a follower that misses enough records needs a snapshot
+        ReplicationPrimary primary = new ReplicationPrimary(primaryNode.bus(), primaryNode.projection(), primaryMetrics, 0, 64, 1024, 16);
+        primary.start();
+        cleanup.add(primary::stop);
+
+        // Written before any follower connects: they start from a snapshot
+        service.replaceStock("S1", "A", 10);
+        Node a = node();
+        Node b = node();
+        ReplicationFollower followerA = follow(a, "a", primary);
+        ReplicationFollower followerB = follow(b, "b", primary);
+
+        for (int i = 0; i < 300; i++) {
+            service.adjustStock("S" + (i % 5), "SKU-" + (i % 7), 3);
+        }
+        service.applyBatch(List.of(
+            StockOperation.replace("S1", "B", 4, -1),
+            StockOperation.adjust("S2", "B", 6, -1)));
+        service.transfer(List.of(new StockTransfer("A", "S1", "S9", 4)));
+        reservations.reserve("S1", "A", 2, Duration.ofMinutes(5));
+
+        awaitUntil(() -> followerA.lag() == 0 && followerB.lag() == 0 && followerA.appliedOffset() == primary.headOffset()
+            && followerB.appliedOffset() == primary.headOffset());
+        assertSameState(primaryNode, a);
+        assertSameState(primaryNode, b);
+        assertThat(b.projection().getGlobalReserved("A")).isEqualTo(2);
+        awaitUntil(() -> primary.followerAcks().equals(Map.of("a", primary.headOffset(), "b", primary.headOffset())));
+        double snapshotsAfterJoin = primaryMetrics.counter("inventory.replication.snapshots").count();
+
+        // A short outage is caught up from the backlog
+        followerA.stop();
+        for (int i = 0; i < 20; i++) {
+            service.adjustStock("S3", "SKU-1", -1);
+        }
+        followerA.start();
+        awaitUntil(() -> followerA.appliedOffset() == primary.headOffset());
+        assertSameState(primaryNode, a);
+        assertThat(primaryMetrics.counter("inventory.replication.snapshots").count()).isEqualTo(snapshotsAfterJoin);
+
+        // A long one outgrows the backlog and is healed with a snapshot
+        followerA.stop();
+        for (int i = 0; i < 500; i++) {
+            service.adjustStock("S" + (i % 3), "SKU-" + (i % 11), 1);
+        }
+        followerA.start();
+        awaitUntil(() -> followerA.appliedOffset() == primary.headOffset() && followerB.appliedOffset() == primary.headOffset());
+        assertSameState(primaryNode, a);
+        assertSameState(primaryNode, b);
+        // b may have needed one too if the burst outran it
+        assertThat(primaryMetrics.counter("inventory.replication.snapshots").count()).isGreaterThanOrEqualTo(snapshotsAfterJoin + 1);
+    }
+
+    @Test
+    void aPrimaryRestartedWithoutItsLogReplacesTheFollowersState() throws Exception {
+        Node firstNode = node();
+        StoreInventoryService first = new StoreInventoryService(firstNode.bus());
+        ReservationService firstReservations = new ReservationService(first, firstNode.bus());
+        ReplicationPrimary firstPrimary = new ReplicationPrimary(firstNode.bus(), firstNode.projection(), new SimpleMeterRegistry(), 0, 64, 1024, 16);
+        firstPrimary.start();
+        cleanup.add(firstPrimary::stop);
+        int port = firstPrimary.port();
+
+        Node f = node();
+        ReplicationFollower follower = follow(f, "f", firstPrimary);
+        for (int i = 0; i < 40; i++) {
+            first.adjustStock("S" + (i % 4), "A", 2);
+        }
+        first.replaceStock("S9", "GONE", 5);
+        firstReservations.reserve("S1", "A", 3, Duration.ofMinutes(5));
+        awaitUntil(() -> follower.appliedOffset() == firstPrimary.headOffset());
+        assertSameState(firstNode, f);
+        assertThat(f.projection().getGlobalReserved("A")).isEqualTo(3);
+
+        // Same port, new epoch, nothing kept: versions start over below the follower's
+        firstPrimary.stop();
+        Node secondNode = node();
+        StoreInventoryService second = new StoreInventoryService(secondNode.bus());
+        ReservationService secondReservations = new ReservationService(second, secondNode.bus());
+        second.replaceStock("S1", "A", 7);
+        second.adjustStock("S2", "B", 4);
+        secondReservations.reserve("S2", "B", 1, Duration.ofMinutes(5));
+        ReplicationPrimary secondPrimary = new ReplicationPrimary(secondNode.bus(), secondNode.projection(), new SimpleMeterRegistry(), port, 64, 1024, 16);
+        secondPrimary.start();
+        cleanup.add(secondPrimary::stop);
+
+        awaitUntil(() -> rows(f.projection()).equals(rows(secondNode.projection())));
+        assertSameState(secondNode, f);
+        assertThat(f.projection().getStoreQuantity("S9", "GONE")).isEmpty();
+        assertThat(f.projection().getGlobalReserved("A")).isZero();
+        assertThat(f.projection().getGlobalReserved("B")).isEqualTo(1);
+
+        // Records after the snapshot apply on top of it
+        second.adjustStock("S1", "A", -2);
+        awaitUntil(() -> follower.appliedOffset() == secondPrimary.headOffset());
+        assertSameState(secondNode, f);
+        assertThat(f.projection().getGlobalQuantity("A")).isEqualTo(5);
+    }
+
+    private static void assertSameState(Node expected, Node actual) {
+        assertThat(rows(actual.projection())).isEqualTo(rows(expected.projection()));
+        for (String sku : List.of("A", "B", "SKU-1", "SKU-6", "SKU-10")) {
+            assertThat(actual.projection().getGlobalQuantity(sku)).as(sku).isEqualTo(expected.projection().getGlobalQuantity(sku));
+        }
+    }
+
+    private static Map<String, String> rows(CentralInventoryProjection projection) {
+        Map<String, String> rows = new HashMap<>();
+        projection.forEachRow((storeId, sku, row) -> rows.put(storeId + "|" + sku, describe(row)));
+        return rows;
+    }
+
+    private static String describe(Row row) {
+        return row.quantity() + "@" + row.version();
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("timed out waiting for replication").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.inventory;
+
+import com.example.inventory.event.InventoryEvent;
+import com.example.inventory.event.ReservationChanged;
+import com.example.inventory.event.StockAdjusted;
+import com.example.inventory.eventlog.MappedEventLog;
+import com.example.inventory.eventlog.MappedEventLog.FsyncPolicy;
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.service.ReservationHold;
+import com.example.inventory.service.ReservationService;
+import com.example.inventory.service.StoreInventoryService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ReservationServiceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void holds_reduce_available_stock_until_confirmed_or_released() {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry());
+        CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+        proj.subscribe();
+        StoreInventoryService svc = new StoreInventoryService(bus);
+        ReservationService reservations = new ReservationService(svc, bus);
+        svc.replaceStock("A", "SKU-H", 10);
+
+        ReservationHold first = reservations.reserve("A", "SKU-H", 6, Duration.ofMinutes(15));
+        assertThatThrownBy(() -> reservations.reserve("A", "SKU-H", 5, Duration.ofMinutes(15)))
+            .isInstanceOf(StoreInventoryService.InsufficientStockException.class);
+        ReservationHold second = reservations.reserve("A", "SKU-H", 4, Duration.ofMinutes(15));
+        assertThat(proj.getStoreReserved("A", "SKU-H")).isEqualTo(10);
+        assertThat(proj.getStoreQuantity("A", "SKU-H")).contains(10);
+
+        assertThat(reservations.confirm(first.id()).getQuantity()).isEqualTo(4);
+        assertThat(proj.getStoreQuantity("A", "SKU-H")).contains(4);
+        assertThat(proj.getStoreReserved("A", "SKU-H")).isEqualTo(4);
+        assertThat(proj.getGlobalQuantity("SKU-H")).isEqualTo(4);
+
+        reservations.release(second.id());
+        assertThat(proj.getGlobalReserved("SKU-H")).isZero();
+        assertThat(reservations.openHolds()).isZero();
+        assertThatThrownBy(() -> reservations.confirm(second.id())).isInstanceOf(ReservationService.UnknownHoldException.class);
+    }
+
+    @Test
+    void confirm_publishes_stock_and_hold_changes_as_one_batch() {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry());
+        List<List<InventoryEvent>> batches = new ArrayList<>();
+        bus.subscribe(e -> { }, batches::add);
+        StoreInventoryService svc = new StoreInventoryService(bus);
+        ReservationService reservations = new ReservationService(svc, bus);
+        svc.replaceStock("A", "SKU-B", 3);
+
+        reservations.confirm(reservations.reserve("A", "SKU-B", 2, Duration.ofMinutes(1)).id());
+
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).hasSize(2);
+        assertThat(batches.get(0).get(0)).isInstanceOf(StockAdjusted.class);
+        assertThat(((ReservationChanged) batches.get(0).get(1)).reserved()).isZero();
+    }
+
+    @Test
+    void expired_holds_return_stock_on_the_next_tick() {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry());
+        CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+        proj.subscribe();
+        StoreInventoryService svc = new StoreInventoryService(bus);
+        ReservationService reservations = new ReservationService(svc, bus);
+        svc.replaceStock("A", "SKU-E", 5);
+        long start = System.currentTimeMillis();
+        ReservationHold shortHold = reservations.reserve("A", "SKU-E", 2, Duration.ofSeconds(30));
+        reservations.reserve("A", "SKU-E", 3, Duration.ofMinutes(10));
+
+        assertThat(reservations.expireDue(start + 29_000)).isZero();
+        assertThat(reservations.expireDue(start + 31_000)).isEqualTo(1);
+        assertThat(proj.getStoreReserved("A", "SKU-E")).isEqualTo(3);
+        assertThatThrownBy(() -> reservations.release(shortHold.id())).isInstanceOf(ReservationService.UnknownHoldException.class);
+        assertThat(reservations.expireDue(start + 601_000)).isEqualTo(1);
+        assertThat(proj.getGlobalReserved("SKU-E")).isZero();
+        assertThat(proj.getGlobalQuantity("SKU-E")).isEqualTo(5);
+    }
+
+    @Test
+    void holds_stay_out_of_the_event_log() {
+        try (MappedEventLog log = new MappedEventLog(dir, 1 << 16, FsyncPolicy.BATCHED, 5)) {
+            InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry(), Optional.of(log));
+            StoreInventoryService svc = new StoreInventoryService(bus);
+            ReservationService reservations = new ReservationService(svc, bus);
+            svc.replaceStock("A", "SKU-L", 5);
+            reservations.reserve("A", "SKU-L", 1, Duration.ofMinutes(1));
+            reservations.confirm(reservations.reserve("A", "SKU-L", 2, Duration.ofMinutes(1)).id());
+
+            List<InventoryEvent> logged = new ArrayList<>();
+            log.replay(0, logged::add);
+            assertThat(logged).hasSize(2).noneMatch(e -> e instanceof ReservationChanged);
+        }
+    }
+}
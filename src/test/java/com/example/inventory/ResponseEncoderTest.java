@@ -0,0 +1,83 @@
+package com.example.inventory;
+
+import com.example.inventory.api.ResponseEncoder;
+import com.example.inventory.api.dto.Responses.GlobalQuantityResponse;
+import com.example.inventory.api.dto.Responses.StoreQuantityResponse;
+import com.example.inventory.model.InventoryRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseEncoderTest {
+    // As Spring Boot configures it: Instants as ISO-8601 strings
+    private final ObjectMapper jackson = Jackson2ObjectMapperBuilder.json()
+        .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+    private final ResponseEncoder encoder = new ResponseEncoder(4, 256);
+
+    @Test
+    void jsonMatchesJacksonByteForByte() throws Exception {
+        List<String> ids = List.of("S1", "SKU-ç-€", "emoji-📦", "q\"uote\\back/slash", "ctl\b\t\n\f\r\u0001\u001F",
+            "x".repeat(300));
+        Random random = new Random(9);
+        for (String storeId : ids) {
+            for (String sku : ids) {
+                int quantity = random.nextInt() >> random.nextInt(32);
+                int reserved = random.nextInt(1_000);
+                assertThat(new String(encoder.global(sku, quantity, reserved, Math.max(0, quantity - reserved), false), StandardCharsets.UTF_8))
+                    .isEqualTo(jackson.writeValueAsString(new GlobalQuantityResponse(sku, quantity, reserved, Math.max(0, quantity - reserved))));
+                assertThat(new String(encoder.store(storeId, sku, quantity, reserved, 0, false), StandardCharsets.UTF_8))
+                    .isEqualTo(jackson.writeValueAsString(new StoreQuantityResponse(storeId, sku, quantity, reserved, 0)));
+            }
+        }
+        for (Instant at : List.of(Instant.EPOCH, Instant.parse("1969-12-31T23:59:59.999Z"), Instant.parse("2000-02-29T12:00:00.5Z"),
+            Instant.parse("9999-12-31T23:59:59.999999999Z"), Instant.parse("+10000-01-01T00:00:00Z"), Instant.parse("-0001-06-01T00:00:00.000001Z"))) {
+            assertRecord(new InventoryRecord("S1", "SKU-1", 7, 3, at));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            Instant at = Instant.ofEpochSecond(random.nextLong(-62_000_000_000L, 253_000_000_000L),
+                random.nextInt(4) == 0 ? 0 : random.nextInt(1_000_000_000) / (int) Math.pow(1_000, random.nextInt(3)));
+            assertRecord(new InventoryRecord("S1", "SKU-1", random.nextInt(), random.nextLong(), at));
+        }
+        assertRecord(new InventoryRecord("S1", "SKU-1", Integer.MIN_VALUE, Long.MIN_VALUE, null));
+        assertRecord(new InventoryRecord("S1", "SKU-1", Integer.MAX_VALUE, Long.MAX_VALUE, Instant.now()));
+    }
+
+    @Test
+    void binaryIsFixedWidthAfterTheIds() {
+        ByteBuffer global = ByteBuffer.wrap(encoder.global("SKU-€", 10, 3, 7, true));
+        assertThat(string(global)).isEqualTo("SKU-€");
+        assertThat(List.of(global.getInt(), global.getInt(), global.getInt())).containsExactly(10, 3, 7);
+        assertThat(global.hasRemaining()).isFalse();
+
+        Instant at = Instant.ofEpochSecond(1_700_000_000L, 123);
+        ByteBuffer record = ByteBuffer.wrap(encoder.record(new InventoryRecord("S1", "A", 5, 42, at), true));
+        assertThat(string(record)).isEqualTo("S1");
+        assertThat(string(record)).isEqualTo("A");
+        assertThat(record.getInt()).isEqualTo(5);
+        assertThat(record.getLong()).isEqualTo(42);
+        assertThat(Instant.ofEpochSecond(record.getLong(), record.getInt())).isEqualTo(at);
+        assertThat(record.hasRemaining()).isFalse();
+        assertThat(ResponseEncoder.wantsBinary("application/x-inventory-binary, application/json;q=0.5")).isTrue();
+        assertThat(ResponseEncoder.wantsBinary("*/*")).isFalse();
+    }
+
+    private void assertRecord(InventoryRecord record) throws Exception {
+        assertThat(new String(encoder.record(record, false), StandardCharsets.UTF_8)).as("%s", record.getUpdatedAt())
+            .isEqualTo(jackson.writeValueAsString(record));
+    }
+
+    private static String string(ByteBuffer in) {
+        byte[] bytes = new byte[Short.toUnsignedInt(in.getShort())];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
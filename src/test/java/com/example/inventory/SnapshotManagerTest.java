@@ -0,0 +1,207 @@
+package com.example.inventory;
+
+import com.example.inventory.eventlog.MappedEventLog;
+import com.example.inventory.eventlog.MappedEventLog.FsyncPolicy;
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.service.StoreInventoryService;
+import com.example.inventory.snapshot.SnapshotFile;
+import com.example.inventory.snapshot.SnapshotManager;
+import com.example.inventory.state.InventoryStateTable.Row;
+import com.example.inventory.state.InventoryStateTable.RowVisitor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SnapshotManagerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void restart_loads_snapshot_and_replays_only_the_tail() throws Exception {
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        try (MappedEventLog log = new MappedEventLog(dir.resolve("log"), 1 << 20, FsyncPolicy.INTERVAL, 5)) {
+            Node node = new Node(log);
+            SnapshotManager snapshots = new SnapshotManager(log, node.svc, node.proj, node.bus, meters, dir.resolve("snap").toString(), 0, 2);
+            Random random = new Random(1);
+            try (var pool = Executors.newVirtualThreadPerTaskExecutor()) {
+                // Writers keep going while the snapshot copies rows
+                Future<?> writers = pool.submit(() -> {
+                    for (int i = 0; i < 3_000; i++) {
+                        node.svc.adjustStock("S" + (i % 10), "SKU-" + (i % 30), 1 + (i % 3));
+                    }
+                });
+                Thread.sleep(5);
+                snapshots.writeSnapshot();
+                writers.get();
+            }
+            for (int i = 0; i < 200; i++) {
+                node.svc.replaceStock("S" + random.nextInt(10), "SKU-" + random.nextInt(30), random.nextInt(50));
+            }
+            Path last = snapshots.writeSnapshot();
+            for (int i = 0; i < 50; i++) {
+                node.svc.adjustStock("S" + random.nextInt(10), "SKU-" + random.nextInt(30), -random.nextInt(5));
+            }
+            assertThat(meters.get("inventory.snapshot.age.seconds").gauge().value()).isGreaterThanOrEqualTo(0.0);
+
+            Node restarted = new Node(log);
+            SnapshotManager reloaded = new SnapshotManager(log, restarted.svc, restarted.proj, restarted.bus, meters, dir.resolve("snap").toString(), 0, 2);
+            long fromLsn = reloaded.loadLatest();
+            assertThat(last.getFileName().toString()).contains(String.valueOf(fromLsn));
+            long replayed = log.replay(fromLsn, e -> {
+                restarted.svc.restore(e);
+                restarted.bus.redeliver(e);
+            });
+            assertThat(replayed).isEqualTo(50);
+            assertThat(meters.get("inventory.snapshot.load").timer().count()).isEqualTo(1);
+
+            for (int s = 0; s < 10; s++) {
+                for (int k = 0; k < 30; k++) {
+                    String store = "S" + s, sku = "SKU-" + k;
+                    assertThat(restarted.svc.getStock(store, sku).map(r -> r.getQuantity() + "@" + r.getVersion()))
+                        .isEqualTo(node.svc.getStock(store, sku).map(r -> r.getQuantity() + "@" + r.getVersion()));
+                    assertThat(restarted.proj.getStoreQuantity(store, sku)).isEqualTo(node.proj.getStoreQuantity(store, sku));
+                }
+                assertThat(restarted.proj.getGlobalQuantity("SKU-" + s)).isEqualTo(node.proj.getGlobalQuantity("SKU-" + s));
+            }
+        }
+        try (var files = Files.list(dir.resolve("snap"))) {
+            assertThat(files.count()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void corrupt_snapshot_falls_back_to_previous_one() throws Exception {
+        try (MappedEventLog log = new MappedEventLog(dir.resolve("log"), 1 << 20, FsyncPolicy.INTERVAL, 5)) {
+            Node node = new Node(log);
+            SnapshotManager snapshots = new SnapshotManager(log, node.svc, node.proj, node.bus, new SimpleMeterRegistry(), dir.resolve("snap").toString(), 0, 2);
+            node.svc.replaceStock("A", "SKU-1", 5);
+            Path first = snapshots.writeSnapshot();
+            node.svc.replaceStock("A", "SKU-1", 8);
+            Path second = snapshots.writeSnapshot();
+            byte[] bytes = Files.readAllBytes(second);
+            bytes[bytes.length - 12] ^= 0x5A;
+            Files.write(second, bytes);
+
+            Node restarted = new Node(log);
+            long fromLsn = new SnapshotManager(log, restarted.svc, restarted.proj, restarted.bus, new SimpleMeterRegistry(), dir.resolve("snap").toString(), 0, 2).loadLatest();
+            assertThat(first.getFileName().toString()).contains(String.valueOf(fromLsn));
+            log.replay(fromLsn, e -> {
+                restarted.svc.restore(e);
+                restarted.bus.redeliver(e);
+            });
+            assertThat(restarted.proj.getGlobalQuantity("SKU-1")).isEqualTo(8);
+        }
+    }
+
+    @Test
+    void async_snapshot_waits_for_logged_events_to_be_applied() throws Exception {
+        try (MappedEventLog log = new MappedEventLog(dir.resolve("log"), 1 << 20, FsyncPolicy.INTERVAL, 5)) {
+            InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry(), Optional.of(log), "async", 2, 1_024);
+            StoreInventoryService svc = new StoreInventoryService(bus);
+            // Subscribed ahead of the projection: holds the dispatcher after the event is logged, before it is applied
+            CountDownLatch delivered = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            bus.subscribe("gate", event -> {
+                delivered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+            proj.subscribe();
+            SnapshotManager snapshots = new SnapshotManager(log, svc, proj, bus, new SimpleMeterRegistry(), dir.resolve("snap").toString(), 0, 2);
+            try {
+                svc.replaceStock("A", "SKU-1", 5);
+                delivered.await();
+                AtomicReference<Exception> failure = new AtomicReference<>();
+                Thread writer = Thread.ofPlatform().start(() -> {
+                    try {
+                        snapshots.writeSnapshot();
+                    } catch (Exception e) {
+                        failure.set(e);
+                    }
+                });
+                // Let the dispatcher apply the event only once the snapshot waits for it, or has gone ahead without waiting
+                while (writer.isAlive() && writer.getState() != Thread.State.TIMED_WAITING) {
+                    Thread.onSpinWait();
+                }
+                release.countDown();
+                writer.join();
+                assertThat(failure.get()).isNull();
+            } finally {
+                bus.stop();
+            }
+
+            Node restarted = new Node(log);
+            long fromLsn = new SnapshotManager(log, restarted.svc, restarted.proj, restarted.bus, new SimpleMeterRegistry(), dir.resolve("snap").toString(), 0, 2).loadLatest();
+            assertThat(fromLsn).isEqualTo(log.endLsn());
+            log.replay(fromLsn, e -> {
+                restarted.svc.restore(e);
+                restarted.bus.redeliver(e);
+            });
+            assertThat(restarted.proj.getStoreQuantity("A", "SKU-1")).contains(5);
+            assertThat(restarted.proj.getGlobalQuantity("SKU-1")).isEqualTo(5);
+        }
+    }
+
+    @Test
+    void snapshot_file_reads_the_same_through_windows_smaller_than_a_row() throws Exception {
+        Path file = dir.resolve("windows.bin");
+        List<String> written = new ArrayList<>();
+        try (SnapshotFile.Writer writer = new SnapshotFile.Writer(file, 42)) {
+            RowVisitor section = writer.section();
+            for (int i = 0; i < 2_000; i++) {
+                // Ids up to 300 bytes, so strings and varints straddle every window boundary
+                String storeId = "S" + (i % 37), sku = "SKU-" + "x".repeat(i % 300) + i;
+                Row row = new Row(i - 1_000, i * 1_000_003L, 1_700_000_000_000L + i);
+                section.visit(storeId, sku, row);
+                written.add(storeId + "|" + sku + "|" + row);
+            }
+            writer.endSection();
+        }
+
+        for (int window : new int[] {24, 97, 4_096, 1 << 26}) {
+            assertThat(SnapshotFile.verify(file, window)).as("window %d", window).isTrue();
+            List<String> read = new ArrayList<>();
+            SnapshotFile.Header header = SnapshotFile.read(file, List.of((storeId, sku, row) -> read.add(storeId + "|" + sku + "|" + row)), window);
+            assertThat(header.lsn()).isEqualTo(42);
+            assertThat(read).as("window %d", window).isEqualTo(written);
+        }
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 0x01;
+        Files.write(file, bytes);
+        assertThat(SnapshotFile.verify(file, 97)).isFalse();
+    }
+
+    private static final class Node {
+        final InMemoryEventBus bus;
+        final StoreInventoryService svc;
+        final CentralInventoryProjection proj;
+
+        Node(MappedEventLog log) {
+            bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry(), Optional.of(log));
+            svc = new StoreInventoryService(bus);
+            proj = new CentralInventoryProjection(bus);
+            proj.subscribe();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.inventory;
+
+import com.example.inventory.event.InventoryEvent;
+import com.example.inventory.event.StockAdjusted;
+import com.example.inventory.event.StockReplaced;
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.service.StockHistory;
+import com.example.inventory.service.StockHistory.Change;
+import com.example.inventory.service.StoreInventoryService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StockHistoryTest {
+
+    @Test
+    void asOfAndRangeMatchEveryRecordedChange() {
+        StockHistory history = history();
+        List<Change> expected = new ArrayList<>();
+        Random random = new Random(3);
+        long millis = 1_700_000_000_000L;
+        int quantity = 0;
+        for (int version = 1; version <= 1_000; version++) {
+            // Several changes may share a millisecond
+            millis += random.nextInt(3) == 0 ? 0 : random.nextInt(5_000_000);
+            InventoryEvent event;
+            if (version == 1 || random.nextInt(8) == 0) {
+                quantity = random.nextInt(10_000);
+                event = new StockReplaced("S1", "A", quantity, version, Instant.ofEpochMilli(millis));
+            } else {
+                int delta = random.nextInt(201) - 100;
+                quantity = Math.max(0, quantity + delta);
+                event = new StockAdjusted("S1", "A", delta, version, Instant.ofEpochMilli(millis));
+            }
+            history.record(event);
+            // Repeats and stale events change nothing
+            history.record(event);
+            expected.add(new Change(millis, version, quantity));
+        }
+
+        long first = expected.get(0).millis();
+        assertThat(history.asOf("S1", "A", first - 1)).isNull();
+        assertThat(history.asOf("S2", "A", first)).isNull();
+        for (int i = 0; i < expected.size(); i++) {
+            Change change = expected.get(i);
+            // The last change at a millisecond wins
+            Change last = change;
+            for (int j = i + 1; j < expected.size() && expected.get(j).millis() == change.millis(); j++) last = expected.get(j);
+            assertThat(history.asOf("S1", "A", change.millis())).isEqualTo(last);
+            if (i + 1 < expected.size() && expected.get(i + 1).millis() > change.millis() + 1) {
+                assertThat(history.asOf("S1", "A", change.millis() + 1)).isEqualTo(last);
+            }
+        }
+
+        long from = expected.get(300).millis();
+        long to = expected.get(700).millis();
+        List<Change> inRange = expected.stream().filter(c -> c.millis() >= from && c.millis() <= to).toList();
+        assertThat(history.range("S1", "A", from, to, 0, 10_000)).isEqualTo(inRange);
+        // Paging by version never skips changes that share a millisecond
+        List<Change> paged = new ArrayList<>();
+        long pageFrom = from;
+        long afterVersion = 0;
+        while (true) {
+            List<Change> page = history.range("S1", "A", pageFrom, to, afterVersion, 7);
+            paged.addAll(page);
+            if (page.size() < 7) break;
+            pageFrom = page.get(6).millis();
+            afterVersion = page.get(6).version();
+        }
+        assertThat(paged).isEqualTo(inRange);
+    }
+
+    @Test
+    void aChangeCostsAFewBytes() {
+        StockHistory history = history();
+        Random random = new Random(5);
+        long millis = 1_700_000_000_000L;
+        int changes = 100_000;
+        for (int version = 1; version <= changes; version++) {
+            // A busy row: a change every few seconds, mostly small adjustments
+            millis += random.nextInt(10_000);
+            history.record(version % 50 == 1
+                ? new StockReplaced("S1", "A", 500 + random.nextInt(100), version, Instant.ofEpochMilli(millis))
+                : new StockAdjusted("S1", "A", random.nextInt(11) - 5, version, Instant.ofEpochMilli(millis)));
+        }
+        assertThat(history.changes()).isEqualTo(changes);
+        assertThat((double) history.footprintBytes() / changes).isLessThan(6.0);
+    }
+
+    @Test
+    void feedsFromTheBus() {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry());
+        StoreInventoryService svc = new StoreInventoryService(bus);
+        CentralInventoryProjection projection = new CentralInventoryProjection(bus);
+        projection.subscribe();
+        StockHistory history = new StockHistory(bus, projection);
+        history.subscribe();
+
+        svc.replaceStock("S1", "A", 10);
+        svc.adjustStock("S1", "A", -4);
+        long now = System.currentTimeMillis();
+        Change change = history.asOf("S1", "A", now);
+        assertThat(change.quantity()).isEqualTo(6);
+        assertThat(change.version()).isEqualTo(2);
+        assertThat(history.range("S1", "A", 0, now, 0, 10)).extracting(Change::quantity).containsExactly(10, 6);
+    }
+
+    @Test
+    void chunksOlderThanTheRetentionWindowAreEvictedWithoutChangingAnswersInsideIt() {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry());
+        StockHistory history = new StockHistory(bus, new CentralInventoryProjection(bus), 1, 0);
+        long start = 1_700_000_000_000L;
+        // One change a minute for 2,000 minutes, against a one hour window
+        for (int version = 1; version <= 2_000; version++) {
+            history.record(new StockReplaced("S1", "A", version, version, Instant.ofEpochMilli(start + version * 60_000L)));
+        }
+
+        long last = start + 2_000 * 60_000L;
+        long cutoff = last - 3_600_000;
+        assertThat(history.evicted()).isPositive();
+        assertThat(history.changes() + history.evicted()).isEqualTo(2_000);
+        // A chunk and the tail cover the window at most twice over
+        assertThat(history.changes()).isLessThanOrEqualTo(60 + 2L * StockHistory.CHUNK_SIZE);
+        assertThat(history.asOf("S1", "A", cutoff).version()).isEqualTo(1_940);
+        assertThat(history.asOf("S1", "A", last).version()).isEqualTo(2_000);
+        assertThat(history.range("S1", "A", cutoff, last, 0, 1_000)).hasSize(61);
+        assertThat(history.asOf("S1", "A", start + 60_000)).isNull();
+    }
+
+    @Test
+    void theByteBudgetEvictsTheOldestChunksOfTheRowThatGrew() {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry());
+        StockHistory history = new StockHistory(bus, new CentralInventoryProjection(bus), 0, 4_096);
+        history.record(new StockReplaced("S1", "COLD", 1, 1, Instant.ofEpochMilli(1_000)));
+        Random random = new Random(5);
+        for (int version = 1; version <= 20_000; version++) {
+            history.record(new StockReplaced("S1", "HOT", random.nextInt(1_000), version, Instant.ofEpochMilli(1_000L + version)));
+        }
+
+        assertThat(history.evicted()).isPositive();
+        // The budget is checked as chunks seal, so it may be passed by at most one chunk and the open tails
+        assertThat(history.footprintBytes()).isLessThan(4_096 + 2_048);
+        assertThat(history.asOf("S1", "COLD", 1_000).quantity()).isEqualTo(1);
+        assertThat(history.asOf("S1", "HOT", 21_000).version()).isEqualTo(20_000);
+        assertThat(history.asOf("S1", "HOT", 1_001)).isNull();
+    }
+
+    private static StockHistory history() {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry());
+        return new StockHistory(bus, new CentralInventoryProjection(bus));
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.inventory;
+
+import com.example.inventory.event.StockReplaced;
+import com.example.inventory.service.CentralInventoryProjection;
+import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.service.StoreHierarchy;
+import com.example.inventory.service.StoreInventoryService;
+import com.example.inventory.state.HeapInventoryStateTable;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StoreHierarchyTest {
+
+    private CentralInventoryProjection projection(InMemoryEventBus bus, StoreHierarchy hierarchy) {
+        CentralInventoryProjection proj = new CentralInventoryProjection(bus, new HeapInventoryStateTable(), hierarchy);
+        proj.subscribe();
+        return proj;
+    }
+
+    @Test
+    void rollsUpConfiguredStoresAndMovesOnlyTheReassignedNode() {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry());
+        CentralInventoryProjection proj = projection(bus, new StoreHierarchy("S1=D1, S2=D1, S3=D2", "D1=NORTH,D2=SOUTH"));
+        StoreHierarchy hierarchy = proj.hierarchy();
+
+        bus.publish(new StockReplaced("S1", "SKU", 5, 1, Instant.now()));
+        bus.publish(new StockReplaced("S2", "SKU", 7, 1, Instant.now()));
+        bus.publish(new StockReplaced("S3", "SKU", 11, 1, Instant.now()));
+        bus.publish(new StockReplaced("S4", "SKU", 100, 1, Instant.now()));
+
+        assertThat(hierarchy.districtQuantity("D1", "SKU")).isEqualTo(12);
+        assertThat(hierarchy.regionQuantity("NORTH", "SKU")).isEqualTo(12);
+        assertThat(hierarchy.regionQuantity("SOUTH", "SKU")).isEqualTo(11);
+        assertThat(proj.getGlobalQuantity("SKU")).isEqualTo(123);
+
+        proj.assignStore("S2", "D2");
+        assertThat(hierarchy.districtQuantity("D1", "SKU")).isEqualTo(5);
+        assertThat(hierarchy.regionQuantity("SOUTH", "SKU")).isEqualTo(18);
+
+        proj.assignDistrict("D2", "NORTH");
+        assertThat(hierarchy.regionQuantity("NORTH", "SKU")).isEqualTo(23);
+        assertThat(hierarchy.regionQuantity("SOUTH", "SKU")).isZero();
+
+        proj.assignStore("S4", "D1");
+        proj.assignStore("S1", null);
+        assertThat(hierarchy.districtQuantity("D1", "SKU")).isEqualTo(100);
+        assertThat(hierarchy.regionQuantity("NORTH", "SKU")).isEqualTo(118);
+        assertThat(proj.getGlobalQuantity("SKU")).isEqualTo(123);
+
+        assertThatThrownBy(() -> new StoreHierarchy("S1", "")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rollupsStayExactWhileStoresAndDistrictsMoveUnderWrites() throws Exception {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new SimpleMeterRegistry());
+        CentralInventoryProjection proj = projection(bus, new StoreHierarchy("S0=D0,S1=D0,S2=D1,S3=D1", "D0=R0,D1=R1"));
+        StoreInventoryService service = new StoreInventoryService(bus);
+        int stores = 4;
+        int skus = 8;
+
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            writers.add(Thread.ofPlatform().start(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 5_000; i++) {
+                    service.adjustStock("S" + random.nextInt(stores), "K" + random.nextInt(skus), random.nextInt(11) - 3);
+                }
+            }));
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (writers.stream().anyMatch(Thread::isAlive)) {
+            proj.assignStore("S" + random.nextInt(stores), "D" + random.nextInt(3));
+            proj.assignDistrict("D" + random.nextInt(3), "R" + random.nextInt(2));
+        }
+        for (Thread writer : writers) writer.join();
+
+        StoreHierarchy hierarchy = proj.hierarchy();
+        for (int k = 0; k < skus; k++) {
+            String sku = "K" + k;
+            int[] byDistrict = new int[3];
+            int[] byRegion = new int[2];
+            for (int s = 0; s < stores; s++) {
+                String store = "S" + s;
+                int quantity = proj.getStoreQuantity(store, sku).orElse(0);
+                String district = hierarchy.districtOf(store);
+                byDistrict[district.charAt(1) - '0'] += quantity;
+                String region = hierarchy.regionOf(district);
+                if (region != null) byRegion[region.charAt(1) - '0'] += quantity;
+            }
+            for (int d = 0; d < 3; d++) {
+                assertThat(hierarchy.districtQuantity("D" + d, sku)).as("D%d %s", d, sku).isEqualTo(byDistrict[d]);
+            }
+            for (int r = 0; r < 2; r++) {
+                assertThat(hierarchy.regionQuantity("R" + r, sku)).as("R%d %s", r, sku).isEqualTo(byRegion[r]);
+            }
+        }
+    }
+}
@@ -3,18 +3,26 @@ package com.example.inventory;
 import com.example.inventory.event.StockAdjusted;
 import com.example.inventory.event.StockReplaced;
 import com.example.inventory.model.InventoryRecord;
+import com.example.inventory.service.CentralInventoryProjection;
 import com.example.inventory.service.InMemoryEventBus;
+import com.example.inventory.service.StockOperation;
+import com.example.inventory.service.StockOperationResult;
+import com.example.inventory.service.StockTransfer;
 import com.example.inventory.service.StoreInventoryService;
 import io.micrometer.observation.ObservationRegistry;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class StoreInventoryServiceTest {
 
@@ -55,6 +63,154 @@ class StoreInventoryServiceTest {
         assertThat(finalRec.getQuantity()).isEqualTo(threads);
         assertThat(finalRec.getVersion()).isEqualTo(threads);
     }
-}
 
+    @Test
+    void batch_is_applied_in_one_pass_and_delivered_once() {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new io.micrometer.core.instrument.simple.SimpleMeterRegistry());
+        List<List<?>> batches = new ArrayList<>();
+        bus.subscribe(e -> { throw new AssertionError("expected batch delivery"); }, batches::add);
+        StoreInventoryService svc = new StoreInventoryService(bus);
+
+        List<StockOperationResult> results = svc.applyBatch(List.of(
+            StockOperation.replace("A", "SKU-B", 10, -1),
+            StockOperation.adjust("A", "SKU-B", -3, 1),
+            StockOperation.adjust("A", "SKU-B", 5, 1), // stale expected version
+            StockOperation.adjust("B", "SKU-B", 4, -1)));
+
+        assertThat(results).extracting(StockOperationResult::isApplied).containsExactly(true, true, false, true);
+        assertThat(results.get(1).record().getQuantity()).isEqualTo(7);
+        assertThat(results.get(2).currentVersion()).isEqualTo(2);
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).hasSize(3);
+    }
+
+    @Test
+    void failed_batch_delivery_is_compensated_with_new_versions() throws InterruptedException {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new io.micrometer.core.instrument.simple.SimpleMeterRegistry());
+        StoreInventoryService svc = new StoreInventoryService(bus);
+        svc.replaceStock("A", "SKU-F", 10);
+        bus.subscribe(e -> { }, events -> { throw new IllegalStateException("subscriber down"); });
+
+        assertThatThrownBy(() -> svc.applyBatch(List.of(
+            StockOperation.adjust("A", "SKU-F", 1, -1),
+            StockOperation.adjust("A", "SKU-F", 1, -1),
+            StockOperation.replace("B", "SKU-F", 3, -1))))
+            .isInstanceOf(RuntimeException.class);
+
+        // Quantities are restored, but versions keep moving forward so none is ever reused
+        assertThat(svc.getStock("A", "SKU-F").orElseThrow().getQuantity()).isEqualTo(10);
+        assertThat(svc.getStock("A", "SKU-F").orElseThrow().getVersion()).isEqualTo(4);
+        assertThat(svc.getStock("B", "SKU-F").orElseThrow().getQuantity()).isZero();
+        assertThat(svc.getStock("B", "SKU-F").orElseThrow().getVersion()).isEqualTo(2);
+        // 3 failed events, then one compensation per row, which the broken subscriber also rejects; both
+        // batches are retried in the background before they are dead-lettered
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (bus.deadLetters().size() < 5 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(bus.deadLetters().size()).isEqualTo(5);
+        assertThat(bus.pendingRetries()).isZero();
+    }
+
+    @Test
+    void compensation_reaches_subscribers_that_saw_the_failed_event() {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new io.micrometer.core.instrument.simple.SimpleMeterRegistry());
+        CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+        proj.subscribe();
+        StoreInventoryService svc = new StoreInventoryService(bus);
+        svc.replaceStock("A", "SKU-C", 10);
+        boolean[] down = {true};
+        bus.subscribe(e -> { if (down[0] && e instanceof StockAdjusted) throw new IllegalStateException("subscriber down"); });
+
+        assertThatThrownBy(() -> svc.adjustStockWithOptimisticLock("A", "SKU-C", 5, 1)).isInstanceOf(RuntimeException.class);
 
+        // The projection applied v2 (+5) before the second subscriber failed; the compensation v3 undoes it
+        assertThat(proj.getStoreQuantity("A", "SKU-C")).contains(10);
+        assertThat(svc.getStock("A", "SKU-C").orElseThrow().getVersion()).isEqualTo(3);
+        down[0] = false;
+        assertThat(svc.adjustStockWithOptimisticLock("A", "SKU-C", 1, 3).getQuantity()).isEqualTo(11);
+        assertThat(proj.getGlobalQuantity("SKU-C")).isEqualTo(11);
+    }
+
+    @Test
+    void transfer_is_rejected_as_a_whole_when_a_source_runs_short() {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new io.micrometer.core.instrument.simple.SimpleMeterRegistry());
+        List<Object> events = new ArrayList<>();
+        bus.subscribe(events::add, events::add);
+        StoreInventoryService svc = new StoreInventoryService(bus);
+        svc.replaceStock("A", "SKU-T", 5);
+        svc.replaceStock("B", "SKU-T", 1);
+        events.clear();
+
+        // The first line alone fits, but both lines together take 6 from A
+        assertThatThrownBy(() -> svc.transfer(List.of(
+            new StockTransfer("SKU-T", "A", "B", 4),
+            new StockTransfer("SKU-T", "A", "C", 2))))
+            .isInstanceOf(StoreInventoryService.InsufficientStockException.class);
+
+        assertThat(events).isEmpty();
+        assertThat(svc.getStock("A", "SKU-T").orElseThrow().getVersion()).isEqualTo(1);
+        List<InventoryRecord> moved = svc.transfer(List.of(new StockTransfer("SKU-T", "A", "B", 5)));
+        assertThat(moved).extracting(InventoryRecord::getQuantity).containsExactly(0, 6);
+        assertThat(events).hasSize(1);
+    }
+
+    @Test
+    void concurrent_transfers_conserve_stock_and_never_expose_partial_totals() throws Exception {
+        InMemoryEventBus bus = new InMemoryEventBus(ObservationRegistry.create(), new io.micrometer.core.instrument.simple.SimpleMeterRegistry());
+        CentralInventoryProjection proj = new CentralInventoryProjection(bus);
+        proj.subscribe();
+        StoreInventoryService svc = new StoreInventoryService(bus);
+        String[] stores = {"S0", "S1", "S2", "S3", "S4", "S5", "S6", "S7"};
+        String[] skus = {"T-1", "T-2", "T-3"};
+        for (String store : stores) {
+            for (String sku : skus) svc.replaceStock(store, sku, 100);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger torn = new AtomicInteger();
+        Thread reader = Thread.ofPlatform().start(() -> {
+            while (running.get()) {
+                for (String sku : skus) if (proj.getGlobalQuantity(sku) != 800) torn.incrementAndGet();
+            }
+        });
+        AtomicInteger rejected = new AtomicInteger();
+        try (var pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int t = 0; t < 200; t++) {
+                int seed = t;
+                pool.submit(() -> {
+                    SplittableRandom random = new SplittableRandom(seed);
+                    for (int i = 0; i < 50; i++) {
+                        List<StockTransfer> lines = new ArrayList<>();
+                        for (int l = 0; l < 1 + random.nextInt(3); l++) {
+                            int from = random.nextInt(stores.length);
+                            int to = (from + 1 + random.nextInt(stores.length - 1)) % stores.length;
+                            lines.add(new StockTransfer(skus[random.nextInt(skus.length)], stores[from], stores[to], 1 + random.nextInt(40)));
+                        }
+                        try {
+                            svc.transfer(lines);
+                        } catch (StoreInventoryService.InsufficientStockException e) {
+                            rejected.incrementAndGet();
+                        }
+                    }
+                });
+            }
+        }
+        running.set(false);
+        reader.join();
+
+        for (String sku : skus) {
+            int total = 0;
+            for (String store : stores) {
+                int quantity = svc.getStock(store, sku).map(InventoryRecord::getQuantity).orElse(0);
+                assertThat(quantity).isNotNegative();
+                assertThat(proj.getStoreQuantity(store, sku)).contains(quantity);
+                total += quantity;
+            }
+            assertThat(total).isEqualTo(800);
+            assertThat(proj.getGlobalQuantity(sku)).isEqualTo(800);
+        }
+        assertThat(torn).hasValue(0);
+        assertThat(rejected.get()).isLessThan(10_000);
+    }
+}